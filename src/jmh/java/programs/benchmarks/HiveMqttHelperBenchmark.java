@@ -0,0 +1,165 @@
+package programs.benchmarks;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
+import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
+import com.hivemq.client.mqtt.mqtt3.message.subscribe.Mqtt3Subscribe;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import io.reactivex.Flowable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import programs.HiveMqttClientRegistry;
+import programs.HiveMqttConsumptionEngine;
+import programs.HiveMqttHelper;
+import programs.IeApiResponse;
+import programs.models.IePair;
+
+import java.net.ServerSocket;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link HiveMqttHelper} publish and subscribe paths against an embedded Moquette broker on the loopback interface:
+ * a new client per message vs. a registry-shared client vs. the blocking and streaming publish of one connected client.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HiveMqttHelperBenchmark {
+
+    private static final String TOPIC = "benchmark/topic";
+    private static final String LATENCY_TOPIC = "benchmark/latency";
+    private static final int STREAM_BATCH = 1000;
+
+    @Param({"AT_MOST_ONCE", "AT_LEAST_ONCE"})
+    public MqttQos qos;
+
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    private final HiveMqttHelper hiveMqttHelper = new HiveMqttHelper();
+    private final ArrayBlockingQueue<Mqtt3Publish> consumedPublishes = new ArrayBlockingQueue<>(1);
+    private Server broker;
+    private HiveMqttHelper.ClientConfig publisherConfig;
+    private HiveMqttClientRegistry clientRegistry;
+    private Mqtt3Client publisher;
+    private Mqtt3Client subscriber;
+    private HiveMqttConsumptionEngine consumptionEngine;
+    private Mqtt3Publish publish;
+    private Mqtt3Publish latencyPublish;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        final int portNumber;
+        try (ServerSocket socket = new ServerSocket(0)) { portNumber = socket.getLocalPort(); }
+        final Properties properties = new Properties();
+        properties.setProperty("host", "127.0.0.1");
+        properties.setProperty("port", String.valueOf(portNumber));
+        properties.setProperty("persistent_store", "");
+        properties.setProperty("allow_anonymous", "true");
+        properties.setProperty("immediate_buffer_flush", "true");
+        broker = new Server();
+        broker.startServer(new MemoryConfig(properties));
+
+        final byte[] payload = new byte[payloadSize];
+        for (int i = 0; i < payloadSize; i++) { payload[i] = (byte) ('a' + (i % 26)); }
+        publish = Mqtt3Publish.builder().topic(TOPIC).qos(qos).payload(payload).build();
+        latencyPublish = Mqtt3Publish.builder().topic(LATENCY_TOPIC).qos(qos).payload(payload).build();
+
+        publisherConfig = new HiveMqttHelper.ClientConfig.Builder()
+                .setHostName("127.0.0.1")
+                .setPortNumber(portNumber)
+                .setIdentifier("publisher-" + UUID.randomUUID())
+                .build();
+        clientRegistry = new HiveMqttClientRegistry();
+        publisher = clientRegistry.acquire(publisherConfig).first;
+
+        final HiveMqttHelper.ClientConfig subscriberConfig = new HiveMqttHelper.ClientConfig.Builder()
+                .setHostName("127.0.0.1")
+                .setPortNumber(portNumber)
+                .setIdentifier("subscriber-" + UUID.randomUUID())
+                .build();
+        subscriber = new HiveMqttHelper.BuildMqtt3ClientCallable(subscriberConfig).call();
+        new HiveMqttHelper.Mqtt3ClientConnectionCallable(subscriber).call();
+        consumptionEngine = new HiveMqttConsumptionEngine(consumedPublishes::put);
+        consumptionEngine.start();
+        consumptionEngine.register(subscriber);
+        new HiveMqttHelper.Mqtt3ClientSubscribeCallable(subscriber,
+                Mqtt3Subscribe.builder().topicFilter(LATENCY_TOPIC).qos(qos).build()).call();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        consumptionEngine.stop();
+        new HiveMqttHelper.Mqtt3ClientDisconnectionCallable(subscriber).call();
+        clientRegistry.shutdown();
+        broker.stopServer();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Boolean publishNewClientPerMessage() throws Exception {
+        final HiveMqttHelper.ClientConfig clientConfig = new HiveMqttHelper.ClientConfig.Builder()
+                .setHostName(publisherConfig.hostName)
+                .setPortNumber(publisherConfig.portNumber)
+                .build();
+        final Mqtt3Client client = new HiveMqttHelper.BuildMqtt3ClientCallable(clientConfig).call();
+        new HiveMqttHelper.Mqtt3ClientConnectionCallable(client).call();
+        final Boolean result = new HiveMqttHelper.Mqtt3ClientPublishCallable(client, publish).call();
+        new HiveMqttHelper.Mqtt3ClientDisconnectionCallable(client).call();
+        return result;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Boolean publishViaRegistry() throws Exception {
+        final Mqtt3Client client = clientRegistry.acquire(publisherConfig).first;
+        try {
+            return new HiveMqttHelper.Mqtt3ClientPublishCallable(client, publish).call();
+        }
+        finally {
+            clientRegistry.release(publisherConfig);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Boolean publishBlocking() throws Exception {
+        return new HiveMqttHelper.Mqtt3ClientPublishCallable(publisher, publish).call();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(STREAM_BATCH)
+    public IePair<Mqtt3Publish, IeApiResponse<Boolean>> publishStream() {
+        return hiveMqttHelper.publishStream(publisher, Flowable.just(publish).repeat(STREAM_BATCH)).blockingLast();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Mqtt3Publish publishToConsume() throws Exception {
+        new HiveMqttHelper.Mqtt3ClientPublishCallable(publisher, latencyPublish).call();
+        return consumedPublishes.take();
+    }
+}
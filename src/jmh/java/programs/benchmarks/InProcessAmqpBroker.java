@@ -0,0 +1,162 @@
+package programs.benchmarks;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AMQP stand-in that lives entirely in the JVM: a {@link ConnectionFactory} whose connections and channels are
+ * dynamic proxies. A publish on the default exchange is delivered synchronously to the consumers of the queue
+ * named by the routing key, and confirm-mode channels ack every publish right away.
+ * <p>
+ * {@code handshakeMicros} parks the caller on every new connection to model the TCP + AMQP handshake a real broker costs.
+ */
+public final class InProcessAmqpBroker {
+
+    private final ConcurrentHashMap<String, List<DeliverCallback>> consumers = new ConcurrentHashMap<>();
+    private final long handshakeNanos;
+
+    public InProcessAmqpBroker(final long handshakeMicros) {
+        this.handshakeNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0L, handshakeMicros));
+    }
+
+    @NotNull
+    public ConnectionFactory newConnectionFactory() {
+        return new ConnectionFactory() {
+            @Override
+            public Connection newConnection() {
+                if (handshakeNanos > 0L) { LockSupport.parkNanos(handshakeNanos); }
+                return (Connection) Proxy.newProxyInstance(
+                        InProcessAmqpBroker.class.getClassLoader(), new Class<?>[] { Connection.class }, new ConnectionHandler());
+            }
+        };
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+
+        private final AtomicInteger channelNumbers = new AtomicInteger();
+        private volatile boolean isOpen = true;
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) {
+            switch (method.getName()) {
+                case "createChannel":
+                    return Proxy.newProxyInstance(InProcessAmqpBroker.class.getClassLoader(), new Class<?>[] { Channel.class },
+                            new ChannelHandler(channelNumbers.incrementAndGet()));
+                case "isOpen":
+                    return isOpen;
+                case "close":
+                case "abort":
+                    isOpen = false;
+                    return null;
+                default:
+                    return defaultValue(proxy, method, args);
+            }
+        }
+    }
+
+    private final class ChannelHandler implements InvocationHandler {
+
+        private final List<ConfirmListener> confirmListeners = new CopyOnWriteArrayList<>();
+        private final int channelNumber;
+        private long nextPublishSeqNo = 0L;
+        private long nextDeliveryTag = 1L;
+        private volatile boolean isOpen = true;
+
+        ChannelHandler(final int channelNumber) { this.channelNumber = channelNumber; }
+
+        @Override
+        public Object invoke(final Object proxy, final Method method, final Object[] args) throws Exception {
+            switch (method.getName()) {
+                case "basicPublish":
+                    if ( (4 == args.length) && (args[3] instanceof byte[]) ) {
+                        publish((String) args[0], (String) args[1], (AMQP.BasicProperties) args[2], (byte[]) args[3]);
+                    }
+                    return null;
+                case "basicConsume":
+                    for (final Object arg : args) {
+                        if (arg instanceof DeliverCallback) {
+                            consumers.computeIfAbsent((String) args[0], key -> new CopyOnWriteArrayList<>()).add((DeliverCallback) arg);
+                        }
+                    }
+                    return UUID.randomUUID().toString();
+                case "queueDeclare":
+                    return new AMQP.Queue.DeclareOk.Builder().queue((null != args) ? (String) args[0] : "").build();
+                case "confirmSelect":
+                    nextPublishSeqNo = 1L;
+                    return new AMQP.Confirm.SelectOk.Builder().build();
+                case "getNextPublishSeqNo":
+                    return nextPublishSeqNo;
+                case "addConfirmListener":
+                    if (args[0] instanceof ConfirmListener) { confirmListeners.add((ConfirmListener) args[0]); }
+                    return null;
+                case "getChannelNumber":
+                    return channelNumber;
+                case "isOpen":
+                    return isOpen;
+                case "close":
+                case "abort":
+                    isOpen = false;
+                    return null;
+                default:
+                    return defaultValue(proxy, method, args);
+            }
+        }
+
+        private void publish(
+                @NotNull final String exchange,
+                @NotNull final String routingKey,
+                final AMQP.BasicProperties properties,
+                @NotNull final byte[] body) throws Exception {
+            final List<DeliverCallback> queueConsumers = consumers.get(routingKey);
+            if (null != queueConsumers) {
+                for (final DeliverCallback deliverCallback : queueConsumers) {
+                    final Envelope envelope = new Envelope(nextDeliveryTag++, false, exchange, routingKey);
+                    deliverCallback.handle("in-process", new Delivery(envelope, properties, body));
+                }
+            }
+            if (nextPublishSeqNo > 0L) {
+                final long sequenceNumber = nextPublishSeqNo++;
+                for (final ConfirmListener confirmListener : confirmListeners) {
+                    confirmListener.handleAck(sequenceNumber, false);
+                }
+            }
+        }
+    }
+
+    private static Object defaultValue(final Object proxy, final Method method, final Object[] args) {
+        switch (method.getName()) {
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "InProcessAmqpBroker@" + Integer.toHexString(System.identityHashCode(proxy));
+            default:
+                break;
+        }
+        final Class<?> returnType = method.getReturnType();
+        if ( returnType.isPrimitive() && (void.class != returnType) ) {
+            return Array.get(Array.newInstance(returnType, 1), 0);
+        }
+        return null;
+    }
+}
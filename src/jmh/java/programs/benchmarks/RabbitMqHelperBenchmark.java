@@ -0,0 +1,137 @@
+package programs.benchmarks;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import programs.IeApiResponse;
+import programs.RabbitMqChannelPool;
+import programs.RabbitMqConfirmPublisher;
+import programs.RabbitMqDispatcher;
+import programs.RabbitMqHelper;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publish paths of {@link RabbitMqHelper} against {@link InProcessAmqpBroker}, so only client-side cost is measured:
+ * open-per-sender vs. pooled vs. a fixed channel vs. confirm mode, plus publish-to-consume round trips.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RabbitMqHelperBenchmark {
+
+    private static final String QUEUE_NAME = "benchmark";
+
+    @Param({"0", "500"})
+    public long handshakeMicros;
+
+    @Param({"64", "1024"})
+    public int payloadSize;
+
+    private final RabbitMqHelper rabbitMqHelper = new RabbitMqHelper();
+    private ConnectionFactory factory;
+    private RabbitMqChannelPool channelPool;
+    private Channel directChannel;
+    private RabbitMqConfirmPublisher confirmPublisher;
+    private Channel consumedChannel;
+    private Channel dispatchedChannel;
+    private RabbitMqDispatcher dispatcher;
+    private final ArrayBlockingQueue<Delivery> consumedDeliveries = new ArrayBlockingQueue<>(1);
+    private String message;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final StringBuilder builder = new StringBuilder(payloadSize);
+        for (int i = 0; i < payloadSize; i++) { builder.append((char) ('a' + (i % 26))); }
+        message = builder.toString();
+
+        final InProcessAmqpBroker broker = new InProcessAmqpBroker(handshakeMicros);
+        factory = broker.newConnectionFactory();
+        channelPool = new RabbitMqChannelPool(factory, 16, 5000L);
+
+        final Connection connection = rabbitMqHelper.newConnection(factory).result;
+        directChannel = rabbitMqHelper.createChannel(connection).result;
+
+        confirmPublisher = new RabbitMqConfirmPublisher(rabbitMqHelper.createChannel(connection).result, 1024);
+        confirmPublisher.init();
+
+        consumedChannel = rabbitMqHelper.createChannel(connection).result;
+        final DeliverCallback handOff = (consumerTag, delivery) -> consumedDeliveries.offer(delivery);
+        rabbitMqHelper.basicConsume(consumedChannel, QUEUE_NAME + ".direct", handOff);
+
+        dispatchedChannel = rabbitMqHelper.createChannel(connection).result;
+        dispatcher = new RabbitMqDispatcher(dispatchedChannel, handOff, 1, 64, RabbitMqDispatcher.QueuePolicy.BLOCK, true);
+        dispatcher.start(QUEUE_NAME + ".dispatched");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        dispatcher.stop();
+        channelPool.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public IeApiResponse<Boolean> publishOpenPerSender() throws Exception {
+        final Connection connection = rabbitMqHelper.newConnection(factory).result;
+        final Channel channel = rabbitMqHelper.createChannel(connection).result;
+        final IeApiResponse<Boolean> response = rabbitMqHelper.basicPublish(channel, "", QUEUE_NAME, message, null);
+        connection.close();
+        return response;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public IeApiResponse<Boolean> publishPooled() {
+        return channelPool.basicPublish("", QUEUE_NAME, message, null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public IeApiResponse<Boolean> publishFixedChannel() {
+        return rabbitMqHelper.basicPublish(directChannel, "", QUEUE_NAME, message, null);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Boolean publishConfirmed() {
+        return confirmPublisher.basicPublish("", QUEUE_NAME, message, null).blockingGet();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Delivery publishToConsumeDirect() throws InterruptedException {
+        rabbitMqHelper.basicPublish(consumedChannel, "", QUEUE_NAME + ".direct", message, null);
+        return consumedDeliveries.take();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Delivery publishToConsumeDispatched() throws InterruptedException {
+        rabbitMqHelper.basicPublish(dispatchedChannel, "", QUEUE_NAME + ".dispatched", message, null);
+        return consumedDeliveries.take();
+    }
+}
@@ -10,6 +10,15 @@ public final class AppConstants {
         String QUEUE_DECLARATION = "59997";
         String CHANNEL_PUBLISH = "59996";
         String CHANNEL_CONSUME = "59995";
+        String CHANNEL_POOL_EXHAUSTED = "59994";
+        String CHANNEL_POOL_CLOSED = "59993";
+        String CONFIRM_SELECT = "59992";
+        String PUBLISH_NACK = "59991";
+        String PUBLISH_NOT_CONFIRMED = "59990";
+        String CHANNEL_QOS = "59989";
+        String CHANNEL_ACK = "59988";
+        String CHANNEL_CANCEL = "59987";
+        String CONNECTION_UNAVAILABLE = "59986";
     }
 
     public interface HiveMqErrorCode {
@@ -22,5 +31,14 @@ public final class AppConstants {
 //                MqttClientStateException//	 if the client is already connecting or connected
         String PUBLISH_FAILURE = "59998";
         String SUBSCRIBE_FAILURE = "59999";
+        String INVALID_TOPIC_FILTER = "49996";
+    }
+
+    public interface CodecErrorCode {
+        String ENCODE_FAILURE = "39999";
+        String DECODE_FAILURE = "39998";
+        String UNKNOWN_CODEC = "39997";
+        String DECOMPRESS_FAILURE = "39996";
+        String UNSUPPORTED_BATCH_VERSION = "39995";
     }
 }
@@ -1,92 +1,102 @@
 package programs;
 
-import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
 import com.hivemq.client.mqtt.datatypes.MqttQos;
-import com.hivemq.client.mqtt.mqtt3.Mqtt3BlockingClient;
-import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
-import com.hivemq.client.mqtt.mqtt3.message.connect.connack.Mqtt3ConnAck;
-import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
-import com.hivemq.client.mqtt.mqtt3.message.subscribe.Mqtt3Subscribe;
-import kotlin.text.Charsets;
 import org.jetbrains.annotations.NotNull;
-import programs.delegates.IeApiResult;
-import programs.models.IePair;
+import programs.delegates.IeMessageHandler;
+import programs.metrics.IeMetricsHttpServer;
 
-import java.util.Optional;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 
 public final class EntryPoint {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("EntryPoint");
+    private static final IeLogger.Sampled MESSAGE_LOGGER = LOGGER.sampled(1000);
+
     public static void main(String[] args) {
         //new RabbitMqReceiver().init();
 
+        // e.g. -Dmetrics.port=9400 exposes http://127.0.0.1:9400/metrics
+        final int metricsPortNumber = Integer.getInteger("metrics.port", 0);
+        if (metricsPortNumber > 0) {
+            new IeMetricsHttpServer(metricsPortNumber).start();
+        }
+
         final HiveMqttHelper.ClientConfig clientConfig = new HiveMqttHelper.ClientConfig.Builder()
                 .setIdentifier(UUID.randomUUID().toString())
                 .build();
-        java.util.logging.Logger.getLogger("EntryPoint").log(Level.INFO, "main - clientConfig");
-        final Mqtt3Subscribe subscribeMessage = Mqtt3Subscribe.builder()
-                        .topicFilter("test/topic")
-                        .qos(MqttQos.EXACTLY_ONCE)
-                        .build();
-        java.util.logging.Logger.getLogger("EntryPoint").log(Level.INFO, "main - subscribeMessage ");
-        final ExecutorService executorService = Executors.newSingleThreadExecutor();
-        final HiveMqttHelper.Mqtt3ClientSubscribeTask subscribeTask = new HiveMqttHelper.Mqtt3ClientSubscribeTask(clientConfig, subscribeMessage, executorService);
-        subscribeTask.callback = new Mqtt3ClientSubscribeCallback();
-        subscribeTask.runTask();
-        while (true) {
-
+        LOGGER.log(Level.INFO, "main - clientConfig");
+        final HiveMqttTopicRouter topicRouter = new HiveMqttTopicRouter();
+        try {
+            topicRouter.add("test/topic", new HiveMqttMessageAdapter(new Mqtt3ConsumptionHandler()));
         }
-    }
-
-    private static class Mqtt3ClientSubscribeCallback implements IeApiResult<IeApiResponse<IePair<Mqtt3Client, Mqtt3ConnAck>>> {
+        catch (IeRuntimeException cause) {
+            LOGGER.log(Level.SEVERE, "main - error on HiveMqttTopicRouter#add(): {}", cause.getLocalizedMessage());
+            return;
+        }
+        // the test payloads carry no message id to deduplicate on, so the subscriptions stay at QoS 2
+        // e.g. -Dmqtt.consumers=4 consumes with 4 clients that share the subscription as group -Dmqtt.group
+        final int consumerCount = Integer.getInteger("mqtt.consumers", 1);
+        final HiveMqttConsumptionEngine consumptionEngine = new HiveMqttConsumptionEngine(
+                topicRouter, Math.max(1, consumerCount), 1024);
+        consumptionEngine.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> consumptionEngine.drain(5L, TimeUnit.SECONDS)));
 
-        @Override
-        public void onSuccess(@NotNull final IeApiResponse<IePair<Mqtt3Client, Mqtt3ConnAck>> response) {
-            java.util.logging.Logger.getLogger("EntryPoint").log(Level.INFO, "Mqtt3ClientSubscribeCallback#onSuccess");
-            if (response.result == null) {
-                java.util.logging.Logger.getLogger("EntryPoint").log(Level.SEVERE, "Mqtt3ClientSubscribeCallback#onSuccess - response.result == null");
+        if (consumerCount > 1) {
+            final HiveMqttConsumerGroup consumerGroup = new HiveMqttConsumerGroup(
+                    clientConfig, System.getProperty("mqtt.group", "entry-point"), consumerCount, consumptionEngine);
+            final IeApiResponse<Boolean> startResponse = consumerGroup.start(
+                    Collections.singletonMap("test/topic", MqttQos.EXACTLY_ONCE), 10000L);
+            if (null != startResponse.error) {
+                LOGGER.log(Level.SEVERE, "main - error on HiveMqttConsumerGroup#start(): {}", startResponse.error.getLocalizedMessage());
+                consumerGroup.stop();
+                consumptionEngine.stop();
                 return;
             }
-
-            final Mqtt3Client mqtt3Client = response.result.first;
-            final LongRunningTask longRunningTask = new LongRunningTask();
-            longRunningTask.setTask(new Mqtt3ConsumptionTask(mqtt3Client));
-            longRunningTask.startTask();
+            try {
+                consumptionEngine.awaitTermination();
+            }
+            catch (InterruptedException cause) {
+                consumptionEngine.stop();
+            }
+            consumerGroup.stop();
+            return;
         }
 
-        @Override
-        public void onError(@NotNull final IeRuntimeException cause) {
-            java.util.logging.Logger.getLogger("EntryPoint").log(Level.SEVERE, "Mqtt3ClientSubscribeCallback#onError", cause.fillInStackTrace());
+        // e.g. -Dmqtt.standby=false fails over by reconnecting only, without a standby connection
+        final HiveMqttFailoverClient failoverClient = new HiveMqttFailoverClient(clientConfig, consumptionEngine,
+                new IeBackoff(), Boolean.parseBoolean(System.getProperty("mqtt.standby", "true")));
+        final IeApiResponse<Boolean> startResponse = failoverClient.start(
+                Collections.singletonMap("test/topic", MqttQos.EXACTLY_ONCE), 10000L);
+        if (null != startResponse.error) {
+            LOGGER.log(Level.SEVERE, "main - error on HiveMqttFailoverClient#start(): {}", startResponse.error.getLocalizedMessage());
+            failoverClient.stop();
+            consumptionEngine.stop();
+            return;
+        }
+        try {
+            consumptionEngine.awaitTermination();
+        }
+        catch (InterruptedException cause) {
+            consumptionEngine.stop();
         }
+        failoverClient.stop();
     }
 
-    private static class Mqtt3ConsumptionTask implements Runnable {
-
-        final Mqtt3Client mqtt3Client;
-
-        Mqtt3ConsumptionTask (@NotNull final Mqtt3Client mqtt3Client) {
-            this.mqtt3Client = mqtt3Client;
-        }
+    private static class Mqtt3ConsumptionHandler implements IeMessageHandler {
 
         @Override
-        public void run() {
-            try  {
-                final Mqtt3BlockingClient.Mqtt3Publishes publishes = mqtt3Client.toBlocking().publishes(MqttGlobalPublishFilter.ALL);
-                final Mqtt3Publish publishMessage = publishes.receive();
-                final String message = new String(publishMessage.getPayloadAsBytes(), Charsets.UTF_8);
-                java.util.logging.Logger.getLogger("EntryPoint").log(Level.INFO, "Mqtt3ConsumptionTask: " + message);
-                // or with timeout
-                //final Optional<Mqtt3Publish> publishMessage = publishes.receive(10, TimeUnit.SECONDS);
-                // or without blocking
-                //final Optional<Mqtt3Publish> publishMessage = publishes.receiveNow();
-            }
-            catch (Exception cause) {
-                java.util.logging.Logger.getLogger("EntryPoint").log(Level.SEVERE, "Error on Mqtt3ConsumptionTask", cause.fillInStackTrace());
-            }
+        public void onMessage(@NotNull final String topic, @NotNull final Object message, @NotNull final Map<String, Object> headers) {
+            if (!MESSAGE_LOGGER.shouldLog(Level.INFO)) { return; }
+            // untagged payloads are plain text from other publishers
+            LOGGER.log(Level.INFO, "Mqtt3ConsumptionHandler: [{}] {}", topic,
+                    (message instanceof ByteBuffer) ? StandardCharsets.UTF_8.decode((ByteBuffer) message) : message);
         }
     }
 }
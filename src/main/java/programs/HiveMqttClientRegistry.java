@@ -0,0 +1,109 @@
+package programs;
+
+import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
+import com.hivemq.client.mqtt.mqtt3.message.connect.connack.Mqtt3ConnAck;
+import org.jetbrains.annotations.NotNull;
+import programs.models.IePair;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Keeps one connected {@link Mqtt3Client} per {@link HiveMqttHelper.ClientConfig} and hands it to every task using that config.
+ * Clients are reference-counted; idle clients stay connected until {@link #closeIdle()} or {@link #shutdown()},
+ * unless the registry was created with {@code disconnectWhenIdle}.
+ */
+public final class HiveMqttClientRegistry {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("HiveMqttClientRegistry");
+
+    private final ConcurrentHashMap<HiveMqttHelper.ClientConfig, Entry> entries = new ConcurrentHashMap<>();
+    private final boolean disconnectWhenIdle;
+
+    public HiveMqttClientRegistry() { this(false); }
+
+    public HiveMqttClientRegistry(final boolean disconnectWhenIdle) {
+        this.disconnectWhenIdle = disconnectWhenIdle;
+    }
+
+    @NotNull
+    public IePair<Mqtt3Client, Mqtt3ConnAck> acquire(@NotNull final HiveMqttHelper.ClientConfig clientConfig) throws IeRuntimeException {
+        while (true) {
+            final Entry entry = entries.computeIfAbsent(clientConfig, key -> new Entry());
+            synchronized (entry) {
+                if (entry.isRemoved) { continue; }
+                if ( (null == entry.client) || (!entry.client.getState().isConnectedOrReconnect()) ) {
+                    final Mqtt3Client client = new HiveMqttHelper.BuildMqtt3ClientCallable(clientConfig).call();
+                    entry.connAck = new HiveMqttHelper.Mqtt3ClientConnectionCallable(client).call();
+                    entry.client = client;
+                    LOGGER.log(Level.INFO, "acquire - connected: {}", clientConfig);
+                }
+                entry.referenceCount++;
+                return new IePair<>(entry.client, entry.connAck);
+            }
+        }
+    }
+
+    public void release(@NotNull final HiveMqttHelper.ClientConfig clientConfig) {
+        final Entry entry = entries.get(clientConfig);
+        if (null == entry) {
+            LOGGER.log(Level.WARNING, "release - no client for: {}", clientConfig);
+            return;
+        }
+        synchronized (entry) {
+            if (entry.referenceCount > 0) { entry.referenceCount--; }
+            if ( (0 == entry.referenceCount) && disconnectWhenIdle ) {
+                removeLocked(clientConfig, entry);
+            }
+        }
+    }
+
+    public int getReferenceCount(@NotNull final HiveMqttHelper.ClientConfig clientConfig) {
+        final Entry entry = entries.get(clientConfig);
+        if (null == entry) { return 0; }
+        synchronized (entry) {
+            return entry.referenceCount;
+        }
+    }
+
+    public void closeIdle() {
+        for (final Map.Entry<HiveMqttHelper.ClientConfig, Entry> mapEntry : entries.entrySet()) {
+            final Entry entry = mapEntry.getValue();
+            synchronized (entry) {
+                if (0 == entry.referenceCount) { removeLocked(mapEntry.getKey(), entry); }
+            }
+        }
+    }
+
+    public void shutdown() {
+        for (final Map.Entry<HiveMqttHelper.ClientConfig, Entry> mapEntry : entries.entrySet()) {
+            final Entry entry = mapEntry.getValue();
+            synchronized (entry) {
+                removeLocked(mapEntry.getKey(), entry);
+            }
+        }
+    }
+
+    private void removeLocked(@NotNull final HiveMqttHelper.ClientConfig clientConfig, @NotNull final Entry entry) {
+        entry.isRemoved = true;
+        entries.remove(clientConfig, entry);
+        if ( (null != entry.client) && entry.client.getState().isConnected() ) {
+            try {
+                new HiveMqttHelper.Mqtt3ClientDisconnectionCallable(entry.client).call();
+            }
+            catch (IeRuntimeException cause) {
+                LOGGER.log(Level.WARNING, "removeLocked - error on disconnection: {}", cause.getLocalizedMessage());
+            }
+        }
+        entry.client = null;
+        entry.connAck = null;
+    }
+
+    private static final class Entry {
+        Mqtt3Client client;
+        Mqtt3ConnAck connAck;
+        int referenceCount = 0;
+        boolean isRemoved = false;
+    }
+}
@@ -0,0 +1,81 @@
+package programs;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.codec.IeBatchFrame;
+import programs.codec.IeCoalescer;
+import programs.codec.IeCodec;
+import programs.codec.IeEncodeBuffer;
+import programs.codec.IeMqttEnvelope;
+
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Coalesces many small messages into one {@link IeBatchFrame} per MQTT publish to a fixed topic, behind an
+ * {@link IeMqttEnvelope} flagged {@link IeMqttEnvelope#FLAG_BATCH}, which {@link HiveMqttPayloadAdapter} and
+ * {@link HiveMqttMessageAdapter} unpack transparently. The frame is compressed by the {@link HiveMqttHelper}'s compressor.
+ */
+public final class HiveMqttCoalescingPublisher implements IeCoalescer.FrameSink {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("HiveMqttCoalescingPublisher");
+
+    private final Mqtt3Client client;
+    private final HiveMqttHelper hiveMqttHelper;
+    private final String topic;
+    private final MqttQos qos;
+    private final IeCoalescer coalescer;
+
+    public HiveMqttCoalescingPublisher(
+            @NotNull final Mqtt3Client client,
+            @NotNull final HiveMqttHelper hiveMqttHelper,
+            @NotNull final String topic,
+            @NotNull final MqttQos qos) {
+        this(client, hiveMqttHelper, topic, qos, 256, 64 * 1024, 20L);
+    }
+
+    public HiveMqttCoalescingPublisher(
+            @NotNull final Mqtt3Client client,
+            @NotNull final HiveMqttHelper hiveMqttHelper,
+            @NotNull final String topic,
+            @NotNull final MqttQos qos,
+            final int maxItems,
+            final int maxBytes,
+            final long maxLingerMillis) {
+        this.client = client;
+        this.hiveMqttHelper = hiveMqttHelper;
+        this.topic = topic;
+        this.qos = qos;
+        this.coalescer = new IeCoalescer(
+                this,
+                IeMqttEnvelope.header(IeMqttEnvelope.FLAG_BATCH, IeMqttEnvelope.RAW_CODEC_ID),
+                maxItems,
+                maxBytes,
+                maxLingerMillis);
+    }
+
+    public void start() { coalescer.start(); }
+
+    public void close() { coalescer.close(); }
+
+    public void flush() throws Exception { coalescer.flush(); }
+
+    public void add(@NotNull final byte[] payload, @Nullable final Map<String, String> headers) throws Exception {
+        coalescer.add(payload, headers);
+    }
+
+    public <T> void add(
+            @NotNull final T message,
+            @NotNull final IeCodec<T> codec,
+            @Nullable final Map<String, String> headers) throws Exception {
+        coalescer.add(message, codec, headers);
+    }
+
+    @Override
+    public void onFrame(@NotNull final IeEncodeBuffer frame, final int itemCount) throws Exception {
+        new HiveMqttHelper.Mqtt3ClientPublishCallable(client, hiveMqttHelper.buildPublish(topic, qos, frame)).call();
+        LOGGER.log(Level.FINE, "onFrame - published {} messages in {} bytes", itemCount, frame.size());
+    }
+}
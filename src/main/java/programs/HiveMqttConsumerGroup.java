@@ -0,0 +1,102 @@
+package programs;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Consumes with {@code memberCount} clients instead of one, so ingest is no longer bound to a single connection and
+ * its event loop. Member {@code i} connects as {@code <identifier>-<i>}, the members are spread over the nodes of
+ * {@link HiveMqttHelper.ClientConfig#addresses} by its address policy, and each subscribes to
+ * {@code $share/<group>/<filter>}, so the broker hands every message to only one of them.
+ * All members feed the same {@link HiveMqttConsumptionEngine}, which sees the original topics, so a
+ * {@link HiveMqttTopicRouter} behind it works unchanged. Producers need no change.
+ * <p>
+ * Every member is a {@link HiveMqttFailoverClient} without standby: a dropped member reconnects with backoff, is
+ * registered with the engine again and resubscribes its shared filters, while the broker hands its share to the others.
+ */
+public final class HiveMqttConsumerGroup {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("HiveMqttConsumerGroup");
+
+    private final HiveMqttHelper.ClientConfig clientConfig;
+    private final String groupName;
+    private final int memberCount;
+    private final HiveMqttConsumptionEngine consumptionEngine;
+    private final IeBackoff backoff;
+    private final IeAddressSelector addressSelector;
+    private final List<HiveMqttFailoverClient> members = new ArrayList<>();
+
+    public HiveMqttConsumerGroup(
+            @NotNull final HiveMqttHelper.ClientConfig clientConfig,
+            @NotNull final String groupName,
+            final int memberCount,
+            @NotNull final HiveMqttConsumptionEngine consumptionEngine) {
+        this(clientConfig, groupName, memberCount, consumptionEngine, new IeBackoff());
+    }
+
+    public HiveMqttConsumerGroup(
+            @NotNull final HiveMqttHelper.ClientConfig clientConfig,
+            @NotNull final String groupName,
+            final int memberCount,
+            @NotNull final HiveMqttConsumptionEngine consumptionEngine,
+            @NotNull final IeBackoff backoff) {
+        if ( groupName.isEmpty() || (groupName.indexOf('/') >= 0) || (groupName.indexOf('+') >= 0) || (groupName.indexOf('#') >= 0) ) {
+            throw new IllegalArgumentException("invalid share name: " + groupName);
+        }
+        this.clientConfig = clientConfig;
+        this.groupName = groupName;
+        this.memberCount = Math.max(1, memberCount);
+        this.consumptionEngine = consumptionEngine;
+        this.backoff = backoff;
+        this.addressSelector = new IeAddressSelector(clientConfig.addresses, clientConfig.addressPolicy);
+    }
+
+    @NotNull
+    public static String sharedFilter(@NotNull final String groupName, @NotNull final String topicFilter) {
+        return "$share/" + groupName + "/" + topicFilter;
+    }
+
+    /**
+     * Starts the members one by one; each is registered with the engine before it subscribes,
+     * so no message arrives before its member is registered.
+     *
+     * @return the error of the first member that could not connect or subscribe; the members started so far
+     *         are stopped again then
+     */
+    @NotNull
+    public synchronized IeApiResponse<Boolean> start(@NotNull final Map<String, MqttQos> topicFilters, final long subscribeTimeoutMillis) {
+        if (!members.isEmpty()) { return IeApiResponse.TRUE; }
+        final Map<String, MqttQos> sharedFilters = new LinkedHashMap<>();
+        for (final Map.Entry<String, MqttQos> entry : topicFilters.entrySet()) {
+            sharedFilters.put(sharedFilter(groupName, entry.getKey()), entry.getValue());
+        }
+        for (int index = 0; index < memberCount; index++) {
+            final HiveMqttFailoverClient member = new HiveMqttFailoverClient(
+                    clientConfig.withIdentifier(clientConfig.identifier + "-" + index), consumptionEngine, backoff, false, addressSelector);
+            members.add(member);
+            final IeApiResponse<Boolean> startResponse = member.start(sharedFilters, subscribeTimeoutMillis);
+            if (null != startResponse.error) {
+                LOGGER.log(Level.SEVERE, "start - member {} failed, stopping the group: {}",
+                        index, startResponse.error.getLocalizedMessage());
+                stop();
+                return startResponse;
+            }
+        }
+        LOGGER.log(Level.INFO, "start - group: [{}], members: [{}], filters: {}", groupName, members.size(), sharedFilters.keySet());
+        return IeApiResponse.TRUE;
+    }
+
+    public synchronized void stop() {
+        for (final HiveMqttFailoverClient member : members) {
+            member.stop();
+        }
+        members.clear();
+        LOGGER.log(Level.INFO, "stop - group: [{}]", groupName);
+    }
+}
@@ -0,0 +1,175 @@
+package programs;
+
+import com.hivemq.client.mqtt.MqttGlobalPublishFilter;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
+import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
+import io.reactivex.functions.Consumer;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Push-based consumption: every registered client gets one subscription to its incoming publishes,
+ * which are handed to a {@link PublishHandler} on a bounded worker pool. Nothing polls, so an idle engine uses no CPU.
+ * <p>
+ * Lifecycle: {@link #start()}, then {@link #register(Mqtt3Client)} per client; {@link #drain(long, TimeUnit)} stops
+ * taking new publishes and finishes the queued ones, {@link #stop()} drops them.
+ */
+public final class HiveMqttConsumptionEngine {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("HiveMqttConsumptionEngine");
+
+    public interface PublishHandler {
+        void onPublish(@NotNull final Mqtt3Publish publish) throws Exception;
+    }
+
+    private enum State {
+        IDLE,
+        RUNNING,
+        TERMINATED
+    }
+
+    private final CompositeDisposable subscriptions = new CompositeDisposable();
+    private final Map<Mqtt3Client, Disposable> registrations = new HashMap<>();
+    private final CountDownLatch terminationLatch = new CountDownLatch(1);
+    private final PublishHandler publishHandler;
+    private final int workerCount;
+    private final int queueCapacity;
+    private ThreadPoolExecutor executor;
+    private State state = State.IDLE;
+
+    public HiveMqttConsumptionEngine(@NotNull final PublishHandler publishHandler) {
+        this(publishHandler, 1, 1024);
+    }
+
+    public HiveMqttConsumptionEngine(
+            @NotNull final PublishHandler publishHandler, final int workerCount, final int queueCapacity) {
+        this.publishHandler = publishHandler;
+        this.workerCount = Math.max(1, workerCount);
+        this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    public synchronized void start() {
+        if (State.IDLE != state) {
+            LOGGER.log(Level.SEVERE, "start - state: {}", state);
+            return;
+        }
+        // a full queue makes the client thread run the handler itself, which in turn backpressures the connection
+        executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new ThreadPoolExecutor.CallerRunsPolicy());
+        state = State.RUNNING;
+        LOGGER.log(Level.INFO, "start - workerCount: [{}], queueCapacity: [{}]", workerCount, queueCapacity);
+    }
+
+    /**
+     * Registering a client again replaces its subscription, e.g. after a reconnect whose new session
+     * ended the publish flow of the old one.
+     */
+    public synchronized boolean register(@NotNull final Mqtt3Client mqtt3Client) {
+        if (State.RUNNING != state) {
+            LOGGER.log(Level.SEVERE, "register - state: {}", state);
+            return false;
+        }
+        final Disposable previous = registrations.remove(mqtt3Client);
+        if (null != previous) { subscriptions.remove(previous); }
+        final Disposable registration = mqtt3Client.toRx()
+                .publishes(MqttGlobalPublishFilter.ALL)
+                .subscribe(new DispatchConsumer(executor), new ErrorConsumer());
+        subscriptions.add(registration);
+        registrations.put(mqtt3Client, registration);
+        LOGGER.log(Level.INFO, "register - clients: {}", registrations.size());
+        return true;
+    }
+
+    public boolean isRunning() { return State.RUNNING == state; }
+
+    /**
+     * @return true if every queued publish was handled within the timeout
+     */
+    public boolean drain(final long timeout, @NotNull final TimeUnit unit) {
+        final ThreadPoolExecutor theExecutor;
+        synchronized (this) {
+            if (State.RUNNING != state) { return true; }
+            state = State.TERMINATED;
+            subscriptions.dispose();
+            theExecutor = executor;
+            executor = null;
+        }
+        theExecutor.shutdown();
+        boolean isDrained = false;
+        try {
+            isDrained = theExecutor.awaitTermination(timeout, unit);
+        }
+        catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+        }
+        if (!isDrained) { theExecutor.shutdownNow(); }
+        LOGGER.log(Level.INFO, "drain - isDrained: {}", isDrained);
+        terminationLatch.countDown();
+        return isDrained;
+    }
+
+    public void stop() {
+        final ThreadPoolExecutor theExecutor;
+        synchronized (this) {
+            if (State.RUNNING != state) { return; }
+            state = State.TERMINATED;
+            subscriptions.dispose();
+            theExecutor = executor;
+            executor = null;
+        }
+        theExecutor.shutdownNow();
+        LOGGER.log(Level.INFO, "stop - executor.shutdownNow!!");
+        terminationLatch.countDown();
+    }
+
+    /**
+     * Parks the calling thread until the engine is drained or stopped.
+     */
+    public void awaitTermination() throws InterruptedException { terminationLatch.await(); }
+
+    private final class DispatchConsumer implements Consumer<Mqtt3Publish> {
+
+        private final ThreadPoolExecutor theExecutor;
+
+        DispatchConsumer(@NotNull final ThreadPoolExecutor theExecutor) { this.theExecutor = theExecutor; }
+
+        @Override
+        public void accept(final Mqtt3Publish publish) {
+            if (theExecutor.isShutdown()) { return; }
+            theExecutor.execute(new HandlerRunnable(publish));
+        }
+    }
+
+    private final class HandlerRunnable implements Runnable {
+
+        private final Mqtt3Publish publish;
+
+        HandlerRunnable(@NotNull final Mqtt3Publish publish) { this.publish = publish; }
+
+        @Override
+        public void run() {
+            try {
+                publishHandler.onPublish(publish);
+            }
+            catch (Exception cause) {
+                LOGGER.log(Level.SEVERE, "error on PublishHandler#onPublish(): {}", cause.getLocalizedMessage());
+            }
+        }
+    }
+
+    private static final class ErrorConsumer implements Consumer<Throwable> {
+        @Override
+        public void accept(final Throwable cause) {
+            LOGGER.log(Level.SEVERE, "error on publishes: {}", cause.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package programs;
+
+import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.logging.Level;
+
+/**
+ * Drops publishes an {@link IeDeduplicator} has already seen before they reach the wrapped handler, so a QoS 1
+ * subscription gets effectively-once handling. MQTT 3 packet ids are reused and not exposed by the client, and the
+ * same payload may legitimately be published twice, so the {@link IeDeduplicator.KeyExtractor} must derive the key
+ * from an application-level message id; publishes it returns {@link IeDeduplicator#NO_KEY} for are handled as is.
+ * <p>
+ * A key is recorded only after the handler returned. A copy arriving while the original is still handled waits for
+ * it: it is dropped if the original succeeded, and handled if it failed or the wait of {@code inFlightWaitMillis}
+ * ended, since the client has already acknowledged it and nothing would redeliver it.
+ */
+public final class HiveMqttDedupHandler implements HiveMqttConsumptionEngine.PublishHandler {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("HiveMqttDedupHandler");
+    private static final IeLogger.Sampled DUPLICATE_LOGGER = LOGGER.sampled(1000);
+
+    private final HiveMqttConsumptionEngine.PublishHandler publishHandler;
+    private final IeDeduplicator deduplicator;
+    private final IeDeduplicator.KeyExtractor<Mqtt3Publish> keyExtractor;
+    private final long inFlightWaitMillis;
+
+    public HiveMqttDedupHandler(
+            @NotNull final HiveMqttConsumptionEngine.PublishHandler publishHandler,
+            @NotNull final IeDeduplicator deduplicator,
+            @NotNull final IeDeduplicator.KeyExtractor<Mqtt3Publish> keyExtractor) {
+        this(publishHandler, deduplicator, keyExtractor, 10000L);
+    }
+
+    public HiveMqttDedupHandler(
+            @NotNull final HiveMqttConsumptionEngine.PublishHandler publishHandler,
+            @NotNull final IeDeduplicator deduplicator,
+            @NotNull final IeDeduplicator.KeyExtractor<Mqtt3Publish> keyExtractor,
+            final long inFlightWaitMillis) {
+        this.publishHandler = publishHandler;
+        this.deduplicator = deduplicator;
+        this.keyExtractor = keyExtractor;
+        this.inFlightWaitMillis = Math.max(0L, inFlightWaitMillis);
+    }
+
+    @Override
+    public void onPublish(@NotNull final Mqtt3Publish publish) throws Exception {
+        final long key = keyExtractor.keyOf(publish);
+        if (IeDeduplicator.NO_KEY == key) {
+            publishHandler.onPublish(publish);
+            return;
+        }
+        final IeDeduplicator.Verdict verdict = deduplicator.begin(key, inFlightWaitMillis);
+        if (IeDeduplicator.Verdict.DUPLICATE == verdict) {
+            DUPLICATE_LOGGER.log(Level.FINE, "onPublish - dropped a duplicate on topic: {}", publish.getTopic());
+            return;
+        }
+        if (IeDeduplicator.Verdict.IN_FLIGHT == verdict) {
+            LOGGER.log(Level.WARNING, "onPublish - the original is still handled, handling the copy on topic: {}", publish.getTopic());
+            publishHandler.onPublish(publish);
+            return;
+        }
+        boolean isHandled = false;
+        try {
+            publishHandler.onPublish(publish);
+            isHandled = true;
+        }
+        finally {
+            if (isHandled) { deduplicator.complete(key); }
+            else { deduplicator.abort(key); }
+        }
+    }
+}
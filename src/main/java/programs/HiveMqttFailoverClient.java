@@ -0,0 +1,328 @@
+package programs;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.lifecycle.MqttClientConnectedContext;
+import com.hivemq.client.mqtt.lifecycle.MqttClientConnectedListener;
+import com.hivemq.client.mqtt.lifecycle.MqttClientDisconnectedContext;
+import com.hivemq.client.mqtt.lifecycle.MqttClientDisconnectedListener;
+import com.hivemq.client.mqtt.lifecycle.MqttClientReconnector;
+import com.hivemq.client.mqtt.lifecycle.MqttDisconnectSource;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
+import com.hivemq.client.mqtt.mqtt3.lifecycle.Mqtt3ClientConnectedContext;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.metrics.IeMetrics;
+import programs.models.IeAddress;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * Consumes the given topic filters through one active client and, with {@code isStandbyEnabled}, keeps a second,
+ * unsubscribed client connected to the next node of {@link HiveMqttHelper.ClientConfig#addresses} as a hot standby.
+ * When the active connection drops, the standby is subscribed at once and takes over, so ingest resumes after one
+ * SUBSCRIBE round-trip instead of a reconnect.
+ * <p>
+ * Every dropped client reconnects by itself after the jittered delays of an {@link IeBackoff}, moving on to the next
+ * node on every attempt. On each (re)connect it is registered again with the {@link HiveMqttConsumptionEngine} and its
+ * {@link HiveMqttSubscriptionManager} restores the filters of its role: all of them on the active client, none on the
+ * standby. The client library's own resubscribe is turned off, so a former active client comes back as a clean standby.
+ * Every connection starts a clean session, so what is published between the loss and the takeover does not reach
+ * this process; a {@link HiveMqttDedupHandler} keyed on an application-level message id drops what both clients
+ * happened to receive.
+ * <p>
+ * Exports {@code ie_failover_total} and the time from the loss to the restored subscriptions as the {@code failover}
+ * operation of the {@code mqtt} transport.
+ */
+public final class HiveMqttFailoverClient {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("HiveMqttFailoverClient");
+
+    private static final IeMetrics.Timer FAILOVER_TIMER = IeMetrics.getDefault().timer("mqtt", "failover");
+
+    private final byte[] lock = new byte[0];
+    private final ScheduledExecutorService failoverExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final HiveMqttHelper.ClientConfig clientConfig;
+    private final HiveMqttConsumptionEngine consumptionEngine;
+    private final IeBackoff backoff;
+    private final boolean isStandbyEnabled;
+    private final IeAddressSelector addressSelector;
+    private final LongAdder failoverCount;
+    private Map<String, MqttQos> topicFilters = Collections.emptyMap();
+    private long subscribeTimeoutMillis = 10000L;
+    private Member active;
+    private Member standby;
+    private long lostNanos;
+    private boolean isRunning = false;
+
+    public HiveMqttFailoverClient(
+            @NotNull final HiveMqttHelper.ClientConfig clientConfig, @NotNull final HiveMqttConsumptionEngine consumptionEngine) {
+        this(clientConfig, consumptionEngine, new IeBackoff(), true);
+    }
+
+    public HiveMqttFailoverClient(
+            @NotNull final HiveMqttHelper.ClientConfig clientConfig,
+            @NotNull final HiveMqttConsumptionEngine consumptionEngine,
+            @NotNull final IeBackoff backoff,
+            final boolean isStandbyEnabled) {
+        this(clientConfig, consumptionEngine, backoff, isStandbyEnabled,
+                new IeAddressSelector(clientConfig.addresses, clientConfig.addressPolicy));
+    }
+
+    /**
+     * @param addressSelector picks the first node; shared by several clients, it spreads them over the cluster
+     */
+    public HiveMqttFailoverClient(
+            @NotNull final HiveMqttHelper.ClientConfig clientConfig,
+            @NotNull final HiveMqttConsumptionEngine consumptionEngine,
+            @NotNull final IeBackoff backoff,
+            final boolean isStandbyEnabled,
+            @NotNull final IeAddressSelector addressSelector) {
+        this.clientConfig = clientConfig;
+        this.consumptionEngine = consumptionEngine;
+        this.backoff = backoff;
+        this.isStandbyEnabled = isStandbyEnabled;
+        this.addressSelector = addressSelector;
+        this.failoverCount = IeMetrics.getDefault().counter("ie_failover_total", "transport=\"mqtt\"");
+    }
+
+    /**
+     * Connects the active client to the node the address policy selects, or to the next node that accepts it,
+     * subscribes it, and then connects the standby in the background.
+     */
+    @NotNull
+    public IeApiResponse<Boolean> start(@NotNull final Map<String, MqttQos> topicFilters, final long subscribeTimeoutMillis) {
+        synchronized (lock) {
+            if (isRunning) { return IeApiResponse.TRUE; }
+            if (!consumptionEngine.isRunning()) {
+                return new IeApiResponse<>(null, IeRuntimeException.of(
+                        "the consumption engine is not running", AppConstants.HiveMqErrorCode.SUBSCRIBE_FAILURE));
+            }
+            this.topicFilters = Collections.unmodifiableMap(new LinkedHashMap<>(topicFilters));
+            this.subscribeTimeoutMillis = Math.max(1L, subscribeTimeoutMillis);
+        }
+
+        final int selectedIndex = addressSelector.select();
+        final int addressCount = addressSelector.getAddresses().size();
+        Member member = null;
+        IeRuntimeException lastError = null;
+        for (int attempt = 0; attempt < addressCount; attempt++) {
+            try {
+                member = new Member(clientConfig.identifier, (selectedIndex + attempt) % addressCount);
+                member.subscriptionManager.setDesired(this.topicFilters);
+                new HiveMqttHelper.Mqtt3ClientConnectionCallable(member.client).call();
+                lastError = null;
+                break;
+            }
+            catch (IeRuntimeException cause) {
+                LOGGER.log(Level.WARNING, "start - cannot connect: {}", cause.getLocalizedMessage());
+                lastError = cause;
+            }
+        }
+        if (null != lastError) { return new IeApiResponse<>(null, lastError); }
+
+        synchronized (lock) {
+            active = member;
+            isRunning = true;
+        }
+        final IeApiResponse<Boolean> syncResponse = member.subscriptionManager.sync(this.subscribeTimeoutMillis);
+        if (null != syncResponse.error) { return syncResponse; }
+        LOGGER.log(Level.INFO, "start - active client connected to {}, filters: {}", member.getAddress(), this.topicFilters.keySet());
+        if (isStandbyEnabled) { connectStandby((member.addressIndex + 1) % addressCount); }
+        return IeApiResponse.TRUE;
+    }
+
+    @Nullable
+    public Mqtt3Client getActiveClient() {
+        synchronized (lock) {
+            return (null != active) ? active.client : null;
+        }
+    }
+
+    public boolean isStandbyReady() {
+        synchronized (lock) {
+            return (null != standby) && standby.client.getState().isConnected();
+        }
+    }
+
+    public void stop() {
+        final Member theActive;
+        final Member theStandby;
+        synchronized (lock) {
+            if (!isRunning) { return; }
+            isRunning = false;
+            theActive = active;
+            theStandby = standby;
+            active = null;
+            standby = null;
+        }
+        failoverExecutor.shutdownNow();
+        for (final Member member : new Member[] { theActive, theStandby }) {
+            if (null == member) { continue; }
+            member.subscriptionManager.close();
+            try {
+                new HiveMqttHelper.Mqtt3ClientDisconnectionCallable(member.client).call();
+            }
+            catch (IeRuntimeException cause) {
+                LOGGER.log(Level.WARNING, "stop - {}: {}", member.identifier, cause.getLocalizedMessage());
+            }
+        }
+        LOGGER.log(Level.INFO, "stop - clients disconnected");
+    }
+
+    ///
+
+    private void connectStandby(final int addressIndex) {
+        final Member member;
+        try {
+            member = new Member(clientConfig.identifier + "-standby", addressIndex);
+        }
+        catch (IeRuntimeException cause) {
+            LOGGER.log(Level.SEVERE, "connectStandby - error on BuildMqtt3ClientCallable: {}", cause.getLocalizedMessage());
+            return;
+        }
+        synchronized (lock) {
+            if (!isRunning) { return; }
+            standby = member;
+        }
+        // a failed connect is retried by onDisconnected like a lost connection
+        member.client.toAsync()
+                .connectWith()
+                .cleanSession(true)
+                .keepAlive(10)
+                .send();
+    }
+
+    private void onConnected(@NotNull final Member member, @NotNull final MqttClientConnectedContext context) {
+        // the publish flow of the previous session may have ended with it
+        consumptionEngine.register(member.client);
+        final boolean isSessionPresent = (context instanceof Mqtt3ClientConnectedContext)
+                && ((Mqtt3ClientConnectedContext) context).getConnAck().isSessionPresent();
+        LOGGER.log(Level.INFO, "onConnected - {} connected to {}", member.identifier, member.getAddress());
+        execute(() -> restore(member, member.subscriptionManager.resync(isSessionPresent, subscribeTimeoutMillis), 0));
+    }
+
+    private void onDisconnected(@NotNull final Member member, @NotNull final MqttClientDisconnectedContext context) {
+        // stop() disconnects, nothing to recover
+        if (MqttDisconnectSource.USER == context.getSource()) { return; }
+        final MqttClientReconnector reconnector = context.getReconnector();
+        synchronized (lock) {
+            if (!isRunning) { return; }
+            if (member == active) {
+                failoverCount.increment();
+                lostNanos = System.nanoTime();
+                LOGGER.log(Level.SEVERE, "onDisconnected - active client lost: {}",
+                        (null != context.getCause()) ? context.getCause().getLocalizedMessage() : context.getSource());
+                if ( (null != standby) && standby.client.getState().isConnected() ) { promoteStandby(); }
+            }
+        }
+
+        final int attempt = reconnector.getAttempts();
+        final int addressCount = addressSelector.getAddresses().size();
+        final IeAddress address = addressSelector.getAddresses().get(member.nextAddressIndex(addressCount));
+        final long delayMillis = backoff.delayMillis(attempt);
+        reconnector.reconnect(true)
+                .resubscribeIfSessionExpired(false)
+                .delay(delayMillis, TimeUnit.MILLISECONDS)
+                .transportConfig()
+                .serverHost(address.hostName)
+                .serverPort(address.portNumber)
+                .applyTransportConfig();
+        LOGGER.log(Level.WARNING, "onDisconnected - {} reconnects to {} in {} ms, attempt {}",
+                member.identifier, address, delayMillis, attempt + 1);
+    }
+
+    /**
+     * Swaps the roles under the lock; the standby is subscribed on the failover thread.
+     */
+    private void promoteStandby() {
+        final Member promoted = standby;
+        final Member demoted = active;
+        demoted.subscriptionManager.setDesired(Collections.emptyMap());
+        promoted.subscriptionManager.setDesired(topicFilters);
+        active = promoted;
+        standby = demoted;
+        LOGGER.log(Level.INFO, "promoteStandby - {} takes over on {}", promoted.identifier, promoted.getAddress());
+        execute(() -> restore(promoted, promoted.subscriptionManager.sync(subscribeTimeoutMillis), 0));
+    }
+
+    /**
+     * Retries the subscriptions of {@code member} until they are complete, as long as it keeps its role and connection.
+     */
+    private void restore(@NotNull final Member member, @NotNull final IeApiResponse<Boolean> syncResponse, final int attempt) {
+        synchronized (lock) {
+            if (!isRunning) { return; }
+            if (null == syncResponse.error) {
+                if ( (member == active) && (0L != lostNanos) ) {
+                    FAILOVER_TIMER.recordSuccess(lostNanos);
+                    LOGGER.log(Level.INFO, "restore - ingest restored on {} in {} ms",
+                            member.identifier, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lostNanos));
+                    lostNanos = 0L;
+                }
+                return;
+            }
+        }
+        if (!member.client.getState().isConnected()) { return; }
+        final long delayMillis = backoff.delayMillis(attempt);
+        LOGGER.log(Level.WARNING, "restore - {}: {}, retry in {} ms",
+                member.identifier, syncResponse.error.getLocalizedMessage(), delayMillis);
+        schedule(() -> restore(member, member.subscriptionManager.sync(subscribeTimeoutMillis), attempt + 1), delayMillis);
+    }
+
+    private void execute(@NotNull final Runnable task) { schedule(task, 0L); }
+
+    private void schedule(@NotNull final Runnable task, final long delayMillis) {
+        try {
+            failoverExecutor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException cause) {
+            // stopped meanwhile
+            LOGGER.log(Level.FINE, "schedule - rejected: {}", cause.getLocalizedMessage());
+        }
+    }
+
+    ///
+
+    private final class Member implements MqttClientConnectedListener, MqttClientDisconnectedListener {
+        final String identifier;
+        final Mqtt3Client client;
+        final HiveMqttSubscriptionManager subscriptionManager;
+        // only changed on the client's event loop, by onDisconnected
+        volatile int addressIndex;
+
+        Member(@NotNull final String identifier, final int addressIndex) throws IeRuntimeException {
+            this.identifier = identifier;
+            this.addressIndex = addressIndex;
+            final List<IeAddress> addresses = addressSelector.getAddresses();
+            this.client = new HiveMqttHelper.BuildMqtt3ClientCallable(
+                    clientConfig.forShard(identifier, addresses.get(addressIndex)), this, this).call();
+            this.subscriptionManager = new HiveMqttSubscriptionManager(client);
+        }
+
+        @NotNull
+        IeAddress getAddress() { return addressSelector.getAddresses().get(addressIndex); }
+
+        int nextAddressIndex(final int addressCount) {
+            addressIndex = (addressIndex + 1) % addressCount;
+            return addressIndex;
+        }
+
+        @Override
+        public void onConnected(@NotNull final MqttClientConnectedContext context) {
+            HiveMqttFailoverClient.this.onConnected(this, context);
+        }
+
+        @Override
+        public void onDisconnected(@NotNull final MqttClientDisconnectedContext context) {
+            HiveMqttFailoverClient.this.onDisconnected(this, context);
+        }
+    }
+}
@@ -3,51 +3,125 @@ package programs;
 import com.hivemq.client.mqtt.MqttClient;
 import com.hivemq.client.mqtt.MqttClientConfig;
 import com.hivemq.client.mqtt.datatypes.MqttClientIdentifier;
+import com.hivemq.client.mqtt.datatypes.MqttQos;
 import com.hivemq.client.mqtt.lifecycle.MqttClientConnectedContext;
 import com.hivemq.client.mqtt.lifecycle.MqttClientConnectedListener;
 import com.hivemq.client.mqtt.lifecycle.MqttClientDisconnectedContext;
 import com.hivemq.client.mqtt.lifecycle.MqttClientDisconnectedListener;
 import com.hivemq.client.mqtt.mqtt3.Mqtt3AsyncClient;
 import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3ClientBuilder;
 import com.hivemq.client.mqtt.mqtt3.message.connect.connack.Mqtt3ConnAck;
 import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
+import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3PublishResult;
 import com.hivemq.client.mqtt.mqtt3.message.subscribe.Mqtt3Subscribe;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
 import io.reactivex.annotations.NonNull;
 import io.reactivex.functions.Function;
 import io.reactivex.schedulers.Schedulers;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import programs.codec.IeCodec;
+import programs.codec.IeCompressor;
+import programs.codec.IeEncodeBuffer;
+import programs.codec.IeMqttEnvelope;
+import programs.metrics.IeMetrics;
+import programs.models.IeAddress;
 import programs.models.IePair;
 import programs.rxjava2.AbstractRxTask;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 
 
 public class HiveMqttHelper {
 
+    private static final IeLogger LOGGER = IeLogger.getLogger("HiveMqttHelper");
+    private static final IeLogger.Sampled PUBLISH_LOGGER = LOGGER.sampled(1000);
+
+    private static final IeMetrics.Timer BUILD_CLIENT_TIMER = IeMetrics.getDefault().timer("mqtt", "build_client");
+    private static final IeMetrics.Timer CONNECT_TIMER = IeMetrics.getDefault().timer("mqtt", "connect");
+    private static final IeMetrics.Timer DISCONNECT_TIMER = IeMetrics.getDefault().timer("mqtt", "disconnect");
+    private static final IeMetrics.Timer PUBLISH_TIMER = IeMetrics.getDefault().timer("mqtt", "publish");
+    private static final IeMetrics.Timer PUBLISH_STREAM_TIMER = IeMetrics.getDefault().timer("mqtt", "publish_stream");
+    private static final IeMetrics.Timer SUBSCRIBE_TIMER = IeMetrics.getDefault().timer("mqtt", "subscribe");
+
+    private final IeCompressor compressor;
+
+    public HiveMqttHelper() { this(null); }
+
+    /**
+     * @param compressor compresses payloads built by {@link #buildPublish} above its threshold and flags it in the
+     *                   {@link IeMqttEnvelope}; null publishes them as is
+     */
+    public HiveMqttHelper(@Nullable final IeCompressor compressor) { this.compressor = compressor; }
+
     public static final class ClientConfig {
         public final String identifier;
         public final String hostName;
         public final int portNumber;
+        /** every node of the cluster, starting with {@link #hostName}:{@link #portNumber} */
+        public final List<IeAddress> addresses;
+        public final IeAddressSelector.Policy addressPolicy;
 
         private ClientConfig(
                 @NotNull final String identifier,
-                @NotNull final String hostName,
-                final int portNumber) {
+                @NotNull final List<IeAddress> addresses,
+                @NotNull final IeAddressSelector.Policy addressPolicy) {
             this.identifier = identifier;
-            this.hostName = hostName;
-            this.portNumber = portNumber;
+            this.hostName = addresses.get(0).hostName;
+            this.portNumber = addresses.get(0).portNumber;
+            this.addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+            this.addressPolicy = addressPolicy;
         }
 
+        /**
+         * @return a config for one connection of a {@link HiveMqttShardedClients} to the node {@code address}
+         */
+        @NotNull
+        public ClientConfig forShard(@NotNull final String shardIdentifier, @NotNull final IeAddress address) {
+            return new ClientConfig(shardIdentifier, Collections.singletonList(address), addressPolicy);
+        }
+
+        /**
+         * @return the same cluster under another client identifier, e.g. for one member of a {@link HiveMqttConsumerGroup}
+         */
+        @NotNull
+        public ClientConfig withIdentifier(@NotNull final String otherIdentifier) {
+            return new ClientConfig(otherIdentifier, addresses, addressPolicy);
+        }
+
+        @Override
+        public boolean equals(@Nullable final Object other) {
+            if (this == other) { return true; }
+            if (!(other instanceof ClientConfig)) { return false; }
+            final ClientConfig that = (ClientConfig) other;
+            return identifier.equals(that.identifier) && addresses.equals(that.addresses) && (addressPolicy == that.addressPolicy);
+        }
+
+        @Override
+        public int hashCode() { return Objects.hash(identifier, addresses, addressPolicy); }
+
+        @NotNull
+        @Override
+        public String toString() { return "ClientConfig {identifier: " + identifier + ", addresses: " + addresses + ", addressPolicy: " + addressPolicy + "}"; }
+
         public static final class Builder {
             private String identifier = null;
             private String hostName = "localhost";
             private int portNumber = 1883;
+            private final List<IeAddress> addresses = new ArrayList<>();
+            private IeAddressSelector.Policy addressPolicy = IeAddressSelector.Policy.ROUND_ROBIN;
 
             @NotNull
             public Builder setIdentifier(@Nullable final String identifier) {
@@ -71,20 +145,42 @@ public class HiveMqttHelper {
                 return this;
             }
 
+            /**
+             * Adds a node of a cluster, which replaces {@link #setHostName} / {@link #setPortNumber};
+             * {@link HiveMqttShardedClients} spreads its connections over them by the address policy.
+             */
+            @NotNull
+            public Builder addAddress(@Nullable final String hostName, final int portNumber) {
+                if ( (null != hostName) && (hostName.length() > 0) && (portNumber > 0) ) {
+                    this.addresses.add(new IeAddress(hostName, portNumber));
+                }
+                return this;
+            }
+
+            @NotNull
+            public Builder setAddressPolicy(@Nullable final IeAddressSelector.Policy addressPolicy) {
+                if (null != addressPolicy) { this.addressPolicy = addressPolicy; }
+                return this;
+            }
+
             @NotNull
             public ClientConfig build() {
                 if (null == identifier) {
                     identifier = UUID.randomUUID().toString() + "_" + System.currentTimeMillis();
                 }
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "ClientConfigBuilder - identifier: [" + identifier + "]");
+                LOGGER.log(Level.INFO, "ClientConfigBuilder - identifier: [{}]", identifier);
 
                 if (null != hostName) {
-                    java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "ClientConfigBuilder - hostName: [" + hostName + "]");
+                    LOGGER.log(Level.INFO, "ClientConfigBuilder - hostName: [{}]", hostName);
                 }
                 if (portNumber > 0) {
-                    java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "ClientConfigBuilder - portNumber: [" + portNumber + "]");
+                    LOGGER.log(Level.INFO, "ClientConfigBuilder - portNumber: [{}]", portNumber);
+                }
+                if (addresses.isEmpty()) {
+                    return new ClientConfig(identifier, Collections.singletonList(new IeAddress(hostName, portNumber)), addressPolicy);
                 }
-                return new ClientConfig(identifier, hostName, portNumber);
+                LOGGER.log(Level.INFO, "ClientConfigBuilder - addresses: {}, policy: [{}]", addresses, addressPolicy);
+                return new ClientConfig(identifier, addresses, addressPolicy);
             }
         }
     }
@@ -101,6 +197,81 @@ public class HiveMqttHelper {
                 .buildAsync();
     }
 
+    /**
+     * Streams the given publishes through the reactive client. The client only requests further publishes from
+     * the source while it has room for more in-flight QoS 1/2 messages, so a fast source is backpressured
+     * instead of parking one thread per outstanding PUBACK/PUBCOMP.
+     */
+    @NotNull
+    public Flowable<IePair<Mqtt3Publish, IeApiResponse<Boolean>>> publishStream(
+            @NotNull final Mqtt3Client theClient, @NotNull final Flowable<Mqtt3Publish> publishes) {
+        return theClient.toRx()
+                .publish(publishes)
+                .map(new Mqtt3PublishResultFunction());
+    }
+
+    /**
+     * Encodes {@code message} with {@code codec} behind an {@link IeMqttEnvelope}, so that
+     * {@link HiveMqttMessageAdapter} decodes it on the other side.
+     */
+    @NotNull
+    public <T> IeApiResponse<Mqtt3Publish> buildPublish(
+            @NotNull final String topic,
+            @NotNull final MqttQos qos,
+            @NotNull final T message,
+            @NotNull final IeCodec<T> codec) {
+        final IeEncodeBuffer buffer = IeEncodeBuffer.get();
+        try {
+            IeMqttEnvelope.writeHeader(buffer, 0, codec.getCodecId());
+            codec.encode(message, buffer);
+        }
+        catch (IeRuntimeException cause) {
+            LOGGER.log(Level.SEVERE, "error on IeCodec#encode(): {}", cause.getLocalizedMessage());
+            return new IeApiResponse<>(null, cause);
+        }
+        final byte[] compressedPayload = (null != compressor) ? compressor.compressEnveloped(buffer) : null;
+        final Mqtt3Publish publish = Mqtt3Publish.builder()
+                .topic(topic)
+                .qos(qos)
+                .payload((null != compressedPayload) ? compressedPayload : buffer.toByteArray())
+                .build();
+        return new IeApiResponse<>(publish, null);
+    }
+
+    /**
+     * Publishes {@code payload} as is, unless it gets compressed, in which case it is wrapped in an {@link IeMqttEnvelope}
+     * so that {@link HiveMqttMessageAdapter} and {@link HiveMqttPayloadAdapter} restore it.
+     */
+    @NotNull
+    public Mqtt3Publish buildPublish(@NotNull final String topic, @NotNull final MqttQos qos, @NotNull final ByteBuffer payload) {
+        byte[] compressedPayload = null;
+        if ( (null != compressor) && (payload.remaining() >= compressor.getThresholdBytes()) ) {
+            final IeEncodeBuffer buffer = IeEncodeBuffer.get();
+            IeMqttEnvelope.writeHeader(buffer, 0, IeMqttEnvelope.RAW_CODEC_ID);
+            buffer.put(payload);
+            compressedPayload = compressor.compressEnveloped(buffer);
+        }
+        return Mqtt3Publish.builder()
+                .topic(topic)
+                .qos(qos)
+                .payload((null != compressedPayload) ? ByteBuffer.wrap(compressedPayload) : payload)
+                .build();
+    }
+
+    /**
+     * @param enveloped an {@link IeMqttEnvelope} header followed by the body, e.g. a frame of {@link HiveMqttCoalescingPublisher};
+     *                  copied, so the buffer may be reused once this returns
+     */
+    @NotNull
+    public Mqtt3Publish buildPublish(@NotNull final String topic, @NotNull final MqttQos qos, @NotNull final IeEncodeBuffer enveloped) {
+        final byte[] compressedPayload = (null != compressor) ? compressor.compressEnveloped(enveloped) : null;
+        return Mqtt3Publish.builder()
+                .topic(topic)
+                .qos(qos)
+                .payload((null != compressedPayload) ? compressedPayload : enveloped.toByteArray())
+                .build();
+    }
+
     ///
 
     public static class ConnectionStatusCallback
@@ -108,13 +279,13 @@ public class HiveMqttHelper {
 
         @Override
         public void onConnected(@NotNull MqttClientConnectedContext context) {
-            java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "ConnectionStatusCallback - onConnected");
+            LOGGER.log(Level.INFO, "ConnectionStatusCallback - onConnected");
             showClientConfig(context.getClientConfig());
         }
 
         @Override
         public void onDisconnected(@NotNull MqttClientDisconnectedContext context) {
-            java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.SEVERE, "ConnectionStatusCallback - onDisconnected");
+            LOGGER.log(Level.SEVERE, "ConnectionStatusCallback - onDisconnected");
             showClientConfig(context.getClientConfig());
         }
 
@@ -125,9 +296,8 @@ public class HiveMqttHelper {
                 final MqttClientIdentifier clientIdentifier = clientIdentifierWrapper.get();
                 identifier = clientIdentifier.toString();
             }
-            java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "ConnectionStatusCallback - showClientConfig ["
-                    + "Id: " + identifier + ", Host: " + clientConfig.getServerHost() + ", port: " + clientConfig.getServerPort()
-                    + ", address: " + clientConfig.getServerAddress());
+            LOGGER.log(Level.INFO, "ConnectionStatusCallback - showClientConfig [Id: {}, Host: {}, port: {}, address: {}",
+                    identifier, clientConfig.getServerHost(), clientConfig.getServerPort(), clientConfig.getServerAddress());
         }
     }
 
@@ -136,28 +306,57 @@ public class HiveMqttHelper {
     public static final class BuildMqtt3ClientCallable implements Callable<Mqtt3Client> {
 
         final ClientConfig clientConfig;
+        final MqttClientConnectedListener connectedListener;
+        final MqttClientDisconnectedListener disconnectedListener;
 
         public BuildMqtt3ClientCallable(@NotNull final ClientConfig clientConfig) {
+            this(clientConfig, null);
+        }
+
+        /**
+         * @param connectedListener also notified on every (re)connect, e.g. a {@link HiveMqttSubscriptionManager}
+         */
+        public BuildMqtt3ClientCallable(
+                @NotNull final ClientConfig clientConfig, @Nullable final MqttClientConnectedListener connectedListener) {
+            this(clientConfig, connectedListener, null);
+        }
+
+        /**
+         * @param disconnectedListener also notified on every lost connection and failed connect,
+         *                             and may schedule a reconnect, e.g. a {@link HiveMqttFailoverClient}
+         */
+        public BuildMqtt3ClientCallable(
+                @NotNull final ClientConfig clientConfig,
+                @Nullable final MqttClientConnectedListener connectedListener,
+                @Nullable final MqttClientDisconnectedListener disconnectedListener) {
             this.clientConfig = clientConfig;
+            this.connectedListener = connectedListener;
+            this.disconnectedListener = disconnectedListener;
         }
 
         @Override
         public Mqtt3Client call() throws IeRuntimeException {
-            java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "BuildMqtt3ClientCallable - on Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "BuildMqtt3ClientCallable - on Thread: {}", IeLogger.THREAD_NAME);
+            final long startNanos = System.nanoTime();
             try {
-                return MqttClient.builder()
+                final Mqtt3ClientBuilder builder = MqttClient.builder()
                         .useMqttVersion3()
                         .identifier(clientConfig.identifier)
                         .serverHost(clientConfig.hostName)
                         .serverPort(clientConfig.portNumber)
                         //.sslWithDefaultConfig()
                         .addConnectedListener(new ConnectionStatusCallback())
-                        .addDisconnectedListener(new ConnectionStatusCallback())
-                        .build();
+                        .addDisconnectedListener(new ConnectionStatusCallback());
+                if (null != connectedListener) { builder.addConnectedListener(connectedListener); }
+                if (null != disconnectedListener) { builder.addDisconnectedListener(disconnectedListener); }
+                final Mqtt3Client client = builder.build();
+                BUILD_CLIENT_TIMER.recordSuccess(startNanos);
+                return client;
             }
             catch (Exception cause) {
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.SEVERE, "error on BuildMqtt3ClientCallable: " + cause.getLocalizedMessage());
-                throw new IeRuntimeException(cause, AppConstants.HiveMqErrorCode.BUILD_CLIENT);
+                LOGGER.log(Level.SEVERE, "error on BuildMqtt3ClientCallable: {}", cause.getLocalizedMessage());
+                BUILD_CLIENT_TIMER.recordFailure(AppConstants.HiveMqErrorCode.BUILD_CLIENT, startNanos);
+                throw IeRuntimeException.of(cause, AppConstants.HiveMqErrorCode.BUILD_CLIENT);
             }
         }
     }
@@ -174,6 +373,7 @@ public class HiveMqttHelper {
 
         @Override
         public Mqtt3ConnAck call() throws IeRuntimeException {
+            final long startNanos = System.nanoTime();
             try {
                 final Mqtt3ConnAck connectionAck = theClient
                         //.toBlocking().connect();
@@ -183,12 +383,14 @@ public class HiveMqttHelper {
                         .keepAlive(10)
                         .send();
 
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientConnectionCallable - on Thread: " + Thread.currentThread().getName());
+                LOGGER.log(Level.INFO, "Mqtt3ClientConnectionCallable - on Thread: {}", IeLogger.THREAD_NAME);
+                CONNECT_TIMER.recordSuccess(startNanos);
                 return connectionAck;
             }
             catch (Exception cause) {
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.SEVERE, "Mqtt3ClientConnectionCallable - Error on mqtt3Client.toBlocking().connect()");
-                throw new IeRuntimeException(cause, AppConstants.HiveMqErrorCode.CONNECTION_FAILURE);
+                LOGGER.log(Level.SEVERE, "Mqtt3ClientConnectionCallable - Error on mqtt3Client.toBlocking().connect()");
+                CONNECT_TIMER.recordFailure(AppConstants.HiveMqErrorCode.CONNECTION_FAILURE, startNanos);
+                throw IeRuntimeException.of(cause, AppConstants.HiveMqErrorCode.CONNECTION_FAILURE);
 //                ConnectionFailedException // if an error occurs before the Connect message could be sent
 //                ConnectionClosedException // if the connection is closed after the Connect message has been sent but before a ConnAck message has been received
 //                Mqtt3ConnAckException     // if the ConnAck message contained an error code (the ConnAck message is contained in the exception)
@@ -209,14 +411,17 @@ public class HiveMqttHelper {
 
         @Override
         public Boolean call() throws IeRuntimeException {
+            final long startNanos = System.nanoTime();
             try {
                 theClient.toBlocking().disconnect();
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientDisconnectionCallable - on Thread: " + Thread.currentThread().getName());
+                LOGGER.log(Level.INFO, "Mqtt3ClientDisconnectionCallable - on Thread: {}", IeLogger.THREAD_NAME);
+                DISCONNECT_TIMER.recordSuccess(startNanos);
                 return true;
             }
             catch (Exception cause) {
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.SEVERE, "error on Mqtt3ClientDisconnectionCallable: " + cause.getLocalizedMessage());
-                throw new IeRuntimeException(cause, AppConstants.HiveMqErrorCode.DISCONNECTION_FAILURE);
+                LOGGER.log(Level.SEVERE, "error on Mqtt3ClientDisconnectionCallable: {}", cause.getLocalizedMessage());
+                DISCONNECT_TIMER.recordFailure(AppConstants.HiveMqErrorCode.DISCONNECTION_FAILURE, startNanos);
+                throw IeRuntimeException.of(cause, AppConstants.HiveMqErrorCode.DISCONNECTION_FAILURE);
             }
         }
     }
@@ -236,6 +441,7 @@ public class HiveMqttHelper {
 
         @Override
         public Boolean call() throws IeRuntimeException {
+            final long startNanos = System.nanoTime();
             try {
 //                Mqtt3Publish thePublish = Mqtt3Publish.builder()
 //                        .topic("test/topic")
@@ -243,16 +449,35 @@ public class HiveMqttHelper {
 //                        .payload("payload".getBytes())
 //                        .build();
                 theClient.toBlocking().publish(thePublish);
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientPublishCallable - on Thread: " + Thread.currentThread().getName());
+                PUBLISH_LOGGER.log(Level.INFO, "Mqtt3ClientPublishCallable - on Thread: {}", IeLogger.THREAD_NAME);
+                PUBLISH_TIMER.recordSuccess(startNanos);
                 return true;
             }
             catch (Exception cause) {
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.SEVERE, "error on Mqtt3ClientPublishCallable: " + cause.getLocalizedMessage());
-                throw new IeRuntimeException(cause, AppConstants.HiveMqErrorCode.PUBLISH_FAILURE);
+                LOGGER.log(Level.SEVERE, "error on Mqtt3ClientPublishCallable: {}", cause.getLocalizedMessage());
+                PUBLISH_TIMER.recordFailure(AppConstants.HiveMqErrorCode.PUBLISH_FAILURE, startNanos);
+                throw IeRuntimeException.of(cause, AppConstants.HiveMqErrorCode.PUBLISH_FAILURE);
             }
         }
     }
 
+    public static final class Mqtt3PublishResultFunction
+            implements Function<Mqtt3PublishResult, IePair<Mqtt3Publish, IeApiResponse<Boolean>>> {
+
+        @Override
+        public IePair<Mqtt3Publish, IeApiResponse<Boolean>> apply(@NonNull final Mqtt3PublishResult publishResult) throws Exception {
+            final Optional<Throwable> errorWrapper = publishResult.getError();
+            if (errorWrapper.isPresent()) {
+                LOGGER.log(Level.SEVERE, "error on Mqtt3PublishResultFunction: {}", errorWrapper.get().getLocalizedMessage());
+                final IeRuntimeException error = IeRuntimeException.of(errorWrapper.get(), AppConstants.HiveMqErrorCode.PUBLISH_FAILURE);
+                PUBLISH_STREAM_TIMER.markFailure(error.getExceptionCode());
+                return new IePair<>(publishResult.getPublish(), new IeApiResponse<>(null, error));
+            }
+            PUBLISH_STREAM_TIMER.markSuccess();
+            return new IePair<>(publishResult.getPublish(), IeApiResponse.TRUE);
+        }
+    }
+
     public static final class Mqtt3ClientSubscribeCallable implements Callable<Boolean> {
 
         final Mqtt3Client theClient;
@@ -266,24 +491,48 @@ public class HiveMqttHelper {
 
         @Override
         public Boolean call() throws IeRuntimeException {
+            final long startNanos = System.nanoTime();
             try {
 //                Mqtt3Subscribe theSubscribe = Mqtt3Subscribe.builder()
 //                        .topicFilter("test/topic")
 //                        .qos(MqttQos.EXACTLY_ONCE)
 //                        .build();
                 theClient.toBlocking().subscribe(theSubscribe);
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientSubscribeCallable - on Thread: " + Thread.currentThread().getName());
+                LOGGER.log(Level.INFO, "Mqtt3ClientSubscribeCallable - on Thread: {}", IeLogger.THREAD_NAME);
+                SUBSCRIBE_TIMER.recordSuccess(startNanos);
                 return true;
             }
             catch (Exception cause) {
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.SEVERE, "error on Mqtt3ClientSubscribeCallable: " + cause.getLocalizedMessage());
-                throw new IeRuntimeException(cause, AppConstants.HiveMqErrorCode.SUBSCRIBE_FAILURE);
+                LOGGER.log(Level.SEVERE, "error on Mqtt3ClientSubscribeCallable: {}", cause.getLocalizedMessage());
+                SUBSCRIBE_TIMER.recordFailure(AppConstants.HiveMqErrorCode.SUBSCRIBE_FAILURE, startNanos);
+                throw IeRuntimeException.of(cause, AppConstants.HiveMqErrorCode.SUBSCRIBE_FAILURE);
             }
         }
     }
 
     ///
 
+    public static final class Mqtt3ClientAcquireCallable implements Callable<IePair<Mqtt3Client, Mqtt3ConnAck>> {
+
+        final HiveMqttClientRegistry clientRegistry;
+        final ClientConfig clientConfig;
+
+        public Mqtt3ClientAcquireCallable(
+                @NotNull final HiveMqttClientRegistry clientRegistry, @NotNull final ClientConfig clientConfig) {
+            this.clientRegistry = clientRegistry;
+            this.clientConfig = clientConfig;
+        }
+
+        @Override
+        public IePair<Mqtt3Client, Mqtt3ConnAck> call() throws IeRuntimeException {
+            final IePair<Mqtt3Client, Mqtt3ConnAck> pair = clientRegistry.acquire(clientConfig);
+            LOGGER.log(Level.INFO, "Mqtt3ClientAcquireCallable - on Thread: {}", IeLogger.THREAD_NAME);
+            return pair;
+        }
+    }
+
+    ///
+
     public static final class Mqtt3ClientConnectionFunction
             implements Function<Mqtt3Client, IeApiResponse<IePair<Mqtt3Client, Mqtt3ConnAck>>> {
 
@@ -291,12 +540,12 @@ public class HiveMqttHelper {
         public IeApiResponse<IePair<Mqtt3Client, Mqtt3ConnAck>> apply(@NonNull final Mqtt3Client mqtt3Client) throws Exception {
             try {
                 final Mqtt3ConnAck connectionAck = new Mqtt3ClientConnectionCallable(mqtt3Client).call();
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientConnectionFunction - on Thread: " + Thread.currentThread().getName());
+                LOGGER.log(Level.INFO, "Mqtt3ClientConnectionFunction - on Thread: {}", IeLogger.THREAD_NAME);
                 return new IeApiResponse<>(
                         new IePair<>(mqtt3Client, connectionAck), null);
             }
             catch (IeRuntimeException cause) {
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.SEVERE, "Mqtt3ClientConnectionFunction - Error");
+                LOGGER.log(Level.SEVERE, "Mqtt3ClientConnectionFunction - Error");
                 return new IeApiResponse<>(null, cause);
             }
         }
@@ -309,11 +558,11 @@ public class HiveMqttHelper {
         public IePair<Mqtt3Client, Mqtt3ConnAck> apply(@NonNull final Mqtt3Client mqtt3Client) throws Exception {
             try {
                 final Mqtt3ConnAck connectionAck = new Mqtt3ClientConnectionCallable(mqtt3Client).call();
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientConnectionFunction2 - on Thread: " + Thread.currentThread().getName());
+                LOGGER.log(Level.INFO, "Mqtt3ClientConnectionFunction2 - on Thread: {}", IeLogger.THREAD_NAME);
                 return new IePair<>(mqtt3Client, connectionAck);
             }
             catch (IeRuntimeException cause) {
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.SEVERE, "Mqtt3ClientConnectionFunction2 - Error");
+                LOGGER.log(Level.SEVERE, "Mqtt3ClientConnectionFunction2 - Error");
                 throw cause;
             }
         }
@@ -334,11 +583,11 @@ public class HiveMqttHelper {
         public IeApiResponse<IePair<Mqtt3Client, Mqtt3ConnAck>> apply(@NonNull final IePair<Mqtt3Client, Mqtt3ConnAck> pair) throws Exception {
             try {
                 final Boolean result = new Mqtt3ClientPublishCallable(pair.first, thePublish).call();
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientPublishFunction - on Thread: " + Thread.currentThread().getName());
+                PUBLISH_LOGGER.log(Level.INFO, "Mqtt3ClientPublishFunction - on Thread: {}", IeLogger.THREAD_NAME);
                 return new IeApiResponse<>(pair, null);
             }
             catch (IeRuntimeException cause) {
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.SEVERE, "Mqtt3ClientPublishFunction - on Thread: " + Thread.currentThread().getName());
+                LOGGER.log(Level.SEVERE, "Mqtt3ClientPublishFunction - on Thread: {}", IeLogger.THREAD_NAME);
                 return new IeApiResponse<>(pair, cause);
             }
         }
@@ -359,11 +608,11 @@ public class HiveMqttHelper {
         public IeApiResponse<IePair<Mqtt3Client, Mqtt3ConnAck>> apply(@NonNull final IePair<Mqtt3Client, Mqtt3ConnAck> pair) throws Exception {
             try {
                 final Boolean result = new Mqtt3ClientSubscribeCallable(pair.first, theSubscribe).call();
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientSubscribeFunction - on Thread: " + Thread.currentThread().getName());
+                LOGGER.log(Level.INFO, "Mqtt3ClientSubscribeFunction - on Thread: {}", IeLogger.THREAD_NAME);
                 return new IeApiResponse<>(pair, null);
             }
             catch (IeRuntimeException cause) {
-                java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.SEVERE, "Mqtt3ClientSubscribeFunction - on Thread: " + Thread.currentThread().getName());
+                LOGGER.log(Level.SEVERE, "Mqtt3ClientSubscribeFunction - on Thread: {}", IeLogger.THREAD_NAME);
                 return new IeApiResponse<>(pair, cause);
             }
         }
@@ -410,7 +659,7 @@ public class HiveMqttHelper {
 
         @Override
         public void runTask() {
-            java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientConnectionTask - on Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "Mqtt3ClientConnectionTask - on Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             setDisposable(
                     Single.fromCallable(new BuildMqtt3ClientCallable(clientConfig))
@@ -430,20 +679,46 @@ public class HiveMqttHelper {
         final ClientConfig clientConfig;
         final Mqtt3Publish thePublish;
         final ExecutorService executorService;
+        final HiveMqttClientRegistry clientRegistry;
 
         public Mqtt3ClientPublishTask(
                 @NotNull final ClientConfig clientConfig,
                 @NotNull final Mqtt3Publish thePublish,
                 @NotNull final ExecutorService executorService) {
+            this(clientConfig, thePublish, executorService, null);
+        }
+
+        /**
+         * With a registry, the task borrows an already connected client and hands it back after the publish.
+         */
+        public Mqtt3ClientPublishTask(
+                @NotNull final ClientConfig clientConfig,
+                @NotNull final Mqtt3Publish thePublish,
+                @NotNull final ExecutorService executorService,
+                @Nullable final HiveMqttClientRegistry clientRegistry) {
             this.clientConfig = clientConfig;
             this.thePublish = thePublish;
             this.executorService = executorService;
+            this.clientRegistry = clientRegistry;
         }
 
         @Override
         public void runTask() {
-            java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientConnectionTask - on Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "Mqtt3ClientConnectionTask - on Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
+            if (null != clientRegistry) {
+                // released however the publish ends, also on error and dispose, but only once acquired
+                setDisposable(
+                        Single.using(
+                                new Mqtt3ClientAcquireCallable(clientRegistry, clientConfig),
+                                pair -> Single.just(pair).map(new Mqtt3ClientPublishFunction(thePublish)),
+                                pair -> clientRegistry.release(clientConfig))
+                                .subscribeOn(Schedulers.io())
+                                .observeOn(Schedulers.from(executorService))
+                                .subscribeWith(new ApiDisposableSingleObserver())
+                );
+                return;
+            }
             setDisposable(
                     Single.fromCallable(new BuildMqtt3ClientCallable(clientConfig))
                             .map(new Mqtt3ClientConnectionFunction2())
@@ -463,20 +738,52 @@ public class HiveMqttHelper {
         final ClientConfig clientConfig;
         final Mqtt3Subscribe theSubscribe;
         final ExecutorService executorService;
+        final HiveMqttClientRegistry clientRegistry;
 
         public Mqtt3ClientSubscribeTask(
                 @NotNull final ClientConfig clientConfig,
                 @NotNull final Mqtt3Subscribe theSubscribe,
                 @NotNull final ExecutorService executorService) {
+            this(clientConfig, theSubscribe, executorService, null);
+        }
+
+        /**
+         * With a registry, the task borrows an already connected client and keeps the reference for the subscription;
+         * call {@link HiveMqttClientRegistry#release(ClientConfig)} once the subscription is no longer needed.
+         */
+        public Mqtt3ClientSubscribeTask(
+                @NotNull final ClientConfig clientConfig,
+                @NotNull final Mqtt3Subscribe theSubscribe,
+                @NotNull final ExecutorService executorService,
+                @Nullable final HiveMqttClientRegistry clientRegistry) {
             this.clientConfig = clientConfig;
             this.theSubscribe = theSubscribe;
             this.executorService = executorService;
+            this.clientRegistry = clientRegistry;
         }
 
         @Override
         public void runTask() {
-            java.util.logging.Logger.getLogger("HiveMqttHelper").log(Level.INFO, "Mqtt3ClientConnectionTask - on Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "Mqtt3ClientConnectionTask - on Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
+            if (null != clientRegistry) {
+                // only a successful subscription keeps the reference
+                final AtomicBoolean isSubscribed = new AtomicBoolean(false);
+                setDisposable(
+                        Single.using(
+                                new Mqtt3ClientAcquireCallable(clientRegistry, clientConfig),
+                                pair -> Single.just(pair)
+                                        .map(new Mqtt3ClientSubscribeFunction(theSubscribe))
+                                        .doOnSuccess(response -> isSubscribed.set(null == response.error)),
+                                pair -> {
+                                    if (!isSubscribed.get()) { clientRegistry.release(clientConfig); }
+                                })
+                                .subscribeOn(Schedulers.io())
+                                .observeOn(Schedulers.from(executorService))
+                                .subscribeWith(new ApiDisposableSingleObserver())
+                );
+                return;
+            }
             setDisposable(
                     Single.fromCallable(new BuildMqtt3ClientCallable(clientConfig))
                             .map(new Mqtt3ClientConnectionFunction2())
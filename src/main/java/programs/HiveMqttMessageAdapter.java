@@ -0,0 +1,70 @@
+package programs;
+
+import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
+import org.jetbrains.annotations.NotNull;
+import programs.codec.IeBatchFrame;
+import programs.codec.IeCodec;
+import programs.codec.IeCodecRegistry;
+import programs.codec.IeCompression;
+import programs.codec.IeCompressor;
+import programs.codec.IeMqttEnvelope;
+import programs.delegates.IeMessageHandler;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+
+/**
+ * Decodes each MQTT publish with the codec named in its {@link IeMqttEnvelope} before handing it to an {@link IeMessageHandler}.
+ * Payloads without an envelope, or whose codec id is not registered, are handed over as is, header included,
+ * since they are most likely raw binary payloads that merely look like one; compressed bodies are decompressed first.
+ * An {@link IeBatchFrame} is unpacked and every item decoded with the codec of its own {@link IeBatchFrame#CONTENT_TYPE_HEADER}.
+ */
+public final class HiveMqttMessageAdapter implements HiveMqttConsumptionEngine.PublishHandler {
+
+    private static final ByteBuffer EMPTY_PAYLOAD = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private final IeMessageHandler messageHandler;
+    private final IeCodecRegistry codecRegistry;
+
+    public HiveMqttMessageAdapter(@NotNull final IeMessageHandler messageHandler) {
+        this(messageHandler, IeCodecRegistry.getDefault());
+    }
+
+    public HiveMqttMessageAdapter(@NotNull final IeMessageHandler messageHandler, @NotNull final IeCodecRegistry codecRegistry) {
+        this.messageHandler = messageHandler;
+        this.codecRegistry = codecRegistry;
+    }
+
+    @Override
+    public void onPublish(@NotNull final Mqtt3Publish publish) throws Exception {
+        final ByteBuffer payload = publish.getPayload().orElse(EMPTY_PAYLOAD);
+        final String topic = publish.getTopic().toString();
+        final IeMqttEnvelope envelope = IeMqttEnvelope.parse(payload);
+        final IeCodec<?> codec = ( (null != envelope) && (IeMqttEnvelope.RAW_CODEC_ID != envelope.codecId) )
+                ? codecRegistry.byCodecId(envelope.codecId) : null;
+        final Object message;
+        if ( (null == envelope) || ( (IeMqttEnvelope.RAW_CODEC_ID != envelope.codecId) && (null == codec) ) ) {
+            message = payload;
+        }
+        else {
+            final IeCompression compression = IeCompression.byEnvelopeFlags(envelope.flags);
+            final ByteBuffer body = (null != compression) ? IeCompressor.decompress("mqtt", compression, envelope.body) : envelope.body;
+            if ( (IeMqttEnvelope.RAW_CODEC_ID == envelope.codecId) && envelope.hasFlag(IeMqttEnvelope.FLAG_BATCH) ) {
+                IeBatchFrame.forEach(body, (item, itemHeaders) -> {
+                    final IeCodec<?> itemCodec = codecRegistry.byContentType(
+                            (String) itemHeaders.get(IeBatchFrame.CONTENT_TYPE_HEADER));
+                    messageHandler.onMessage(topic, (null != itemCodec) ? itemCodec.decode(item) : item, itemHeaders);
+                });
+                return;
+            }
+            else if (IeMqttEnvelope.RAW_CODEC_ID == envelope.codecId) {
+                message = body;
+            }
+            else {
+                message = codec.decode(body);
+            }
+        }
+        messageHandler.onMessage(topic, message, Collections.<String, Object>emptyMap());
+    }
+}
@@ -0,0 +1,44 @@
+package programs;
+
+import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
+import org.jetbrains.annotations.NotNull;
+import programs.codec.IeBatchFrame;
+import programs.codec.IeCompression;
+import programs.codec.IeCompressor;
+import programs.codec.IeMqttEnvelope;
+import programs.delegates.IePayloadHandler;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+
+
+/**
+ * Hands each MQTT publish to an {@link IePayloadHandler} through {@link Mqtt3Publish#getPayload()},
+ * which is already a read-only view, instead of the copying {@link Mqtt3Publish#getPayloadAsBytes()}.
+ * Raw payloads that {@link HiveMqttHelper#buildPublish(String, com.hivemq.client.mqtt.datatypes.MqttQos, ByteBuffer)}
+ * compressed into an {@link IeMqttEnvelope} are decompressed first, and an {@link IeBatchFrame} is handed over item by item.
+ */
+public final class HiveMqttPayloadAdapter implements HiveMqttConsumptionEngine.PublishHandler {
+
+    private static final ByteBuffer EMPTY_PAYLOAD = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private final IePayloadHandler payloadHandler;
+
+    public HiveMqttPayloadAdapter(@NotNull final IePayloadHandler payloadHandler) { this.payloadHandler = payloadHandler; }
+
+    @Override
+    public void onPublish(@NotNull final Mqtt3Publish publish) throws Exception {
+        ByteBuffer payload = publish.getPayload().orElse(EMPTY_PAYLOAD);
+        final String topic = publish.getTopic().toString();
+        final IeMqttEnvelope envelope = IeMqttEnvelope.parse(payload);
+        if ( (null != envelope) && (IeMqttEnvelope.RAW_CODEC_ID == envelope.codecId) ) {
+            final IeCompression compression = IeCompression.byEnvelopeFlags(envelope.flags);
+            payload = (null != compression) ? IeCompressor.decompress("mqtt", compression, envelope.body) : envelope.body;
+            if (envelope.hasFlag(IeMqttEnvelope.FLAG_BATCH)) {
+                IeBatchFrame.forEach(payload, (item, itemHeaders) -> payloadHandler.onPayload(topic, item, itemHeaders));
+                return;
+            }
+        }
+        payloadHandler.onPayload(topic, payload, Collections.<String, Object>emptyMap());
+    }
+}
@@ -0,0 +1,118 @@
+package programs;
+
+import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
+import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
+import org.jetbrains.annotations.NotNull;
+import programs.models.IeAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+
+/**
+ * Opens {@code shardCount} MQTT connections of one process, spread over the nodes of {@link HiveMqttHelper.ClientConfig#addresses}
+ * by its address policy, and shards publishes over them by topic, which keeps the order per topic while the load and
+ * the socket I/O are spread over the whole cluster. Shard {@code i} connects as {@code <identifier>-<i>}.
+ */
+public final class HiveMqttShardedClients {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("HiveMqttShardedClients");
+
+    private final HiveMqttHelper.ClientConfig clientConfig;
+    private final IeAddressSelector addressSelector;
+    private final int shardCount;
+    private final List<Mqtt3Client> clients = new ArrayList<>();
+    private final List<Integer> nodeIndexes = new ArrayList<>();
+    private volatile Mqtt3Client[] shards = new Mqtt3Client[0];
+
+    public HiveMqttShardedClients(@NotNull final HiveMqttHelper.ClientConfig clientConfig, final int shardCount) {
+        this.clientConfig = clientConfig;
+        this.addressSelector = new IeAddressSelector(clientConfig.addresses, clientConfig.addressPolicy);
+        this.shardCount = Math.max(1, shardCount);
+    }
+
+    /**
+     * Connects every shard to the node the policy selects, or to the next node that accepts it.
+     *
+     * @return the error of the first shard no node accepted; the shards connected so far stay connected
+     */
+    @NotNull
+    public synchronized IeApiResponse<Boolean> connect() {
+        for (int shard = clients.size(); shard < shardCount; shard++) {
+            final int selectedIndex = addressSelector.select();
+            final List<IeAddress> failoverOrder = addressSelector.failoverOrder(selectedIndex);
+            IeRuntimeException lastError = null;
+            for (int attempt = 0; attempt < failoverOrder.size(); attempt++) {
+                final IeAddress address = failoverOrder.get(attempt);
+                try {
+                    final Mqtt3Client client = new HiveMqttHelper.BuildMqtt3ClientCallable(
+                            clientConfig.forShard(clientConfig.identifier + "-" + shard, address)).call();
+                    new HiveMqttHelper.Mqtt3ClientConnectionCallable(client).call();
+                    final int nodeIndex = (selectedIndex + attempt) % failoverOrder.size();
+                    addressSelector.acquired(nodeIndex);
+                    clients.add(client);
+                    nodeIndexes.add(nodeIndex);
+                    LOGGER.log(Level.INFO, "connect - shard {} connected to {}", shard, address);
+                    lastError = null;
+                    break;
+                }
+                catch (IeRuntimeException cause) {
+                    LOGGER.log(Level.WARNING, "connect - shard {} cannot connect to {}: {}", shard, address, cause.getLocalizedMessage());
+                    lastError = cause;
+                }
+            }
+            if (null != lastError) {
+                shards = clients.toArray(new Mqtt3Client[0]);
+                return new IeApiResponse<>(null, lastError);
+            }
+        }
+        shards = clients.toArray(new Mqtt3Client[0]);
+        return IeApiResponse.TRUE;
+    }
+
+    /**
+     * @return the connected clients, e.g. to {@link HiveMqttConsumptionEngine#register(Mqtt3Client)} each of them
+     */
+    @NotNull
+    public synchronized List<Mqtt3Client> getClients() { return Collections.unmodifiableList(new ArrayList<>(clients)); }
+
+    @NotNull
+    public IeAddressSelector getAddressSelector() { return addressSelector; }
+
+    /**
+     * @return the client that publishes to {@code topic}, always the same one while the shard count does not change
+     */
+    @NotNull
+    public Mqtt3Client clientFor(@NotNull final String topic) {
+        final Mqtt3Client[] theShards = shards;
+        if (0 == theShards.length) { throw new IllegalStateException("not connected"); }
+        return theShards[(topic.hashCode() & Integer.MAX_VALUE) % theShards.length];
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> publish(@NotNull final Mqtt3Publish publish) {
+        try {
+            return new IeApiResponse<>(
+                    new HiveMqttHelper.Mqtt3ClientPublishCallable(clientFor(publish.getTopic().toString()), publish).call(), null);
+        }
+        catch (IeRuntimeException cause) {
+            return new IeApiResponse<>(null, cause);
+        }
+    }
+
+    public synchronized void disconnect() {
+        shards = new Mqtt3Client[0];
+        for (int i = 0; i < clients.size(); i++) {
+            try {
+                new HiveMqttHelper.Mqtt3ClientDisconnectionCallable(clients.get(i)).call();
+            }
+            catch (IeRuntimeException cause) {
+                LOGGER.log(Level.WARNING, "disconnect - shard {}: {}", i, cause.getLocalizedMessage());
+            }
+            addressSelector.released(nodeIndexes.get(i));
+        }
+        clients.clear();
+        nodeIndexes.clear();
+    }
+}
@@ -0,0 +1,52 @@
+package programs;
+
+import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Handles publishes in parallel while keeping them in order per key, e.g. per device via {@link #byTopicLevel(int)}:
+ * an {@link IeStripedExecutor} hashes the key onto one of {@code laneCount} single-threaded lanes.
+ * The client acks QoS 1/2 publishes itself, so unlike {@link RabbitMqStripedDispatcher} no ack tracking is needed.
+ * Publishes must reach it in order, so register it with a single-worker {@link HiveMqttConsumptionEngine}.
+ */
+public final class HiveMqttStripedHandler implements HiveMqttConsumptionEngine.PublishHandler {
+
+    private final IeStripedExecutor.KeyExtractor<Mqtt3Publish> keyExtractor;
+    private final IeStripedExecutor<Mqtt3Publish> lanes;
+
+    public HiveMqttStripedHandler(
+            @NotNull final HiveMqttConsumptionEngine.PublishHandler publishHandler,
+            @NotNull final IeStripedExecutor.KeyExtractor<Mqtt3Publish> keyExtractor,
+            final int laneCount,
+            final int laneCapacity) {
+        this.keyExtractor = keyExtractor;
+        this.lanes = new IeStripedExecutor<>(
+                "HiveMqttStripedHandler", (lane, publish) -> publishHandler.onPublish(publish), laneCount, laneCapacity);
+    }
+
+    /**
+     * @return the topic level at {@code index}, e.g. 1 for the device id of {@code devices/<id>/telemetry};
+     *         null for topics that are shorter
+     */
+    @NotNull
+    public static IeStripedExecutor.KeyExtractor<Mqtt3Publish> byTopicLevel(final int index) {
+        return publish -> {
+            final List<String> levels = publish.getTopic().getLevels();
+            return (index < levels.size()) ? levels.get(index) : null;
+        };
+    }
+
+    public void start() { lanes.start(); }
+
+    /**
+     * @return the number of publishes that were queued but never handled
+     */
+    public int stop() { return lanes.stop().size(); }
+
+    @Override
+    public void onPublish(@NotNull final Mqtt3Publish publish) throws Exception {
+        lanes.submit(keyExtractor.keyOf(publish), publish);
+    }
+}
@@ -0,0 +1,312 @@
+package programs;
+
+import com.hivemq.client.mqtt.datatypes.MqttQos;
+import com.hivemq.client.mqtt.datatypes.MqttTopicFilter;
+import com.hivemq.client.mqtt.lifecycle.MqttClientConnectedContext;
+import com.hivemq.client.mqtt.lifecycle.MqttClientConnectedListener;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3AsyncClient;
+import com.hivemq.client.mqtt.mqtt3.Mqtt3Client;
+import com.hivemq.client.mqtt.mqtt3.lifecycle.Mqtt3ClientConnectedContext;
+import com.hivemq.client.mqtt.mqtt3.message.subscribe.Mqtt3Subscribe;
+import com.hivemq.client.mqtt.mqtt3.message.subscribe.Mqtt3Subscription;
+import com.hivemq.client.mqtt.mqtt3.message.subscribe.suback.Mqtt3SubAck;
+import com.hivemq.client.mqtt.mqtt3.message.subscribe.suback.Mqtt3SubAckReturnCode;
+import com.hivemq.client.mqtt.mqtt3.message.unsubscribe.Mqtt3Unsubscribe;
+import org.jetbrains.annotations.NotNull;
+import programs.metrics.IeMetrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+
+/**
+ * Keeps the desired topic filters and QoS levels of one client and reconciles them with what the broker acknowledged:
+ * {@link #sync(long)} diffs both sets and sends the difference as SUBSCRIBE / UNSUBSCRIBE packets of up to
+ * {@code maxFiltersPerPacket} filters each, with up to {@code maxInFlightPackets} of them pipelined on the connection
+ * instead of one blocking round-trip per filter.
+ * <p>
+ * Registered as the client's connected listener, it resyncs after every reconnect, and resubscribes everything when
+ * the broker did not keep the session. Since the listener is needed to build the client, create the manager first
+ * and {@link #bind(Mqtt3Client)} it to the built client before connecting:
+ * <pre>
+ * final HiveMqttSubscriptionManager subscriptionManager = new HiveMqttSubscriptionManager();
+ * subscriptionManager.bind(new HiveMqttHelper.BuildMqtt3ClientCallable(clientConfig, subscriptionManager).call());
+ * </pre>
+ */
+public final class HiveMqttSubscriptionManager implements MqttClientConnectedListener {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("HiveMqttSubscriptionManager");
+
+    private static final IeMetrics.Timer SYNC_TIMER = IeMetrics.getDefault().timer("mqtt", "subscription_sync");
+    private static final IeMetrics.Timer SUBSCRIBE_BATCH_TIMER = IeMetrics.getDefault().timer("mqtt", "subscribe_batch");
+    private static final IeMetrics.Timer UNSUBSCRIBE_BATCH_TIMER = IeMetrics.getDefault().timer("mqtt", "unsubscribe_batch");
+
+    private final byte[] lock = new byte[0];
+    private final byte[] syncLock = new byte[0];
+    private final Map<String, MqttQos> desiredFilters = new HashMap<>();
+    // what the broker acknowledged; guarded by itself, since SUBACKs update it on the client thread
+    private final Map<String, MqttQos> subscribedFilters = new HashMap<>();
+    private final ExecutorService resyncExecutor = Executors.newSingleThreadExecutor();
+    private final int maxFiltersPerPacket;
+    private final int maxInFlightPackets;
+    private final long resyncTimeoutMillis;
+    private volatile Mqtt3AsyncClient client;
+
+    public HiveMqttSubscriptionManager() {
+        this(500, 8, 30000L);
+    }
+
+    /**
+     * @param resyncTimeoutMillis bounds each {@link #sync(long)} run after a reconnect
+     */
+    public HiveMqttSubscriptionManager(final int maxFiltersPerPacket, final int maxInFlightPackets, final long resyncTimeoutMillis) {
+        this.maxFiltersPerPacket = Math.max(1, maxFiltersPerPacket);
+        this.maxInFlightPackets = Math.max(1, maxInFlightPackets);
+        this.resyncTimeoutMillis = Math.max(1L, resyncTimeoutMillis);
+    }
+
+    /**
+     * Same as {@link #HiveMqttSubscriptionManager()} followed by {@link #bind(Mqtt3Client)},
+     * for a client that does not notify this manager of its connects.
+     */
+    public HiveMqttSubscriptionManager(@NotNull final Mqtt3Client client) {
+        this();
+        bind(client);
+    }
+
+    /**
+     * Sets the client the filters are subscribed on; {@link #sync(long)} fails and reconnects are ignored until then.
+     */
+    public void bind(@NotNull final Mqtt3Client client) { this.client = client.toAsync(); }
+
+    public void put(@NotNull final String topicFilter, @NotNull final MqttQos qos) {
+        synchronized (lock) {
+            desiredFilters.put(topicFilter, qos);
+        }
+    }
+
+    public void remove(@NotNull final String topicFilter) {
+        synchronized (lock) {
+            desiredFilters.remove(topicFilter);
+        }
+    }
+
+    /**
+     * Replaces the whole desired set; filters missing from {@code topicFilters} are unsubscribed on the next sync.
+     */
+    public void setDesired(@NotNull final Map<String, MqttQos> topicFilters) {
+        synchronized (lock) {
+            desiredFilters.clear();
+            desiredFilters.putAll(topicFilters);
+        }
+    }
+
+    public int getSubscribedCount() {
+        synchronized (subscribedFilters) {
+            return subscribedFilters.size();
+        }
+    }
+
+    /**
+     * Sends the difference between the desired and the subscribed filters. Filters the broker rejected, and packets
+     * that failed or timed out, stay unsubscribed and are retried by the next sync.
+     *
+     * @return {@link AppConstants.HiveMqErrorCode#SUBSCRIBE_FAILURE} unless every difference was acknowledged in time
+     */
+    @NotNull
+    public IeApiResponse<Boolean> sync(final long timeoutMillis) {
+        final long startNanos = System.nanoTime();
+        final long deadlineNanos = startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, timeoutMillis));
+        final Mqtt3AsyncClient theClient = client;
+        if (null == theClient) {
+            return new IeApiResponse<>(null, IeRuntimeException.of(
+                    "no client bound", AppConstants.HiveMqErrorCode.SUBSCRIBE_FAILURE));
+        }
+        synchronized (syncLock) {
+            final Map<String, MqttQos> desired;
+            synchronized (lock) {
+                desired = new HashMap<>(desiredFilters);
+            }
+            final List<Mqtt3Subscription> toSubscribe = new ArrayList<>();
+            final List<MqttTopicFilter> toUnsubscribe = new ArrayList<>();
+            synchronized (subscribedFilters) {
+                for (final Map.Entry<String, MqttQos> entry : desired.entrySet()) {
+                    if (entry.getValue() != subscribedFilters.get(entry.getKey())) {
+                        toSubscribe.add(Mqtt3Subscription.builder().topicFilter(entry.getKey()).qos(entry.getValue()).build());
+                    }
+                }
+                for (final String topicFilter : subscribedFilters.keySet()) {
+                    if (!desired.containsKey(topicFilter)) { toUnsubscribe.add(MqttTopicFilter.of(topicFilter)); }
+                }
+            }
+            if (toSubscribe.isEmpty() && toUnsubscribe.isEmpty()) { return IeApiResponse.TRUE; }
+
+            final Semaphore inFlightPermits = new Semaphore(maxInFlightPackets);
+            final List<CompletableFuture<?>> packets = new ArrayList<>();
+            final boolean isSent = sendUnsubscribes(theClient, toUnsubscribe, inFlightPermits, deadlineNanos, packets)
+                    && sendSubscribes(theClient, toSubscribe, inFlightPermits, deadlineNanos, packets);
+            boolean isAcknowledged = false;
+            try {
+                CompletableFuture.allOf(packets.toArray(new CompletableFuture<?>[0]))
+                        .get(Math.max(0L, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                isAcknowledged = true;
+            }
+            catch (InterruptedException cause) {
+                Thread.currentThread().interrupt();
+            }
+            catch (TimeoutException cause) {
+                LOGGER.log(Level.SEVERE, "sync - timed out after {} ms", timeoutMillis);
+            }
+            catch (Exception cause) {
+                LOGGER.log(Level.SEVERE, "sync - error on subscribe/unsubscribe: {}", cause.getLocalizedMessage());
+            }
+
+            final int missingCount = countMissing(desired);
+            LOGGER.log(Level.INFO, "sync - subscribe: [{}], unsubscribe: [{}], still missing: [{}]",
+                    toSubscribe.size(), toUnsubscribe.size(), missingCount);
+            if (isSent && isAcknowledged && (0 == missingCount)) {
+                SYNC_TIMER.recordSuccess(startNanos);
+                return IeApiResponse.TRUE;
+            }
+            SYNC_TIMER.recordFailure(AppConstants.HiveMqErrorCode.SUBSCRIBE_FAILURE, startNanos);
+            return new IeApiResponse<>(null, IeRuntimeException.of(
+                    missingCount + " topic filters are not subscribed", AppConstants.HiveMqErrorCode.SUBSCRIBE_FAILURE));
+        }
+    }
+
+    /**
+     * Resyncs on a separate thread, since this runs on the client's event loop;
+     * when the broker did not keep the session, nothing is subscribed anymore.
+     */
+    @Override
+    public void onConnected(@NotNull final MqttClientConnectedContext context) {
+        if (null == client) {
+            LOGGER.log(Level.WARNING, "onConnected - no client bound, nothing to resync");
+            return;
+        }
+        final boolean isSessionPresent = (context instanceof Mqtt3ClientConnectedContext)
+                && ((Mqtt3ClientConnectedContext) context).getConnAck().isSessionPresent();
+        resyncExecutor.execute(() -> resync(isSessionPresent, resyncTimeoutMillis));
+    }
+
+    /**
+     * {@link #sync(long)} after a (re)connect, for callers that drive the resync themselves.
+     *
+     * @param isSessionPresent as in the CONNACK; when false, the broker dropped every subscription
+     */
+    @NotNull
+    public IeApiResponse<Boolean> resync(final boolean isSessionPresent, final long timeoutMillis) {
+        if (!isSessionPresent) {
+            synchronized (subscribedFilters) {
+                subscribedFilters.clear();
+            }
+        }
+        return sync(timeoutMillis);
+    }
+
+    public void close() { resyncExecutor.shutdownNow(); }
+
+    private int countMissing(@NotNull final Map<String, MqttQos> desired) {
+        int missingCount = 0;
+        synchronized (subscribedFilters) {
+            for (final Map.Entry<String, MqttQos> entry : desired.entrySet()) {
+                if (entry.getValue() != subscribedFilters.get(entry.getKey())) { missingCount++; }
+            }
+            for (final String topicFilter : subscribedFilters.keySet()) {
+                if (!desired.containsKey(topicFilter)) { missingCount++; }
+            }
+        }
+        return missingCount;
+    }
+
+    private boolean sendSubscribes(
+            @NotNull final Mqtt3AsyncClient client,
+            @NotNull final List<Mqtt3Subscription> subscriptions,
+            @NotNull final Semaphore inFlightPermits,
+            final long deadlineNanos,
+            @NotNull final List<CompletableFuture<?>> packets) {
+        for (int from = 0; from < subscriptions.size(); from += maxFiltersPerPacket) {
+            final List<Mqtt3Subscription> batch =
+                    subscriptions.subList(from, Math.min(subscriptions.size(), from + maxFiltersPerPacket));
+            if (!acquire(inFlightPermits, deadlineNanos)) { return false; }
+            final long startNanos = System.nanoTime();
+            packets.add(client.subscribe(Mqtt3Subscribe.builder().addSubscriptions(batch).build())
+                    .whenComplete((subAck, cause) -> {
+                        inFlightPermits.release();
+                        if (null != cause) {
+                            LOGGER.log(Level.SEVERE, "sendSubscribes - error on subscribe: {}", cause.getLocalizedMessage());
+                            SUBSCRIBE_BATCH_TIMER.recordFailure(AppConstants.HiveMqErrorCode.SUBSCRIBE_FAILURE, startNanos);
+                            return;
+                        }
+                        SUBSCRIBE_BATCH_TIMER.recordSuccess(startNanos);
+                        onSubAck(batch, subAck);
+                    }));
+        }
+        return true;
+    }
+
+    private void onSubAck(@NotNull final List<Mqtt3Subscription> batch, @NotNull final Mqtt3SubAck subAck) {
+        final List<Mqtt3SubAckReturnCode> returnCodes = subAck.getReturnCodes();
+        synchronized (subscribedFilters) {
+            for (int i = 0; i < batch.size(); i++) {
+                final Mqtt3Subscription subscription = batch.get(i);
+                final String topicFilter = subscription.getTopicFilter().toString();
+                if ( (i < returnCodes.size()) && !returnCodes.get(i).isError() ) {
+                    subscribedFilters.put(topicFilter, subscription.getQos());
+                }
+                else {
+                    LOGGER.log(Level.WARNING, "onSubAck - rejected topic filter: {}", topicFilter);
+                    subscribedFilters.remove(topicFilter);
+                }
+            }
+        }
+    }
+
+    private boolean sendUnsubscribes(
+            @NotNull final Mqtt3AsyncClient client,
+            @NotNull final List<MqttTopicFilter> topicFilters,
+            @NotNull final Semaphore inFlightPermits,
+            final long deadlineNanos,
+            @NotNull final List<CompletableFuture<?>> packets) {
+        for (int from = 0; from < topicFilters.size(); from += maxFiltersPerPacket) {
+            final List<MqttTopicFilter> batch =
+                    topicFilters.subList(from, Math.min(topicFilters.size(), from + maxFiltersPerPacket));
+            if (!acquire(inFlightPermits, deadlineNanos)) { return false; }
+            final long startNanos = System.nanoTime();
+            packets.add(client.unsubscribe(Mqtt3Unsubscribe.builder().addTopicFilters(batch).build())
+                    .whenComplete((ignored, cause) -> {
+                        inFlightPermits.release();
+                        if (null != cause) {
+                            LOGGER.log(Level.SEVERE, "sendUnsubscribes - error on unsubscribe: {}", cause.getLocalizedMessage());
+                            UNSUBSCRIBE_BATCH_TIMER.recordFailure(AppConstants.HiveMqErrorCode.SUBSCRIBE_FAILURE, startNanos);
+                            return;
+                        }
+                        UNSUBSCRIBE_BATCH_TIMER.recordSuccess(startNanos);
+                        synchronized (subscribedFilters) {
+                            for (final MqttTopicFilter topicFilter : batch) {
+                                subscribedFilters.remove(topicFilter.toString());
+                            }
+                        }
+                    }));
+        }
+        return true;
+    }
+
+    private static boolean acquire(@NotNull final Semaphore inFlightPermits, final long deadlineNanos) {
+        try {
+            return inFlightPermits.tryAcquire(Math.max(0L, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+        catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
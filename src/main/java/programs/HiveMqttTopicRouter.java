@@ -0,0 +1,239 @@
+package programs;
+
+import com.hivemq.client.mqtt.mqtt3.message.publish.Mqtt3Publish;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Routes every publish to the {@link HiveMqttConsumptionEngine.PublishHandler}s registered for MQTT topic filters
+ * matching its topic, with the {@code +} (one level) and {@code #} (this and all deeper levels) wildcards.
+ * <p>
+ * Filters are stored in a trie keyed by topic level, so a publish visits at most the literal, {@code +} and {@code #}
+ * child per level and matching costs O(topic depth) regardless of how many filters are registered.
+ * Lookups are lock-free; {@link #add} and {@link #remove} are serialized and publish their changes atomically per node.
+ * As in MQTT, filters starting with a wildcard do not match topics starting with {@code $}.
+ */
+public final class HiveMqttTopicRouter implements HiveMqttConsumptionEngine.PublishHandler {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("HiveMqttTopicRouter");
+    private static final IeLogger.Sampled UNROUTED_LOGGER = LOGGER.sampled(1000);
+
+    private static final String SINGLE_LEVEL_WILDCARD = "+";
+    private static final String MULTI_LEVEL_WILDCARD = "#";
+    private static final HiveMqttConsumptionEngine.PublishHandler[] NO_HANDLERS = new HiveMqttConsumptionEngine.PublishHandler[0];
+
+    private static final class Node {
+        final ConcurrentHashMap<String, Node> children = new ConcurrentHashMap<>();
+        // the wildcard children are looked up on every level, so they skip the map
+        volatile Node singleLevelChild;
+        volatile Node multiLevelChild;
+        volatile HiveMqttConsumptionEngine.PublishHandler[] handlers = NO_HANDLERS;
+
+        boolean isEmpty() {
+            return (0 == handlers.length) && children.isEmpty() && (null == singleLevelChild) && (null == multiLevelChild);
+        }
+    }
+
+    private final byte[] lock = new byte[0];
+    private final Node root = new Node();
+    private final HiveMqttConsumptionEngine.PublishHandler fallbackHandler;
+    private int filterCount = 0;
+
+    public HiveMqttTopicRouter() { this(null); }
+
+    /**
+     * @param fallbackHandler receives the publishes no filter matches; null drops them
+     */
+    public HiveMqttTopicRouter(@Nullable final HiveMqttConsumptionEngine.PublishHandler fallbackHandler) {
+        this.fallbackHandler = fallbackHandler;
+    }
+
+    public int getFilterCount() {
+        synchronized (lock) {
+            return filterCount;
+        }
+    }
+
+    /**
+     * @return false if {@code handler} was already registered for {@code topicFilter}
+     * @throws IeRuntimeException {@link AppConstants.HiveMqErrorCode#INVALID_TOPIC_FILTER} if the filter is malformed
+     */
+    public boolean add(@NotNull final String topicFilter, @NotNull final HiveMqttConsumptionEngine.PublishHandler handler)
+            throws IeRuntimeException {
+        final String[] levels = splitFilter(topicFilter);
+        synchronized (lock) {
+            Node node = root;
+            for (final String level : levels) {
+                node = childOrCreate(node, level);
+            }
+            final HiveMqttConsumptionEngine.PublishHandler[] handlers = node.handlers;
+            for (final HiveMqttConsumptionEngine.PublishHandler registered : handlers) {
+                if (registered == handler) { return false; }
+            }
+            final HiveMqttConsumptionEngine.PublishHandler[] newHandlers = Arrays.copyOf(handlers, handlers.length + 1);
+            newHandlers[handlers.length] = handler;
+            node.handlers = newHandlers;
+            if (0 == handlers.length) { filterCount++; }
+        }
+        LOGGER.log(Level.FINE, "add - topicFilter: {}", topicFilter);
+        return true;
+    }
+
+    /**
+     * @return false if {@code handler} was not registered for {@code topicFilter}
+     */
+    public boolean remove(@NotNull final String topicFilter, @NotNull final HiveMqttConsumptionEngine.PublishHandler handler)
+            throws IeRuntimeException {
+        final String[] levels = splitFilter(topicFilter);
+        synchronized (lock) {
+            final Node[] path = new Node[levels.length + 1];
+            path[0] = root;
+            for (int i = 0; i < levels.length; i++) {
+                path[i + 1] = child(path[i], levels[i]);
+                if (null == path[i + 1]) { return false; }
+            }
+            final Node node = path[levels.length];
+            final HiveMqttConsumptionEngine.PublishHandler[] handlers = node.handlers;
+            int index = -1;
+            for (int i = 0; i < handlers.length; i++) {
+                if (handlers[i] == handler) { index = i; break; }
+            }
+            if (index < 0) { return false; }
+            final HiveMqttConsumptionEngine.PublishHandler[] newHandlers = new HiveMqttConsumptionEngine.PublishHandler[handlers.length - 1];
+            System.arraycopy(handlers, 0, newHandlers, 0, index);
+            System.arraycopy(handlers, index + 1, newHandlers, index, handlers.length - index - 1);
+            node.handlers = (0 == newHandlers.length) ? NO_HANDLERS : newHandlers;
+            if (0 == newHandlers.length) { filterCount--; }
+
+            // prune the nodes left without handlers or children, deepest first
+            for (int i = levels.length; (i > 0) && path[i].isEmpty(); i--) {
+                removeChild(path[i - 1], levels[i - 1]);
+            }
+        }
+        LOGGER.log(Level.FINE, "remove - topicFilter: {}", topicFilter);
+        return true;
+    }
+
+    /**
+     * @return every handler whose filter matches {@code topic}, each once, in no particular order
+     */
+    @NotNull
+    public List<HiveMqttConsumptionEngine.PublishHandler> match(@NotNull final String topic) {
+        final List<HiveMqttConsumptionEngine.PublishHandler> matched = new ArrayList<>(4);
+        collect(root, topic, 0, !topic.startsWith("$"), matched);
+        return matched;
+    }
+
+    /**
+     * Hands {@code publish} to every matching handler; one failing handler does not keep it from the others,
+     * the first failure is rethrown once all of them ran.
+     */
+    @Override
+    public void onPublish(@NotNull final Mqtt3Publish publish) throws Exception {
+        final String topic = publish.getTopic().toString();
+        final List<HiveMqttConsumptionEngine.PublishHandler> matched = match(topic);
+        if (matched.isEmpty()) {
+            if (null != fallbackHandler) {
+                fallbackHandler.onPublish(publish);
+            }
+            else {
+                UNROUTED_LOGGER.log(Level.WARNING, "onPublish - no handler for topic: {}", topic);
+            }
+            return;
+        }
+        Exception firstFailure = null;
+        for (final HiveMqttConsumptionEngine.PublishHandler handler : matched) {
+            try {
+                handler.onPublish(publish);
+            }
+            catch (Exception cause) {
+                LOGGER.log(Level.SEVERE, "onPublish - error on PublishHandler#onPublish() for topic {}: {}", topic, cause.getLocalizedMessage());
+                if (null == firstFailure) { firstFailure = cause; }
+            }
+        }
+        if (null != firstFailure) { throw firstFailure; }
+    }
+
+    /**
+     * @param start            index of the first character of the current level in {@code topic}
+     * @param matchesWildcards false on the first level of a {@code $} topic
+     */
+    private static void collect(
+            @NotNull final Node node,
+            @NotNull final String topic,
+            final int start,
+            final boolean matchesWildcards,
+            @NotNull final List<HiveMqttConsumptionEngine.PublishHandler> matched) {
+        // "a/#" also matches "a", so the multi-level child is visited before consuming a level
+        final Node multiLevelChild = node.multiLevelChild;
+        if ( (null != multiLevelChild) && matchesWildcards ) { addAll(multiLevelChild.handlers, matched); }
+        if (start > topic.length()) {
+            addAll(node.handlers, matched);
+            return;
+        }
+
+        int end = topic.indexOf('/', start);
+        if (end < 0) { end = topic.length(); }
+        final Node literalChild = node.children.isEmpty() ? null : node.children.get(topic.substring(start, end));
+        if (null != literalChild) { collect(literalChild, topic, end + 1, true, matched); }
+        final Node singleLevelChild = node.singleLevelChild;
+        if ( (null != singleLevelChild) && matchesWildcards ) { collect(singleLevelChild, topic, end + 1, true, matched); }
+    }
+
+    private static void addAll(
+            @NotNull final HiveMqttConsumptionEngine.PublishHandler[] handlers,
+            @NotNull final List<HiveMqttConsumptionEngine.PublishHandler> matched) {
+        for (final HiveMqttConsumptionEngine.PublishHandler handler : handlers) {
+            // a handler registered under overlapping filters still gets the publish once
+            if (!matched.contains(handler)) { matched.add(handler); }
+        }
+    }
+
+    @Nullable
+    private static Node child(@NotNull final Node node, @NotNull final String level) {
+        if (SINGLE_LEVEL_WILDCARD.equals(level)) { return node.singleLevelChild; }
+        if (MULTI_LEVEL_WILDCARD.equals(level)) { return node.multiLevelChild; }
+        return node.children.get(level);
+    }
+
+    @NotNull
+    private static Node childOrCreate(@NotNull final Node node, @NotNull final String level) {
+        final Node child = child(node, level);
+        if (null != child) { return child; }
+        final Node newChild = new Node();
+        if (SINGLE_LEVEL_WILDCARD.equals(level)) { node.singleLevelChild = newChild; }
+        else if (MULTI_LEVEL_WILDCARD.equals(level)) { node.multiLevelChild = newChild; }
+        else { node.children.put(level, newChild); }
+        return newChild;
+    }
+
+    private static void removeChild(@NotNull final Node node, @NotNull final String level) {
+        if (SINGLE_LEVEL_WILDCARD.equals(level)) { node.singleLevelChild = null; }
+        else if (MULTI_LEVEL_WILDCARD.equals(level)) { node.multiLevelChild = null; }
+        else { node.children.remove(level); }
+    }
+
+    @NotNull
+    private static String[] splitFilter(@NotNull final String topicFilter) throws IeRuntimeException {
+        if (topicFilter.isEmpty()) {
+            throw new IeRuntimeException("empty topic filter", AppConstants.HiveMqErrorCode.INVALID_TOPIC_FILTER);
+        }
+        final String[] levels = topicFilter.split("/", -1);
+        for (int i = 0; i < levels.length; i++) {
+            final String level = levels[i];
+            final boolean isMultiLevel = MULTI_LEVEL_WILDCARD.equals(level);
+            if ( (isMultiLevel && (i != levels.length - 1))
+                    || (!isMultiLevel && level.contains(MULTI_LEVEL_WILDCARD))
+                    || (!SINGLE_LEVEL_WILDCARD.equals(level) && level.contains(SINGLE_LEVEL_WILDCARD)) ) {
+                throw new IeRuntimeException("invalid topic filter: " + topicFilter, AppConstants.HiveMqErrorCode.INVALID_TOPIC_FILTER);
+            }
+        }
+        return levels;
+    }
+}
@@ -0,0 +1,99 @@
+package programs;
+
+import org.jetbrains.annotations.NotNull;
+import programs.models.IeAddress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Picks the broker node of a cluster that the next connection goes to, so the connections of one process,
+ * and the traffic on them, are spread over all nodes instead of landing on the first one.
+ * Callers report the connections they open and close via {@link #acquired(int)} / {@link #released(int)},
+ * which {@link Policy#LEAST_CONNECTIONS} selects by.
+ */
+public final class IeAddressSelector {
+
+    public enum Policy {
+        ROUND_ROBIN,
+        RANDOM,
+        LEAST_CONNECTIONS
+    }
+
+    private final List<IeAddress> addresses;
+    private final Policy policy;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+    private final AtomicIntegerArray connectionCounts;
+
+    public IeAddressSelector(@NotNull final List<IeAddress> addresses, @NotNull final Policy policy) {
+        if (addresses.isEmpty()) { throw new IllegalArgumentException("no addresses"); }
+        this.addresses = Collections.unmodifiableList(new ArrayList<>(addresses));
+        this.policy = policy;
+        this.connectionCounts = new AtomicIntegerArray(addresses.size());
+    }
+
+    @NotNull
+    public List<IeAddress> getAddresses() { return addresses; }
+
+    @NotNull
+    public Policy getPolicy() { return policy; }
+
+    /**
+     * @return the index of the address the next connection should go to
+     */
+    public int select() {
+        final int size = addresses.size();
+        if (1 == size) { return 0; }
+        switch (policy) {
+            case RANDOM:
+                return ThreadLocalRandom.current().nextInt(size);
+            case LEAST_CONNECTIONS: {
+                // start the scan at a rotating index, so ties are spread instead of always going to the first node
+                final int start = (nextIndex.getAndIncrement() & Integer.MAX_VALUE) % size;
+                int selected = start;
+                for (int i = 1; i < size; i++) {
+                    final int index = (start + i) % size;
+                    if (connectionCounts.get(index) < connectionCounts.get(selected)) { selected = index; }
+                }
+                return selected;
+            }
+            case ROUND_ROBIN:
+            default:
+                return (nextIndex.getAndIncrement() & Integer.MAX_VALUE) % size;
+        }
+    }
+
+    /**
+     * @return every address, starting at {@code index}, as the order to fail over in
+     */
+    @NotNull
+    public List<IeAddress> failoverOrder(final int index) {
+        final int size = addresses.size();
+        final List<IeAddress> ordered = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ordered.add(addresses.get((index + i) % size));
+        }
+        return ordered;
+    }
+
+    /**
+     * @return the index of the address, or -1 if it is not in the list
+     */
+    public int indexOf(@NotNull final String hostName, final int portNumber) {
+        for (int i = 0; i < addresses.size(); i++) {
+            final IeAddress address = addresses.get(i);
+            if ( (address.portNumber == portNumber) && address.hostName.equalsIgnoreCase(hostName) ) { return i; }
+        }
+        return -1;
+    }
+
+    public void acquired(final int index) { connectionCounts.incrementAndGet(index); }
+
+    public void released(final int index) { connectionCounts.decrementAndGet(index); }
+
+    public int getConnectionCount(final int index) { return connectionCounts.get(index); }
+}
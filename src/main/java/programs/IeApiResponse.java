@@ -6,6 +6,9 @@ import org.jetbrains.annotations.Nullable;
 
 public final class IeApiResponse<T>  {
 
+    /** Shared by every successful call that only reports {@code true}. */
+    public static final IeApiResponse<Boolean> TRUE = new IeApiResponse<>(true, null);
+
     @Nullable
     public final T result;
 
@@ -0,0 +1,42 @@
+package programs;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with "equal jitter": the ceiling doubles per attempt from {@code initialDelayMillis} up to
+ * {@code maxDelayMillis}, and each delay is drawn from the upper half of it. The first retry therefore comes after a
+ * fraction of a second, while the clients of a restarted broker do not all come back in the same instant.
+ * <p>
+ * Used as the {@link com.rabbitmq.client.RecoveryDelayHandler} of {@link RabbitMqHelper.ConnectionFactoryBuilder}
+ * and by {@link RabbitMqFailoverConnection} and {@link HiveMqttFailoverClient}.
+ */
+public final class IeBackoff {
+
+    private final long initialDelayMillis;
+    private final long maxDelayMillis;
+
+    public IeBackoff() { this(100L, 10000L); }
+
+    public IeBackoff(final long initialDelayMillis, final long maxDelayMillis) {
+        this.initialDelayMillis = Math.max(1L, initialDelayMillis);
+        this.maxDelayMillis = Math.max(this.initialDelayMillis, maxDelayMillis);
+    }
+
+    public long getInitialDelayMillis() { return initialDelayMillis; }
+
+    public long getMaxDelayMillis() { return maxDelayMillis; }
+
+    /**
+     * @param attempt 0 for the first retry
+     */
+    public long delayMillis(final int attempt) {
+        // stop shifting once the ceiling is reached, so large attempt counts cannot overflow
+        long ceiling = initialDelayMillis;
+        for (int i = 0; (i < attempt) && (ceiling < maxDelayMillis); i++) {
+            ceiling <<= 1;
+        }
+        ceiling = Math.min(ceiling, maxDelayMillis);
+        final long half = ceiling >> 1;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1L);
+    }
+}
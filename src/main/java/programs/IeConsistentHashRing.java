@@ -0,0 +1,108 @@
+package programs;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Maps keys onto a changing set of nodes so that adding or removing one of N nodes moves only about 1/N of the keys.
+ * Every node is placed on a 64-bit ring at {@code virtualNodeCount} points, which evens out the share of each node;
+ * a key belongs to the first point at or after its own hash. Lookups binary-search an immutable snapshot and never
+ * lock; {@link #add} and {@link #remove} rebuild it.
+ */
+public final class IeConsistentHashRing {
+
+    private static final class Snapshot {
+        final long[] points;
+        final String[] owners;
+
+        Snapshot(@NotNull final long[] points, @NotNull final String[] owners) {
+            this.points = points;
+            this.owners = owners;
+        }
+    }
+
+    private final int virtualNodeCount;
+    private final Set<String> nodes = new LinkedHashSet<>();
+    private volatile Snapshot snapshot = new Snapshot(new long[0], new String[0]);
+
+    public IeConsistentHashRing() { this(128); }
+
+    public IeConsistentHashRing(final int virtualNodeCount) { this.virtualNodeCount = Math.max(1, virtualNodeCount); }
+
+    /**
+     * @return false if {@code node} was on the ring already
+     */
+    public synchronized boolean add(@NotNull final String node) {
+        if (!nodes.add(node)) { return false; }
+        rebuild();
+        return true;
+    }
+
+    /**
+     * @return false if {@code node} was not on the ring
+     */
+    public synchronized boolean remove(@NotNull final String node) {
+        if (!nodes.remove(node)) { return false; }
+        rebuild();
+        return true;
+    }
+
+    @NotNull
+    public synchronized List<String> getNodes() { return new ArrayList<>(nodes); }
+
+    public int size() { return snapshot.owners.length / virtualNodeCount; }
+
+    /**
+     * @return the node {@code key} belongs to, null while the ring is empty
+     */
+    @Nullable
+    public String nodeFor(@NotNull final CharSequence key) {
+        final Snapshot theSnapshot = snapshot;
+        if (0 == theSnapshot.points.length) { return null; }
+        int index = Arrays.binarySearch(theSnapshot.points, hash(key));
+        if (index < 0) { index = -index - 1; }
+        return theSnapshot.owners[(index == theSnapshot.points.length) ? 0 : index];
+    }
+
+    /** FNV-1a with the MurmurHash3 finalizer, so that similar keys such as {@code node#1} and {@code node#2} spread. */
+    public static long hash(@NotNull final CharSequence key) {
+        long value = IeDeduplicator.hash(key);
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+    private void rebuild() {
+        final int size = nodes.size() * virtualNodeCount;
+        final long[] hashes = new long[size];
+        final String[] hashOwners = new String[size];
+        int i = 0;
+        for (final String node : nodes) {
+            for (int virtualNode = 0; virtualNode < virtualNodeCount; virtualNode++) {
+                hashes[i] = hash(node + "#" + virtualNode);
+                hashOwners[i] = node;
+                i++;
+            }
+        }
+        // sort the points and carry their owners along
+        final Integer[] order = new Integer[size];
+        for (int j = 0; j < size; j++) { order[j] = j; }
+        Arrays.sort(order, (left, right) -> Long.compare(hashes[left], hashes[right]));
+        final long[] points = new long[size];
+        final String[] owners = new String[size];
+        for (int j = 0; j < size; j++) {
+            points[j] = hashes[order[j]];
+            owners[j] = hashOwners[order[j]];
+        }
+        snapshot = new Snapshot(points, owners);
+    }
+}
@@ -0,0 +1,268 @@
+package programs;
+
+import org.jetbrains.annotations.NotNull;
+import programs.metrics.IeMetrics;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the 64-bit keys of recently handled messages, so that an at-least-once consumer drops the duplicates
+ * a QoS 1 redelivery or an AMQP requeue produces, which gives effectively-once handling without QoS 2's four-packet
+ * handshake.
+ * <p>
+ * A key is only recorded once its message was handled: {@link #begin(long, long)} marks it in flight,
+ * {@link #complete(long)} records it and {@link #abort(long)} releases it for a redelivery. A copy that arrives while
+ * the original is in flight waits for it to settle, instead of being dropped for a message that may still fail.
+ * <p>
+ * Keys live in two generations of a primitive open-addressing hash set that rotate every {@code windowMillis}, or as
+ * soon as the current one holds {@code maxKeysPerWindow} keys, so a key is remembered for one to two windows and memory
+ * stays bounded. With {@code isBloomFronted} each generation also gets a Bloom filter that answers the common
+ * "never seen" case without probing the sets; the sets stay authoritative, so it never drops a new message.
+ * <p>
+ * Exports {@code ie_dedup_checked_total} and {@code ie_dedup_dropped_total}.
+ */
+public final class IeDeduplicator {
+
+    /**
+     * Derives the deduplication key of a message, e.g. a hash of an application-level message id.
+     */
+    public interface KeyExtractor<M> {
+        /**
+         * @return the key, or {@link #NO_KEY} for a message that carries no id and must not be deduplicated
+         */
+        long keyOf(@NotNull final M message);
+    }
+
+    public enum Verdict {
+        /** not seen before; now in flight until {@link #complete(long)} or {@link #abort(long)} */
+        FIRST,
+        /** already handled within the window */
+        DUPLICATE,
+        /** the original was still in flight when the wait ended */
+        IN_FLIGHT
+    }
+
+    public static final long NO_KEY = Long.MIN_VALUE;
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final byte[] lock = new byte[0];
+    private final long windowNanos;
+    private final int maxKeysPerWindow;
+    private final LongAdder checkedCount;
+    private final LongAdder droppedCount;
+    // keys of messages being handled; few, bounded by the consumers' concurrency, so a scan beats hashing
+    private long[] inFlightKeys = new long[16];
+    private int inFlightCount = 0;
+    private Generation current;
+    private Generation previous;
+    private long currentStartNanos;
+
+    public IeDeduplicator(@NotNull final String name) { this(name, 60000L, 100000, false); }
+
+    /**
+     * @param name label of the exported metrics
+     */
+    public IeDeduplicator(
+            @NotNull final String name, final long windowMillis, final int maxKeysPerWindow, final boolean isBloomFronted) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, windowMillis));
+        this.maxKeysPerWindow = Math.max(1, maxKeysPerWindow);
+        this.current = new Generation(this.maxKeysPerWindow, isBloomFronted);
+        this.previous = new Generation(this.maxKeysPerWindow, isBloomFronted);
+        this.currentStartNanos = System.nanoTime();
+        final IeMetrics metrics = IeMetrics.getDefault();
+        final String labels = "name=\"" + name + "\"";
+        this.checkedCount = metrics.counter("ie_dedup_checked_total", labels);
+        this.droppedCount = metrics.counter("ie_dedup_dropped_total", labels);
+    }
+
+    /**
+     * Marks {@code key} in flight unless it was handled within the window. While another message with the same key
+     * is in flight, waits up to {@code waitMillis} for it to be completed or aborted.
+     */
+    @NotNull
+    public Verdict begin(final long key, final long waitMillis) throws InterruptedException {
+        checkedCount.increment();
+        synchronized (lock) {
+            final long deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, waitMillis));
+            for (long remainingNanos; indexOfInFlightLocked(key) >= 0; ) {
+                remainingNanos = deadlineNanos - System.nanoTime();
+                if (remainingNanos <= 0L) { return Verdict.IN_FLIGHT; }
+                TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+            }
+            if (isHandledLocked(key, System.nanoTime())) {
+                droppedCount.increment();
+                return Verdict.DUPLICATE;
+            }
+            if (inFlightCount == inFlightKeys.length) { inFlightKeys = Arrays.copyOf(inFlightKeys, inFlightCount << 1); }
+            inFlightKeys[inFlightCount++] = key;
+            return Verdict.FIRST;
+        }
+    }
+
+    /**
+     * Records the in-flight {@code key} as handled, so later copies are duplicates.
+     */
+    public void complete(final long key) {
+        synchronized (lock) {
+            removeInFlightLocked(key);
+            final long nowNanos = System.nanoTime();
+            if (current.size() >= maxKeysPerWindow) { rotate(nowNanos); }
+            current.add(key);
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Releases the in-flight {@code key} without recording it, so that a redelivery of a message whose handling failed
+     * is handled again.
+     */
+    public void abort(final long key) {
+        synchronized (lock) {
+            removeInFlightLocked(key);
+            lock.notifyAll();
+        }
+    }
+
+    private int indexOfInFlightLocked(final long key) {
+        for (int i = 0; i < inFlightCount; i++) {
+            if (key == inFlightKeys[i]) { return i; }
+        }
+        return -1;
+    }
+
+    private void removeInFlightLocked(final long key) {
+        final int index = indexOfInFlightLocked(key);
+        if (index < 0) { return; }
+        inFlightKeys[index] = inFlightKeys[--inFlightCount];
+    }
+
+    private boolean isHandledLocked(final long key, final long nowNanos) {
+        if (nowNanos - currentStartNanos >= windowNanos) {
+            // after two idle windows the previous generation is stale as well
+            if (nowNanos - currentStartNanos >= 2 * windowNanos) { current.clear(); }
+            rotate(nowNanos);
+        }
+        return current.contains(key) || previous.contains(key);
+    }
+
+    private void rotate(final long nowNanos) {
+        final Generation oldest = previous;
+        oldest.clear();
+        previous = current;
+        current = oldest;
+        currentStartNanos = nowNanos;
+    }
+
+    ///
+
+    /** 64-bit FNV-1a of the remaining bytes, continuing from {@code hash}. */
+    public static long hash(final long hash, @NotNull final ByteBuffer bytes) {
+        long value = hash;
+        for (int i = bytes.position(); i < bytes.limit(); i++) {
+            value = (value ^ (bytes.get(i) & 0xFF)) * FNV_PRIME;
+        }
+        return value;
+    }
+
+    /** 64-bit FNV-1a of the UTF-16 code units of {@code chars}, continuing from {@code hash}. */
+    public static long hash(final long hash, @NotNull final CharSequence chars) {
+        long value = hash;
+        for (int i = 0; i < chars.length(); i++) {
+            final char c = chars.charAt(i);
+            value = (value ^ (c & 0xFF)) * FNV_PRIME;
+            value = (value ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return value;
+    }
+
+    public static long hash(@NotNull final CharSequence chars) { return hash(FNV_OFFSET_BASIS, chars); }
+
+    public static long hash(@NotNull final ByteBuffer bytes) { return hash(FNV_OFFSET_BASIS, bytes); }
+
+    // spreads FNV's weak low bits before they pick a slot or a Bloom bit
+    private static long mix(final long key) {
+        long value = key * 0x9E3779B97F4A7C15L;
+        value ^= value >>> 32;
+        return value;
+    }
+
+    private static final class Generation {
+        private static final long EMPTY = 0L;
+
+        // linear probing at a load factor of at most 1/2; 0 marks a free slot and is tracked by hasZero
+        private final long[] slots;
+        private final int mask;
+        private final long[] bloomBits;
+        private final int bloomMask;
+        private boolean hasZero = false;
+        private int size = 0;
+
+        Generation(final int maxKeys, final boolean isBloomFronted) {
+            final int capacity = Integer.highestOneBit(Math.max(2, maxKeys - 1)) << 2;
+            this.slots = new long[capacity];
+            this.mask = capacity - 1;
+            // at least 16 bits per key keeps the false positive rate of 3 hashes under 0.5%
+            this.bloomBits = isBloomFronted ? new long[capacity >>> 3] : null;
+            this.bloomMask = isBloomFronted ? ((capacity << 3) - 1) : 0;
+        }
+
+        int size() { return size; }
+
+        boolean contains(final long key) {
+            if (EMPTY == key) { return hasZero; }
+            final long mixed = mix(key);
+            if ( (null != bloomBits) && !mightContain(mixed) ) { return false; }
+            for (int slot = (int) mixed & mask; ; slot = (slot + 1) & mask) {
+                final long value = slots[slot];
+                if (EMPTY == value) { return false; }
+                if (key == value) { return true; }
+            }
+        }
+
+        void add(final long key) {
+            if (EMPTY == key) {
+                if (!hasZero) { hasZero = true; size++; }
+                return;
+            }
+            final long mixed = mix(key);
+            int slot = (int) mixed & mask;
+            for (long value; EMPTY != (value = slots[slot]); slot = (slot + 1) & mask) {
+                if (key == value) { return; }
+            }
+            slots[slot] = key;
+            size++;
+            if (null != bloomBits) {
+                setBloomBit((int) mixed);
+                setBloomBit((int) (mixed >>> 21));
+                setBloomBit((int) (mixed >>> 42));
+            }
+        }
+
+        void clear() {
+            if (0 == size) { return; }
+            Arrays.fill(slots, EMPTY);
+            if (null != bloomBits) { Arrays.fill(bloomBits, 0L); }
+            hasZero = false;
+            size = 0;
+        }
+
+        private boolean mightContain(final long mixed) {
+            return isBloomBitSet((int) mixed) && isBloomBitSet((int) (mixed >>> 21)) && isBloomBitSet((int) (mixed >>> 42));
+        }
+
+        private void setBloomBit(final int hash) {
+            final int bit = hash & bloomMask;
+            bloomBits[bit >>> 6] |= 1L << bit;
+        }
+
+        private boolean isBloomBitSet(final int hash) {
+            final int bit = hash & bloomMask;
+            return (bloomBits[bit >>> 6] & (1L << bit)) != 0L;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package programs;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Thin facade over java.util.logging for hot paths: loggers are looked up once and cached,
+ * the level is checked before anything is formatted, and messages take {@code {}} placeholders
+ * that are only filled in when the record is actually logged.
+ * Pass {@link #THREAD_NAME} as an argument instead of {@code Thread.currentThread().getName()}.
+ */
+public final class IeLogger {
+
+    public static final Object THREAD_NAME = new Object() {
+        @Override
+        public String toString() { return Thread.currentThread().getName(); }
+    };
+
+    private static final ConcurrentHashMap<String, IeLogger> LOGGERS = new ConcurrentHashMap<>();
+
+    private final Logger logger;
+
+    private IeLogger(@NotNull final String name) { this.logger = Logger.getLogger(name); }
+
+    @NotNull
+    public static IeLogger getLogger(@NotNull final String name) {
+        final IeLogger ieLogger = LOGGERS.get(name);
+        return (null != ieLogger) ? ieLogger : LOGGERS.computeIfAbsent(name, IeLogger::new);
+    }
+
+    public boolean isLoggable(@NotNull final Level level) { return logger.isLoggable(level); }
+
+    public void log(@NotNull final Level level, @NotNull final String message) {
+        if (logger.isLoggable(level)) { logger.log(level, message); }
+    }
+
+    public void log(@NotNull final Level level, @NotNull final String message, @NotNull final Throwable cause) {
+        if (logger.isLoggable(level)) { logger.log(level, message, cause); }
+    }
+
+    public void log(@NotNull final Level level, @NotNull final String pattern, @Nullable final Object arg0) {
+        if (logger.isLoggable(level)) { logger.log(level, format(pattern, arg0, null, null, 1)); }
+    }
+
+    public void log(@NotNull final Level level, @NotNull final String pattern, @Nullable final Object arg0, @Nullable final Object arg1) {
+        if (logger.isLoggable(level)) { logger.log(level, format(pattern, arg0, arg1, null, 2)); }
+    }
+
+    public void log(
+            @NotNull final Level level,
+            @NotNull final String pattern,
+            @Nullable final Object arg0,
+            @Nullable final Object arg1,
+            @Nullable final Object arg2) {
+        if (logger.isLoggable(level)) { logger.log(level, format(pattern, arg0, arg1, arg2, 3)); }
+    }
+
+    public void log(@NotNull final Level level, @NotNull final String pattern, @NotNull final Object... args) {
+        if (logger.isLoggable(level)) { logger.log(level, format(pattern, args)); }
+    }
+
+    /**
+     * @return a logger that lets only one out of every {@code everyN} calls through, for per-message paths
+     */
+    @NotNull
+    public Sampled sampled(final int everyN) { return new Sampled(this, everyN); }
+
+    public static final class Sampled {
+
+        private final IeLogger ieLogger;
+        private final AtomicLong callCount = new AtomicLong();
+        private final long everyN;
+
+        private Sampled(@NotNull final IeLogger ieLogger, final int everyN) {
+            this.ieLogger = ieLogger;
+            this.everyN = Math.max(1, everyN);
+        }
+
+        /**
+         * Counts as one call; use it to skip building an expensive argument when the record would be dropped anyway.
+         */
+        public boolean shouldLog(@NotNull final Level level) {
+            return ieLogger.isLoggable(level) && (0L == (callCount.getAndIncrement() % everyN));
+        }
+
+        public void log(@NotNull final Level level, @NotNull final String message) {
+            if (shouldLog(level)) { ieLogger.logger.log(level, message); }
+        }
+
+        public void log(@NotNull final Level level, @NotNull final String pattern, @Nullable final Object arg0) {
+            if (shouldLog(level)) { ieLogger.logger.log(level, format(pattern, arg0, null, null, 1)); }
+        }
+
+        public void log(@NotNull final Level level, @NotNull final String pattern, @Nullable final Object arg0, @Nullable final Object arg1) {
+            if (shouldLog(level)) { ieLogger.logger.log(level, format(pattern, arg0, arg1, null, 2)); }
+        }
+    }
+
+    @NotNull
+    private static String format(
+            @NotNull final String pattern,
+            @Nullable final Object arg0,
+            @Nullable final Object arg1,
+            @Nullable final Object arg2,
+            final int argCount) {
+        final StringBuilder builder = new StringBuilder(pattern.length() + 32 * argCount);
+        int start = 0;
+        int argIndex = 0;
+        int placeholder;
+        while ( (argIndex < argCount) && ((placeholder = pattern.indexOf("{}", start)) >= 0) ) {
+            builder.append(pattern, start, placeholder);
+            builder.append((0 == argIndex) ? arg0 : ((1 == argIndex) ? arg1 : arg2));
+            start = placeholder + 2;
+            argIndex++;
+        }
+        builder.append(pattern, start, pattern.length());
+        return builder.toString();
+    }
+
+    @NotNull
+    private static String format(@NotNull final String pattern, @NotNull final Object[] args) {
+        final StringBuilder builder = new StringBuilder(pattern.length() + 32 * args.length);
+        int start = 0;
+        int argIndex = 0;
+        int placeholder;
+        while ( (argIndex < args.length) && ((placeholder = pattern.indexOf("{}", start)) >= 0) ) {
+            builder.append(pattern, start, placeholder);
+            builder.append(args[argIndex++]);
+            start = placeholder + 2;
+        }
+        builder.append(pattern, start, pattern.length());
+        return builder.toString();
+    }
+}
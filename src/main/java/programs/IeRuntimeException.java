@@ -2,9 +2,24 @@ package programs;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
 
 public class IeRuntimeException extends Exception {
 
+    /**
+     * Comma separated error codes (or {@code *} for all of them) whose exceptions are created by {@link #of} without a stack trace,
+     * e.g. {@code -Die.stacklessCodes=59999,59998}. Can be changed at runtime via {@link #setStacklessCodes(Collection)}.
+     */
+    public static final String STACKLESS_CODES_PROPERTY = "ie.stacklessCodes";
+
+    private static final String ALL_CODES = "*";
+
+    private static volatile Set<String> stacklessCodes = parseCodes(System.getProperty(STACKLESS_CODES_PROPERTY, ""));
+
     private final String exceptionCode;
 
     public IeRuntimeException(@NotNull String message, @NotNull String exceptionCode) {
@@ -22,6 +37,45 @@ public class IeRuntimeException extends Exception {
         this.exceptionCode = exceptionCode;
     }
 
+    protected IeRuntimeException(String message, Throwable cause, @NotNull String exceptionCode, boolean writableStackTrace) {
+        super(message, cause, true, writableStackTrace);
+        this.exceptionCode = exceptionCode;
+    }
+
+    /**
+     * Same as {@code new IeRuntimeException(cause, exceptionCode)}, but skips capturing the stack trace
+     * when {@code exceptionCode} is configured as stackless. The cause keeps its own stack trace.
+     */
+    @NotNull
+    public static IeRuntimeException of(@NotNull Throwable cause, @NotNull String exceptionCode) {
+        if (!isStackless(exceptionCode)) { return new IeRuntimeException(cause, exceptionCode); }
+        return new IeRuntimeException(cause.toString(), cause, exceptionCode, false);
+    }
+
+    @NotNull
+    public static IeRuntimeException of(@NotNull String message, @NotNull String exceptionCode) {
+        if (!isStackless(exceptionCode)) { return new IeRuntimeException(message, exceptionCode); }
+        return new IeRuntimeException(message, null, exceptionCode, false);
+    }
+
+    public static boolean isStackless(@NotNull String exceptionCode) {
+        final Set<String> codes = stacklessCodes;
+        return !codes.isEmpty() && (codes.contains(exceptionCode) || codes.contains(ALL_CODES));
+    }
+
+    public static void setStacklessCodes(@NotNull Collection<String> exceptionCodes) {
+        stacklessCodes = Collections.unmodifiableSet(new HashSet<>(exceptionCodes));
+    }
+
+    @NotNull
+    private static Set<String> parseCodes(@NotNull String codes) {
+        final Set<String> result = new HashSet<>();
+        for (final String code : codes.split(",")) {
+            if (!code.trim().isEmpty()) { result.add(code.trim()); }
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
     @NotNull
     public final String getExceptionCode () { return exceptionCode; }
 }
@@ -0,0 +1,164 @@
+package programs;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+
+/**
+ * Hashes every item's key onto one of {@code laneCount} lanes, each a bounded queue drained by its own thread,
+ * so items of the same key (e.g. one device) are handled one after another in arrival order while different keys
+ * are handled in parallel. A full lane blocks {@link #submit}, which backpressures the producer instead of
+ * reordering or dropping. Items without a key all go to lane 0.
+ */
+public final class IeStripedExecutor<T> {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("IeStripedExecutor");
+
+    public interface KeyExtractor<M> {
+        /**
+         * @return the key whose items must stay in order, null for items that have none
+         */
+        @Nullable
+        String keyOf(@NotNull final M message);
+    }
+
+    public interface LaneHandler<T> {
+        /**
+         * Runs on the lane's thread; an exception is logged and does not stop the lane.
+         */
+        void onItem(final int lane, @NotNull final T item) throws Exception;
+    }
+
+    private final String name;
+    private final LaneHandler<T> laneHandler;
+    private final List<ArrayBlockingQueue<T>> lanes;
+    private Thread[] laneThreads;
+
+    public IeStripedExecutor(
+            @NotNull final String name,
+            @NotNull final LaneHandler<T> laneHandler,
+            final int laneCount,
+            final int laneCapacity) {
+        this.name = name;
+        this.laneHandler = laneHandler;
+        final int theLaneCount = Math.max(1, laneCount);
+        this.lanes = new ArrayList<>(theLaneCount);
+        for (int i = 0; i < theLaneCount; i++) {
+            lanes.add(new ArrayBlockingQueue<>(Math.max(1, laneCapacity)));
+        }
+    }
+
+    public int getLaneCount() { return lanes.size(); }
+
+    public int getPendingCount(final int lane) { return lanes.get(lane).size(); }
+
+    public int laneOf(@Nullable final String key) {
+        if (null == key) { return 0; }
+        // spread String#hashCode, whose low bits are poor for short keys that differ only in the last characters
+        final int hash = key.hashCode() * 0x9E3779B9;
+        return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % lanes.size();
+    }
+
+    public synchronized void start() {
+        if (null != laneThreads) {
+            LOGGER.log(Level.SEVERE, "start - lanes existed !!");
+            return;
+        }
+        laneThreads = new Thread[lanes.size()];
+        for (int i = 0; i < laneThreads.length; i++) {
+            final int lane = i;
+            laneThreads[i] = new Thread(() -> runLane(lane), name + "-lane-" + i);
+            laneThreads[i].setDaemon(true);
+            laneThreads[i].start();
+        }
+        LOGGER.log(Level.INFO, "start - name: [{}], laneCount: [{}]", name, lanes.size());
+    }
+
+    /**
+     * Stops the lanes after their current item.
+     *
+     * @return the items that were still queued, in lane order, so the caller can hand them back
+     */
+    @NotNull
+    public List<T> stop() {
+        final Thread[] theLaneThreads;
+        synchronized (this) {
+            theLaneThreads = laneThreads;
+            laneThreads = null;
+        }
+        final List<T> pendingItems = new ArrayList<>();
+        if (null == theLaneThreads) { return pendingItems; }
+        for (final Thread laneThread : theLaneThreads) {
+            laneThread.interrupt();
+        }
+        for (final Thread laneThread : theLaneThreads) {
+            try {
+                laneThread.join(TimeUnit.SECONDS.toMillis(5L));
+            }
+            catch (InterruptedException cause) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        for (final ArrayBlockingQueue<T> lane : lanes) {
+            lane.drainTo(pendingItems);
+        }
+        LOGGER.log(Level.INFO, "stop - name: [{}], pending: [{}]", name, pendingItems.size());
+        return pendingItems;
+    }
+
+    /**
+     * Queues {@code item} on the lane of {@code key}, waiting while that lane is full.
+     *
+     * @return the lane
+     */
+    public int submit(@Nullable final String key, @NotNull final T item) throws InterruptedException {
+        final int lane = laneOf(key);
+        lanes.get(lane).put(item);
+        return lane;
+    }
+
+    /**
+     * Removes the queued items that match {@code filter}, e.g. ones that became stale; items already being handled stay.
+     *
+     * @return how many were removed
+     */
+    public int discard(@NotNull final Predicate<? super T> filter) {
+        int discardedCount = 0;
+        for (final ArrayBlockingQueue<T> lane : lanes) {
+            for (final Iterator<T> iterator = lane.iterator(); iterator.hasNext(); ) {
+                if (filter.test(iterator.next())) {
+                    iterator.remove();
+                    discardedCount++;
+                }
+            }
+        }
+        return discardedCount;
+    }
+
+    private void runLane(final int lane) {
+        final ArrayBlockingQueue<T> queue = lanes.get(lane);
+        while (!Thread.currentThread().isInterrupted()) {
+            final T item;
+            try {
+                item = queue.take();
+            }
+            catch (InterruptedException cause) {
+                return;
+            }
+            try {
+                laneHandler.onItem(lane, item);
+            }
+            catch (Exception cause) {
+                LOGGER.log(Level.SEVERE, "runLane - error on LaneHandler#onItem() in lane {}: {}", lane, cause.getLocalizedMessage());
+            }
+        }
+    }
+}
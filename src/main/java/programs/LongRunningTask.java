@@ -10,6 +10,8 @@ import org.jetbrains.annotations.NotNull;
 
 public final class LongRunningTask implements Runnable {
 
+    private static final IeLogger LOGGER = IeLogger.getLogger("LongRunningTask");
+
     private final byte[] lock = new byte[0];
     private boolean isStillLongRunning = false;
     private ExecutorService executorService;
@@ -21,15 +23,15 @@ public final class LongRunningTask implements Runnable {
 
     public void startTask() {
         if (null != executorService) {
-            java.util.logging.Logger.getLogger("LongRunningTask").log(Level.SEVERE, "startTask - executorService existed !!");
+            LOGGER.log(Level.SEVERE, "startTask - executorService existed !!");
             return;
         }
 
         executorService = Executors.newSingleThreadExecutor();
-        java.util.logging.Logger.getLogger("LongRunningTask").log(Level.INFO, "startTask - Executors.newSingleThreadExecutor() !!");
+        LOGGER.log(Level.INFO, "startTask - Executors.newSingleThreadExecutor() !!");
         modifyIsStillLongRunningFlag(true);
         executorService.submit(this);
-        java.util.logging.Logger.getLogger("LongRunningTask").log(Level.INFO, "startTask - executorService.submit!!");
+        LOGGER.log(Level.INFO, "startTask - executorService.submit!!");
     }
 
     public void stopTask() {
@@ -40,19 +42,19 @@ public final class LongRunningTask implements Runnable {
                 try {
                     executorService.shutdownNow();
                     executorService = null;
-                    java.util.logging.Logger.getLogger("LongRunningTask").log(Level.INFO, "stopTask - executorService.shutdownNow!!");
+                    LOGGER.log(Level.INFO, "stopTask - executorService.shutdownNow!!");
                 }
                 catch (Exception cause) {
-                    java.util.logging.Logger.getLogger("LongRunningTask").log(Level.SEVERE, "stopTask - error on ExecutorService.shutdown(): " + cause.getLocalizedMessage());
+                    LOGGER.log(Level.SEVERE, "stopTask - error on ExecutorService.shutdown(): {}", cause.getLocalizedMessage());
                 }
             }
             else {
                 executorService = null;
-                java.util.logging.Logger.getLogger("LongRunningTask").log(Level.INFO, "stopTask - executorService has been shutdown!!");
+                LOGGER.log(Level.INFO, "stopTask - executorService has been shutdown!!");
             }
         }
         else {
-            java.util.logging.Logger.getLogger("LongRunningTask").log(Level.INFO, "stopTask - executorService is null!!");
+            LOGGER.log(Level.INFO, "stopTask - executorService is null!!");
         }
     }
 
@@ -62,7 +64,7 @@ public final class LongRunningTask implements Runnable {
         synchronized(lock) {
             isStillLongRunning = flag;
         }
-        java.util.logging.Logger.getLogger("LongRunningTask").log(Level.SEVERE, "modifyIsStillLongRunningFlag - result: " + isStillLongRunning);
+        LOGGER.log(Level.FINE, "modifyIsStillLongRunningFlag - result: {}", isStillLongRunning);
     }
 
     @Override
@@ -70,7 +72,7 @@ public final class LongRunningTask implements Runnable {
         while (isStillLongRunning) {
             if (null != this.task) { this.task.run(); }
             else {
-                java.util.logging.Logger.getLogger("LongRunningTask").log(Level.SEVERE, "run - this.task is null!!");
+                LOGGER.log(Level.SEVERE, "run - this.task is null!!");
             }
         }
     }
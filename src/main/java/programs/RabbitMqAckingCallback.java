@@ -0,0 +1,47 @@
+package programs;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.logging.Level;
+
+/**
+ * Acknowledges each delivery of a manual-ack consumer after {@code deliverCallback} returned,
+ * and requeues it when the callback throws.
+ */
+public final class RabbitMqAckingCallback implements DeliverCallback {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqAckingCallback");
+
+    private final RabbitMqHelper rabbitMqHelper;
+    private final Channel channel;
+    private final DeliverCallback deliverCallback;
+
+    /**
+     * @param channel the channel the consumer was started on, the only one its delivery tags are valid on
+     */
+    public RabbitMqAckingCallback(
+            @NotNull final RabbitMqHelper rabbitMqHelper,
+            @NotNull final Channel channel,
+            @NotNull final DeliverCallback deliverCallback) {
+        this.rabbitMqHelper = rabbitMqHelper;
+        this.channel = channel;
+        this.deliverCallback = deliverCallback;
+    }
+
+    @Override
+    public void handle(String consumerTag, Delivery delivery) throws IOException {
+        final long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+        try {
+            deliverCallback.handle(consumerTag, delivery);
+            rabbitMqHelper.basicAck(channel, deliveryTag, false);
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.SEVERE, "error on DeliverCallback#handle(): {}", cause.getLocalizedMessage());
+            rabbitMqHelper.basicNack(channel, deliveryTag, false, true);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package programs;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Consumes with manual acks under a prefetch limit and hands the deliveries to a {@link BatchHandler}
+ * once {@code batchSize} of them arrived or the oldest one waited {@code maxLingerMillis}.
+ * Batches are handled one at a time and in delivery order on a worker thread, so a slow handler never blocks the
+ * connection's delivery thread. The whole batch is then acked with a single {@code basicAck(lastTag, multiple=true)},
+ * or nacked if the handler throws: deliveries on their first attempt are requeued, redelivered ones are rejected
+ * without requeue, so a poison message reaches the dead letter exchange, if any, instead of failing forever.
+ * {@link #stop()} cancels the consumer before it handles the last partial batch; deliveries that still arrive
+ * afterwards are requeued.
+ */
+public final class RabbitMqBatchConsumer implements DeliverCallback {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqBatchConsumer");
+
+    public interface BatchHandler {
+        void onBatch(@NotNull final List<Delivery> deliveries) throws Exception;
+    }
+
+    private final byte[] lock = new byte[0];
+    private final RabbitMqHelper rabbitMqHelper = new RabbitMqHelper();
+    private final Channel channel;
+    private final BatchHandler batchHandler;
+    private final int prefetchCount;
+    private final int batchSize;
+    private final long maxLingerMillis;
+    private final String consumerTag = "batch-" + UUID.randomUUID();
+    private List<Delivery> pendingDeliveries;
+    private long oldestPendingMillis = 0L;
+    // single thread that handles the batches, in the order they were taken
+    private ScheduledExecutorService batchExecutor;
+    private boolean isStopped = false;
+
+    public RabbitMqBatchConsumer(@NotNull final Channel channel, @NotNull final BatchHandler batchHandler) {
+        this(channel, batchHandler, 500, 250, 200L);
+    }
+
+    public RabbitMqBatchConsumer(
+            @NotNull final Channel channel,
+            @NotNull final BatchHandler batchHandler,
+            final int prefetchCount,
+            final int batchSize,
+            final long maxLingerMillis) {
+        this.channel = channel;
+        this.batchHandler = batchHandler;
+        this.batchSize = Math.max(1, batchSize);
+        this.prefetchCount = Math.max(this.batchSize, prefetchCount);
+        this.maxLingerMillis = Math.max(1L, maxLingerMillis);
+        this.pendingDeliveries = new ArrayList<>(this.batchSize);
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> start(@NotNull final String queueName) {
+        final IeApiResponse<Boolean> qosResponse = rabbitMqHelper.basicQos(channel, prefetchCount);
+        if (null != qosResponse.error) { return qosResponse; }
+
+        synchronized (lock) {
+            isStopped = false;
+            if (null == batchExecutor) {
+                batchExecutor = Executors.newSingleThreadScheduledExecutor();
+                batchExecutor.scheduleWithFixedDelay(
+                        this::flushIfLingering, maxLingerMillis, maxLingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        LOGGER.log(Level.INFO, "start - prefetchCount: [{}], batchSize: [{}], maxLingerMillis: [{}]", prefetchCount, batchSize, maxLingerMillis);
+        return rabbitMqHelper.basicConsume(
+                channel, queueName, consumerTag, this, new RabbitMqHelper.DefaultCancelCallback(), false);
+    }
+
+    /**
+     * Waits until the batches taken so far and the last partial one are handled.
+     */
+    public void stop() {
+        if (channel.isOpen()) { rabbitMqHelper.basicCancel(channel, consumerTag); }
+        final ScheduledExecutorService executor;
+        synchronized (lock) {
+            isStopped = true;
+            executor = batchExecutor;
+            batchExecutor = null;
+            if (null == executor) { return; }
+            flushLocked(executor);
+            // runs the batches already submitted, but no more linger checks
+            executor.shutdown();
+        }
+        try {
+            while (!executor.awaitTermination(1L, TimeUnit.SECONDS)) {
+                LOGGER.log(Level.WARNING, "stop - waiting for BatchHandler#onBatch() to return");
+            }
+        }
+        catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void handle(String consumerTag, Delivery delivery) throws IOException {
+        synchronized (lock) {
+            if (isStopped) {
+                // delivered before the broker processed the cancel; nobody would flush it anymore
+                rabbitMqHelper.basicNack(channel, delivery.getEnvelope().getDeliveryTag(), false, true);
+                return;
+            }
+            if (pendingDeliveries.isEmpty()) { oldestPendingMillis = System.currentTimeMillis(); }
+            pendingDeliveries.add(delivery);
+            if (pendingDeliveries.size() >= batchSize) { flushLocked(batchExecutor); }
+        }
+    }
+
+    // runs on the batch executor, which is why it may handle the batch right away
+    private void flushIfLingering() {
+        final List<Delivery> batch;
+        synchronized (lock) {
+            if ( (pendingDeliveries.isEmpty())
+                    || (System.currentTimeMillis() - oldestPendingMillis < maxLingerMillis) ) {
+                return;
+            }
+            batch = takePendingLocked();
+        }
+        handleBatch(batch);
+    }
+
+    /**
+     * Takes the pending deliveries under {@link #lock} and queues them on the single batch thread, so that batches
+     * are handled and acked strictly in delivery order; a multiple ack must never cover the tags of a batch that is
+     * still being handled.
+     */
+    private void flushLocked(@NotNull final ScheduledExecutorService executor) {
+        if (pendingDeliveries.isEmpty()) { return; }
+        final List<Delivery> batch = takePendingLocked();
+        executor.execute(() -> handleBatch(batch));
+    }
+
+    @NotNull
+    private List<Delivery> takePendingLocked() {
+        final List<Delivery> batch = pendingDeliveries;
+        pendingDeliveries = new ArrayList<>(batchSize);
+        return batch;
+    }
+
+    private void handleBatch(@NotNull final List<Delivery> batch) {
+        final long lastDeliveryTag = batch.get(batch.size() - 1).getEnvelope().getDeliveryTag();
+        try {
+            batchHandler.onBatch(batch);
+            rabbitMqHelper.basicAck(channel, lastDeliveryTag, true);
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.SEVERE, "handleBatch - error on BatchHandler#onBatch(), nack {} deliveries: {}", batch.size(), cause.getLocalizedMessage());
+            nackBatch(batch, lastDeliveryTag);
+        }
+    }
+
+    private void nackBatch(@NotNull final List<Delivery> batch, final long lastDeliveryTag) {
+        int redeliveredCount = 0;
+        for (final Delivery delivery : batch) {
+            if (delivery.getEnvelope().isRedeliver()) { redeliveredCount++; }
+        }
+        if (0 == redeliveredCount) {
+            rabbitMqHelper.basicNack(channel, lastDeliveryTag, true, true);
+            return;
+        }
+        LOGGER.log(Level.WARNING, "nackBatch - reject {} redelivered deliveries without requeue", redeliveredCount);
+        for (final Delivery delivery : batch) {
+            final boolean isRedelivered = delivery.getEnvelope().isRedeliver();
+            rabbitMqHelper.basicNack(channel, delivery.getEnvelope().getDeliveryTag(), false, !isRedelivered);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.codec.IeCodec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Leases channels of one long-lived connection to the calling threads.
+ * A leased channel is confined to the borrowing thread until it is handed back via {@link #returnChannel(Channel)};
+ * channels closed by the broker are discarded and replaced on the next lease. Only leased channels are taken back,
+ * so returning a channel twice, or one of another pool, cannot raise the cap.
+ */
+public final class RabbitMqChannelPool {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqChannelPool");
+
+    private final byte[] lock = new byte[0];
+    private final ConnectionFactory factory;
+    private final RabbitMqHelper rabbitMqHelper;
+    private final LinkedBlockingDeque<Channel> idleChannels = new LinkedBlockingDeque<>();
+    private final Set<Channel> leasedChannels = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Semaphore permits;
+    private final int maxChannels;
+    private final long leaseTimeoutMillis;
+    private Connection connection;
+    private volatile boolean isClosed = false;
+
+    public RabbitMqChannelPool(@NotNull final ConnectionFactory factory) {
+        this(factory, 16, 5000L);
+    }
+
+    public RabbitMqChannelPool(
+            @NotNull final ConnectionFactory factory, final int maxChannels, final long leaseTimeoutMillis) {
+        this(factory, maxChannels, leaseTimeoutMillis, new RabbitMqHelper());
+    }
+
+    /**
+     * @param rabbitMqHelper publishes through this helper, e.g. one created with an {@link programs.codec.IeCompressor}
+     */
+    public RabbitMqChannelPool(
+            @NotNull final ConnectionFactory factory,
+            final int maxChannels,
+            final long leaseTimeoutMillis,
+            @NotNull final RabbitMqHelper rabbitMqHelper) {
+        this.factory = factory;
+        this.rabbitMqHelper = rabbitMqHelper;
+        this.maxChannels = Math.max(1, maxChannels);
+        this.leaseTimeoutMillis = Math.max(0L, leaseTimeoutMillis);
+        this.permits = new Semaphore(this.maxChannels, true);
+    }
+
+    public int getMaxChannels() { return maxChannels; }
+
+    public int getIdleChannelCount() { return idleChannels.size(); }
+
+    @NotNull
+    public IeApiResponse<Channel> borrowChannel() {
+        if (isClosed) {
+            return new IeApiResponse<>(null, IeRuntimeException.of("the pool has been closed", AppConstants.RabbitMqErrorCode.CHANNEL_POOL_CLOSED));
+        }
+        try {
+            if (!permits.tryAcquire(leaseTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                LOGGER.log(Level.SEVERE, "borrowChannel - no channel available within {} ms", leaseTimeoutMillis);
+                return new IeApiResponse<>(null, IeRuntimeException.of("all " + maxChannels + " channels are leased", AppConstants.RabbitMqErrorCode.CHANNEL_POOL_EXHAUSTED));
+            }
+        }
+        catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+            return new IeApiResponse<>(null, IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CHANNEL_POOL_EXHAUSTED));
+        }
+
+        Channel channel;
+        while (null != (channel = idleChannels.pollFirst())) {
+            if (channel.isOpen()) { return lease(channel); }
+            LOGGER.log(Level.WARNING, "borrowChannel - discard closed channel: {}", channel.getChannelNumber());
+        }
+
+        final IeApiResponse<Channel> channelResponse = createChannel();
+        if (null != channelResponse.error) {
+            permits.release();
+            return channelResponse;
+        }
+        return lease(channelResponse.result);
+    }
+
+    public void returnChannel(@Nullable final Channel channel) {
+        if (null == channel) { return; }
+        synchronized (leasedChannels) {
+            if (!leasedChannels.remove(channel)) {
+                LOGGER.log(Level.WARNING, "returnChannel - channel {} is not leased from this pool", channel.getChannelNumber());
+                return;
+            }
+        }
+        boolean isIdle = false;
+        synchronized (lock) {
+            // checked under the lock close() sets the flag in, so a channel is never parked after close() drained them
+            if ( (!isClosed) && channel.isOpen() ) {
+                idleChannels.offerFirst(channel);
+                isIdle = true;
+            }
+        }
+        if (!isIdle) { closeQuietly(channel); }
+        permits.release();
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> queueDeclare(@NotNull final RabbitMqHelper.QueueParameter parameter) {
+        final IeApiResponse<Channel> channelResponse = borrowChannel();
+        if (null != channelResponse.error) { return new IeApiResponse<>(null, channelResponse.error); }
+        final Channel channel = channelResponse.result;
+        try {
+            return rabbitMqHelper.queueDeclare(channel, parameter);
+        }
+        finally {
+            returnChannel(channel);
+        }
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> basicPublish(
+            @NotNull final String exchange,
+            @NotNull final String queueName,
+            @NotNull final String message,
+            @Nullable final AMQP.BasicProperties properties) {
+        return basicPublish(exchange, queueName, message.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> basicPublish(
+            @NotNull final String exchange,
+            @NotNull final String queueName,
+            @NotNull final byte[] body,
+            @Nullable final AMQP.BasicProperties properties) {
+        final IeApiResponse<Channel> channelResponse = borrowChannel();
+        if (null != channelResponse.error) { return new IeApiResponse<>(null, channelResponse.error); }
+        final Channel channel = channelResponse.result;
+        try {
+            return rabbitMqHelper.basicPublish(channel, exchange, queueName, body, properties);
+        }
+        finally {
+            returnChannel(channel);
+        }
+    }
+
+    @NotNull
+    public <T> IeApiResponse<Boolean> basicPublish(
+            @NotNull final String exchange,
+            @NotNull final String queueName,
+            @NotNull final T message,
+            @NotNull final IeCodec<T> codec,
+            @Nullable final AMQP.BasicProperties properties) {
+        final IeApiResponse<Channel> channelResponse = borrowChannel();
+        if (null != channelResponse.error) { return new IeApiResponse<>(null, channelResponse.error); }
+        final Channel channel = channelResponse.result;
+        try {
+            return rabbitMqHelper.basicPublish(channel, exchange, queueName, message, codec, properties);
+        }
+        finally {
+            returnChannel(channel);
+        }
+    }
+
+    public void close() {
+        synchronized (lock) {
+            isClosed = true;
+        }
+        Channel channel;
+        while (null != (channel = idleChannels.pollFirst())) {
+            closeQuietly(channel);
+        }
+        synchronized (lock) {
+            if (null != connection) {
+                try {
+                    connection.close();
+                    LOGGER.log(Level.INFO, "close - connection closed");
+                }
+                catch (Exception cause) {
+                    LOGGER.log(Level.SEVERE, "close - error on Connection#close(): {}", cause.getLocalizedMessage());
+                }
+                connection = null;
+            }
+        }
+    }
+
+    /**
+     * Opens a channel on the pool's connection that is not part of the pool and not counted against
+     * {@code maxChannels}, e.g. for a long-lived consumer whose QoS and consumers must not leak into the pool;
+     * the caller closes it. {@link #close()} closes it along with the connection.
+     */
+    @NotNull
+    public IeApiResponse<Channel> openDedicatedChannel() { return createChannel(); }
+
+    @NotNull
+    private IeApiResponse<Channel> lease(@NotNull final Channel channel) {
+        synchronized (leasedChannels) {
+            leasedChannels.add(channel);
+        }
+        return new IeApiResponse<>(channel, null);
+    }
+
+    @NotNull
+    private IeApiResponse<Channel> createChannel() {
+        final Connection theConnection;
+        synchronized (lock) {
+            // checked under the lock, so a borrower racing close() cannot open a connection nobody closes
+            if (isClosed) {
+                return new IeApiResponse<>(null, IeRuntimeException.of("the pool has been closed", AppConstants.RabbitMqErrorCode.CHANNEL_POOL_CLOSED));
+            }
+            if ( (null == connection) || (!connection.isOpen()) ) {
+                final IeApiResponse<Connection> connectionResponse = rabbitMqHelper.newConnection(factory);
+                if (null != connectionResponse.error) { return new IeApiResponse<>(null, connectionResponse.error); }
+                connection = connectionResponse.result;
+                LOGGER.log(Level.INFO, "createChannel - new connection established");
+            }
+            theConnection = connection;
+        }
+        return rabbitMqHelper.createChannel(theConnection);
+    }
+
+    private void closeQuietly(@NotNull final Channel channel) {
+        if (!channel.isOpen()) { return; }
+        try {
+            channel.close();
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.WARNING, "closeQuietly - error on Channel#close(): {}", cause.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package programs;
+
+import com.rabbitmq.client.Address;
+import com.rabbitmq.client.AddressResolver;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import org.jetbrains.annotations.NotNull;
+import programs.models.IeAddress;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+/**
+ * Opens every connection to the cluster node an {@link IeAddressSelector} picks, falling back to the other nodes
+ * in list order when it is down, as does every automatic recovery attempt, and keeps the selector's per-node connection counts up to date across closes and
+ * automatic recoveries. Built by {@link RabbitMqHelper.ConnectionFactoryBuilder} when more than one address is set,
+ * so {@link RabbitMqHelper#newConnection(ConnectionFactory)} and {@link RabbitMqChannelPool} use it unchanged.
+ */
+public final class RabbitMqClusterConnectionFactory extends ConnectionFactory {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqClusterConnectionFactory");
+
+    private final IeAddressSelector addressSelector;
+    // ConnectionFactory keeps its own copy private, and the AddressResolver overloads take it as an argument
+    private volatile ExecutorService sharedExecutor;
+
+    public RabbitMqClusterConnectionFactory(@NotNull final IeAddressSelector addressSelector) {
+        this.addressSelector = addressSelector;
+    }
+
+    @NotNull
+    public IeAddressSelector getAddressSelector() { return addressSelector; }
+
+    @Override
+    public void setSharedExecutor(final ExecutorService executor) {
+        super.setSharedExecutor(executor);
+        this.sharedExecutor = executor;
+    }
+
+    @Override
+    public Connection newConnection() throws IOException, TimeoutException {
+        return newConnection((String) null);
+    }
+
+    @Override
+    public Connection newConnection(final String clientProvidedName) throws IOException, TimeoutException {
+        final NodeAddressResolver addressResolver = new NodeAddressResolver(addressSelector, addressSelector.select());
+        Connection opened = null;
+        for (int attempt = 0; null == opened; attempt++) {
+            try {
+                opened = newConnection(sharedExecutor, addressResolver, clientProvidedName);
+            }
+            catch (IOException | TimeoutException cause) {
+                LOGGER.log(Level.WARNING, "newConnection - cannot connect to {}: {}",
+                        addressSelector.getAddresses().get(addressResolver.getLastIndex()), cause.getLocalizedMessage());
+                if (attempt + 1 >= addressSelector.getAddresses().size()) { throw cause; }
+            }
+        }
+        final Connection connection = opened;
+
+        final AtomicInteger nodeIndex = new AtomicInteger(connectedIndex(connection, addressResolver.getLastIndex()));
+        addressSelector.acquired(nodeIndex.get());
+        LOGGER.log(Level.INFO, "newConnection - connected to {}", addressSelector.getAddresses().get(nodeIndex.get()));
+        connection.addShutdownListener(cause -> addressSelector.released(nodeIndex.get()));
+        if (connection instanceof Recoverable) {
+            ((Recoverable) connection).addRecoveryListener(new RecoveryListener() {
+                @Override
+                public void handleRecovery(final Recoverable recoverable) {
+                    // recovery may have landed on another node than the one the shutdown released
+                    nodeIndex.set(connectedIndex(connection, addressResolver.getLastIndex()));
+                    addressSelector.acquired(nodeIndex.get());
+                }
+
+                @Override
+                public void handleRecoveryStarted(final Recoverable recoverable) { }
+            });
+        }
+        return connection;
+    }
+
+    /**
+     * @return the index of the node {@code connection} is connected to, {@code fallbackIndex} if it cannot be told
+     */
+    private int connectedIndex(@NotNull final Connection connection, final int fallbackIndex) {
+        final InetAddress connectedAddress = connection.getAddress();
+        if (null == connectedAddress) { return fallbackIndex; }
+        final List<IeAddress> addresses = addressSelector.getAddresses();
+        final IeAddress fallback = addresses.get(fallbackIndex);
+        if (matches(fallback, connectedAddress, connection.getPort())) { return fallbackIndex; }
+        for (int i = 0; i < addresses.size(); i++) {
+            if (matches(addresses.get(i), connectedAddress, connection.getPort())) { return i; }
+        }
+        return fallbackIndex;
+    }
+
+    private static boolean matches(@NotNull final IeAddress address, @NotNull final InetAddress connectedAddress, final int port) {
+        if (address.portNumber != port) { return false; }
+        try {
+            for (final InetAddress resolved : InetAddress.getAllByName(address.hostName)) {
+                if (resolved.equals(connectedAddress)) { return true; }
+            }
+        }
+        catch (IOException cause) {
+            LOGGER.log(Level.FINE, "matches - cannot resolve {}: {}", address.hostName, cause.getLocalizedMessage());
+        }
+        return false;
+    }
+
+    /**
+     * Hands out one node per {@link #getAddresses()} call, the selected one first and then the others in failover order.
+     * A list of every node would be shuffled by automatic recovery, which would ignore the {@link IeAddressSelector}.
+     */
+    private static final class NodeAddressResolver implements AddressResolver {
+
+        private final IeAddressSelector addressSelector;
+        private final int selectedIndex;
+        private final AtomicInteger callCount = new AtomicInteger();
+        private volatile int lastIndex;
+
+        private NodeAddressResolver(@NotNull final IeAddressSelector addressSelector, final int selectedIndex) {
+            this.addressSelector = addressSelector;
+            this.selectedIndex = selectedIndex;
+            this.lastIndex = selectedIndex;
+        }
+
+        /**
+         * @return the index of the node the last connection attempt went to
+         */
+        private int getLastIndex() { return lastIndex; }
+
+        @Override
+        public List<Address> getAddresses() {
+            final List<IeAddress> addresses = addressSelector.getAddresses();
+            final int index = (selectedIndex + (callCount.getAndIncrement() & Integer.MAX_VALUE)) % addresses.size();
+            lastIndex = index;
+            final IeAddress address = addresses.get(index);
+            return Collections.singletonList(new Address(address.hostName, address.portNumber));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.codec.IeBatchFrame;
+import programs.codec.IeCoalescer;
+import programs.codec.IeCodec;
+import programs.codec.IeEncodeBuffer;
+
+import java.util.Map;
+import java.util.logging.Level;
+
+/**
+ * Coalesces many small messages into one {@link IeBatchFrame} per AMQP publish to a fixed exchange and routing key.
+ * {@link RabbitMqPayloadAdapter}, {@link RabbitMqMessageAdapter} and {@link RabbitMqReceiver} unpack it transparently;
+ * compression of the frame is up to the {@link RabbitMqHelper} of the pool.
+ */
+public final class RabbitMqCoalescingPublisher implements IeCoalescer.FrameSink {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqCoalescingPublisher");
+
+    private final RabbitMqChannelPool channelPool;
+    private final String exchange;
+    private final String routingKey;
+    private final AMQP.BasicProperties properties;
+    private final IeCoalescer coalescer;
+
+    public RabbitMqCoalescingPublisher(
+            @NotNull final RabbitMqChannelPool channelPool,
+            @NotNull final String exchange,
+            @NotNull final String routingKey) {
+        this(channelPool, exchange, routingKey, null, 256, 64 * 1024, 20L);
+    }
+
+    /**
+     * @param properties of every batch publish; its content type is replaced by {@link IeBatchFrame#CONTENT_TYPE}
+     */
+    public RabbitMqCoalescingPublisher(
+            @NotNull final RabbitMqChannelPool channelPool,
+            @NotNull final String exchange,
+            @NotNull final String routingKey,
+            @Nullable final AMQP.BasicProperties properties,
+            final int maxItems,
+            final int maxBytes,
+            final long maxLingerMillis) {
+        this.channelPool = channelPool;
+        this.exchange = exchange;
+        this.routingKey = routingKey;
+        this.properties = ((null != properties) ? properties.builder() : new AMQP.BasicProperties.Builder())
+                .contentType(IeBatchFrame.CONTENT_TYPE)
+                .build();
+        this.coalescer = new IeCoalescer(this, null, maxItems, maxBytes, maxLingerMillis);
+    }
+
+    public void start() { coalescer.start(); }
+
+    public void close() { coalescer.close(); }
+
+    public void flush() throws Exception { coalescer.flush(); }
+
+    public void add(@NotNull final byte[] payload, @Nullable final Map<String, String> headers) throws Exception {
+        coalescer.add(payload, headers);
+    }
+
+    public <T> void add(
+            @NotNull final T message,
+            @NotNull final IeCodec<T> codec,
+            @Nullable final Map<String, String> headers) throws Exception {
+        coalescer.add(message, codec, headers);
+    }
+
+    @Override
+    public void onFrame(@NotNull final IeEncodeBuffer frame, final int itemCount) throws Exception {
+        final IeApiResponse<Boolean> publishResponse =
+                channelPool.basicPublish(exchange, routingKey, frame.toByteArray(), properties);
+        if (null != publishResponse.error) { throw publishResponse.error; }
+        LOGGER.log(Level.FINE, "onFrame - published {} messages in {} bytes", itemCount, frame.size());
+    }
+}
@@ -0,0 +1,201 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.ConfirmListener;
+import com.rabbitmq.client.Recoverable;
+import com.rabbitmq.client.RecoveryListener;
+import com.rabbitmq.client.ShutdownListener;
+import com.rabbitmq.client.ShutdownSignalException;
+import io.reactivex.Single;
+import io.reactivex.subjects.SingleSubject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.metrics.IeMetrics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Level;
+
+/**
+ * [Publisher Confirms](https://www.rabbitmq.com/tutorials/tutorial-seven-java.html)
+ * <p>
+ * Publishes on a channel in confirm mode and resolves one {@link Single} per message once the broker acks or nacks it.
+ * Callers only block when {@code maxInFlight} messages are still waiting for their confirm.
+ * <p>
+ * A shutdown fails every message still waiting, since a recovered channel starts its sequence numbers over and never
+ * confirms them. Publishing fails while the channel is closed and resumes once automatic recovery reopens it.
+ */
+public final class RabbitMqConfirmPublisher implements ConfirmListener, ShutdownListener, RecoveryListener {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqConfirmPublisher");
+
+    private static final IeMetrics.Timer CONFIRM_TIMER = IeMetrics.getDefault().timer("rabbitmq", "publish_confirm");
+
+    private final byte[] publishLock = new byte[0];
+    private final ConcurrentSkipListMap<Long, PendingConfirm> outstandingConfirms = new ConcurrentSkipListMap<>();
+    private final Channel channel;
+    private final Semaphore inFlightWindow;
+    private final int maxInFlight;
+    // set for a shutdown that automatic recovery will not undo; guarded by publishLock, so no publish can slip in
+    // behind the shutdown sweep
+    private boolean isShutdown = false;
+
+    public RabbitMqConfirmPublisher(@NotNull final Channel channel) { this(channel, 1024); }
+
+    public RabbitMqConfirmPublisher(@NotNull final Channel channel, final int maxInFlight) {
+        this.channel = channel;
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.inFlightWindow = new Semaphore(this.maxInFlight);
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> init() {
+        final IeApiResponse<Boolean> confirmSelectResponse = new RabbitMqHelper().confirmSelect(channel);
+        if (null != confirmSelectResponse.error) { return confirmSelectResponse; }
+        channel.addConfirmListener(this);
+        channel.addShutdownListener(this);
+        if (channel instanceof Recoverable) {
+            ((Recoverable) channel).addRecoveryListener(this);
+        }
+        return confirmSelectResponse;
+    }
+
+    public int getMaxInFlight() { return maxInFlight; }
+
+    public int getInFlightCount() { return outstandingConfirms.size(); }
+
+    @NotNull
+    public Single<Boolean> basicPublish(
+            @NotNull final String exchange,
+            @NotNull final String queueName,
+            @NotNull final String message,
+            @Nullable final AMQP.BasicProperties properties) {
+        return basicPublish(exchange, queueName, message.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    @NotNull
+    public Single<Boolean> basicPublish(
+            @NotNull final String exchange,
+            @NotNull final String queueName,
+            @NotNull final byte[] body,
+            @Nullable final AMQP.BasicProperties properties) {
+        try {
+            inFlightWindow.acquire();
+        }
+        catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+            return Single.error(IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CHANNEL_PUBLISH));
+        }
+
+        final PendingConfirm pendingConfirm = new PendingConfirm();
+        synchronized (publishLock) {
+            if (isShutdown || !channel.isOpen()) {
+                inFlightWindow.release();
+                return Single.error(IeRuntimeException.of(
+                        "the channel has been shut down", AppConstants.RabbitMqErrorCode.PUBLISH_NOT_CONFIRMED));
+            }
+            final long sequenceNumber = channel.getNextPublishSeqNo();
+            outstandingConfirms.put(sequenceNumber, pendingConfirm);
+            try {
+                channel.basicPublish(exchange, queueName, properties, body);
+            }
+            catch (Exception cause) {
+                LOGGER.log(Level.SEVERE, "Error on Channel#basicPublish(): {}", cause.getLocalizedMessage());
+                if (null != outstandingConfirms.remove(sequenceNumber)) { inFlightWindow.release(); }
+                return Single.error(IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CHANNEL_PUBLISH));
+            }
+        }
+        return pendingConfirm.confirmSubject;
+    }
+
+    @Override
+    public void handleAck(final long deliveryTag, final boolean multiple) {
+        releaseConfirms(deliveryTag, multiple, null);
+    }
+
+    @Override
+    public void handleNack(final long deliveryTag, final boolean multiple) {
+        LOGGER.log(Level.WARNING, "handleNack - deliveryTag: [{}], multiple: [{}]", deliveryTag, multiple);
+        releaseConfirms(deliveryTag, multiple,
+                IeRuntimeException.of("message nacked by the broker", AppConstants.RabbitMqErrorCode.PUBLISH_NACK));
+    }
+
+    @Override
+    public void shutdownCompleted(@NotNull final ShutdownSignalException cause) {
+        LOGGER.log(Level.SEVERE, "shutdownCompleted - {} message(s) left unconfirmed", outstandingConfirms.size());
+        final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.PUBLISH_NOT_CONFIRMED);
+        synchronized (publishLock) {
+            if (!isRecoverable(cause)) { isShutdown = true; }
+            failOutstandingConfirms(error);
+        }
+    }
+
+    @Override
+    public void handleRecovery(@NotNull final Recoverable recoverable) {
+        LOGGER.log(Level.INFO, "handleRecovery - publishing resumes on the recovered channel");
+        synchronized (publishLock) {
+            // nothing was published while the channel was closed; drop whatever the shutdown sweep raced with,
+            // as the recovered channel numbers its publishes from 1 again
+            failOutstandingConfirms(IeRuntimeException.of(
+                    "the channel has been recovered", AppConstants.RabbitMqErrorCode.PUBLISH_NOT_CONFIRMED));
+            isShutdown = false;
+        }
+    }
+
+    @Override
+    public void handleRecoveryStarted(@NotNull final Recoverable recoverable) { }
+
+    /**
+     * @return true if automatic recovery will reopen the channel after {@code cause}: the connection failed,
+     *         rather than the application closing it or the broker closing just this channel
+     */
+    private boolean isRecoverable(@NotNull final ShutdownSignalException cause) {
+        return (channel instanceof Recoverable) && cause.isHardError() && !cause.isInitiatedByApplication();
+    }
+
+    private void failOutstandingConfirms(@NotNull final IeRuntimeException error) {
+        Map.Entry<Long, PendingConfirm> entry;
+        while (null != (entry = outstandingConfirms.pollFirstEntry())) {
+            inFlightWindow.release();
+            notifyConfirm(entry.getValue(), error);
+        }
+    }
+
+    private void releaseConfirms(final long deliveryTag, final boolean multiple, @Nullable final IeRuntimeException error) {
+        if (multiple) {
+            Map.Entry<Long, PendingConfirm> entry;
+            while ( (null != (entry = outstandingConfirms.firstEntry())) && (entry.getKey() <= deliveryTag) ) {
+                if (null != outstandingConfirms.remove(entry.getKey())) {
+                    inFlightWindow.release();
+                    notifyConfirm(entry.getValue(), error);
+                }
+            }
+        }
+        else {
+            final PendingConfirm pendingConfirm = outstandingConfirms.remove(deliveryTag);
+            if (null != pendingConfirm) {
+                inFlightWindow.release();
+                notifyConfirm(pendingConfirm, error);
+            }
+        }
+    }
+
+    private void notifyConfirm(@NotNull final PendingConfirm pendingConfirm, @Nullable final IeRuntimeException error) {
+        if (null == error) {
+            CONFIRM_TIMER.recordSuccess(pendingConfirm.startNanos);
+            pendingConfirm.confirmSubject.onSuccess(true);
+        }
+        else {
+            CONFIRM_TIMER.recordFailure(error.getExceptionCode(), pendingConfirm.startNanos);
+            pendingConfirm.confirmSubject.onError(error);
+        }
+    }
+
+    private static final class PendingConfirm {
+        final SingleSubject<Boolean> confirmSubject = SingleSubject.create();
+        final long startNanos = System.nanoTime();
+    }
+}
@@ -0,0 +1,85 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.logging.Level;
+
+/**
+ * Drops deliveries an {@link IeDeduplicator} has already seen before they reach the wrapped callback, e.g. requeued
+ * redeliveries of messages that were handled but not yet acked when a channel closed. A dropped delivery returns
+ * normally, so {@link RabbitMqDispatcher} still acks it. The default key is the {@code message-id} property;
+ * deliveries without one are handed over as is, since identical bodies may well be distinct messages.
+ * <p>
+ * A key is recorded only after the callback returned, and a failing callback releases it, so the nacked redelivery
+ * is handled. A copy arriving while the original is still handled waits up to {@code inFlightWaitMillis} for it and
+ * then fails, so a manual-ack consumer requeues it instead of acking a message that may yet fail.
+ */
+public final class RabbitMqDedupCallback implements DeliverCallback {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqDedupCallback");
+    private static final IeLogger.Sampled DUPLICATE_LOGGER = LOGGER.sampled(1000);
+
+    public static final IeDeduplicator.KeyExtractor<Delivery> MESSAGE_ID = delivery -> {
+        final AMQP.BasicProperties properties = delivery.getProperties();
+        return ( (null != properties) && (null != properties.getMessageId()) )
+                ? IeDeduplicator.hash(properties.getMessageId()) : IeDeduplicator.NO_KEY;
+    };
+
+    private final DeliverCallback deliverCallback;
+    private final IeDeduplicator deduplicator;
+    private final IeDeduplicator.KeyExtractor<Delivery> keyExtractor;
+    private final long inFlightWaitMillis;
+
+    public RabbitMqDedupCallback(@NotNull final DeliverCallback deliverCallback, @NotNull final IeDeduplicator deduplicator) {
+        this(deliverCallback, deduplicator, MESSAGE_ID, 1000L);
+    }
+
+    public RabbitMqDedupCallback(
+            @NotNull final DeliverCallback deliverCallback,
+            @NotNull final IeDeduplicator deduplicator,
+            @NotNull final IeDeduplicator.KeyExtractor<Delivery> keyExtractor,
+            final long inFlightWaitMillis) {
+        this.deliverCallback = deliverCallback;
+        this.deduplicator = deduplicator;
+        this.keyExtractor = keyExtractor;
+        this.inFlightWaitMillis = Math.max(0L, inFlightWaitMillis);
+    }
+
+    @Override
+    public void handle(String consumerTag, Delivery delivery) throws IOException {
+        final long key = keyExtractor.keyOf(delivery);
+        if (IeDeduplicator.NO_KEY == key) {
+            deliverCallback.handle(consumerTag, delivery);
+            return;
+        }
+        final IeDeduplicator.Verdict verdict;
+        try {
+            verdict = deduplicator.begin(key, inFlightWaitMillis);
+        }
+        catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while the original delivery is handled");
+        }
+        if (IeDeduplicator.Verdict.DUPLICATE == verdict) {
+            DUPLICATE_LOGGER.log(Level.FINE, "handle - dropped a duplicate, redeliver: {}", delivery.getEnvelope().isRedeliver());
+            return;
+        }
+        if (IeDeduplicator.Verdict.IN_FLIGHT == verdict) {
+            throw new IOException("the original delivery is still handled, requeue the copy");
+        }
+        boolean isHandled = false;
+        try {
+            deliverCallback.handle(consumerTag, delivery);
+            isHandled = true;
+        }
+        finally {
+            if (isHandled) { deduplicator.complete(key); }
+            else { deduplicator.abort(key); }
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package programs;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import org.jetbrains.annotations.NotNull;
+import programs.models.IePair;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Moves deliveries off the amqp-client connection thread into a bounded pool of worker threads.
+ * When the queue in front of the workers is full, {@link QueuePolicy} decides whether the connection thread
+ * waits, the oldest queued delivery is dropped, or the new delivery is nacked back to the broker.
+ * {@link #stop()} cancels the consumer started by {@link #start(String)} before it stops the workers; deliveries that
+ * still arrive afterwards are requeued.
+ */
+public final class RabbitMqDispatcher implements DeliverCallback {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqDispatcher");
+
+    public enum QueuePolicy {
+        BLOCK,
+        DROP_OLDEST,
+        NACK_REQUEUE
+    }
+
+    private final RabbitMqHelper rabbitMqHelper = new RabbitMqHelper();
+    private final Channel channel;
+    private final DeliverCallback deliverCallback;
+    private final ArrayBlockingQueue<IePair<String, Delivery>> pendingDeliveries;
+    private final QueuePolicy queuePolicy;
+    private final int workerCount;
+    private final boolean autoAckFlag;
+    private final String consumerTag = "dispatcher-" + UUID.randomUUID();
+    private ExecutorService executorService;
+    private boolean isConsuming = false;
+    // read by handle() on the connection thread, which must not wait for the lock stop() holds
+    private volatile boolean isStopped = false;
+
+    public RabbitMqDispatcher(
+            @NotNull final Channel channel,
+            @NotNull final DeliverCallback deliverCallback,
+            final int workerCount,
+            final int queueCapacity,
+            @NotNull final QueuePolicy queuePolicy,
+            final boolean autoAckFlag) {
+        this.channel = channel;
+        this.deliverCallback = deliverCallback;
+        this.workerCount = Math.max(1, workerCount);
+        this.pendingDeliveries = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.queuePolicy = queuePolicy;
+        this.autoAckFlag = autoAckFlag;
+    }
+
+    public boolean isAutoAck() { return autoAckFlag; }
+
+    public int getPendingCount() { return pendingDeliveries.size(); }
+
+    /**
+     * Starts the workers and consumes {@code queueName} under the dispatcher's own consumer tag, so that
+     * {@link #stop()} can cancel it.
+     */
+    @NotNull
+    public synchronized IeApiResponse<Boolean> start(@NotNull final String queueName) {
+        start();
+        final IeApiResponse<Boolean> consumeResponse = rabbitMqHelper.basicConsume(
+                channel, queueName, consumerTag, this, new RabbitMqHelper.DefaultCancelCallback(), autoAckFlag);
+        isConsuming = (null == consumeResponse.error);
+        return consumeResponse;
+    }
+
+    /**
+     * Starts the workers only, for a caller that consumes with this dispatcher itself and cancels that consumer before
+     * {@link #stop()}.
+     */
+    public synchronized void start() {
+        if (null != executorService) {
+            LOGGER.log(Level.SEVERE, "start - executorService existed !!");
+            return;
+        }
+        isStopped = false;
+        executorService = Executors.newFixedThreadPool(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            executorService.submit(new Worker());
+        }
+        LOGGER.log(Level.INFO, "start - workerCount: [{}], queuePolicy: [{}], autoAck: [{}]", workerCount, queuePolicy, autoAckFlag);
+    }
+
+    public synchronized void stop() {
+        if (null == executorService) { return; }
+        isStopped = true;
+        // stop the broker from delivering into workers that are about to go away
+        if (isConsuming && channel.isOpen()) { rabbitMqHelper.basicCancel(channel, consumerTag); }
+        isConsuming = false;
+        executorService.shutdownNow();
+        try {
+            executorService.awaitTermination(5L, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+        }
+        executorService = null;
+        // whatever is still queued was never handled, give it back to the broker
+        IePair<String, Delivery> pair;
+        while (null != (pair = pendingDeliveries.poll())) {
+            reject(pair.second, true);
+        }
+        LOGGER.log(Level.INFO, "stop - executorService.shutdownNow!!");
+    }
+
+    @Override
+    public void handle(String consumerTag, Delivery delivery) throws IOException {
+        if (isStopped) {
+            // delivered before the broker processed the cancel; no worker would take it anymore
+            reject(delivery, true);
+            return;
+        }
+        final IePair<String, Delivery> pair = new IePair<>(consumerTag, delivery);
+        switch (queuePolicy) {
+            case BLOCK: {
+                try {
+                    pendingDeliveries.put(pair);
+                }
+                catch (InterruptedException cause) {
+                    Thread.currentThread().interrupt();
+                    reject(delivery, true);
+                }
+                break;
+            }
+            case DROP_OLDEST: {
+                while (!pendingDeliveries.offer(pair)) {
+                    final IePair<String, Delivery> oldest = pendingDeliveries.poll();
+                    if (null != oldest) {
+                        LOGGER.log(Level.WARNING, "handle - queue is full, drop the oldest delivery");
+                        reject(oldest.second, false);
+                    }
+                }
+                break;
+            }
+            case NACK_REQUEUE:
+            default: {
+                if (!pendingDeliveries.offer(pair)) {
+                    LOGGER.log(Level.WARNING, "handle - queue is full, nack the delivery");
+                    reject(delivery, true);
+                }
+                break;
+            }
+        }
+        // stop() drained the queue while this delivery was being queued
+        if (isStopped && pendingDeliveries.remove(pair)) { reject(delivery, true); }
+    }
+
+    private void reject(@NotNull final Delivery delivery, final boolean requeue) {
+        if (autoAckFlag) { return; }
+        rabbitMqHelper.basicNack(channel, delivery.getEnvelope().getDeliveryTag(), false, requeue);
+    }
+
+    private final class Worker implements Runnable {
+        @Override
+        public void run() {
+            // a handler that swallows the interrupt must not keep the worker taking deliveries after stop()
+            while ( (!isStopped) && (!Thread.currentThread().isInterrupted()) ) {
+                final IePair<String, Delivery> pair;
+                try {
+                    pair = pendingDeliveries.take();
+                }
+                catch (InterruptedException cause) {
+                    return;
+                }
+
+                final long deliveryTag = pair.second.getEnvelope().getDeliveryTag();
+                try {
+                    deliverCallback.handle(pair.first, pair.second);
+                    if (!autoAckFlag) { rabbitMqHelper.basicAck(channel, deliveryTag, false); }
+                }
+                catch (Exception cause) {
+                    LOGGER.log(Level.SEVERE, "Worker - error on DeliverCallback#handle(): {}", cause.getLocalizedMessage());
+                    reject(pair.second, true);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,374 @@
+package programs;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.ShutdownSignalException;
+import org.jetbrains.annotations.NotNull;
+import programs.metrics.IeMetrics;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+
+/**
+ * A connection that survives the loss of its broker node. It records the queues declared and the consumers started
+ * through it, and when the connection drops it replays them on a new one:
+ * <ul>
+ *     <li>with {@code isStandbyEnabled}, on a standby connection opened in advance, so the failover costs neither a
+ *     TCP/AMQP handshake nor a recovery delay; with a {@link RabbitMqClusterConnectionFactory} of the
+ *     {@link IeAddressSelector.Policy#LEAST_CONNECTIONS} policy the standby sits on another node than the active
+ *     one</li>
+ *     <li>otherwise, or when the standby is gone too, on a new connection, retried after the jittered delays of an
+ *     {@link IeBackoff}</li>
+ * </ul>
+ * A new standby is opened in the background after each failover. Consumers acknowledge each delivery after their
+ * callback returned, so the deliveries in flight on the lost connection are redelivered by the broker.
+ * <p>
+ * This replaces the client library's automatic recovery, which it turns off on its own copy of {@code factory},
+ * so consumers are never restored twice while the caller's factory is left as it is. Channels from
+ * {@link #createChannel()} die with their connection and are not restored.
+ * <p>
+ * Exports {@code ie_failover_total} and the time from the loss to the restored consumers as the {@code failover}
+ * operation of the {@code rabbitmq} transport.
+ */
+public final class RabbitMqFailoverConnection {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqFailoverConnection");
+
+    private static final IeMetrics.Timer FAILOVER_TIMER = IeMetrics.getDefault().timer("rabbitmq", "failover");
+
+    private static final class ConsumerRecord {
+        final String queueName;
+        final String consumerTag;
+        final DeliverCallback deliverCallback;
+        final int prefetchCount;
+
+        ConsumerRecord(
+                @NotNull final String queueName,
+                @NotNull final String consumerTag,
+                @NotNull final DeliverCallback deliverCallback,
+                final int prefetchCount) {
+            this.queueName = queueName;
+            this.consumerTag = consumerTag;
+            this.deliverCallback = deliverCallback;
+            this.prefetchCount = prefetchCount;
+        }
+    }
+
+    private final byte[] lock = new byte[0];
+    private final RabbitMqHelper rabbitMqHelper = new RabbitMqHelper();
+    private final ScheduledExecutorService recoveryExecutor = Executors.newSingleThreadScheduledExecutor();
+    private final List<RabbitMqHelper.QueueParameter> declaredQueues = new ArrayList<>();
+    private final List<ConsumerRecord> consumers = new ArrayList<>();
+    private final ConnectionFactory factory;
+    private final IeBackoff backoff;
+    private final boolean isStandbyEnabled;
+    private final LongAdder failoverCount;
+    private Connection active;
+    private Connection standby;
+    private long lostNanos;
+    private int consumerSequence;
+    private boolean isClosed = false;
+
+    public RabbitMqFailoverConnection(@NotNull final ConnectionFactory factory) {
+        this(factory, new IeBackoff(), true);
+    }
+
+    public RabbitMqFailoverConnection(
+            @NotNull final ConnectionFactory factory, @NotNull final IeBackoff backoff, final boolean isStandbyEnabled) {
+        // a copy, since the factory may be shared with connections that rely on its automatic recovery
+        this.factory = factory.clone();
+        this.factory.setAutomaticRecoveryEnabled(false);
+        this.backoff = backoff;
+        this.isStandbyEnabled = isStandbyEnabled;
+        this.failoverCount = IeMetrics.getDefault().counter("ie_failover_total", "transport=\"rabbitmq\"");
+    }
+
+    /**
+     * Opens the active connection and, in the background, the standby.
+     */
+    @NotNull
+    public IeApiResponse<Boolean> start() {
+        synchronized (lock) {
+            if (isClosed) { return closedResponse(); }
+            if (null != active) { return IeApiResponse.TRUE; }
+            final IeApiResponse<Connection> connectionResponse = open();
+            if (null != connectionResponse.error) { return new IeApiResponse<>(null, connectionResponse.error); }
+            active = connectionResponse.result;
+        }
+        LOGGER.log(Level.INFO, "start - isStandbyEnabled: {}", isStandbyEnabled);
+        execute(() -> replenishStandby(0));
+        return IeApiResponse.TRUE;
+    }
+
+    public boolean isStandbyReady() {
+        synchronized (lock) {
+            return (null != standby) && standby.isOpen();
+        }
+    }
+
+    /**
+     * Declares the queue now, when connected, and again on every connection failed over to.
+     */
+    @NotNull
+    public IeApiResponse<Boolean> queueDeclare(@NotNull final RabbitMqHelper.QueueParameter parameter) {
+        synchronized (lock) {
+            if (isClosed) { return closedResponse(); }
+            if (null != active) {
+                final IeApiResponse<Boolean> declareResponse = declare(active, parameter);
+                if (null != declareResponse.error) { return declareResponse; }
+            }
+            final Iterator<RabbitMqHelper.QueueParameter> iterator = declaredQueues.iterator();
+            while (iterator.hasNext()) {
+                if (Objects.equals(iterator.next().name, parameter.name)) { iterator.remove(); }
+            }
+            declaredQueues.add(parameter);
+            return IeApiResponse.TRUE;
+        }
+    }
+
+    /**
+     * Consumes {@code queueName} with manual acknowledgements on a channel of its own, now, when connected,
+     * and again on every connection failed over to.
+     */
+    @NotNull
+    public IeApiResponse<Boolean> basicConsume(
+            @NotNull final String queueName, @NotNull final DeliverCallback deliverCallback, final int prefetchCount) {
+        synchronized (lock) {
+            if (isClosed) { return closedResponse(); }
+            final ConsumerRecord record = new ConsumerRecord(
+                    queueName, "failover-" + (++consumerSequence), deliverCallback, Math.max(1, prefetchCount));
+            if (null != active) {
+                final IeApiResponse<Boolean> consumeResponse = consume(active, record);
+                if (null != consumeResponse.error) { return consumeResponse; }
+            }
+            consumers.add(record);
+            return IeApiResponse.TRUE;
+        }
+    }
+
+    /**
+     * @return a channel of the active connection, e.g. to publish on;
+     *         {@link AppConstants.RabbitMqErrorCode#CONNECTION_UNAVAILABLE} while failing over
+     */
+    @NotNull
+    public IeApiResponse<Channel> createChannel() {
+        synchronized (lock) {
+            if (isClosed) { return new IeApiResponse<>(null, closedResponse().error); }
+            if (null == active) {
+                return new IeApiResponse<>(null, IeRuntimeException.of(
+                        "failing over, no connection", AppConstants.RabbitMqErrorCode.CONNECTION_UNAVAILABLE));
+            }
+            return rabbitMqHelper.createChannel(active);
+        }
+    }
+
+    public void close() {
+        synchronized (lock) {
+            if (isClosed) { return; }
+            isClosed = true;
+            closeQuietly(active);
+            closeQuietly(standby);
+            active = null;
+            standby = null;
+        }
+        recoveryExecutor.shutdownNow();
+        LOGGER.log(Level.INFO, "close - connections closed");
+    }
+
+    ///
+
+    @NotNull
+    private IeApiResponse<Connection> open() {
+        final IeApiResponse<Connection> connectionResponse = rabbitMqHelper.newConnection(factory);
+        if (null != connectionResponse.error) { return connectionResponse; }
+        final Connection connection = connectionResponse.result;
+        connection.addShutdownListener(cause -> onShutdown(connection, cause));
+        return connectionResponse;
+    }
+
+    private void onShutdown(@NotNull final Connection connection, @NotNull final ShutdownSignalException cause) {
+        // our own close, or the application's
+        if (cause.isInitiatedByApplication()) { return; }
+        LOGGER.log(Level.SEVERE, "onShutdown - connection lost: {}", cause.getLocalizedMessage());
+        execute(() -> failover(connection));
+    }
+
+    private void failover(@NotNull final Connection lost) {
+        synchronized (lock) {
+            if (isClosed) { return; }
+            if (lost == standby) {
+                standby = null;
+                schedule(() -> replenishStandby(1), backoff.delayMillis(0));
+                return;
+            }
+            if (lost != active) { return; }
+
+            failoverCount.increment();
+            lostNanos = System.nanoTime();
+            active = null;
+            final Connection promoted = standby;
+            standby = null;
+            if ( (null != promoted) && promoted.isOpen() ) {
+                if (restore(promoted)) {
+                    active = promoted;
+                    FAILOVER_TIMER.recordSuccess(lostNanos);
+                    LOGGER.log(Level.INFO, "failover - promoted the standby in {} ms",
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lostNanos));
+                    execute(() -> replenishStandby(0));
+                    return;
+                }
+                closeQuietly(promoted);
+            }
+        }
+        reconnect(0);
+    }
+
+    private void reconnect(final int attempt) {
+        synchronized (lock) {
+            if ( isClosed || (null != active) ) { return; }
+        }
+        final IeApiResponse<Connection> connectionResponse = open();
+        if (null != connectionResponse.error) {
+            retry(() -> reconnect(attempt + 1), attempt);
+            return;
+        }
+        final Connection connection = connectionResponse.result;
+        synchronized (lock) {
+            if (isClosed) {
+                closeQuietly(connection);
+                return;
+            }
+            if (!restore(connection)) {
+                closeQuietly(connection);
+                retry(() -> reconnect(attempt + 1), attempt);
+                return;
+            }
+            active = connection;
+            FAILOVER_TIMER.recordSuccess(lostNanos);
+            LOGGER.log(Level.INFO, "reconnect - restored after {} attempts in {} ms",
+                    attempt + 1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lostNanos));
+        }
+        replenishStandby(0);
+    }
+
+    private void replenishStandby(final int attempt) {
+        if (!isStandbyEnabled) { return; }
+        synchronized (lock) {
+            if ( isClosed || (null != standby) || (null == active) ) { return; }
+        }
+        final IeApiResponse<Connection> connectionResponse = open();
+        if (null != connectionResponse.error) {
+            retry(() -> replenishStandby(attempt + 1), attempt);
+            return;
+        }
+        final Connection connection = connectionResponse.result;
+        synchronized (lock) {
+            if ( isClosed || (null != standby) ) {
+                closeQuietly(connection);
+                return;
+            }
+            standby = connection;
+        }
+        LOGGER.log(Level.INFO, "replenishStandby - standby connected to {}", connection.getAddress());
+    }
+
+    /**
+     * Replays the declared queues and the consumers; runs under the lock, so no consumer is added meanwhile.
+     */
+    private boolean restore(@NotNull final Connection connection) {
+        for (final RabbitMqHelper.QueueParameter parameter : declaredQueues) {
+            if (null != declare(connection, parameter).error) { return false; }
+        }
+        for (final ConsumerRecord record : consumers) {
+            if (null != consume(connection, record).error) { return false; }
+        }
+        LOGGER.log(Level.INFO, "restore - queues: [{}], consumers: [{}]", declaredQueues.size(), consumers.size());
+        return true;
+    }
+
+    @NotNull
+    private IeApiResponse<Boolean> declare(@NotNull final Connection connection, @NotNull final RabbitMqHelper.QueueParameter parameter) {
+        final IeApiResponse<Channel> channelResponse = rabbitMqHelper.createChannel(connection);
+        if (null != channelResponse.error) { return new IeApiResponse<>(null, channelResponse.error); }
+        final Channel channel = channelResponse.result;
+        try {
+            return rabbitMqHelper.queueDeclare(channel, parameter);
+        }
+        finally {
+            closeQuietly(channel);
+        }
+    }
+
+    @NotNull
+    private IeApiResponse<Boolean> consume(@NotNull final Connection connection, @NotNull final ConsumerRecord record) {
+        final IeApiResponse<Channel> channelResponse = rabbitMqHelper.createChannel(connection);
+        if (null != channelResponse.error) { return new IeApiResponse<>(null, channelResponse.error); }
+        final Channel channel = channelResponse.result;
+        IeApiResponse<Boolean> response = rabbitMqHelper.basicQos(channel, record.prefetchCount);
+        if (null == response.error) {
+            response = rabbitMqHelper.basicConsume(
+                    channel,
+                    record.queueName,
+                    record.consumerTag,
+                    new RabbitMqAckingCallback(rabbitMqHelper, channel, record.deliverCallback),
+                    new RabbitMqHelper.DefaultCancelCallback(),
+                    false);
+        }
+        if (null != response.error) { closeQuietly(channel); }
+        return response;
+    }
+
+    private void retry(@NotNull final Runnable task, final int attempt) {
+        final long delayMillis = backoff.delayMillis(attempt);
+        LOGGER.log(Level.WARNING, "retry - attempt {} in {} ms", attempt + 1, delayMillis);
+        schedule(task, delayMillis);
+    }
+
+    private void execute(@NotNull final Runnable task) { schedule(task, 0L); }
+
+    private void schedule(@NotNull final Runnable task, final long delayMillis) {
+        try {
+            recoveryExecutor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException cause) {
+            // closed meanwhile
+            LOGGER.log(Level.FINE, "schedule - rejected: {}", cause.getLocalizedMessage());
+        }
+    }
+
+    @NotNull
+    private static IeApiResponse<Boolean> closedResponse() {
+        return new IeApiResponse<>(null, IeRuntimeException.of(
+                "the connection has been closed", AppConstants.RabbitMqErrorCode.CONNECTION_UNAVAILABLE));
+    }
+
+    private static void closeQuietly(final Connection connection) {
+        if ( (null == connection) || !connection.isOpen() ) { return; }
+        try {
+            connection.close();
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.WARNING, "closeQuietly - error on Connection#close(): {}", cause.getLocalizedMessage());
+        }
+    }
+
+    private static void closeQuietly(@NotNull final Channel channel) {
+        if (!channel.isOpen()) { return; }
+        try {
+            channel.close();
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.WARNING, "closeQuietly - error on Channel#close(): {}", cause.getLocalizedMessage());
+        }
+    }
+}
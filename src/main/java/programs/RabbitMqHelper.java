@@ -3,9 +3,17 @@ package programs;
 import com.rabbitmq.client.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import programs.codec.IeCodec;
+import programs.codec.IeCompressor;
+import programs.codec.IeEncodeBuffer;
+import programs.metrics.IeMetrics;
+import programs.models.IeAddress;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
@@ -14,42 +22,90 @@ import java.util.logging.Level;
  */
 public final class RabbitMqHelper {
 
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqHelper");
+
+    private static final IeMetrics.Timer NEW_CONNECTION_TIMER = IeMetrics.getDefault().timer("rabbitmq", "new_connection");
+    private static final IeMetrics.Timer CREATE_CHANNEL_TIMER = IeMetrics.getDefault().timer("rabbitmq", "create_channel");
+    private static final IeMetrics.Timer QUEUE_DECLARE_TIMER = IeMetrics.getDefault().timer("rabbitmq", "queue_declare");
+    private static final IeMetrics.Timer CONFIRM_SELECT_TIMER = IeMetrics.getDefault().timer("rabbitmq", "confirm_select");
+    private static final IeMetrics.Timer BASIC_PUBLISH_TIMER = IeMetrics.getDefault().timer("rabbitmq", "basic_publish");
+    private static final IeMetrics.Timer BASIC_CONSUME_TIMER = IeMetrics.getDefault().timer("rabbitmq", "basic_consume");
+    private static final IeMetrics.Timer BASIC_CANCEL_TIMER = IeMetrics.getDefault().timer("rabbitmq", "basic_cancel");
+    private static final IeMetrics.Timer BASIC_QOS_TIMER = IeMetrics.getDefault().timer("rabbitmq", "basic_qos");
+    private static final IeMetrics.Timer BASIC_ACK_TIMER = IeMetrics.getDefault().timer("rabbitmq", "basic_ack");
+    private static final IeMetrics.Timer BASIC_NACK_TIMER = IeMetrics.getDefault().timer("rabbitmq", "basic_nack");
+
+    private final IeCompressor compressor;
+
+    public RabbitMqHelper() { this(null); }
+
+    /**
+     * @param compressor compresses publish bodies above its threshold and sets {@code content-encoding} accordingly;
+     *                   null publishes them as is
+     */
+    public RabbitMqHelper(@Nullable final IeCompressor compressor) { this.compressor = compressor; }
+
     @NotNull
     public IeApiResponse<Connection> newConnection(@NotNull final ConnectionFactory factory) {
+        final long startNanos = System.nanoTime();
         try {
             final Connection connection = factory.newConnection();
+            NEW_CONNECTION_TIMER.recordSuccess(startNanos);
             return new IeApiResponse<>(connection, null);
         }
         catch (Exception cause) {
-            java.util.logging.Logger.getLogger("RabbitMqHelper").log(Level.SEVERE, "Error on ConnectionFactory#newConnection(): " + cause.getLocalizedMessage());
-            final IeRuntimeException error = new IeRuntimeException(cause, AppConstants.RabbitMqErrorCode.NEW_CONNECTION);
+            LOGGER.log(Level.SEVERE, "Error on ConnectionFactory#newConnection(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.NEW_CONNECTION);
+            NEW_CONNECTION_TIMER.recordFailure(error.getExceptionCode(), startNanos);
             return new IeApiResponse<>(null, error);
         }
     }
 
     @NotNull
     public IeApiResponse<Channel> createChannel(@NotNull final Connection connection) {
+        final long startNanos = System.nanoTime();
         try {
             final Channel channel = connection.createChannel();
+            CREATE_CHANNEL_TIMER.recordSuccess(startNanos);
             return new IeApiResponse<>(channel, null);
         }
         catch (Exception cause) {
-            java.util.logging.Logger.getLogger("RabbitMqHelper").log(Level.SEVERE, "Error on Connection#createChannel(): " + cause.getLocalizedMessage());
-            final IeRuntimeException error = new IeRuntimeException(cause, AppConstants.RabbitMqErrorCode.CREATE_CHANNEL);
+            LOGGER.log(Level.SEVERE, "Error on Connection#createChannel(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CREATE_CHANNEL);
+            CREATE_CHANNEL_TIMER.recordFailure(error.getExceptionCode(), startNanos);
             return new IeApiResponse<>(null, error);
         }
     }
 
     @NotNull
     public IeApiResponse<Boolean> queueDeclare(@NotNull final Channel channel, QueueParameter parameter) {
+        final long startNanos = System.nanoTime();
         try {
             channel.queueDeclare(
                     parameter.name, parameter.durable, parameter.exclusive, parameter.autoDelete, parameter.arguments);
-            return new IeApiResponse<>(true, null);
+            QUEUE_DECLARE_TIMER.recordSuccess(startNanos);
+            return IeApiResponse.TRUE;
         }
         catch (Exception cause) {
-            java.util.logging.Logger.getLogger("RabbitMqHelper").log(Level.SEVERE, "Error on Channel#queueDeclare(): " + cause.getLocalizedMessage());
-            final IeRuntimeException error = new IeRuntimeException(cause, AppConstants.RabbitMqErrorCode.QUEUE_DECLARATION);
+            LOGGER.log(Level.SEVERE, "Error on Channel#queueDeclare(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.QUEUE_DECLARATION);
+            QUEUE_DECLARE_TIMER.recordFailure(error.getExceptionCode(), startNanos);
+            return new IeApiResponse<>(null, error);
+        }
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> confirmSelect(@NotNull final Channel channel) {
+        final long startNanos = System.nanoTime();
+        try {
+            channel.confirmSelect();
+            CONFIRM_SELECT_TIMER.recordSuccess(startNanos);
+            return IeApiResponse.TRUE;
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.SEVERE, "Error on Channel#confirmSelect(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CONFIRM_SELECT);
+            CONFIRM_SELECT_TIMER.recordFailure(error.getExceptionCode(), startNanos);
             return new IeApiResponse<>(null, error);
         }
     }
@@ -61,17 +117,100 @@ public final class RabbitMqHelper {
             @NotNull final String queueName,
             @NotNull final String message,
             @Nullable final AMQP.BasicProperties properties) {
+        return basicPublish(channel, exchange, queueName, message.getBytes(StandardCharsets.UTF_8), properties);
+    }
+
+    /**
+     * The client only sends {@code byte[]} bodies, so the array backing {@code body} is used as is when it covers
+     * the whole buffer, and the remaining bytes are copied once otherwise. The buffer position is left unchanged.
+     */
+    @NotNull
+    public IeApiResponse<Boolean> basicPublish(
+            @NotNull final Channel channel,
+            @NotNull final String exchange,
+            @NotNull final String queueName,
+            @NotNull final ByteBuffer body,
+            @Nullable final AMQP.BasicProperties properties) {
+        final byte[] bytes;
+        if ( body.hasArray() && (0 == body.arrayOffset()) && (0 == body.position()) && (body.remaining() == body.array().length) ) {
+            bytes = body.array();
+        }
+        else {
+            bytes = new byte[body.remaining()];
+            body.duplicate().get(bytes);
+        }
+        return basicPublish(channel, exchange, queueName, bytes, properties);
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> basicPublish(
+            @NotNull final Channel channel,
+            @NotNull final String exchange,
+            @NotNull final String queueName,
+            @NotNull final byte[] body,
+            @Nullable final AMQP.BasicProperties properties) {
+        final byte[] compressedBody = isCompressible(properties) ? compressor.compress(body) : null;
+        if (null == compressedBody) { return doBasicPublish(channel, exchange, queueName, body, properties); }
+        final AMQP.BasicProperties.Builder builder = (null != properties) ? properties.builder() : new AMQP.BasicProperties.Builder();
+        return doBasicPublish(channel, exchange, queueName, compressedBody,
+                builder.contentEncoding(compressor.getCompression().getContentEncoding()).build());
+    }
+
+    @NotNull
+    private IeApiResponse<Boolean> doBasicPublish(
+            @NotNull final Channel channel,
+            @NotNull final String exchange,
+            @NotNull final String queueName,
+            @NotNull final byte[] body,
+            @Nullable final AMQP.BasicProperties properties) {
+        final long startNanos = System.nanoTime();
         try {
-            channel.basicPublish(exchange, queueName, properties, message.getBytes(StandardCharsets.UTF_8));
-            return new IeApiResponse<>(true, null);
+            channel.basicPublish(exchange, queueName, properties, body);
+            BASIC_PUBLISH_TIMER.recordSuccess(startNanos);
+            return IeApiResponse.TRUE;
         }
         catch (Exception cause) {
-            java.util.logging.Logger.getLogger("RabbitMqHelper").log(Level.SEVERE, "Error on Channel#basicPublish(): " + cause.getLocalizedMessage());
-            final IeRuntimeException error = new IeRuntimeException(cause, AppConstants.RabbitMqErrorCode.CHANNEL_PUBLISH);
+            LOGGER.log(Level.SEVERE, "Error on Channel#basicPublish(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CHANNEL_PUBLISH);
+            BASIC_PUBLISH_TIMER.recordFailure(error.getExceptionCode(), startNanos);
             return new IeApiResponse<>(null, error);
         }
     }
 
+    /**
+     * Encodes {@code message} with {@code codec} and sets the codec's content type, so that
+     * {@link RabbitMqMessageAdapter} decodes it on the other side.
+     */
+    @NotNull
+    public <T> IeApiResponse<Boolean> basicPublish(
+            @NotNull final Channel channel,
+            @NotNull final String exchange,
+            @NotNull final String queueName,
+            @NotNull final T message,
+            @NotNull final IeCodec<T> codec,
+            @Nullable final AMQP.BasicProperties properties) {
+        final IeEncodeBuffer buffer = IeEncodeBuffer.get();
+        try {
+            codec.encode(message, buffer);
+        }
+        catch (IeRuntimeException cause) {
+            LOGGER.log(Level.SEVERE, "Error on IeCodec#encode(): {}", cause.getLocalizedMessage());
+            BASIC_PUBLISH_TIMER.markFailure(cause.getExceptionCode());
+            return new IeApiResponse<>(null, cause);
+        }
+        final AMQP.BasicProperties.Builder builder = (null != properties) ? properties.builder() : new AMQP.BasicProperties.Builder();
+        builder.contentType(codec.getContentType());
+        final byte[] compressedBody = isCompressible(properties) ? compressor.compress(buffer) : null;
+        if (null == compressedBody) { return doBasicPublish(channel, exchange, queueName, buffer.toByteArray(), builder.build()); }
+        return doBasicPublish(channel, exchange, queueName, compressedBody,
+                builder.contentEncoding(compressor.getCompression().getContentEncoding()).build());
+    }
+
+    // bodies the caller already encoded, e.g. with gzip, are left alone
+    private boolean isCompressible(@Nullable final AMQP.BasicProperties properties) {
+        return (null != compressor) && ( (null == properties) || (null == properties.getContentEncoding()) );
+    }
+
     @NotNull
     public IeApiResponse<Boolean> basicConsume(
             @NotNull final Channel channel,
@@ -96,13 +235,106 @@ public final class RabbitMqHelper {
             @NotNull final DeliverCallback deliverCallback,
             @NotNull final CancelCallback cancelCallback,
             final boolean autoAckFlag) {
+        final long startNanos = System.nanoTime();
         try {
             channel.basicConsume(queueName, autoAckFlag, deliverCallback, cancelCallback);
-            return new IeApiResponse<>(true, null);
+            BASIC_CONSUME_TIMER.recordSuccess(startNanos);
+            return IeApiResponse.TRUE;
         }
         catch (Exception cause) {
-            java.util.logging.Logger.getLogger("RabbitMqHelper").log(Level.SEVERE, "Error on Channel#basicConsume(): " + cause.getLocalizedMessage());
-            final IeRuntimeException error = new IeRuntimeException(cause, AppConstants.RabbitMqErrorCode.CHANNEL_CONSUME);
+            LOGGER.log(Level.SEVERE, "Error on Channel#basicConsume(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CHANNEL_CONSUME);
+            BASIC_CONSUME_TIMER.recordFailure(error.getExceptionCode(), startNanos);
+            return new IeApiResponse<>(null, error);
+        }
+    }
+
+    /**
+     * @param consumerTag chosen by the caller, so the consumer can be stopped with {@link #basicCancel} later
+     */
+    @NotNull
+    public IeApiResponse<Boolean> basicConsume(
+            @NotNull final Channel channel,
+            @NotNull final String queueName,
+            @NotNull final String consumerTag,
+            @NotNull final DeliverCallback deliverCallback,
+            @NotNull final CancelCallback cancelCallback,
+            final boolean autoAckFlag) {
+        final long startNanos = System.nanoTime();
+        try {
+            channel.basicConsume(queueName, autoAckFlag, consumerTag, deliverCallback, cancelCallback);
+            BASIC_CONSUME_TIMER.recordSuccess(startNanos);
+            return IeApiResponse.TRUE;
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.SEVERE, "Error on Channel#basicConsume(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CHANNEL_CONSUME);
+            BASIC_CONSUME_TIMER.recordFailure(error.getExceptionCode(), startNanos);
+            return new IeApiResponse<>(null, error);
+        }
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> basicCancel(@NotNull final Channel channel, @NotNull final String consumerTag) {
+        final long startNanos = System.nanoTime();
+        try {
+            channel.basicCancel(consumerTag);
+            BASIC_CANCEL_TIMER.recordSuccess(startNanos);
+            return IeApiResponse.TRUE;
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.SEVERE, "Error on Channel#basicCancel(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CHANNEL_CANCEL);
+            BASIC_CANCEL_TIMER.recordFailure(error.getExceptionCode(), startNanos);
+            return new IeApiResponse<>(null, error);
+        }
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> basicQos(@NotNull final Channel channel, final int prefetchCount) {
+        final long startNanos = System.nanoTime();
+        try {
+            channel.basicQos(prefetchCount);
+            BASIC_QOS_TIMER.recordSuccess(startNanos);
+            return IeApiResponse.TRUE;
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.SEVERE, "Error on Channel#basicQos(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CHANNEL_QOS);
+            BASIC_QOS_TIMER.recordFailure(error.getExceptionCode(), startNanos);
+            return new IeApiResponse<>(null, error);
+        }
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> basicAck(@NotNull final Channel channel, final long deliveryTag, final boolean multiple) {
+        final long startNanos = System.nanoTime();
+        try {
+            channel.basicAck(deliveryTag, multiple);
+            BASIC_ACK_TIMER.recordSuccess(startNanos);
+            return IeApiResponse.TRUE;
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.SEVERE, "Error on Channel#basicAck(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CHANNEL_ACK);
+            BASIC_ACK_TIMER.recordFailure(error.getExceptionCode(), startNanos);
+            return new IeApiResponse<>(null, error);
+        }
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> basicNack(
+            @NotNull final Channel channel, final long deliveryTag, final boolean multiple, final boolean requeue) {
+        final long startNanos = System.nanoTime();
+        try {
+            channel.basicNack(deliveryTag, multiple, requeue);
+            BASIC_NACK_TIMER.recordSuccess(startNanos);
+            return IeApiResponse.TRUE;
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.SEVERE, "Error on Channel#basicNack(): {}", cause.getLocalizedMessage());
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.RabbitMqErrorCode.CHANNEL_ACK);
+            BASIC_NACK_TIMER.recordFailure(error.getExceptionCode(), startNanos);
             return new IeApiResponse<>(null, error);
         }
     }
@@ -144,6 +376,9 @@ public final class RabbitMqHelper {
         private String virtualHost = "/";
         private String hostName = "localhost";
         private int portNumber = 5672;
+        private final List<IeAddress> addresses = new ArrayList<>();
+        private IeAddressSelector.Policy addressPolicy = IeAddressSelector.Policy.ROUND_ROBIN;
+        private IeBackoff recoveryBackoff = null;
 
         @NotNull
         public ConnectionFactoryBuilder setUserName(@Nullable final String userName) {
@@ -183,32 +418,74 @@ public final class RabbitMqHelper {
             return this;
         }
 
+        /**
+         * Adds a node of a cluster; with more than one, {@link #build()} spreads the connections over them
+         * by the {@link #setAddressPolicy address policy} and ignores {@link #setHostName} / {@link #setPortNumber}.
+         */
+        @NotNull
+        public ConnectionFactoryBuilder addAddress(@Nullable final String hostName, final int portNumber) {
+            if ( (null != hostName) && (hostName.length() > 0) && (portNumber > 0) ) {
+                this.addresses.add(new IeAddress(hostName, portNumber));
+            }
+            return this;
+        }
+
+        @NotNull
+        public ConnectionFactoryBuilder setAddressPolicy(@Nullable final IeAddressSelector.Policy addressPolicy) {
+            if (null != addressPolicy) { this.addressPolicy = addressPolicy; }
+            return this;
+        }
+
+        /**
+         * Recovers dropped connections, with their channels, declared queues and consumers, after the jittered delays
+         * of {@code recoveryBackoff} instead of the client's fixed 5 s interval.
+         */
+        @NotNull
+        public ConnectionFactoryBuilder setRecoveryBackoff(@Nullable final IeBackoff recoveryBackoff) {
+            this.recoveryBackoff = recoveryBackoff;
+            return this;
+        }
+
         @NotNull
         public ConnectionFactory build() {
-            final ConnectionFactory factory = new ConnectionFactory();
+            if (1 == addresses.size()) {
+                hostName = addresses.get(0).hostName;
+                portNumber = addresses.get(0).portNumber;
+            }
+            final ConnectionFactory factory;
+            if (addresses.size() > 1) {
+                LOGGER.log(Level.INFO, "ConnectionFactoryBuilder - addresses: {}, policy: [{}]", addresses, addressPolicy);
+                factory = new RabbitMqClusterConnectionFactory(new IeAddressSelector(addresses, addressPolicy));
+            }
+            else {
+                factory = new ConnectionFactory();
+            }
             // "guest"/"guest" by default, limited to localhost connections
             if ( (null != userName) && (null != password) ) {
-                java.util.logging.Logger.getLogger("RabbitMqHelper").log(Level.INFO,
-                        "ConnectionFactoryBuilder - userName: [" + userName + "], password: [" + password + "]");
+                LOGGER.log(Level.INFO, "ConnectionFactoryBuilder - userName: [{}], password: [{}]", userName, password);
                 factory.setUsername(userName);
                 factory.setPassword(password);
             }
             if (null != virtualHost) {
-                java.util.logging.Logger.getLogger("RabbitMqHelper").log(Level.INFO,
-                        "ConnectionFactoryBuilder - virtualHost: [" + virtualHost + "]");
+                LOGGER.log(Level.INFO, "ConnectionFactoryBuilder - virtualHost: [{}]", virtualHost);
                 factory.setVirtualHost(virtualHost);
             }
             if (null != hostName) {
-                java.util.logging.Logger.getLogger("programs.RabbitMqHelper").log(Level.INFO,
-                        "ConnectionFactoryBuilder - hostName: [" + hostName + "]");
+                LOGGER.log(Level.INFO, "ConnectionFactoryBuilder - hostName: [{}]", hostName);
                 factory.setHost(hostName);
             }
 
             if (portNumber > 0) {
-                java.util.logging.Logger.getLogger("programs.RabbitMqHelper").log(Level.INFO,
-                        "ConnectionFactoryBuilder - portNumber: [" + portNumber + "]");
+                LOGGER.log(Level.INFO, "ConnectionFactoryBuilder - portNumber: [{}]", portNumber);
                 factory.setPort(portNumber);
             }
+            if (null != recoveryBackoff) {
+                LOGGER.log(Level.INFO, "ConnectionFactoryBuilder - recovery backoff: [{} ms .. {} ms]",
+                        recoveryBackoff.getInitialDelayMillis(), recoveryBackoff.getMaxDelayMillis());
+                factory.setAutomaticRecoveryEnabled(true);
+                factory.setTopologyRecoveryEnabled(true);
+                factory.setRecoveryDelayHandler(recoveryBackoff::delayMillis);
+            }
             return factory;
         }
     }
@@ -216,8 +493,7 @@ public final class RabbitMqHelper {
     public static final class DefaultCancelCallback implements CancelCallback {
         @Override
         public void handle(String consumerTag) throws IOException {
-            java.util.logging.Logger.getLogger("programs.RabbitMqHelper").log(Level.INFO,
-                    "DefaultCancelCallback - consumerTag: [" + consumerTag + "]");
+            LOGGER.log(Level.INFO, "DefaultCancelCallback - consumerTag: [{}]", consumerTag);
         }
     }
 }
@@ -0,0 +1,71 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import org.jetbrains.annotations.NotNull;
+import programs.codec.IeBatchFrame;
+import programs.codec.IeCodec;
+import programs.codec.IeCodecRegistry;
+import programs.codec.IeCompression;
+import programs.codec.IeCompressor;
+import programs.delegates.IeMessageHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+
+/**
+ * Decodes each AMQP delivery with the codec registered for its {@code content-type} before handing it to an {@link IeMessageHandler}.
+ * Deliveries without a known content type are handed over as the raw body. Bodies with an {@link IeCompression}
+ * {@code content-encoding} are decompressed first. An {@link IeBatchFrame} is unpacked and every item decoded with the codec
+ * of its own {@link IeBatchFrame#CONTENT_TYPE_HEADER}; the delivery is acked or nacked as a whole.
+ */
+public final class RabbitMqMessageAdapter implements DeliverCallback {
+
+    private final IeMessageHandler messageHandler;
+    private final IeCodecRegistry codecRegistry;
+
+    public RabbitMqMessageAdapter(@NotNull final IeMessageHandler messageHandler) {
+        this(messageHandler, IeCodecRegistry.getDefault());
+    }
+
+    public RabbitMqMessageAdapter(@NotNull final IeMessageHandler messageHandler, @NotNull final IeCodecRegistry codecRegistry) {
+        this.messageHandler = messageHandler;
+        this.codecRegistry = codecRegistry;
+    }
+
+    @Override
+    public void handle(String consumerTag, Delivery delivery) throws IOException {
+        final AMQP.BasicProperties properties = delivery.getProperties();
+        final Map<String, Object> headers = (null != properties) ? properties.getHeaders() : null;
+        final IeCodec<?> codec = (null != properties) ? codecRegistry.byContentType(properties.getContentType()) : null;
+        final IeCompression compression = (null != properties) ? IeCompression.byContentEncoding(properties.getContentEncoding()) : null;
+        try {
+            final ByteBuffer body = (null != compression)
+                    ? IeCompressor.decompress("rabbitmq", compression, ByteBuffer.wrap(delivery.getBody()))
+                    : ByteBuffer.wrap(delivery.getBody()).asReadOnlyBuffer();
+            final String routingKey = delivery.getEnvelope().getRoutingKey();
+            if ( (null != properties) && IeBatchFrame.isBatch(properties.getContentType()) ) {
+                IeBatchFrame.forEach(body, (payload, itemHeaders) -> {
+                    final IeCodec<?> itemCodec = codecRegistry.byContentType(
+                            (String) itemHeaders.get(IeBatchFrame.CONTENT_TYPE_HEADER));
+                    messageHandler.onMessage(routingKey, (null != itemCodec) ? itemCodec.decode(payload) : payload, itemHeaders);
+                });
+                return;
+            }
+            messageHandler.onMessage(
+                    routingKey,
+                    (null != codec) ? codec.decode(body) : body,
+                    (null != headers) ? headers : Collections.<String, Object>emptyMap());
+        }
+        catch (IOException cause) {
+            throw cause;
+        }
+        catch (Exception cause) {
+            throw new IOException(cause);
+        }
+    }
+}
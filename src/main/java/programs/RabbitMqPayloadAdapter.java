@@ -0,0 +1,54 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import org.jetbrains.annotations.NotNull;
+import programs.codec.IeBatchFrame;
+import programs.codec.IeCompression;
+import programs.codec.IeCompressor;
+import programs.delegates.IePayloadHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+
+
+/**
+ * Hands each AMQP delivery to an {@link IePayloadHandler} as a read-only view over the body the client already received,
+ * or over the thread's decompression buffer when its {@code content-encoding} is one of {@link IeCompression}.
+ * An {@link IeBatchFrame} is unpacked and handed over item by item, each with its own headers; the delivery
+ * is still acked or nacked as a whole, so a failing item redelivers the entire batch.
+ * A failing handler surfaces as an {@link IOException}, so {@link RabbitMqDispatcher} nacks the delivery.
+ */
+public final class RabbitMqPayloadAdapter implements DeliverCallback {
+
+    private final IePayloadHandler payloadHandler;
+
+    public RabbitMqPayloadAdapter(@NotNull final IePayloadHandler payloadHandler) { this.payloadHandler = payloadHandler; }
+
+    @Override
+    public void handle(String consumerTag, Delivery delivery) throws IOException {
+        final AMQP.BasicProperties properties = delivery.getProperties();
+        final Map<String, Object> headers = (null != properties) ? properties.getHeaders() : null;
+        final IeCompression compression = (null != properties) ? IeCompression.byContentEncoding(properties.getContentEncoding()) : null;
+        final String routingKey = delivery.getEnvelope().getRoutingKey();
+        try {
+            final ByteBuffer body = (null != compression)
+                    ? IeCompressor.decompress("rabbitmq", compression, ByteBuffer.wrap(delivery.getBody()))
+                    : ByteBuffer.wrap(delivery.getBody()).asReadOnlyBuffer();
+            if ( (null != properties) && IeBatchFrame.isBatch(properties.getContentType()) ) {
+                IeBatchFrame.forEach(body, (payload, itemHeaders) -> payloadHandler.onPayload(routingKey, payload, itemHeaders));
+                return;
+            }
+            payloadHandler.onPayload(routingKey, body, (null != headers) ? headers : Collections.<String, Object>emptyMap());
+        }
+        catch (IOException cause) {
+            throw cause;
+        }
+        catch (Exception cause) {
+            throw new IOException(cause);
+        }
+    }
+}
@@ -1,18 +1,88 @@
 package programs;
 
 import com.rabbitmq.client.*;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.codec.IeBatchFrame;
+import programs.codec.IeCompression;
+import programs.codec.IeCompressor;
+import programs.delegates.IePayloadHandler;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.UUID;
 import java.util.logging.Level;
 
 
 /**
  * https://github.com/rabbitmq/rabbitmq-tutorials/blob/master/java/Recv.java
+ * <p>
+ * {@link #close()} cancels the consumer, stops the dispatcher and closes the connection {@link #init()} opened.
  */
 public final class RabbitMqReceiver implements DeliverCallback {
 
-    public void init() {
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqReceiver");
+    private static final IeLogger.Sampled DELIVERY_LOGGER = LOGGER.sampled(1000);
+
+    private final boolean isVerbose;
+    private final int workerCount;
+    private final RabbitMqDispatcher.QueuePolicy queuePolicy;
+    private final RabbitMqPayloadAdapter payloadAdapter;
+    private final IeDeduplicator deduplicator;
+    private final String consumerTag = "receiver-" + UUID.randomUUID();
+    // set by init(), cleared by close()
+    private Connection connection;
+    private Channel channel;
+    private RabbitMqDispatcher dispatcher;
+
+    public RabbitMqReceiver() { this(true, 0, RabbitMqDispatcher.QueuePolicy.BLOCK); }
+
+    /**
+     * @param isVerbose   prints and logs every received message when true
+     * @param workerCount dispatches deliveries to this many worker threads with manual acks;
+     *                    0 handles them on the connection thread with auto ack
+     */
+    public RabbitMqReceiver(
+            final boolean isVerbose, final int workerCount, @NotNull final RabbitMqDispatcher.QueuePolicy queuePolicy) {
+        this(isVerbose, workerCount, queuePolicy, null, null);
+    }
+
+    /**
+     * @param payloadHandler receives every body as a read-only {@link java.nio.ByteBuffer} without decoding it
+     */
+    public RabbitMqReceiver(
+            @NotNull final IePayloadHandler payloadHandler,
+            final int workerCount,
+            @NotNull final RabbitMqDispatcher.QueuePolicy queuePolicy) {
+        this(false, workerCount, queuePolicy, payloadHandler, null);
+    }
+
+    /**
+     * @param deduplicator drops redeliveries of messages that were already handled, see {@link RabbitMqDedupCallback}
+     */
+    public RabbitMqReceiver(
+            @NotNull final IePayloadHandler payloadHandler,
+            final int workerCount,
+            @NotNull final RabbitMqDispatcher.QueuePolicy queuePolicy,
+            @NotNull final IeDeduplicator deduplicator) {
+        this(false, workerCount, queuePolicy, payloadHandler, deduplicator);
+    }
+
+    private RabbitMqReceiver(
+            final boolean isVerbose,
+            final int workerCount,
+            @NotNull final RabbitMqDispatcher.QueuePolicy queuePolicy,
+            @Nullable final IePayloadHandler payloadHandler,
+            @Nullable final IeDeduplicator deduplicator) {
+        this.isVerbose = isVerbose;
+        this.workerCount = workerCount;
+        this.queuePolicy = queuePolicy;
+        this.payloadAdapter = (null != payloadHandler) ? new RabbitMqPayloadAdapter(payloadHandler) : null;
+        this.deduplicator = deduplicator;
+    }
+
+    public synchronized void init() {
         final ConnectionFactory factory = new RabbitMqHelper.ConnectionFactoryBuilder()
                 //.setHostName("127.0.0.1")
                 .setHostName("localhost")
@@ -23,7 +93,7 @@ public final class RabbitMqReceiver implements DeliverCallback {
         if (null != connectionResponse.error) { return; }
         final Connection connection = connectionResponse.result;
         if (null == connection) {
-            java.util.logging.Logger.getLogger("RabbitMqReceiver").log(Level.SEVERE, "init - connection is null!!");
+            LOGGER.log(Level.SEVERE, "init - connection is null!!");
             return;
         }
 
@@ -31,25 +101,87 @@ public final class RabbitMqReceiver implements DeliverCallback {
         if (null != channelResponse.error) { return; }
         final Channel channel = channelResponse.result;
         if (null == channel) {
-            java.util.logging.Logger.getLogger("RabbitMqReceiver").log(Level.SEVERE, "init - channel is null!!");
+            LOGGER.log(Level.SEVERE, "init - channel is null!!");
             return;
         }
 
         final RabbitMqHelper.QueueParameter parameter = new RabbitMqHelper.QueueParameter(AppConstants.QUEUE_NAME);
         final IeApiResponse<Boolean> queueDeclarationResponse = rabbitMqHelper.queueDeclare(channel, parameter);
         if (null != queueDeclarationResponse.error) { return; }
+        this.connection = connection;
+        this.channel = channel;
 
-        final IeApiResponse<Boolean> consumeResponse = rabbitMqHelper.basicConsume(
-                channel, AppConstants.QUEUE_NAME, this);
-        java.util.logging.Logger.getLogger("RabbitMqReceiver").log(Level.INFO, "init - consume");
+        final DeliverCallback deliverCallback = (null != deduplicator) ? new RabbitMqDedupCallback(this, deduplicator) : this;
+        final IeApiResponse<Boolean> consumeResponse;
+        if (workerCount > 0) {
+            final int prefetchCount = workerCount * 64;
+            final IeApiResponse<Boolean> qosResponse = rabbitMqHelper.basicQos(channel, prefetchCount);
+            if (null != qosResponse.error) { return; }
+            // a quarter of the prefetch, so slow workers let the queue fill up and the queue policy takes effect
+            dispatcher = new RabbitMqDispatcher(channel, deliverCallback, workerCount, prefetchCount / 4, queuePolicy, false);
+            consumeResponse = dispatcher.start(AppConstants.QUEUE_NAME);
+        }
+        else {
+            consumeResponse = rabbitMqHelper.basicConsume(channel, AppConstants.QUEUE_NAME, consumerTag,
+                    deliverCallback, new RabbitMqHelper.DefaultCancelCallback(), true);
+        }
+        LOGGER.log(Level.INFO, "init - consume");
 
         System.out.println(" [*] Waiting for messages. To exit press CTRL+C");
     }
 
+    /**
+     * Cancels the consumer, lets the dispatcher requeue what its workers had not started, and closes the connection.
+     */
+    public synchronized void close() {
+        if (null == connection) { return; }
+        if (null != dispatcher) {
+            dispatcher.stop();
+            dispatcher = null;
+        }
+        else if (channel.isOpen()) {
+            new RabbitMqHelper().basicCancel(channel, consumerTag);
+        }
+        try {
+            if (connection.isOpen()) { connection.close(); }
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.WARNING, "close - error on Connection#close(): {}", cause.getLocalizedMessage());
+        }
+        connection = null;
+        channel = null;
+        LOGGER.log(Level.INFO, "close - done");
+    }
+
     @Override
     public void handle(String consumerTag, Delivery delivery) throws IOException {
+        if (null != payloadAdapter) {
+            payloadAdapter.handle(consumerTag, delivery);
+            return;
+        }
+        if (!isVerbose) { return; }
+        final AMQP.BasicProperties properties = delivery.getProperties();
+        if ( (null != properties) && IeBatchFrame.isBatch(properties.getContentType()) ) {
+            final IeCompression compression = IeCompression.byContentEncoding(properties.getContentEncoding());
+            try {
+                final ByteBuffer body = (null != compression)
+                        ? IeCompressor.decompress("rabbitmq", compression, ByteBuffer.wrap(delivery.getBody()))
+                        : ByteBuffer.wrap(delivery.getBody());
+                final int itemCount = IeBatchFrame.forEach(body, (payload, headers) -> {
+                    // decodes only the items the sample keeps
+                    if (DELIVERY_LOGGER.shouldLog(Level.INFO)) {
+                        LOGGER.log(Level.INFO, "handle: [x] Received '{}'", StandardCharsets.UTF_8.decode(payload));
+                    }
+                });
+                DELIVERY_LOGGER.log(Level.INFO, "handle: [x] Received a batch of {} messages", itemCount);
+            }
+            catch (Exception cause) {
+                throw new IOException(cause);
+            }
+            return;
+        }
         final String message = new String(delivery.getBody(), StandardCharsets.UTF_8);
         System.out.println(" [x] Received '" + message + "'");
-        java.util.logging.Logger.getLogger("RabbitMqReceiver").log(Level.INFO, "handle: [x] Received '" + message + "'");
+        DELIVERY_LOGGER.log(Level.INFO, "handle: [x] Received '{}'", message);
     }
 }
@@ -0,0 +1,69 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.ConnectionFactory;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.codec.IeCodec;
+
+/**
+ * Publishes over {@code shardCount} connections, sharded by routing key. Each shard leases a single channel, one
+ * publish at a time, so the messages of one key are published in the order their publish calls take the channel. With a factory built for several addresses, see
+ * {@link RabbitMqHelper.ConnectionFactoryBuilder#addAddress}, the connections are spread over the cluster nodes,
+ * and so are the publishes and their socket I/O.
+ */
+public final class RabbitMqShardedPublisher {
+
+    private final RabbitMqChannelPool[] channelPools;
+
+    public RabbitMqShardedPublisher(@NotNull final ConnectionFactory factory, final int shardCount) {
+        this(factory, shardCount, 5000L, new RabbitMqHelper());
+    }
+
+    public RabbitMqShardedPublisher(
+            @NotNull final ConnectionFactory factory,
+            final int shardCount,
+            final long leaseTimeoutMillis,
+            @NotNull final RabbitMqHelper rabbitMqHelper) {
+        this.channelPools = new RabbitMqChannelPool[Math.max(1, shardCount)];
+        for (int i = 0; i < channelPools.length; i++) {
+            // one channel per shard, more would let two publishes of the same key overtake each other
+            channelPools[i] = new RabbitMqChannelPool(factory, 1, leaseTimeoutMillis, rabbitMqHelper);
+        }
+    }
+
+    public int getShardCount() { return channelPools.length; }
+
+    /**
+     * @return the pool that publishes with {@code routingKey}
+     */
+    @NotNull
+    public RabbitMqChannelPool shardFor(@NotNull final String routingKey) {
+        return channelPools[(routingKey.hashCode() & Integer.MAX_VALUE) % channelPools.length];
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> basicPublish(
+            @NotNull final String exchange,
+            @NotNull final String routingKey,
+            @NotNull final byte[] body,
+            @Nullable final AMQP.BasicProperties properties) {
+        return shardFor(routingKey).basicPublish(exchange, routingKey, body, properties);
+    }
+
+    @NotNull
+    public <T> IeApiResponse<Boolean> basicPublish(
+            @NotNull final String exchange,
+            @NotNull final String routingKey,
+            @NotNull final T message,
+            @NotNull final IeCodec<T> codec,
+            @Nullable final AMQP.BasicProperties properties) {
+        return shardFor(routingKey).basicPublish(exchange, routingKey, message, codec, properties);
+    }
+
+    public void close() {
+        for (final RabbitMqChannelPool channelPool : channelPools) {
+            channelPool.close();
+        }
+    }
+}
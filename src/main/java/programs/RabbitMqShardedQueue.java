@@ -0,0 +1,290 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DeliverCallback;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.codec.IeCodec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.logging.Level;
+
+/**
+ * Spreads one logical queue over {@code shardCount} queues {@code <name>.0} ... {@code <name>.<shardCount-1>}, since a
+ * single queue is served by one broker core. Publishes go to the shard a consistent hash of their key selects, so all
+ * messages of a key stay in one shard and in order.
+ * <p>
+ * Consumers {@link #join} and {@link #leave} as members; every shard is consumed by exactly one member, and each of
+ * M members consumes {@code shardCount / M} shards or one more. A shard stays with its member as long as that member
+ * is within its share, so a join or leave moves only the shards needed to even the shares out again.
+ * Members acknowledge each delivery after their callback returned and requeue it when the callback throws.
+ * A moved shard is cancelled on its old member before the new one consumes, but deliveries the old member is still
+ * handling may overlap with the first ones of the new member. Across processes, declare the shards with
+ * {@code x-single-active-consumer} so the broker lets only one of them consume each shard.
+ */
+public final class RabbitMqShardedQueue {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqShardedQueue");
+
+    private static final class Member {
+        final String memberId;
+        final Channel channel;
+        final DeliverCallback deliverCallback;
+
+        Member(@NotNull final String memberId, @NotNull final Channel channel, @NotNull final DeliverCallback deliverCallback) {
+            this.memberId = memberId;
+            this.channel = channel;
+            this.deliverCallback = deliverCallback;
+        }
+    }
+
+    private final RabbitMqHelper rabbitMqHelper = new RabbitMqHelper();
+    private final RabbitMqChannelPool channelPool;
+    private final RabbitMqHelper.QueueParameter parameter;
+    private final List<String> shardNames;
+    private final IeConsistentHashRing shardRing;
+    // sorted by id, so shards are handed out in the same order every time
+    private final Map<String, Member> members = new TreeMap<>();
+    // shard name -> member consuming it
+    private final Map<String, Member> assignment = new HashMap<>();
+
+    public RabbitMqShardedQueue(@NotNull final RabbitMqChannelPool channelPool, @NotNull final String name, final int shardCount) {
+        this(channelPool, new RabbitMqHelper.QueueParameter(name, true, false, false, null), shardCount, 128);
+    }
+
+    /**
+     * @param parameter the name and properties every shard is declared with
+     */
+    public RabbitMqShardedQueue(
+            @NotNull final RabbitMqChannelPool channelPool,
+            @NotNull final RabbitMqHelper.QueueParameter parameter,
+            final int shardCount,
+            final int virtualNodeCount) {
+        if (null == parameter.name) { throw new IllegalArgumentException("a sharded queue needs a name"); }
+        this.channelPool = channelPool;
+        this.parameter = parameter;
+        this.shardRing = new IeConsistentHashRing(virtualNodeCount);
+        final List<String> names = new ArrayList<>(Math.max(1, shardCount));
+        for (int i = 0; i < Math.max(1, shardCount); i++) {
+            final String shardName = parameter.name + "." + i;
+            names.add(shardName);
+            shardRing.add(shardName);
+        }
+        this.shardNames = Collections.unmodifiableList(names);
+    }
+
+    @NotNull
+    public List<String> getShardNames() { return shardNames; }
+
+    @NotNull
+    public String shardFor(@NotNull final String key) {
+        final String shardName = shardRing.nodeFor(key);
+        return (null != shardName) ? shardName : shardNames.get(0);
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> declare() {
+        for (final String shardName : shardNames) {
+            final IeApiResponse<Boolean> declareResponse = channelPool.queueDeclare(new RabbitMqHelper.QueueParameter(
+                    shardName, parameter.durable, parameter.exclusive, parameter.autoDelete, parameter.arguments));
+            if (null != declareResponse.error) { return declareResponse; }
+        }
+        LOGGER.log(Level.INFO, "declare - shards: {}", shardNames.size());
+        return IeApiResponse.TRUE;
+    }
+
+    @NotNull
+    public IeApiResponse<Boolean> basicPublish(
+            @NotNull final String key,
+            @NotNull final byte[] body,
+            @Nullable final AMQP.BasicProperties properties) {
+        return channelPool.basicPublish("", shardFor(key), body, properties);
+    }
+
+    @NotNull
+    public <T> IeApiResponse<Boolean> basicPublish(
+            @NotNull final String key,
+            @NotNull final T message,
+            @NotNull final IeCodec<T> codec,
+            @Nullable final AMQP.BasicProperties properties) {
+        return channelPool.basicPublish("", shardFor(key), message, codec, properties);
+    }
+
+    /**
+     * Adds a consumer on a dedicated channel of its own, opened on the pool's connection but never leased from
+     * the pool, and moves the shards it now owns over to it.
+     *
+     * @param prefetchCount unacknowledged deliveries per shard the member consumes
+     */
+    @NotNull
+    public synchronized IeApiResponse<Boolean> join(
+            @NotNull final String memberId, @NotNull final DeliverCallback deliverCallback, final int prefetchCount) {
+        if (members.containsKey(memberId)) { return IeApiResponse.TRUE; }
+        final IeApiResponse<Channel> channelResponse = channelPool.openDedicatedChannel();
+        if (null != channelResponse.error) { return new IeApiResponse<>(null, channelResponse.error); }
+        final Channel channel = channelResponse.result;
+        // prefetch is per consumer unless global, so each shard gets its own window
+        final IeApiResponse<Boolean> qosResponse = rabbitMqHelper.basicQos(channel, Math.max(1, prefetchCount));
+        if (null != qosResponse.error) {
+            closeQuietly(channel);
+            return qosResponse;
+        }
+        members.put(memberId, new Member(memberId, channel, deliverCallback));
+        LOGGER.log(Level.INFO, "join - memberId: [{}], members: [{}]", memberId, members.size());
+        return rebalance();
+    }
+
+    /**
+     * Cancels the member's shards, closes its channel and moves the shards over to the remaining members.
+     */
+    @NotNull
+    public synchronized IeApiResponse<Boolean> leave(@NotNull final String memberId) {
+        final Member member = members.remove(memberId);
+        if (null == member) { return IeApiResponse.TRUE; }
+        final IeApiResponse<Boolean> rebalanceResponse = rebalance();
+        closeQuietly(member.channel);
+        LOGGER.log(Level.INFO, "leave - memberId: [{}], members: [{}]", memberId, members.size());
+        return rebalanceResponse;
+    }
+
+    /**
+     * @return the shards each member consumes
+     */
+    @NotNull
+    public synchronized Map<String, List<String>> getAssignment() {
+        final Map<String, List<String>> shardsByMember = new LinkedHashMap<>();
+        for (final String memberId : members.keySet()) {
+            shardsByMember.put(memberId, new ArrayList<>());
+        }
+        for (final String shardName : shardNames) {
+            final Member member = assignment.get(shardName);
+            if (null != member) { shardsByMember.get(member.memberId).add(shardName); }
+        }
+        return shardsByMember;
+    }
+
+    public synchronized void close() {
+        for (final String memberId : new ArrayList<>(members.keySet())) {
+            leave(memberId);
+        }
+    }
+
+    /**
+     * @return the first error; shards that could not be moved stay with their old member or unassigned,
+     *         and are retried by the next join or leave
+     */
+    @NotNull
+    private IeApiResponse<Boolean> rebalance() {
+        final Map<String, Member> owners = assignShards();
+        IeApiResponse<Boolean> firstError = null;
+        int movedCount = 0;
+        for (final String shardName : shardNames) {
+            final Member owner = owners.get(shardName);
+            final Member current = assignment.get(shardName);
+            if (current == owner) { continue; }
+
+            if (null != current) {
+                // a member that left is cancelled too, its channel is still open until leave() closes it
+                final IeApiResponse<Boolean> cancelResponse = rabbitMqHelper.basicCancel(current.channel, consumerTag(current, shardName));
+                if ( (null != cancelResponse.error) && members.containsKey(current.memberId) ) {
+                    if (null == firstError) { firstError = cancelResponse; }
+                    continue;
+                }
+                assignment.remove(shardName);
+            }
+            if (null != owner) {
+                final IeApiResponse<Boolean> consumeResponse = rabbitMqHelper.basicConsume(
+                        owner.channel,
+                        shardName,
+                        consumerTag(owner, shardName),
+                        new RabbitMqAckingCallback(rabbitMqHelper, owner.channel, owner.deliverCallback),
+                        new RabbitMqHelper.DefaultCancelCallback(),
+                        false);
+                if (null != consumeResponse.error) {
+                    if (null == firstError) { firstError = consumeResponse; }
+                    continue;
+                }
+                assignment.put(shardName, owner);
+            }
+            movedCount++;
+        }
+        LOGGER.log(Level.INFO, "rebalance - moved shards: [{}]", movedCount);
+        return (null != firstError) ? firstError : IeApiResponse.TRUE;
+    }
+
+    /**
+     * @return shard name -> member that should consume it; each member gets {@code base} shards and the first
+     *         {@code extraCount} of them one more, keeping the shards they consume already where possible
+     */
+    @NotNull
+    private Map<String, Member> assignShards() {
+        final Map<String, Member> owners = new HashMap<>();
+        if (members.isEmpty()) { return owners; }
+        final int base = shardNames.size() / members.size();
+        int extraCount = shardNames.size() % members.size();
+        final Map<Member, Integer> shardCounts = new HashMap<>();
+        for (final Member member : members.values()) { shardCounts.put(member, 0); }
+
+        // current members keep up to their base share, then one more while extra shares are left
+        for (final boolean isExtra : new boolean[] { false, true }) {
+            for (final String shardName : shardNames) {
+                final Member current = assignment.get(shardName);
+                if ( (null == current) || (current != members.get(current.memberId)) || owners.containsKey(shardName) ) { continue; }
+                final int count = shardCounts.get(current);
+                if (count < base) {
+                    owners.put(shardName, current);
+                    shardCounts.put(current, count + 1);
+                }
+                else if (isExtra && (count == base) && (extraCount > 0)) {
+                    owners.put(shardName, current);
+                    shardCounts.put(current, count + 1);
+                    extraCount--;
+                }
+            }
+        }
+        // the rest go to the members below their share, in member id order
+        for (final String shardName : shardNames) {
+            if (owners.containsKey(shardName)) { continue; }
+            Member owner = null;
+            for (final Member member : members.values()) {
+                if (shardCounts.get(member) < base) {
+                    owner = member;
+                    break;
+                }
+            }
+            if (null == owner) {
+                for (final Member member : members.values()) {
+                    if (shardCounts.get(member) == base) {
+                        owner = member;
+                        break;
+                    }
+                }
+            }
+            owners.put(shardName, owner);
+            shardCounts.put(owner, shardCounts.get(owner) + 1);
+        }
+        return owners;
+    }
+
+    private static void closeQuietly(@NotNull final Channel channel) {
+        if (!channel.isOpen()) { return; }
+        try {
+            channel.close();
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.WARNING, "closeQuietly - error on Channel#close(): {}", cause.getLocalizedMessage());
+        }
+    }
+
+    @NotNull
+    private static String consumerTag(@NotNull final Member member, @NotNull final String shardName) {
+        return member.memberId + "@" + shardName;
+    }
+}
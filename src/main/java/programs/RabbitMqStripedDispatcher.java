@@ -0,0 +1,248 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * Handles the deliveries of one channel in parallel while keeping them in order per key: an {@link IeStripedExecutor}
+ * hashes the key of every delivery, e.g. {@link #byRoutingKey()} or {@link #byHeader(String)}, onto one of
+ * {@code laneCount} single-threaded lanes.
+ * <p>
+ * Lanes finish out of delivery order, so a plain {@code basicAck(tag, multiple=true)} from one lane could ack
+ * deliveries another lane is still handling. Instead every lane reports the tags it settled to an ack watermark,
+ * which acks with {@code multiple=true} only up to the highest tag below which every delivery is settled, once
+ * {@code ackBatchSize} of them have accumulated or nothing else is in flight. A failing delivery is nacked and
+ * requeued on its own right away. Lanes are sized to hold the prefetch, so they never have to block the connection.
+ * <p>
+ * Delivery tags restart at 1 on a recovered channel, so every delivery carries the generation of the channel it came
+ * from. A recovery discards the queued deliveries of the old channel, which the broker redelivers anyway, and deliveries
+ * of the old channel that were still being handled are neither acked, nacked nor counted in the new watermark.
+ * <p>
+ * {@link #stop()} cancels the consumer started by {@link #start(String)} before it stops the lanes, requeues what they
+ * had not started and acks the final watermark; deliveries that still arrive afterwards are requeued.
+ */
+public final class RabbitMqStripedDispatcher implements DeliverCallback {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("RabbitMqStripedDispatcher");
+
+    // compacts the watermark's bit sets once this many acked tags lie below them
+    private static final int COMPACTION_THRESHOLD = 4096;
+
+    private final RabbitMqHelper rabbitMqHelper = new RabbitMqHelper();
+    private final Channel channel;
+    private final DeliverCallback deliverCallback;
+    private final IeStripedExecutor.KeyExtractor<Delivery> keyExtractor;
+    private final IeStripedExecutor<LaneItem> lanes;
+    private final int ackBatchSize;
+    private final String consumerTag = "striped-" + UUID.randomUUID();
+    private boolean isConsuming = false;
+    // read by handle() on the connection thread, which must not wait for the lock stop() holds
+    private volatile boolean isStopped = false;
+
+    // the ack watermark, guarded by itself
+    private final byte[] ackLock = new byte[0];
+    private BitSet settledTags = new BitSet();
+    private BitSet succeededTags = new BitSet();
+    // delivery tag of bit 0
+    private long tagOffset = 1L;
+    private long ackedTag = 0L;
+    private long lastDispatchedTag = 0L;
+    // incremented whenever the channel recovered
+    private long generation = 0L;
+
+    public RabbitMqStripedDispatcher(
+            @NotNull final Channel channel,
+            @NotNull final DeliverCallback deliverCallback,
+            @NotNull final IeStripedExecutor.KeyExtractor<Delivery> keyExtractor,
+            final int laneCount,
+            final int prefetchCount) {
+        this(channel, deliverCallback, keyExtractor, laneCount, prefetchCount, 64);
+    }
+
+    public RabbitMqStripedDispatcher(
+            @NotNull final Channel channel,
+            @NotNull final DeliverCallback deliverCallback,
+            @NotNull final IeStripedExecutor.KeyExtractor<Delivery> keyExtractor,
+            final int laneCount,
+            final int prefetchCount,
+            final int ackBatchSize) {
+        this.channel = channel;
+        this.deliverCallback = deliverCallback;
+        this.keyExtractor = keyExtractor;
+        // each lane can take the whole prefetch, in case every in-flight delivery has the same key
+        this.lanes = new IeStripedExecutor<>("RabbitMqStripedDispatcher", this::onLaneItem, laneCount, Math.max(1, prefetchCount));
+        this.ackBatchSize = Math.max(1, ackBatchSize);
+    }
+
+    @NotNull
+    public static IeStripedExecutor.KeyExtractor<Delivery> byRoutingKey() {
+        return delivery -> delivery.getEnvelope().getRoutingKey();
+    }
+
+    @NotNull
+    public static IeStripedExecutor.KeyExtractor<Delivery> byHeader(@NotNull final String headerName) {
+        return delivery -> {
+            final AMQP.BasicProperties properties = delivery.getProperties();
+            final Object value = ( (null != properties) && (null != properties.getHeaders()) )
+                    ? properties.getHeaders().get(headerName) : null;
+            return (null != value) ? value.toString() : null;
+        };
+    }
+
+    /**
+     * Starts the lanes and consumes {@code queueName} with manual acks under the dispatcher's own consumer tag,
+     * so that {@link #stop()} can cancel it.
+     */
+    @NotNull
+    public synchronized IeApiResponse<Boolean> start(@NotNull final String queueName) {
+        start();
+        final IeApiResponse<Boolean> consumeResponse = rabbitMqHelper.basicConsume(
+                channel, queueName, consumerTag, this, new RabbitMqHelper.DefaultCancelCallback(), false);
+        isConsuming = (null == consumeResponse.error);
+        return consumeResponse;
+    }
+
+    /**
+     * Starts the lanes only, for a caller that consumes with this dispatcher itself and cancels that consumer before
+     * {@link #stop()}.
+     */
+    public synchronized void start() {
+        isStopped = false;
+        lanes.start();
+    }
+
+    /**
+     * Cancels the consumer, stops the lanes, requeues the deliveries they had not started yet and acks every
+     * delivery that succeeded below the final watermark.
+     */
+    public synchronized void stop() {
+        isStopped = true;
+        // stop the broker from delivering into lanes that are about to go away
+        if (isConsuming && channel.isOpen()) { rabbitMqHelper.basicCancel(channel, consumerTag); }
+        isConsuming = false;
+        for (final LaneItem item : lanes.stop()) {
+            settle(item, false);
+        }
+        synchronized (ackLock) {
+            advanceWatermark(true);
+        }
+    }
+
+    @Override
+    public void handle(String consumerTag, Delivery delivery) throws IOException {
+        final long deliveryTag = delivery.getEnvelope().getDeliveryTag();
+        if (isStopped) {
+            // delivered before the broker processed the cancel; no lane would take it anymore
+            rabbitMqHelper.basicNack(channel, deliveryTag, false, true);
+            return;
+        }
+        final LaneItem item;
+        synchronized (ackLock) {
+            // tags restart at 1 on a recovered channel
+            if (deliveryTag <= lastDispatchedTag) { resetWatermark(deliveryTag); }
+            lastDispatchedTag = deliveryTag;
+            item = new LaneItem(consumerTag, delivery, generation);
+        }
+        try {
+            lanes.submit(keyExtractor.keyOf(delivery), item);
+        }
+        catch (InterruptedException cause) {
+            Thread.currentThread().interrupt();
+            settle(item, false);
+            return;
+        }
+        // stop() drained the lanes while this delivery was being queued
+        if ( isStopped && (lanes.discard(queued -> queued == item) > 0) ) { settle(item, false); }
+    }
+
+    private void onLaneItem(final int lane, @NotNull final LaneItem item) {
+        synchronized (ackLock) {
+            // queued before the recovery and not discarded in time; the broker redelivers it
+            if (item.generation != generation) { return; }
+        }
+        boolean isSucceeded = false;
+        try {
+            deliverCallback.handle(item.consumerTag, item.delivery);
+            isSucceeded = true;
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.SEVERE, "onLaneItem - error on DeliverCallback#handle() in lane {}: {}", lane, cause.getLocalizedMessage());
+        }
+        settle(item, isSucceeded);
+    }
+
+    /**
+     * Nacks and requeues a delivery that did not succeed, and advances the ack watermark;
+     * does nothing for a delivery of the channel before its recovery.
+     */
+    private void settle(@NotNull final LaneItem item, final boolean isSucceeded) {
+        final long deliveryTag = item.delivery.getEnvelope().getDeliveryTag();
+        synchronized (ackLock) {
+            if (item.generation != generation) { return; }
+            // nacked now, so a multiple ack must not name its tag
+            if (!isSucceeded) { rabbitMqHelper.basicNack(channel, deliveryTag, false, true); }
+            final int bit = (int) (deliveryTag - tagOffset);
+            settledTags.set(bit);
+            if (isSucceeded) { succeededTags.set(bit); }
+            advanceWatermark(false);
+        }
+    }
+
+    /**
+     * Acks up to the highest tag below which every delivery is settled, once {@code ackBatchSize} of them accumulated,
+     * the last dispatched delivery is settled, or {@code isForced}; runs under {@link #ackLock}.
+     */
+    private void advanceWatermark(final boolean isForced) {
+        final int contiguousBits = settledTags.nextClearBit(0);
+        final long contiguousTag = tagOffset + contiguousBits - 1;
+        if ( (contiguousTag <= ackedTag)
+                || ( (!isForced) && (contiguousTag - ackedTag < ackBatchSize) && (contiguousTag != lastDispatchedTag) ) ) {
+            return;
+        }
+        // ack up to the highest delivery that succeeded; nacked ones above it are settled already
+        final int ackBit = succeededTags.previousSetBit(contiguousBits - 1);
+        if ( (ackBit >= 0) && (tagOffset + ackBit > ackedTag) ) {
+            rabbitMqHelper.basicAck(channel, tagOffset + ackBit, true);
+        }
+        ackedTag = contiguousTag;
+
+        if (contiguousBits >= COMPACTION_THRESHOLD) {
+            settledTags = settledTags.get(contiguousBits, Math.max(contiguousBits, settledTags.length()));
+            succeededTags = succeededTags.get(contiguousBits, Math.max(contiguousBits, succeededTags.length()));
+            tagOffset += contiguousBits;
+        }
+    }
+
+    private void resetWatermark(final long firstTag) {
+        final long currentGeneration = ++generation;
+        settledTags = new BitSet();
+        succeededTags = new BitSet();
+        tagOffset = firstTag;
+        ackedTag = firstTag - 1;
+        final int discardedCount = lanes.discard(item -> item.generation != currentGeneration);
+        LOGGER.log(Level.WARNING, "resetWatermark - delivery tags restarted at {}, discarded {} deliveries of the old channel",
+                firstTag, discardedCount);
+    }
+
+    ///
+
+    private static final class LaneItem {
+        final String consumerTag;
+        final Delivery delivery;
+        final long generation;
+
+        LaneItem(@NotNull final String consumerTag, @NotNull final Delivery delivery, final long generation) {
+            this.consumerTag = consumerTag;
+            this.delivery = delivery;
+            this.generation = generation;
+        }
+    }
+}
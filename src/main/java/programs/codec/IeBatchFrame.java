@@ -0,0 +1,160 @@
+package programs.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.AppConstants;
+import programs.IeRuntimeException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Many small messages packed into one AMQP message ({@code content-type: application/x-ie-batch}) or one MQTT publish
+ * ({@link IeMqttEnvelope#FLAG_BATCH}):
+ * <pre>
+ * byte    VERSION
+ * int     item count, big endian
+ * item    varint header count, (varint length + UTF-8 key, varint length + UTF-8 value) per header,
+ *         varint payload length, payload
+ * </pre>
+ * An item's codec goes into its {@link #CONTENT_TYPE_HEADER} header. Receivers reject frames of a newer version
+ * with {@link AppConstants.CodecErrorCode#UNSUPPORTED_BATCH_VERSION} and keep handling unbatched messages as before,
+ * so old and new senders can share a queue or topic.
+ */
+public final class IeBatchFrame {
+
+    public static final int VERSION = 1;
+    public static final String CONTENT_TYPE = "application/x-ie-batch";
+    public static final String CONTENT_TYPE_HEADER = "content-type";
+    /** version byte and item count */
+    public static final int PREAMBLE_LENGTH = 5;
+
+    public interface ItemHandler {
+        /**
+         * @param payload read-only view into the frame, only valid until this call returns
+         */
+        void onItem(@NotNull final ByteBuffer payload, @NotNull final Map<String, Object> headers) throws Exception;
+    }
+
+    private IeBatchFrame() { }
+
+    /**
+     * Starts a frame with a zero item count at the current end of {@code buffer}, to be fixed by {@link #setItemCount}.
+     */
+    public static void writePreamble(@NotNull final IeEncodeBuffer buffer) {
+        buffer.put(VERSION).putInt(0);
+    }
+
+    /**
+     * @param preambleOffset where {@link #writePreamble} started the frame
+     */
+    public static void setItemCount(@NotNull final IeEncodeBuffer buffer, final int preambleOffset, final int itemCount) {
+        buffer.set(preambleOffset + 1, itemCount >>> 24);
+        buffer.set(preambleOffset + 2, itemCount >>> 16);
+        buffer.set(preambleOffset + 3, itemCount >>> 8);
+        buffer.set(preambleOffset + 4, itemCount);
+    }
+
+    public static void writeItem(
+            @NotNull final IeEncodeBuffer buffer,
+            @NotNull final ByteBuffer payload,
+            @Nullable final Map<String, String> headers) {
+        if (null == headers) {
+            buffer.putVarLong(0L);
+        }
+        else {
+            buffer.putVarLong(headers.size());
+            for (final Map.Entry<String, String> header : headers.entrySet()) {
+                buffer.putVarLong(IeEncodeBuffer.utf8Length(header.getKey())).putUtf8(header.getKey());
+                buffer.putVarLong(IeEncodeBuffer.utf8Length(header.getValue())).putUtf8(header.getValue());
+            }
+        }
+        buffer.putVarLong(payload.remaining()).put(payload);
+    }
+
+    public static boolean isBatch(@Nullable final String contentType) {
+        return (null != contentType) && contentType.startsWith(CONTENT_TYPE);
+    }
+
+    /**
+     * Hands every item of {@code frame} to {@code itemHandler} in order and stops at the first one that throws.
+     *
+     * @return the number of items
+     */
+    public static int forEach(@NotNull final ByteBuffer frame, @NotNull final ItemHandler itemHandler) throws Exception {
+        final ByteBuffer source = frame.duplicate();
+        final int itemCount;
+        try {
+            final int version = source.get();
+            if (VERSION != version) {
+                throw IeRuntimeException.of("unsupported batch version: " + version,
+                        AppConstants.CodecErrorCode.UNSUPPORTED_BATCH_VERSION);
+            }
+            itemCount = source.getInt();
+            if (itemCount < 0) { throw new IllegalArgumentException("invalid item count: " + itemCount); }
+        }
+        catch (BufferUnderflowException | IllegalArgumentException cause) {
+            throw IeRuntimeException.of(cause, AppConstants.CodecErrorCode.DECODE_FAILURE);
+        }
+
+        for (int i = 0; i < itemCount; i++) {
+            final Map<String, Object> headers;
+            final ByteBuffer payload;
+            try {
+                final int headerCount = readLength(source);
+                if (0 == headerCount) {
+                    headers = Collections.emptyMap();
+                }
+                else {
+                    headers = new HashMap<>(headerCount * 2);
+                    for (int j = 0; j < headerCount; j++) {
+                        final String key = readString(source);
+                        headers.put(key, readString(source));
+                    }
+                }
+                final int payloadLength = readLength(source);
+                payload = source.slice();
+                payload.limit(payloadLength);
+                source.position(source.position() + payloadLength);
+            }
+            catch (BufferUnderflowException | IllegalArgumentException cause) {
+                throw IeRuntimeException.of(cause, AppConstants.CodecErrorCode.DECODE_FAILURE);
+            }
+            itemHandler.onItem(payload.asReadOnlyBuffer(), headers);
+        }
+        return itemCount;
+    }
+
+    @NotNull
+    private static String readString(@NotNull final ByteBuffer source) {
+        final int length = readLength(source);
+        final String value;
+        if (source.hasArray()) {
+            value = new String(source.array(), source.arrayOffset() + source.position(), length, StandardCharsets.UTF_8);
+        }
+        else {
+            final byte[] bytes = new byte[length];
+            source.duplicate().get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        source.position(source.position() + length);
+        return value;
+    }
+
+    private static int readLength(@NotNull final ByteBuffer source) {
+        long length = 0L;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final byte b = source.get();
+            length |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                if (length > source.remaining()) { throw new IllegalArgumentException("invalid length: " + length); }
+                return (int) length;
+            }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+}
@@ -0,0 +1,185 @@
+package programs.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.AppConstants;
+import programs.IeRuntimeException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact tagged binary encoding of the same value trees as {@link IeJsonCodec}: {@code null}, booleans, integral numbers
+ * (zigzag varints, decoded as {@link Long}), floating point numbers ({@link Double}), strings, {@code byte[]},
+ * lists and maps with string keys. Small integers take 2 bytes and binary blobs are not base64 inflated.
+ */
+public final class IeBinaryCodec implements IeCodec<Object> {
+
+    public static final byte CODEC_ID = 1;
+    public static final String CONTENT_TYPE = "application/x-ie-binary";
+
+    private static final int TAG_NULL = 0;
+    private static final int TAG_FALSE = 1;
+    private static final int TAG_TRUE = 2;
+    private static final int TAG_LONG = 3;
+    private static final int TAG_DOUBLE = 4;
+    private static final int TAG_STRING = 5;
+    private static final int TAG_BYTES = 6;
+    private static final int TAG_LIST = 7;
+    private static final int TAG_MAP = 8;
+
+    private static final int MAX_DEPTH = 64;
+
+    @Override
+    public byte getCodecId() { return CODEC_ID; }
+
+    @NotNull
+    @Override
+    public String getContentType() { return CONTENT_TYPE; }
+
+    @NotNull
+    @Override
+    public Class<Object> getMessageType() { return Object.class; }
+
+    @Override
+    public void encode(@NotNull final Object message, @NotNull final IeEncodeBuffer buffer) throws IeRuntimeException {
+        writeValue(message, buffer, 0);
+    }
+
+    @NotNull
+    @Override
+    public Object decode(@NotNull final ByteBuffer payload) throws IeRuntimeException {
+        final ByteBuffer source = payload.duplicate();
+        try {
+            final Object message = readValue(source, 0);
+            if (null == message) { throw IeRuntimeException.of("null message", AppConstants.CodecErrorCode.DECODE_FAILURE); }
+            return message;
+        }
+        catch (BufferUnderflowException | IllegalArgumentException cause) {
+            throw IeRuntimeException.of(cause, AppConstants.CodecErrorCode.DECODE_FAILURE);
+        }
+    }
+
+    private static void writeValue(@Nullable final Object value, @NotNull final IeEncodeBuffer buffer, final int depth) throws IeRuntimeException {
+        if (depth > MAX_DEPTH) { throw IeRuntimeException.of("nested too deep", AppConstants.CodecErrorCode.ENCODE_FAILURE); }
+        if (null == value) {
+            buffer.put(TAG_NULL);
+        }
+        else if (value instanceof Boolean) {
+            buffer.put(((Boolean) value) ? TAG_TRUE : TAG_FALSE);
+        }
+        else if ( (value instanceof Long) || (value instanceof Integer) || (value instanceof Short) || (value instanceof Byte) ) {
+            final long number = ((Number) value).longValue();
+            buffer.put(TAG_LONG).putVarLong((number << 1) ^ (number >> 63));
+        }
+        else if ( (value instanceof Double) || (value instanceof Float) ) {
+            buffer.put(TAG_DOUBLE).putLong(Double.doubleToRawLongBits(((Number) value).doubleValue()));
+        }
+        else if (value instanceof CharSequence) {
+            final CharSequence string = (CharSequence) value;
+            buffer.put(TAG_STRING).putVarLong(IeEncodeBuffer.utf8Length(string)).putUtf8(string);
+        }
+        else if (value instanceof byte[]) {
+            final byte[] bytes = (byte[]) value;
+            buffer.put(TAG_BYTES).putVarLong(bytes.length).put(bytes);
+        }
+        else if (value instanceof ByteBuffer) {
+            final ByteBuffer bytes = (ByteBuffer) value;
+            buffer.put(TAG_BYTES).putVarLong(bytes.remaining()).put(bytes);
+        }
+        else if (value instanceof List) {
+            final List<?> list = (List<?>) value;
+            buffer.put(TAG_LIST).putVarLong(list.size());
+            for (final Object item : list) { writeValue(item, buffer, depth + 1); }
+        }
+        else if (value instanceof Map) {
+            final Map<?, ?> map = (Map<?, ?>) value;
+            buffer.put(TAG_MAP).putVarLong(map.size());
+            for (final Map.Entry<?, ?> entry : map.entrySet()) {
+                final String key = String.valueOf(entry.getKey());
+                buffer.putVarLong(IeEncodeBuffer.utf8Length(key)).putUtf8(key);
+                writeValue(entry.getValue(), buffer, depth + 1);
+            }
+        }
+        else {
+            throw IeRuntimeException.of("unsupported type: " + value.getClass().getName(), AppConstants.CodecErrorCode.ENCODE_FAILURE);
+        }
+    }
+
+    @Nullable
+    private static Object readValue(@NotNull final ByteBuffer source, final int depth) throws IeRuntimeException {
+        if (depth > MAX_DEPTH) { throw IeRuntimeException.of("nested too deep", AppConstants.CodecErrorCode.DECODE_FAILURE); }
+        final int tag = source.get();
+        switch (tag) {
+            case TAG_NULL: return null;
+            case TAG_FALSE: return Boolean.FALSE;
+            case TAG_TRUE: return Boolean.TRUE;
+            case TAG_LONG: {
+                final long zigzag = readVarLong(source);
+                return (zigzag >>> 1) ^ -(zigzag & 1L);
+            }
+            case TAG_DOUBLE: return Double.longBitsToDouble(source.getLong());
+            case TAG_STRING: return readString(source);
+            case TAG_BYTES: {
+                final byte[] bytes = new byte[readLength(source)];
+                source.get(bytes);
+                return bytes;
+            }
+            case TAG_LIST: {
+                final int count = readLength(source);
+                final List<Object> list = new ArrayList<>(Math.min(count, source.remaining()));
+                for (int i = 0; i < count; i++) { list.add(readValue(source, depth + 1)); }
+                return list;
+            }
+            case TAG_MAP: {
+                final int count = readLength(source);
+                final Map<String, Object> map = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    final String key = readString(source);
+                    map.put(key, readValue(source, depth + 1));
+                }
+                return map;
+            }
+            default:
+                throw IeRuntimeException.of("unknown tag: " + tag, AppConstants.CodecErrorCode.DECODE_FAILURE);
+        }
+    }
+
+    @NotNull
+    private static String readString(@NotNull final ByteBuffer source) {
+        final int length = readLength(source);
+        if (length > source.remaining()) { throw new BufferUnderflowException(); }
+        final String value;
+        if (source.hasArray()) {
+            value = new String(source.array(), source.arrayOffset() + source.position(), length, StandardCharsets.UTF_8);
+        }
+        else {
+            final ByteBuffer slice = source.slice();
+            slice.limit(length);
+            value = StandardCharsets.UTF_8.decode(slice).toString();
+        }
+        source.position(source.position() + length);
+        return value;
+    }
+
+    private static int readLength(@NotNull final ByteBuffer source) {
+        final long length = readVarLong(source);
+        if ( (length < 0L) || (length > source.remaining()) ) { throw new IllegalArgumentException("invalid length: " + length); }
+        return (int) length;
+    }
+
+    private static long readVarLong(@NotNull final ByteBuffer source) {
+        long value = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = source.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) { return value; }
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+}
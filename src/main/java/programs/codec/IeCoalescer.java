@@ -0,0 +1,176 @@
+package programs.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.IeLogger;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+/**
+ * Packs small messages of high-rate producers into one {@link IeBatchFrame} and hands it to a {@link FrameSink}
+ * once {@code maxItems} are pending, the frame reached {@code maxBytes} or the oldest item waited {@code maxLingerMillis}.
+ * One publish then carries many messages, which saves the per-message broker and network overhead.
+ * <p>
+ * A frame the sink fails to publish is kept and retried by the next flush, so every item whose {@code add} returned
+ * is published at least once unless {@link #close()} fails too. While a kept frame is full, further items are refused
+ * with the sink's error instead of growing it.
+ */
+public final class IeCoalescer {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("IeCoalescer");
+
+    public interface FrameSink {
+        /**
+         * Runs under the coalescer's lock, so frames are published in order;
+         * {@code frame} is reused afterwards and must be copied or compressed before returning.
+         * Throwing keeps the frame, which is handed over again, possibly with more items, by the next flush.
+         */
+        void onFrame(@NotNull final IeEncodeBuffer frame, final int itemCount) throws Exception;
+    }
+
+    private final byte[] lock = new byte[0];
+    private final IeEncodeBuffer frame = new IeEncodeBuffer();
+    private final FrameSink frameSink;
+    private final byte[] framePrefix;
+    private final int maxItems;
+    private final int maxBytes;
+    private final long maxLingerMillis;
+    private int pendingItems = 0;
+    private long oldestPendingMillis = 0L;
+    private ScheduledExecutorService lingerExecutor;
+
+    /**
+     * @param framePrefix written in front of every frame, e.g. an {@link IeMqttEnvelope#header}
+     */
+    public IeCoalescer(
+            @NotNull final FrameSink frameSink,
+            @Nullable final byte[] framePrefix,
+            final int maxItems,
+            final int maxBytes,
+            final long maxLingerMillis) {
+        this.frameSink = frameSink;
+        this.framePrefix = (null != framePrefix) ? framePrefix.clone() : new byte[0];
+        this.maxItems = Math.max(1, maxItems);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.maxLingerMillis = Math.max(1L, maxLingerMillis);
+    }
+
+    public void start() {
+        synchronized (lock) {
+            if (null == lingerExecutor) {
+                lingerExecutor = Executors.newSingleThreadScheduledExecutor();
+                lingerExecutor.scheduleWithFixedDelay(
+                        this::flushIfLingering, maxLingerMillis, maxLingerMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        LOGGER.log(Level.INFO, "start - maxItems: [{}], maxBytes: [{}], maxLingerMillis: [{}]", maxItems, maxBytes, maxLingerMillis);
+    }
+
+    /**
+     * Stops the linger timer and flushes what is still pending.
+     */
+    public void close() {
+        synchronized (lock) {
+            if (null != lingerExecutor) {
+                lingerExecutor.shutdownNow();
+                lingerExecutor = null;
+            }
+            try {
+                flushOrThrowLocked();
+            }
+            catch (Exception cause) {
+                LOGGER.log(Level.SEVERE, "close - error on FrameSink#onFrame(), dropped {} messages: {}",
+                        pendingItems, cause.getLocalizedMessage());
+                pendingItems = 0;
+            }
+        }
+    }
+
+    public void add(@NotNull final byte[] payload, @Nullable final Map<String, String> headers) throws Exception {
+        add(ByteBuffer.wrap(payload), headers);
+    }
+
+    /**
+     * Copies {@code payload} into the pending frame, so it may be reused once this returns.
+     *
+     * @throws Exception what the {@link FrameSink} threw while retrying a full frame it failed to publish before;
+     *                   {@code payload} was not added then
+     */
+    public void add(@NotNull final ByteBuffer payload, @Nullable final Map<String, String> headers) throws Exception {
+        synchronized (lock) {
+            if (isFullLocked()) { flushOrThrowLocked(); }
+            if (0 == pendingItems) {
+                frame.reset();
+                frame.put(framePrefix);
+                IeBatchFrame.writePreamble(frame);
+                oldestPendingMillis = System.currentTimeMillis();
+            }
+            IeBatchFrame.writeItem(frame, payload, headers);
+            pendingItems++;
+            if (isFullLocked()) { flushLocked(); }
+        }
+    }
+
+    /**
+     * Encodes {@code message} with {@code codec} and tags the item with its content type.
+     */
+    public <T> void add(
+            @NotNull final T message,
+            @NotNull final IeCodec<T> codec,
+            @Nullable final Map<String, String> headers) throws Exception {
+        final IeEncodeBuffer encoded = IeEncodeBuffer.get();
+        codec.encode(message, encoded);
+        final Map<String, String> itemHeaders;
+        if ( (null == headers) || headers.isEmpty() ) {
+            itemHeaders = Collections.singletonMap(IeBatchFrame.CONTENT_TYPE_HEADER, codec.getContentType());
+        }
+        else {
+            itemHeaders = new HashMap<>(headers);
+            itemHeaders.put(IeBatchFrame.CONTENT_TYPE_HEADER, codec.getContentType());
+        }
+        add(encoded.view(), itemHeaders);
+    }
+
+    /**
+     * @throws Exception what the {@link FrameSink} threw; the frame is kept for the next flush
+     */
+    public void flush() throws Exception {
+        synchronized (lock) {
+            flushOrThrowLocked();
+        }
+    }
+
+    private void flushIfLingering() {
+        synchronized (lock) {
+            if ( (pendingItems > 0) && (System.currentTimeMillis() - oldestPendingMillis >= maxLingerMillis) ) {
+                flushLocked();
+            }
+        }
+    }
+
+    private boolean isFullLocked() { return (pendingItems >= maxItems) || (frame.size() >= maxBytes); }
+
+    private void flushLocked() {
+        try {
+            flushOrThrowLocked();
+        }
+        catch (Exception cause) {
+            LOGGER.log(Level.WARNING, "flush - error on FrameSink#onFrame(), kept {} messages for a retry: {}",
+                    pendingItems, cause.getLocalizedMessage());
+        }
+    }
+
+    private void flushOrThrowLocked() throws Exception {
+        if (0 == pendingItems) { return; }
+        IeBatchFrame.setItemCount(frame, framePrefix.length, pendingItems);
+        frameSink.onFrame(frame, pendingItems);
+        pendingItems = 0;
+    }
+}
@@ -0,0 +1,30 @@
+package programs.codec;
+
+import org.jetbrains.annotations.NotNull;
+import programs.IeRuntimeException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Turns typed messages into bytes and back. Publishers tag AMQP messages with {@link #getContentType()}
+ * and MQTT payloads with {@link #getCodecId()} (see {@link IeMqttEnvelope}), so receivers can pick the decoder on their own.
+ */
+public interface IeCodec<T> {
+
+    /** Identifies the codec in the MQTT envelope; 0 is reserved for raw payloads. */
+    byte getCodecId();
+
+    @NotNull
+    String getContentType();
+
+    @NotNull
+    Class<T> getMessageType();
+
+    void encode(@NotNull final T message, @NotNull final IeEncodeBuffer buffer) throws IeRuntimeException;
+
+    /**
+     * @param payload read-only view of the encoded bytes, only valid until this call returns
+     */
+    @NotNull
+    T decode(@NotNull final ByteBuffer payload) throws IeRuntimeException;
+}
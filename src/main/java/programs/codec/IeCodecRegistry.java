@@ -0,0 +1,51 @@
+package programs.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Looks codecs up by AMQP content type or MQTT envelope codec id on the receive side.
+ */
+public final class IeCodecRegistry {
+
+    private static final IeCodecRegistry DEFAULT = new IeCodecRegistry()
+            .register(new IeBinaryCodec())
+            .register(new IeJsonCodec());
+
+    private final ConcurrentHashMap<String, IeCodec<?>> codecsByContentType = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<IeCodec<?>> codecsById = new AtomicReferenceArray<>(256);
+
+    /**
+     * @return a shared registry holding {@link IeBinaryCodec} and {@link IeJsonCodec}
+     */
+    @NotNull
+    public static IeCodecRegistry getDefault() { return DEFAULT; }
+
+    @NotNull
+    public IeCodecRegistry register(@NotNull final IeCodec<?> codec) {
+        if (0 == codec.getCodecId()) { throw new IllegalArgumentException("codec id 0 is reserved for raw payloads"); }
+        codecsById.set(codec.getCodecId() & 0xFF, codec);
+        codecsByContentType.put(codec.getContentType(), codec);
+        return this;
+    }
+
+    /**
+     * @param contentType may carry parameters, e.g. {@code application/json; charset=utf-8}
+     */
+    @Nullable
+    public IeCodec<?> byContentType(@Nullable final String contentType) {
+        if (null == contentType) { return null; }
+        final IeCodec<?> codec = codecsByContentType.get(contentType);
+        if (null != codec) { return codec; }
+        final int separator = contentType.indexOf(';');
+        return (separator < 0) ? null : codecsByContentType.get(contentType.substring(0, separator).trim());
+    }
+
+    @Nullable
+    public IeCodec<?> byCodecId(final byte codecId) {
+        return codecsById.get(codecId & 0xFF);
+    }
+}
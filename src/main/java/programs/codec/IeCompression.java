@@ -0,0 +1,49 @@
+package programs.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Compression algorithms, signalled through AMQP {@code content-encoding} or an {@link IeMqttEnvelope} flag.
+ */
+public enum IeCompression {
+    /** zlib stream, as in HTTP {@code Content-Encoding: deflate}; better ratio */
+    DEFLATE("deflate", 0x01),
+    /** 4-byte big endian original length followed by one LZ4 block; much cheaper on CPU */
+    LZ4("lz4", 0x02);
+
+    public static final int ENVELOPE_FLAGS_MASK = 0x03;
+
+    private static final IeCompression[] VALUES = values();
+
+    private final String contentEncoding;
+    private final int envelopeFlag;
+
+    IeCompression(@NotNull final String contentEncoding, final int envelopeFlag) {
+        this.contentEncoding = contentEncoding;
+        this.envelopeFlag = envelopeFlag;
+    }
+
+    @NotNull
+    public String getContentEncoding() { return contentEncoding; }
+
+    public int getEnvelopeFlag() { return envelopeFlag; }
+
+    @Nullable
+    public static IeCompression byContentEncoding(@Nullable final String contentEncoding) {
+        if (null == contentEncoding) { return null; }
+        for (final IeCompression compression : VALUES) {
+            if (compression.contentEncoding.equalsIgnoreCase(contentEncoding)) { return compression; }
+        }
+        return null;
+    }
+
+    @Nullable
+    public static IeCompression byEnvelopeFlags(final int flags) {
+        final int compressionFlag = flags & ENVELOPE_FLAGS_MASK;
+        for (final IeCompression compression : VALUES) {
+            if (compression.envelopeFlag == compressionFlag) { return compression; }
+        }
+        return null;
+    }
+}
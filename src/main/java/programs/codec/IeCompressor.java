@@ -0,0 +1,249 @@
+package programs.codec;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.AppConstants;
+import programs.IeRuntimeException;
+import programs.metrics.IeMetrics;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses publish bodies of at least {@code thresholdBytes} with one {@link IeCompression}, keeping the original
+ * when compression does not make it smaller. Deflater, Inflater and the output buffers are reused per thread.
+ * <p>
+ * Exports {@code ie_compression_input_bytes_total} and {@code ie_compression_output_bytes_total} (their ratio is the
+ * compression ratio), {@code ie_compression_skipped_total}, and the time spent per call as the
+ * {@code compress_<algorithm>} / {@code decompress_<algorithm>} operations of the transport.
+ */
+public final class IeCompressor {
+
+    /** Refuses to inflate beyond this, so a tiny malicious payload cannot exhaust the heap. */
+    public static final int MAX_DECOMPRESSED_LENGTH = 64 * 1024 * 1024;
+
+    private static final LZ4Factory LZ4_FACTORY = LZ4Factory.fastestInstance();
+    private static final LZ4Compressor LZ4_COMPRESSOR = LZ4_FACTORY.fastCompressor();
+    private static final LZ4SafeDecompressor LZ4_DECOMPRESSOR = LZ4_FACTORY.safeDecompressor();
+
+    private static final ThreadLocal<Workspace> WORKSPACES = ThreadLocal.withInitial(Workspace::new);
+    // decompression timers per transport, indexed by IeCompression#ordinal()
+    private static final ConcurrentHashMap<String, IeMetrics.Timer[]> DECOMPRESS_TIMERS = new ConcurrentHashMap<>();
+
+    private final IeCompression compression;
+    private final int thresholdBytes;
+    private final IeMetrics.Timer compressTimer;
+    private final LongAdder inputBytes;
+    private final LongAdder outputBytes;
+    private final LongAdder skippedCount;
+
+    /**
+     * @param transport      label of the exported metrics, e.g. {@code rabbitmq} or {@code mqtt}
+     * @param thresholdBytes bodies smaller than this are sent as is
+     */
+    public IeCompressor(@NotNull final String transport, @NotNull final IeCompression compression, final int thresholdBytes) {
+        this.compression = compression;
+        this.thresholdBytes = Math.max(0, thresholdBytes);
+        final IeMetrics metrics = IeMetrics.getDefault();
+        final String labels = "transport=\"" + transport + "\",algorithm=\"" + compression.getContentEncoding() + "\"";
+        this.compressTimer = metrics.timer(transport, "compress_" + compression.getContentEncoding());
+        this.inputBytes = metrics.counter("ie_compression_input_bytes_total", labels);
+        this.outputBytes = metrics.counter("ie_compression_output_bytes_total", labels);
+        this.skippedCount = metrics.counter("ie_compression_skipped_total", labels);
+    }
+
+    @NotNull
+    public IeCompression getCompression() { return compression; }
+
+    public int getThresholdBytes() { return thresholdBytes; }
+
+    /**
+     * @return the compressed body, or null when {@code body} should be sent as is
+     */
+    @Nullable
+    public byte[] compress(@NotNull final byte[] body) { return compress(body, 0, body.length, 0); }
+
+    @Nullable
+    public byte[] compress(@NotNull final IeEncodeBuffer encoded) { return compress(encoded.array(), 0, encoded.size(), 0); }
+
+    /**
+     * @param enveloped an {@link IeMqttEnvelope} header followed by the body
+     * @return the same header with the compression flag set, followed by the compressed body,
+     *         or null when {@code enveloped} should be sent as is
+     */
+    @Nullable
+    public byte[] compressEnveloped(@NotNull final IeEncodeBuffer enveloped) {
+        return compress(enveloped.array(), 0, enveloped.size(), IeMqttEnvelope.HEADER_LENGTH);
+    }
+
+    @Nullable
+    private byte[] compress(@NotNull final byte[] source, final int offset, final int length, final int headerLength) {
+        final int bodyLength = length - headerLength;
+        if (bodyLength < thresholdBytes) { return null; }
+
+        final long startNanos = System.nanoTime();
+        final Workspace workspace = WORKSPACES.get();
+        final IeEncodeBuffer output = workspace.output;
+        output.reset();
+        if (headerLength > 0) {
+            output.put(source, offset, headerLength);
+            output.set(IeMqttEnvelope.FLAGS_OFFSET, source[offset + IeMqttEnvelope.FLAGS_OFFSET] | compression.getEnvelopeFlag());
+        }
+        final boolean isSmaller = (IeCompression.LZ4 == compression)
+                ? lz4Compress(source, offset + headerLength, bodyLength, output)
+                : deflate(workspace.deflater, source, offset + headerLength, bodyLength, output);
+        compressTimer.recordSuccess(startNanos);
+        if (!isSmaller) {
+            skippedCount.increment();
+            return null;
+        }
+        inputBytes.add(bodyLength);
+        outputBytes.add(output.size() - headerLength);
+        return output.toByteArray();
+    }
+
+    private static boolean lz4Compress(
+            @NotNull final byte[] source, final int offset, final int length, @NotNull final IeEncodeBuffer output) {
+        final int start = output.size();
+        final int maxLength = LZ4_COMPRESSOR.maxCompressedLength(length);
+        output.putInt(length);
+        output.ensureCapacity(maxLength);
+        output.advance(LZ4_COMPRESSOR.compress(source, offset, length, output.array(), output.size(), maxLength));
+        return (output.size() - start) < length;
+    }
+
+    private static boolean deflate(
+            @NotNull final Deflater deflater,
+            @NotNull final byte[] source,
+            final int offset,
+            final int length,
+            @NotNull final IeEncodeBuffer output) {
+        final int start = output.size();
+        deflater.reset();
+        deflater.setInput(source, offset, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            // give up as soon as the output is no smaller than the input
+            if ((output.size() - start) >= length) { return false; }
+            output.ensureCapacity(Math.max(256, length >> 2));
+            output.advance(deflater.deflate(output.array(), output.size(), output.capacity() - output.size()));
+        }
+        return (output.size() - start) < length;
+    }
+
+    /**
+     * @return a read-only view of the decompressed bytes, reused by the calling thread's next decompression,
+     *         so it is only valid until the handler it is passed to returns
+     */
+    @NotNull
+    public static ByteBuffer decompress(
+            @NotNull final String transport,
+            @NotNull final IeCompression compression,
+            @NotNull final ByteBuffer compressed) throws IeRuntimeException {
+        final long startNanos = System.nanoTime();
+        final IeMetrics.Timer decompressTimer = decompressTimer(transport, compression);
+        final Workspace workspace = WORKSPACES.get();
+        final int length = compressed.remaining();
+        final byte[] source;
+        final int offset;
+        if (compressed.hasArray()) {
+            source = compressed.array();
+            offset = compressed.arrayOffset() + compressed.position();
+        }
+        else {
+            source = workspace.input(length);
+            compressed.duplicate().get(source, 0, length);
+            offset = 0;
+        }
+
+        final IeEncodeBuffer output = workspace.decompressed;
+        output.reset();
+        try {
+            if (IeCompression.LZ4 == compression) { lz4Decompress(source, offset, length, output); }
+            else { inflate(workspace.inflater, source, offset, length, output); }
+        }
+        catch (DataFormatException | LZ4Exception | IllegalArgumentException cause) {
+            final IeRuntimeException error = IeRuntimeException.of(cause, AppConstants.CodecErrorCode.DECOMPRESS_FAILURE);
+            decompressTimer.recordFailure(error.getExceptionCode(), startNanos);
+            throw error;
+        }
+        decompressTimer.recordSuccess(startNanos);
+        return output.view();
+    }
+
+    @NotNull
+    private static IeMetrics.Timer decompressTimer(@NotNull final String transport, @NotNull final IeCompression compression) {
+        IeMetrics.Timer[] timers = DECOMPRESS_TIMERS.get(transport);
+        if (null == timers) {
+            timers = DECOMPRESS_TIMERS.computeIfAbsent(transport, key -> {
+                final IeCompression[] compressions = IeCompression.values();
+                final IeMetrics.Timer[] newTimers = new IeMetrics.Timer[compressions.length];
+                for (final IeCompression value : compressions) {
+                    newTimers[value.ordinal()] = IeMetrics.getDefault().timer(key, "decompress_" + value.getContentEncoding());
+                }
+                return newTimers;
+            });
+        }
+        return timers[compression.ordinal()];
+    }
+
+    private static void lz4Decompress(
+            @NotNull final byte[] source, final int offset, final int length, @NotNull final IeEncodeBuffer output) {
+        if (length < 4) { throw new IllegalArgumentException("truncated lz4 body"); }
+        final int originalLength = ((source[offset] & 0xFF) << 24) | ((source[offset + 1] & 0xFF) << 16)
+                | ((source[offset + 2] & 0xFF) << 8) | (source[offset + 3] & 0xFF);
+        if ( (originalLength < 0) || (originalLength > MAX_DECOMPRESSED_LENGTH) ) {
+            throw new IllegalArgumentException("invalid original length: " + originalLength);
+        }
+        output.ensureCapacity(originalLength);
+        final int decompressedLength = LZ4_DECOMPRESSOR.decompress(
+                source, offset + 4, length - 4, output.array(), 0, originalLength);
+        if (decompressedLength != originalLength) { throw new IllegalArgumentException("truncated lz4 body"); }
+        output.advance(decompressedLength);
+    }
+
+    private static void inflate(
+            @NotNull final Inflater inflater,
+            @NotNull final byte[] source,
+            final int offset,
+            final int length,
+            @NotNull final IeEncodeBuffer output) throws DataFormatException {
+        inflater.reset();
+        inflater.setInput(source, offset, length);
+        while (!inflater.finished()) {
+            if (output.size() >= MAX_DECOMPRESSED_LENGTH) { throw new IllegalArgumentException("decompressed body too large"); }
+            output.ensureCapacity(Math.max(1024, length << 1));
+            final int inflatedLength = inflater.inflate(output.array(), output.size(), output.capacity() - output.size());
+            if ( (0 == inflatedLength) && (inflater.needsInput() || inflater.needsDictionary()) ) {
+                throw new DataFormatException("truncated deflate body");
+            }
+            output.advance(inflatedLength);
+        }
+    }
+
+    private static final class Workspace {
+        private static final int MAX_RETAINED_INPUT_LENGTH = 1024 * 1024;
+
+        final Deflater deflater = new Deflater();
+        final Inflater inflater = new Inflater();
+        final IeEncodeBuffer output = new IeEncodeBuffer();
+        final IeEncodeBuffer decompressed = new IeEncodeBuffer();
+        private byte[] input = new byte[1024];
+
+        @NotNull
+        byte[] input(final int length) {
+            // the odd huge body gets its own array instead of staying with the thread
+            if (length > MAX_RETAINED_INPUT_LENGTH) { return new byte[length]; }
+            if (input.length < length) { input = new byte[Math.max(length, input.length << 1)]; }
+            return input;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package programs.codec;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Growable per-thread scratch buffer that codecs encode into, so a publish does not grow a fresh
+ * {@code ByteArrayOutputStream} every time. Only the final, exactly sized copy handed to the transport is allocated.
+ * The content is only valid until the next {@link #get()} on the same thread.
+ */
+public final class IeEncodeBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // a buffer grown past this by one large message is dropped instead of being kept by the thread
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+    private static final ThreadLocal<IeEncodeBuffer> BUFFERS = ThreadLocal.withInitial(IeEncodeBuffer::new);
+
+    private byte[] bytes = new byte[INITIAL_CAPACITY];
+    private int size;
+
+    IeEncodeBuffer() { }
+
+    /**
+     * @return the calling thread's buffer, emptied
+     */
+    @NotNull
+    public static IeEncodeBuffer get() {
+        final IeEncodeBuffer buffer = BUFFERS.get();
+        buffer.reset();
+        return buffer;
+    }
+
+    void reset() {
+        if (bytes.length > MAX_RETAINED_CAPACITY) { bytes = new byte[INITIAL_CAPACITY]; }
+        size = 0;
+    }
+
+    @NotNull
+    byte[] array() { return bytes; }
+
+    int capacity() { return bytes.length; }
+
+    /** Accounts for {@code length} bytes written straight into {@link #array()}. */
+    void advance(final int length) { size += length; }
+
+    /** Drops everything written after {@code newSize}. */
+    void truncate(final int newSize) { size = newSize; }
+
+    public int size() { return size; }
+
+    @NotNull
+    public IeEncodeBuffer put(final int value) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) value;
+        return this;
+    }
+
+    @NotNull
+    public IeEncodeBuffer putInt(final int value) {
+        ensureCapacity(4);
+        bytes[size++] = (byte) (value >>> 24);
+        bytes[size++] = (byte) (value >>> 16);
+        bytes[size++] = (byte) (value >>> 8);
+        bytes[size++] = (byte) value;
+        return this;
+    }
+
+    @NotNull
+    public IeEncodeBuffer putLong(final long value) {
+        putInt((int) (value >>> 32));
+        return putInt((int) value);
+    }
+
+    /** Unsigned LEB128, 1 byte for values below 128. */
+    @NotNull
+    public IeEncodeBuffer putVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0L) {
+            bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[size++] = (byte) value;
+        return this;
+    }
+
+    @NotNull
+    public IeEncodeBuffer put(@NotNull final byte[] source) { return put(source, 0, source.length); }
+
+    @NotNull
+    public IeEncodeBuffer put(@NotNull final byte[] source, final int offset, final int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+        return this;
+    }
+
+    /**
+     * Copies the remaining bytes of {@code source} without moving its position.
+     */
+    @NotNull
+    public IeEncodeBuffer put(@NotNull final ByteBuffer source) {
+        final int length = source.remaining();
+        ensureCapacity(length);
+        source.duplicate().get(bytes, size, length);
+        size += length;
+        return this;
+    }
+
+    /**
+     * Writes {@code value} as UTF-8 without the intermediate array of {@link String#getBytes}.
+     */
+    @NotNull
+    public IeEncodeBuffer putUtf8(@NotNull final CharSequence value) {
+        final int length = value.length();
+        ensureCapacity(length * 3);
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[size++] = (byte) c;
+            }
+            else if (c < 0x800) {
+                bytes[size++] = (byte) (0xC0 | (c >> 6));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+            else if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            }
+            else if (Character.isSurrogate(c)) {
+                bytes[size++] = (byte) '?';
+            }
+            else {
+                bytes[size++] = (byte) (0xE0 | (c >> 12));
+                bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return the UTF-8 length of {@code value}, matching what {@link #putUtf8} writes
+     */
+    public static int utf8Length(@NotNull final CharSequence value) {
+        final int length = value.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c < 0x80) { utf8Length += 1; }
+            else if (c < 0x800) { utf8Length += 2; }
+            else if (Character.isHighSurrogate(c) && (i + 1 < length) && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            }
+            else if (Character.isSurrogate(c)) { utf8Length += 1; }
+            else { utf8Length += 3; }
+        }
+        return utf8Length;
+    }
+
+    /** Overwrites one byte already written, e.g. a flag in a header reserved up front. */
+    public void set(final int index, final int value) {
+        if (index >= size) { throw new IndexOutOfBoundsException("index: " + index + ", size: " + size); }
+        bytes[index] = (byte) value;
+    }
+
+    /**
+     * @return a read-only view of the written bytes, valid until the next {@link #get()} on this thread
+     */
+    @NotNull
+    public ByteBuffer view() { return ByteBuffer.wrap(bytes, 0, size).asReadOnlyBuffer(); }
+
+    /**
+     * @return an exactly sized copy that can outlive this buffer, as the transports require
+     */
+    @NotNull
+    public byte[] toByteArray() { return Arrays.copyOf(bytes, size); }
+
+    void ensureCapacity(final int extra) {
+        final int required = size + extra;
+        if (required < 0) { throw new OutOfMemoryError("encoded message too large"); }
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length << 1));
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package programs.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import programs.AppConstants;
+import programs.IeRuntimeException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal UTF-8 JSON codec for the value trees described in {@link IeBinaryCodec}, written straight into the
+ * {@link IeEncodeBuffer}. {@code byte[]} is written as a base64 string; integral numbers decode as {@link Long}
+ * and the others as {@link Double}.
+ */
+public final class IeJsonCodec implements IeCodec<Object> {
+
+    public static final byte CODEC_ID = 2;
+    public static final String CONTENT_TYPE = "application/json";
+
+    private static final byte[] NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    private static final int MAX_DEPTH = 64;
+
+    @Override
+    public byte getCodecId() { return CODEC_ID; }
+
+    @NotNull
+    @Override
+    public String getContentType() { return CONTENT_TYPE; }
+
+    @NotNull
+    @Override
+    public Class<Object> getMessageType() { return Object.class; }
+
+    @Override
+    public void encode(@NotNull final Object message, @NotNull final IeEncodeBuffer buffer) throws IeRuntimeException {
+        writeValue(message, buffer, 0);
+    }
+
+    @NotNull
+    @Override
+    public Object decode(@NotNull final ByteBuffer payload) throws IeRuntimeException {
+        final Parser parser = new Parser(payload.duplicate());
+        try {
+            final Object message = parser.readValue(0);
+            parser.skipWhitespace();
+            if (parser.source.hasRemaining()) { throw new IllegalArgumentException("trailing characters"); }
+            if (null == message) { throw new IllegalArgumentException("null message"); }
+            return message;
+        }
+        catch (BufferUnderflowException | IllegalArgumentException cause) {
+            throw IeRuntimeException.of(cause, AppConstants.CodecErrorCode.DECODE_FAILURE);
+        }
+    }
+
+    private static void writeValue(@Nullable final Object value, @NotNull final IeEncodeBuffer buffer, final int depth) throws IeRuntimeException {
+        if (depth > MAX_DEPTH) { throw IeRuntimeException.of("nested too deep", AppConstants.CodecErrorCode.ENCODE_FAILURE); }
+        if (null == value) {
+            buffer.put(NULL);
+        }
+        else if (value instanceof Boolean) {
+            buffer.put(((Boolean) value) ? TRUE : FALSE);
+        }
+        else if ( (value instanceof Long) || (value instanceof Integer) || (value instanceof Short) || (value instanceof Byte) ) {
+            writeLong(((Number) value).longValue(), buffer);
+        }
+        else if ( (value instanceof Double) || (value instanceof Float) ) {
+            final double number = ((Number) value).doubleValue();
+            if (Double.isNaN(number) || Double.isInfinite(number)) { buffer.put(NULL); }
+            else { buffer.putUtf8(Double.toString(number)); }
+        }
+        else if (value instanceof CharSequence) {
+            writeString((CharSequence) value, buffer);
+        }
+        else if (value instanceof byte[]) {
+            buffer.put('"').put(Base64.getEncoder().encode((byte[]) value)).put('"');
+        }
+        else if (value instanceof List) {
+            buffer.put('[');
+            boolean isFirst = true;
+            for (final Object item : (List<?>) value) {
+                if (!isFirst) { buffer.put(','); }
+                writeValue(item, buffer, depth + 1);
+                isFirst = false;
+            }
+            buffer.put(']');
+        }
+        else if (value instanceof Map) {
+            buffer.put('{');
+            boolean isFirst = true;
+            for (final Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                if (!isFirst) { buffer.put(','); }
+                writeString(String.valueOf(entry.getKey()), buffer);
+                buffer.put(':');
+                writeValue(entry.getValue(), buffer, depth + 1);
+                isFirst = false;
+            }
+            buffer.put('}');
+        }
+        else {
+            throw IeRuntimeException.of("unsupported type: " + value.getClass().getName(), AppConstants.CodecErrorCode.ENCODE_FAILURE);
+        }
+    }
+
+    private static void writeLong(final long value, @NotNull final IeEncodeBuffer buffer) {
+        if (Long.MIN_VALUE == value) {
+            buffer.putUtf8("-9223372036854775808");
+            return;
+        }
+        long remaining = value;
+        if (remaining < 0L) {
+            buffer.put('-');
+            remaining = -remaining;
+        }
+        long divisor = 1L;
+        while (remaining / divisor >= 10L) { divisor *= 10L; }
+        for (; divisor > 0L; divisor /= 10L) {
+            buffer.put((int) ('0' + (remaining / divisor) % 10L));
+        }
+    }
+
+    private static void writeString(@NotNull final CharSequence value, @NotNull final IeEncodeBuffer buffer) {
+        buffer.put('"');
+        final int length = value.length();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if ( (c >= 0x20) && (c != '"') && (c != '\\') ) { continue; }
+            buffer.putUtf8(value.subSequence(start, i));
+            switch (c) {
+                case '"': buffer.put('\\').put('"'); break;
+                case '\\': buffer.put('\\').put('\\'); break;
+                case '\n': buffer.put('\\').put('n'); break;
+                case '\r': buffer.put('\\').put('r'); break;
+                case '\t': buffer.put('\\').put('t'); break;
+                default:
+                    buffer.put('\\').put('u').put('0').put('0').put(HEX_DIGITS[c >> 4]).put(HEX_DIGITS[c & 0xF]);
+            }
+            start = i + 1;
+        }
+        buffer.putUtf8(value.subSequence(start, length));
+        buffer.put('"');
+    }
+
+    private static final class Parser {
+
+        final ByteBuffer source;
+        private byte[] scratch = new byte[64];
+
+        Parser(@NotNull final ByteBuffer source) { this.source = source; }
+
+        @Nullable
+        Object readValue(final int depth) throws IeRuntimeException {
+            if (depth > MAX_DEPTH) { throw IeRuntimeException.of("nested too deep", AppConstants.CodecErrorCode.DECODE_FAILURE); }
+            skipWhitespace();
+            final byte b = peek();
+            switch (b) {
+                case '{': return readObject(depth);
+                case '[': return readArray(depth);
+                case '"': return readString();
+                case 't': expect(TRUE); return Boolean.TRUE;
+                case 'f': expect(FALSE); return Boolean.FALSE;
+                case 'n': expect(NULL); return null;
+                default:
+                    if ( (b == '-') || ((b >= '0') && (b <= '9')) ) { return readNumber(); }
+                    throw new IllegalArgumentException("unexpected character: " + (char) b);
+            }
+        }
+
+        @NotNull
+        private Map<String, Object> readObject(final int depth) throws IeRuntimeException {
+            source.get();
+            final Map<String, Object> map = new LinkedHashMap<>();
+            skipWhitespace();
+            if ('}' == peek()) {
+                source.get();
+                return map;
+            }
+            while (true) {
+                skipWhitespace();
+                if ('"' != peek()) { throw new IllegalArgumentException("expected a key"); }
+                final String key = readString();
+                skipWhitespace();
+                if (':' != source.get()) { throw new IllegalArgumentException("expected ':'"); }
+                map.put(key, readValue(depth + 1));
+                skipWhitespace();
+                final byte b = source.get();
+                if ('}' == b) { return map; }
+                if (',' != b) { throw new IllegalArgumentException("expected ',' or '}'"); }
+            }
+        }
+
+        @NotNull
+        private List<Object> readArray(final int depth) throws IeRuntimeException {
+            source.get();
+            final List<Object> list = new ArrayList<>();
+            skipWhitespace();
+            if (']' == peek()) {
+                source.get();
+                return list;
+            }
+            while (true) {
+                list.add(readValue(depth + 1));
+                skipWhitespace();
+                final byte b = source.get();
+                if (']' == b) { return list; }
+                if (',' != b) { throw new IllegalArgumentException("expected ',' or ']'"); }
+            }
+        }
+
+        @NotNull
+        private String readString() {
+            source.get();
+            int length = 0;
+            while (true) {
+                byte b = source.get();
+                if ('"' == b) { break; }
+                if ('\\' == b) {
+                    b = source.get();
+                    switch (b) {
+                        case 'n': b = '\n'; break;
+                        case 'r': b = '\r'; break;
+                        case 't': b = '\t'; break;
+                        case 'b': b = '\b'; break;
+                        case 'f': b = '\f'; break;
+                        case 'u': length = appendCodeUnit(length, readHex4()); continue;
+                        case '"': case '\\': case '/': break;
+                        default: throw new IllegalArgumentException("invalid escape: \\" + (char) b);
+                    }
+                }
+                length = append(length, b);
+            }
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private int readHex4() {
+            int value = 0;
+            for (int i = 0; i < 4; i++) {
+                final int digit = Character.digit(source.get(), 16);
+                if (digit < 0) { throw new IllegalArgumentException("invalid \\u escape"); }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
+
+        // escaped surrogate pairs are joined back into one 4-byte UTF-8 sequence
+        private int appendCodeUnit(int length, final int codeUnit) {
+            int codePoint = codeUnit;
+            if (Character.isHighSurrogate((char) codeUnit) && (source.remaining() >= 6)
+                    && ('\\' == source.get(source.position())) && ('u' == source.get(source.position() + 1))) {
+                final int mark = source.position();
+                source.position(mark + 2);
+                final int low = readHex4();
+                if (Character.isLowSurrogate((char) low)) { codePoint = Character.toCodePoint((char) codeUnit, (char) low); }
+                else { source.position(mark); }
+            }
+            final byte[] utf8 = new String(Character.toChars(codePoint)).getBytes(StandardCharsets.UTF_8);
+            for (final byte b : utf8) { length = append(length, b); }
+            return length;
+        }
+
+        private int append(final int length, final byte b) {
+            if (length == scratch.length) { scratch = Arrays.copyOf(scratch, length << 1); }
+            scratch[length] = b;
+            return length + 1;
+        }
+
+        @NotNull
+        private Object readNumber() {
+            final int start = source.position();
+            boolean isIntegral = true;
+            while (source.hasRemaining()) {
+                final byte b = source.get(source.position());
+                if ( (b >= '0' && b <= '9') || (b == '-') || (b == '+') ) { source.get(); }
+                else if ( (b == '.') || (b == 'e') || (b == 'E') ) { isIntegral = false; source.get(); }
+                else { break; }
+            }
+            final int length = source.position() - start;
+            final char[] chars = new char[length];
+            for (int i = 0; i < length; i++) { chars[i] = (char) source.get(start + i); }
+            final String number = new String(chars);
+            if (isIntegral) {
+                try {
+                    return Long.parseLong(number);
+                }
+                catch (NumberFormatException cause) {
+                    // out of the long range, falls through to double
+                }
+            }
+            return Double.parseDouble(number);
+        }
+
+        private void expect(@NotNull final byte[] literal) {
+            for (final byte b : literal) {
+                if (b != source.get()) { throw new IllegalArgumentException("invalid literal"); }
+            }
+        }
+
+        private byte peek() {
+            if (!source.hasRemaining()) { throw new BufferUnderflowException(); }
+            return source.get(source.position());
+        }
+
+        void skipWhitespace() {
+            while (source.hasRemaining()) {
+                final byte b = source.get(source.position());
+                if ( (b != ' ') && (b != '\n') && (b != '\r') && (b != '\t') ) { return; }
+                source.get();
+            }
+        }
+    }
+}
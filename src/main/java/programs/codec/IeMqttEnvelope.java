@@ -0,0 +1,79 @@
+package programs.codec;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * MQTT 3.1.1 has no message properties, so codec-tagged payloads start with a small header instead:
+ * <pre>
+ * bytes 0-2  MAGIC (0xFF, never part of UTF-8 text, then 'i' 'e')
+ * byte 3     VERSION
+ * byte 4     flags: the {@link IeCompression} applied to the body, {@link #FLAG_BATCH}
+ * byte 5     codec id, 0 for a raw body
+ * </pre>
+ * Payloads without the magic are passed on untouched, so plain publishers keep working. A binary payload that happens
+ * to start with the same 4 bytes, and then valid flags, is still taken for an envelope, so publishers of arbitrary
+ * binary data should let {@code HiveMqttHelper} envelope every payload rather than rely on the sniffing.
+ */
+public final class IeMqttEnvelope {
+
+    public static final int MAGIC = 0xFF;
+    public static final int VERSION = 2;
+    public static final int HEADER_LENGTH = 6;
+    public static final int FLAGS_OFFSET = 4;
+    public static final byte RAW_CODEC_ID = 0;
+    /** the body is an {@link IeBatchFrame} */
+    public static final int FLAG_BATCH = 0x04;
+
+    private static final byte MAGIC_1 = 'i';
+    private static final byte MAGIC_2 = 'e';
+    private static final int KNOWN_FLAGS = IeCompression.ENVELOPE_FLAGS_MASK | FLAG_BATCH;
+
+    public final int flags;
+    public final byte codecId;
+    /** read-only view of the body after the header */
+    public final ByteBuffer body;
+
+    private IeMqttEnvelope(final int flags, final byte codecId, @NotNull final ByteBuffer body) {
+        this.flags = flags;
+        this.codecId = codecId;
+        this.body = body;
+    }
+
+    @NotNull
+    public static byte[] header(final int flags, final byte codecId) {
+        return new byte[] { (byte) MAGIC, MAGIC_1, MAGIC_2, (byte) VERSION, (byte) flags, codecId };
+    }
+
+    public static void writeHeader(@NotNull final IeEncodeBuffer buffer, final int flags, final byte codecId) {
+        buffer.put(MAGIC).put(MAGIC_1).put(MAGIC_2).put(VERSION).put(flags).put(codecId);
+    }
+
+    /**
+     * @return the parsed envelope, or null when {@code payload} does not start with a header of a known version
+     *         whose flags are all known
+     */
+    @Nullable
+    public static IeMqttEnvelope parse(@NotNull final ByteBuffer payload) {
+        final int position = payload.position();
+        if ( (payload.remaining() < HEADER_LENGTH)
+                || (MAGIC != (payload.get(position) & 0xFF))
+                || (MAGIC_1 != payload.get(position + 1))
+                || (MAGIC_2 != payload.get(position + 2))
+                || (VERSION != payload.get(position + 3)) ) {
+            return null;
+        }
+        final int flags = payload.get(position + FLAGS_OFFSET) & 0xFF;
+        if ( (0 != (flags & ~KNOWN_FLAGS))
+                || ( (0 != (flags & IeCompression.ENVELOPE_FLAGS_MASK)) && (null == IeCompression.byEnvelopeFlags(flags)) ) ) {
+            return null;
+        }
+        final ByteBuffer body = payload.duplicate();
+        body.position(position + HEADER_LENGTH);
+        return new IeMqttEnvelope(flags, payload.get(position + FLAGS_OFFSET + 1), body.slice().asReadOnlyBuffer());
+    }
+
+    public boolean hasFlag(final int flag) { return (flags & flag) == flag; }
+}
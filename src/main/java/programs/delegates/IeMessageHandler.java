@@ -0,0 +1,19 @@
+package programs.delegates;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+
+/**
+ * Receives messages already decoded by the codec their publisher tagged them with.
+ */
+public interface IeMessageHandler {
+    /**
+     * @param destination the AMQP routing key or the MQTT topic
+     * @param message     the decoded message, or a read-only {@link java.nio.ByteBuffer} of the body when it carries no codec tag,
+     *                    only valid until this call returns
+     * @param headers     AMQP message headers; always empty for MQTT 3.1.1
+     */
+    void onMessage(@NotNull final String destination, @NotNull final Object message, @NotNull final Map<String, Object> headers) throws Exception;
+}
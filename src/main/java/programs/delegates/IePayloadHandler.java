@@ -0,0 +1,19 @@
+package programs.delegates;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+
+/**
+ * Receives message bodies of either transport without going through {@code String} or copying the bytes.
+ */
+public interface IePayloadHandler {
+    /**
+     * @param destination the AMQP routing key or the MQTT topic
+     * @param payload     read-only view of the body, only valid until this call returns
+     * @param headers     AMQP message headers; always empty for MQTT 3.1.1
+     */
+    void onPayload(@NotNull final String destination, @NotNull final ByteBuffer payload, @NotNull final Map<String, Object> headers) throws Exception;
+}
@@ -0,0 +1,11 @@
+package programs.delegates;
+
+import org.jetbrains.annotations.NotNull;
+import programs.IeRuntimeException;
+
+
+public interface IeStreamResult<T> {
+    void onNext(@NotNull final T data);
+    void onError(@NotNull final IeRuntimeException cause);
+    void onComplete();
+}
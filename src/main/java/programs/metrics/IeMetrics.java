@@ -0,0 +1,126 @@
+package programs.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-process metrics registry. Hot paths hold on to a {@link Timer} (one per transport and operation) created once,
+ * so recording is a couple of striped-counter increments and one histogram increment with no allocation.
+ * {@link #scrape()} renders everything in the Prometheus text exposition format.
+ */
+public final class IeMetrics {
+
+    private static final IeMetrics DEFAULT = new IeMetrics();
+
+    // le bounds of the exported histogram buckets, just below 1.024us, 2.048us, 4.096us ... ~68.7s
+    private static final int MIN_EXPORT_POWER = 10;
+    private static final int MAX_EXPORT_POWER = 36;
+
+    private final ConcurrentHashMap<String, Timer> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    @NotNull
+    public static IeMetrics getDefault() { return DEFAULT; }
+
+    @NotNull
+    public Timer timer(@NotNull final String transport, @NotNull final String operation) {
+        return timers.computeIfAbsent(transport + "/" + operation, key -> new Timer(transport, operation));
+    }
+
+    /**
+     * @param labels already rendered Prometheus labels without braces, e.g. {@code transport="mqtt",codec="lz4"}
+     */
+    @NotNull
+    public LongAdder counter(@NotNull final String name, @NotNull final String labels) {
+        return counters.computeIfAbsent(name + "{" + labels + "}", key -> new LongAdder());
+    }
+
+    @NotNull
+    public String scrape() {
+        final StringBuilder builder = new StringBuilder(4096);
+        final TreeMap<String, Timer> sortedTimers = new TreeMap<>(timers);
+
+        builder.append("# TYPE ie_operations_total counter\n");
+        for (final Timer timer : sortedTimers.values()) {
+            builder.append("ie_operations_total{").append(timer.labels).append(",result=\"success\"} ")
+                    .append(timer.successCount.sum()).append('\n');
+            for (final Map.Entry<String, LongAdder> entry : new TreeMap<>(timer.errorCounts).entrySet()) {
+                builder.append("ie_operations_total{").append(timer.labels).append(",result=\"error\",code=\"")
+                        .append(entry.getKey()).append("\"} ").append(entry.getValue().sum()).append('\n');
+            }
+        }
+
+        builder.append("# TYPE ie_operation_latency_seconds histogram\n");
+        for (final Timer timer : sortedTimers.values()) {
+            final LatencyHistogram histogram = timer.histogram;
+            for (int power = MIN_EXPORT_POWER; power <= MAX_EXPORT_POWER; power++) {
+                // the upper bound of the bucket below 2^power, the largest bound the histogram counts exactly
+                final long boundNanos = (1L << power) - 1L;
+                builder.append("ie_operation_latency_seconds_bucket{").append(timer.labels).append(",le=\"")
+                        .append(boundNanos / 1e9).append("\"} ").append(histogram.getCountAtOrBelow(boundNanos)).append('\n');
+            }
+            builder.append("ie_operation_latency_seconds_bucket{").append(timer.labels).append(",le=\"+Inf\"} ")
+                    .append(histogram.getCount()).append('\n');
+            builder.append("ie_operation_latency_seconds_sum{").append(timer.labels).append("} ")
+                    .append(histogram.getSumNanos() / 1e9).append('\n');
+            builder.append("ie_operation_latency_seconds_count{").append(timer.labels).append("} ")
+                    .append(histogram.getCount()).append('\n');
+        }
+
+        String lastName = null;
+        for (final Map.Entry<String, LongAdder> entry : new TreeMap<>(counters).entrySet()) {
+            final String name = entry.getKey().substring(0, entry.getKey().indexOf('{'));
+            if (!name.equals(lastName)) {
+                builder.append("# TYPE ").append(name).append(" counter\n");
+                lastName = name;
+            }
+            builder.append(entry.getKey()).append(' ').append(entry.getValue().sum()).append('\n');
+        }
+        return builder.toString();
+    }
+
+    public static final class Timer {
+
+        private final String labels;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private final LongAdder successCount = new LongAdder();
+        private final ConcurrentHashMap<String, LongAdder> errorCounts = new ConcurrentHashMap<>();
+
+        private Timer(@NotNull final String transport, @NotNull final String operation) {
+            this.labels = "transport=\"" + transport + "\",operation=\"" + operation + "\"";
+        }
+
+        @NotNull
+        public LatencyHistogram getHistogram() { return histogram; }
+
+        public long getSuccessCount() { return successCount.sum(); }
+
+        public long getErrorCount(@NotNull final String errorCode) {
+            final LongAdder errorCount = errorCounts.get(errorCode);
+            return (null == errorCount) ? 0L : errorCount.sum();
+        }
+
+        public void recordSuccess(final long startNanos) {
+            histogram.record(System.nanoTime() - startNanos);
+            successCount.increment();
+        }
+
+        public void recordFailure(@NotNull final String errorCode, final long startNanos) {
+            histogram.record(System.nanoTime() - startNanos);
+            markFailure(errorCode);
+        }
+
+        /** Counts a success whose latency is not known, e.g. a result emitted by a stream. */
+        public void markSuccess() { successCount.increment(); }
+
+        public void markFailure(@NotNull final String errorCode) {
+            LongAdder errorCount = errorCounts.get(errorCode);
+            if (null == errorCount) { errorCount = errorCounts.computeIfAbsent(errorCode, key -> new LongAdder()); }
+            errorCount.increment();
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package programs.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.jetbrains.annotations.NotNull;
+import programs.IeLogger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+
+/**
+ * Serves {@link IeMetrics#scrape()} on {@code GET /metrics} for a Prometheus scraper, using the JDK's built-in HttpServer.
+ */
+public final class IeMetricsHttpServer {
+
+    private static final IeLogger LOGGER = IeLogger.getLogger("IeMetricsHttpServer");
+
+    private final IeMetrics metrics;
+    private final String hostName;
+    private final int portNumber;
+    private HttpServer httpServer;
+    private ExecutorService executorService;
+
+    public IeMetricsHttpServer(final int portNumber) { this(IeMetrics.getDefault(), "127.0.0.1", portNumber); }
+
+    public IeMetricsHttpServer(@NotNull final IeMetrics metrics, @NotNull final String hostName, final int portNumber) {
+        this.metrics = metrics;
+        this.hostName = hostName;
+        this.portNumber = portNumber;
+    }
+
+    public synchronized boolean start() {
+        if (null != httpServer) {
+            LOGGER.log(Level.SEVERE, "start - httpServer existed !!");
+            return false;
+        }
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(hostName, portNumber), 0);
+            httpServer.createContext("/metrics", new ScrapeHandler());
+            executorService = Executors.newSingleThreadExecutor();
+            httpServer.setExecutor(executorService);
+            httpServer.start();
+            LOGGER.log(Level.INFO, "start - listening on {}:{}", hostName, getPortNumber());
+            return true;
+        }
+        catch (IOException cause) {
+            LOGGER.log(Level.SEVERE, "Error on HttpServer#create(): {}", cause.getLocalizedMessage());
+            httpServer = null;
+            return false;
+        }
+    }
+
+    /**
+     * @return the bound port, which differs from the configured one when it was 0
+     */
+    public synchronized int getPortNumber() {
+        return (null != httpServer) ? httpServer.getAddress().getPort() : portNumber;
+    }
+
+    public synchronized void stop() {
+        if (null == httpServer) { return; }
+        httpServer.stop(0);
+        httpServer = null;
+        executorService.shutdownNow();
+        executorService = null;
+        LOGGER.log(Level.INFO, "stop - httpServer stopped");
+    }
+
+    private final class ScrapeHandler implements HttpHandler {
+        @Override
+        public void handle(final HttpExchange exchange) throws IOException {
+            try {
+                if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405, -1);
+                    return;
+                }
+                final byte[] body = metrics.scrape().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream outputStream = exchange.getResponseBody()) {
+                    outputStream.write(body);
+                }
+            }
+            finally {
+                exchange.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package programs.metrics;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free, log-bucketed latency histogram in nanoseconds. Every power of two is split into
+ * {@value #SUB_BUCKETS} linear sub-buckets, so a recorded value is off by at most 25% and recording is one atomic increment.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public void record(final long nanos) {
+        final long value = Math.max(0L, nanos);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sumNanos.add(value);
+    }
+
+    public long getCount() { return count.sum(); }
+
+    public long getSumNanos() { return sumNanos.sum(); }
+
+    /**
+     * @return the upper bound of the bucket holding the given percentile (0..100), 0 when nothing was recorded
+     */
+    public long getValueAtPercentile(final double percentile) {
+        final long total = getCount();
+        if (0L == total) { return 0L; }
+        final long rank = Math.max(1L, (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0L;
+        for (int index = 0; index < BUCKET_COUNT; index++) {
+            seen += buckets.get(index);
+            if (seen >= rank) { return bucketUpperBound(index); }
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1);
+    }
+
+    /**
+     * @return how many recorded values fall into buckets lying entirely at or below {@code nanos}; exact when
+     * {@code nanos} is the upper bound of a bucket, e.g. one less than a power of two, and never an overcount
+     */
+    public long getCountAtOrBelow(final long nanos) {
+        if (nanos < 0L) { return 0L; }
+        final int lastIndex = (Long.MAX_VALUE == nanos) ? (BUCKET_COUNT - 1) : (bucketIndex(nanos + 1L) - 1);
+        long seen = 0L;
+        for (int index = 0; index <= lastIndex; index++) { seen += buckets.get(index); }
+        return seen;
+    }
+
+    @NotNull
+    @Override
+    public String toString() {
+        return "LatencyHistogram {count: " + getCount() + ", p50: " + getValueAtPercentile(50.0)
+                + ", p99: " + getValueAtPercentile(99.0) + ", max: " + getValueAtPercentile(100.0) + "}";
+    }
+
+    private static int bucketIndex(final long value) {
+        if (value < SUB_BUCKETS) { return (int) value; }
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) ((value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long bucketUpperBound(final int index) {
+        if (index < SUB_BUCKETS) { return index; }
+        final int magnitude = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = index % SUB_BUCKETS;
+        final long lowerBound = (1L << magnitude) + (subBucket << (magnitude - SUB_BUCKET_BITS));
+        return lowerBound + (1L << (magnitude - SUB_BUCKET_BITS)) - 1L;
+    }
+}
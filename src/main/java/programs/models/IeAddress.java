@@ -0,0 +1,30 @@
+package programs.models;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+public final class IeAddress {
+
+    public final String hostName;
+    public final int portNumber;
+
+    public IeAddress(@NotNull final String hostName, final int portNumber) {
+        this.hostName = hostName;
+        this.portNumber = portNumber;
+    }
+
+    @Override
+    public boolean equals(@Nullable final Object other) {
+        if (this == other) { return true; }
+        if (!(other instanceof IeAddress)) { return false; }
+        final IeAddress that = (IeAddress) other;
+        return (portNumber == that.portNumber) && hostName.equals(that.hostName);
+    }
+
+    @Override
+    public int hashCode() { return 31 * hostName.hashCode() + portNumber; }
+
+    @NotNull
+    @Override
+    public String toString() { return hostName + ":" + portNumber; }
+}
@@ -7,6 +7,7 @@ import io.reactivex.annotations.Nullable;
 import io.reactivex.disposables.Disposable;
 import io.reactivex.observers.DisposableObserver;
 import io.reactivex.observers.DisposableSingleObserver;
+import programs.IeLogger;
 import programs.IeRuntimeException;
 import programs.delegates.IeApiResult;
 import programs.delegates.IeTaskDelegate;
@@ -16,6 +17,8 @@ import java.util.logging.Level;
 
 public abstract class AbstractRxTask<T> implements IeTaskDelegate, RxDisposeDelegate {
 
+    private static final IeLogger LOGGER = IeLogger.getLogger("AbstractRxTask");
+
     private Disposable disposable;
 
     public IeApiResult<T> callback;
@@ -31,10 +34,10 @@ public abstract class AbstractRxTask<T> implements IeTaskDelegate, RxDisposeDele
         if (null != disposable) {
             if (!disposable.isDisposed()) {
                 disposable.dispose();
-                java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.WARNING, "rxDisposableIfNeeded - dispose");
+                LOGGER.log(Level.WARNING, "rxDisposableIfNeeded - dispose");
             }
             disposable = null;
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.WARNING, "rxDisposableIfNeeded - reset");
+            LOGGER.log(Level.WARNING, "rxDisposableIfNeeded - reset");
         }
     }
 
@@ -44,20 +47,20 @@ public abstract class AbstractRxTask<T> implements IeTaskDelegate, RxDisposeDele
 
         @Override
         public void onNext(@NonNull T result) {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.INFO, "ApiDisposableObserver - onNext - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "ApiDisposableObserver - onNext - Thread: {}", IeLogger.THREAD_NAME);
             cachedData = result;
         }
 
         @Override
         public void onError(@NonNull Throwable cause) {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.SEVERE, "ApiDisposableObserver - onError - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.SEVERE, "ApiDisposableObserver - onError - Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             notifyCallbackOnError(cause);
         }
 
         @Override
         public void onComplete() {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.INFO, "ApiDisposableObserver - onComplete - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "ApiDisposableObserver - onComplete - Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             notifyCallbackOnSuccess(cachedData);
         }
@@ -67,14 +70,14 @@ public abstract class AbstractRxTask<T> implements IeTaskDelegate, RxDisposeDele
 
         @Override
         public void onSuccess(@NonNull T result) {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.INFO, "ApiDisposableSingleObserver - onSuccess - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "ApiDisposableSingleObserver - onSuccess - Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             notifyCallbackOnSuccess(result);
         }
 
         @Override
         public void onError(@NonNull Throwable cause) {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.SEVERE, "ApiDisposableSingleObserver - onSuccess - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.SEVERE, "ApiDisposableSingleObserver - onSuccess - Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             notifyCallbackOnError(cause);
         }
@@ -84,27 +87,27 @@ public abstract class AbstractRxTask<T> implements IeTaskDelegate, RxDisposeDele
 
         @Override
         public void onSubscribe(@NonNull Disposable disposable) {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.INFO, "ApiMaybeObserver - onSubscribe - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "ApiMaybeObserver - onSubscribe - Thread: {}", IeLogger.THREAD_NAME);
             setDisposable(disposable);
         }
 
         @Override
         public void onSuccess(@NonNull T result) {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.INFO, "ApiMaybeObserver - onSuccess - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "ApiMaybeObserver - onSuccess - Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             notifyCallbackOnSuccess(result);
         }
 
         @Override
         public void onError(@NonNull Throwable cause) {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.SEVERE, "ApiMaybeObserver - onError - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.SEVERE, "ApiMaybeObserver - onError - Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             notifyCallbackOnError(cause);
         }
 
         @Override
         public void onComplete() {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.INFO, "ApiMaybeObserver - onComplete - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "ApiMaybeObserver - onComplete - Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             if (null != callback) {
                 callback.onError(new IeRuntimeException("filter returns negative result", "99953"));
@@ -120,20 +123,20 @@ public abstract class AbstractRxTask<T> implements IeTaskDelegate, RxDisposeDele
 
         @Override
         public void onSubscribe(@NonNull Disposable disposable) {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.INFO, "ApiCompletableObserver - onSubscribe - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "ApiCompletableObserver - onSubscribe - Thread: {}", IeLogger.THREAD_NAME);
             setDisposable(disposable);
         }
 
         @Override
         public void onComplete() {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.INFO, "ApiCompletableObserver - onComplete - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "ApiCompletableObserver - onComplete - Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             notifyCallbackOnSuccess(result);
         }
 
         @Override
         public void onError(@NonNull Throwable cause) {
-            java.util.logging.Logger.getLogger("AbstractRxTask").log(Level.SEVERE, "ApiCompletableObserver - onError - Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.SEVERE, "ApiCompletableObserver - onError - Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             notifyCallbackOnError(cause);
         }
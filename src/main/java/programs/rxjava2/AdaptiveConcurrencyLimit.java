@@ -0,0 +1,104 @@
+package programs.rxjava2;
+
+import io.reactivex.annotations.NonNull;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AIMD concurrency limit: every successful call grows the limit by {@code 1 / limit} (about +1 per round trip)
+ * while the limit is actually being used; a failed call, or one slower than the latency threshold,
+ * multiplies it by the backoff ratio. The limit always stays within {@code [minLimit, maxLimit]}.
+ * <p>
+ * Without a fixed threshold, a call is slow when it takes more than {@code latencyTolerance} times the no-load latency,
+ * the lowest latency of the previous {@code LATENCY_WINDOW} calls, so queueing at the server shrinks the limit
+ * before it shows up as errors.
+ * <p>
+ * {@link #tryAcquire()} never blocks; callers start a call only when it succeeds and start the next one from
+ * {@link #release(long, boolean)}, so waiting work holds no thread.
+ */
+public final class AdaptiveConcurrencyLimit {
+
+    private static final int LATENCY_WINDOW = 256;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double latencyTolerance;
+    private final double backoffRatio;
+    private double limit;
+    private int inFlight = 0;
+    private long noLoadLatencyNanos = 0L;
+    private long windowMinLatencyNanos = Long.MAX_VALUE;
+    private int windowSampleCount = 0;
+
+    public AdaptiveConcurrencyLimit(final int maxLimit) {
+        this(1, maxLimit, Math.max(1, maxLimit / 4), 0L, TimeUnit.MILLISECONDS, 0.75);
+    }
+
+    /**
+     * @param latencyThreshold calls slower than this count as congestion;
+     *                         0 uses twice the no-load latency observed so far
+     */
+    public AdaptiveConcurrencyLimit(
+            final int minLimit,
+            final int maxLimit,
+            final int initialLimit,
+            final long latencyThreshold,
+            @NonNull final TimeUnit unit,
+            final double backoffRatio) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.latencyThresholdNanos = unit.toNanos(Math.max(0L, latencyThreshold));
+        this.latencyTolerance = 2.0;
+        this.backoffRatio = ( (backoffRatio > 0.0) && (backoffRatio < 1.0) ) ? backoffRatio : 0.75;
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    public synchronized int getLimit() { return (int) limit; }
+
+    public synchronized int getInFlight() { return inFlight; }
+
+    public int getMaxLimit() { return maxLimit; }
+
+    /**
+     * @return true, and counts the call as in flight, if the limit allows one more
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight >= (int) limit) { return false; }
+        inFlight++;
+        return true;
+    }
+
+    public synchronized void release(final long latencyNanos, final boolean isSuccess) {
+        final boolean isCongested = (!isSuccess) || isSlow(latencyNanos);
+        if (isCongested) {
+            limit = Math.max(minLimit, limit * backoffRatio);
+        }
+        else if (inFlight * 2 >= (int) limit) {
+            // only grow while the limit is the bottleneck, not when the source is simply slow
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        inFlight--;
+    }
+
+    /**
+     * Returns the permit of a call that was abandoned before it ended, without taking a latency sample.
+     */
+    public synchronized void cancel() {
+        inFlight--;
+    }
+
+    private boolean isSlow(final long latencyNanos) {
+        if (latencyThresholdNanos > 0L) { return latencyNanos > latencyThresholdNanos; }
+
+        // the no-load latency is re-measured every window, so it follows a server that got slower for good
+        final boolean isSlow = (noLoadLatencyNanos > 0L) && (latencyNanos > noLoadLatencyNanos * latencyTolerance);
+        windowMinLatencyNanos = Math.min(windowMinLatencyNanos, latencyNanos);
+        if ( (++windowSampleCount >= LATENCY_WINDOW) || (0L == noLoadLatencyNanos) ) {
+            noLoadLatencyNanos = Math.max(1L, windowMinLatencyNanos);
+            windowMinLatencyNanos = Long.MAX_VALUE;
+            windowSampleCount = 0;
+        }
+        return isSlow;
+    }
+}
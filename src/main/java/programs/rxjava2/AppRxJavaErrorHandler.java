@@ -3,6 +3,7 @@ package programs.rxjava2;
 import io.reactivex.exceptions.UndeliverableException;
 import io.reactivex.functions.Consumer;
 import org.jetbrains.annotations.NotNull;
+import programs.IeLogger;
 
 import java.io.IOException;
 import java.net.SocketException;
@@ -13,6 +14,8 @@ import java.util.logging.Level;
  */
 public final class AppRxJavaErrorHandler implements Consumer<Throwable> {
 
+    private static final IeLogger LOGGER = IeLogger.getLogger("AppRxJavaErrorHandler");
+
     private final String logTag;
 
     public AppRxJavaErrorHandler(@NotNull String logTag) {
@@ -22,32 +25,32 @@ public final class AppRxJavaErrorHandler implements Consumer<Throwable> {
     @Override
     public void accept(Throwable throwable) throws Exception {
         if (throwable instanceof UndeliverableException) {
-            java.util.logging.Logger.getLogger("AppRxJavaErrorHandler").log(Level.SEVERE, "UndeliverableException", throwable);
+            LOGGER.log(Level.SEVERE, "UndeliverableException", throwable);
             throwable = throwable.getCause();
         }
         if ((throwable instanceof IOException) || (throwable instanceof SocketException)) {
             // fine, irrelevant network problem or API that throws on cancellation
-            java.util.logging.Logger.getLogger("AppRxJavaErrorHandler").log(Level.SEVERE, "IOException or SocketException", throwable);
+            LOGGER.log(Level.SEVERE, "IOException or SocketException", throwable);
             return;
         }
         if (throwable instanceof InterruptedException) {
             // fine, some blocking code was interrupted by a dispose call
-            java.util.logging.Logger.getLogger("AppRxJavaErrorHandler").log(Level.SEVERE, "InterruptedException", throwable);
+            LOGGER.log(Level.SEVERE, "InterruptedException", throwable);
             return;
         }
         if ((throwable instanceof NullPointerException) || (throwable instanceof IllegalArgumentException)) {
             // that's likely a bug in the application
-            java.util.logging.Logger.getLogger("AppRxJavaErrorHandler").log(Level.SEVERE, "NullPointerException or IllegalArgumentException [that's likely a bug in the application]: " + throwable.getLocalizedMessage());
+            LOGGER.log(Level.SEVERE, "NullPointerException or IllegalArgumentException [that's likely a bug in the application]: {}", throwable.getLocalizedMessage());
             Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), throwable);
             return;
         }
         if (throwable instanceof IllegalStateException) {
             // that's a bug in RxJava or in a custom operator
-            java.util.logging.Logger.getLogger("AppRxJavaErrorHandler").log(Level.SEVERE, "IllegalStateException [that's a bug in RxJava or in a custom operator]: " + throwable.getLocalizedMessage());
+            LOGGER.log(Level.SEVERE, "IllegalStateException [that's a bug in RxJava or in a custom operator]: {}", throwable.getLocalizedMessage());
             Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), throwable);
             return;
         }
-        java.util.logging.Logger.getLogger("AppRxJavaErrorHandler").log(Level.SEVERE, "Undeliverable exception received, not sure what to do: " + throwable.getLocalizedMessage());
+        LOGGER.log(Level.SEVERE, "Undeliverable exception received, not sure what to do: {}", throwable.getLocalizedMessage());
     }
 }
 
@@ -1,22 +1,37 @@
 package programs.rxjava2;
 
+import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
+import io.reactivex.FlowableEmitter;
 import io.reactivex.Single;
 import io.reactivex.annotations.NonNull;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.disposables.Disposable;
 import io.reactivex.functions.Function;
+import io.reactivex.observers.DisposableSingleObserver;
 import io.reactivex.schedulers.Schedulers;
+import io.reactivex.subscribers.DisposableSubscriber;
 import org.reactivestreams.Publisher;
 import programs.IeApiResponse;
+import programs.IeLogger;
+import programs.IeRuntimeException;
+import programs.delegates.IeStreamResult;
+import programs.delegates.IeTaskDelegate;
+import programs.delegates.RxDisposeDelegate;
 import programs.models.IePair;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 
 public final class AppRxTask {
 
+    private static final IeLogger LOGGER = IeLogger.getLogger("AppRxTask");
+
     public static abstract class WithExecutor<T> extends AbstractRxTask<T> implements Callable<T> {
 
         private final Executor executor;
@@ -26,7 +41,7 @@ public final class AppRxTask {
         @Override
         public final void runTask() {
             rxDisposeIfPossible();
-            java.util.logging.Logger.getLogger("AppRxTask").log(Level.INFO, "WithExecutor - runTask - on Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "WithExecutor - runTask - on Thread: {}", IeLogger.THREAD_NAME);
             setDisposable(
                     Single.fromCallable(this)
                             .subscribeOn(Schedulers.from(executor))
@@ -40,7 +55,7 @@ public final class AppRxTask {
         @Override
         public final void runTask() {
             rxDisposeIfPossible();
-            java.util.logging.Logger.getLogger("AppRxTask").log(Level.INFO, "WithRxIo - runTask - on Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "WithRxIo - runTask - on Thread: {}", IeLogger.THREAD_NAME);
             setDisposable(
                     Single.fromCallable(this)
                             .subscribeOn(Schedulers.io())
@@ -54,7 +69,7 @@ public final class AppRxTask {
         @Override
         public final void runTask() {
             rxDisposeIfPossible();
-            java.util.logging.Logger.getLogger("AppRxTask").log(Level.INFO, "WithRxComputation - runTask - on Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "WithRxComputation - runTask - on Thread: {}", IeLogger.THREAD_NAME);
             setDisposable(
                     Single.fromCallable(this)
                             .subscribeOn(Schedulers.computation())
@@ -78,7 +93,7 @@ public final class AppRxTask {
 
         @Override
         public final void runTask() {
-            java.util.logging.Logger.getLogger("AppRxTask").log(Level.INFO, "AbsParallelCommunicationTask - runTask - on Thread: " + Thread.currentThread().getName());
+            LOGGER.log(Level.INFO, "AbsParallelCommunicationTask - runTask - on Thread: {}", IeLogger.THREAD_NAME);
             rxDisposeIfPossible();
             setDisposable(
                     Flowable.just(productList)
@@ -99,17 +114,18 @@ public final class AppRxTask {
 
         private final int threadNumberUpperBound;
 
-        public AbsParallelCommunicationFlatMapper() { this.threadNumberUpperBound = 24; }
+        public AbsParallelCommunicationFlatMapper() {
+            final int evaluatedThreadCt = Runtime.getRuntime().availableProcessors() * 3;
+            this.threadNumberUpperBound = Math.min(24, evaluatedThreadCt);
+        }
 
-        public AbsParallelCommunicationFlatMapper(final int threadNumber) { this.threadNumberUpperBound = threadNumber; }
+        public AbsParallelCommunicationFlatMapper(final int threadNumber) { this.threadNumberUpperBound = Math.max(1, threadNumber); }
 
         @Override
         public final Publisher<IePair<T, IeApiResponse<R>>> apply(@NonNull final List<T> productList) throws Exception {
-            java.util.logging.Logger.getLogger("AppRxTask").log(Level.INFO, "AbsParallelCommunicationFlatMapper - runTask - on Thread: " + Thread.currentThread().getName());
-            final int evaluatedThreadCt = Runtime.getRuntime().availableProcessors() * 3;
-            final int threadCt = Math.min(24, evaluatedThreadCt);
+            LOGGER.log(Level.INFO, "AbsParallelCommunicationFlatMapper - runTask - on Thread: {}, threadCt: {}", IeLogger.THREAD_NAME, threadNumberUpperBound);
             return Flowable.fromIterable(productList)
-                    .parallel(threadCt)
+                    .parallel(threadNumberUpperBound)
                     .runOn(Schedulers.io())
                     .map(getSingleCommunicationFlatMapper())
                     .sequential();
@@ -120,4 +136,190 @@ public final class AppRxTask {
     }
 
     // [end] added in 2020/12/23
+
+    /**
+     * Incremental counterpart of {@link AbsParallelCommunicationTask}: every result reaches the callback as soon as it is ready.
+     * At most {@code maxConcurrency} items are in flight; in ordered mode, results that overtake the head of the source wait
+     * in a buffer of the same size. The source may be a {@link Flowable}, so it never has to be materialized.
+     */
+    public static abstract class AbsStreamingCommunicationTask<T, R> implements IeTaskDelegate, RxDisposeDelegate {
+
+        private final Flowable<T> source;
+        private final int maxConcurrency;
+        private final boolean isOrdered;
+        private Disposable disposable;
+
+        public IeStreamResult<IePair<T, IeApiResponse<R>>> callback;
+
+        public AbsStreamingCommunicationTask(@NonNull final List<T> productList, final int maxConcurrency, final boolean isOrdered) {
+            this(Flowable.fromIterable(productList), maxConcurrency, isOrdered);
+        }
+
+        public AbsStreamingCommunicationTask(@NonNull final Flowable<T> source, final int maxConcurrency, final boolean isOrdered) {
+            this.source = source;
+            this.maxConcurrency = Math.max(1, maxConcurrency);
+            this.isOrdered = isOrdered;
+        }
+
+        @Override
+        public final void runTask() {
+            LOGGER.log(Level.INFO, "AbsStreamingCommunicationTask - runTask - on Thread: {}", IeLogger.THREAD_NAME);
+            rxDisposeIfPossible();
+            final Function<T, IePair<T, IeApiResponse<R>>> singleMapper = getSingleCommunicationFlatMapper();
+            final Function<T, Publisher<IePair<T, IeApiResponse<R>>>> innerMapper =
+                    product -> Flowable.fromCallable(() -> singleMapper.apply(product)).subscribeOn(Schedulers.io());
+            final Flowable<IePair<T, IeApiResponse<R>>> results = isOrdered
+                    ? source.concatMapEager(innerMapper, maxConcurrency, 1)
+                    : source.flatMap(innerMapper, maxConcurrency);
+            disposable = results
+                    .subscribeOn(Schedulers.io())
+                    .subscribeWith(new StreamSubscriber());
+        }
+
+        @Override
+        public final void rxDisposeIfPossible() {
+            if ( (null != disposable) && (!disposable.isDisposed()) ) {
+                disposable.dispose();
+                LOGGER.log(Level.WARNING, "AbsStreamingCommunicationTask - dispose");
+            }
+            disposable = null;
+        }
+
+        @NonNull
+        protected abstract Function<T, IePair<T, IeApiResponse<R>>> getSingleCommunicationFlatMapper();
+
+        private final class StreamSubscriber extends DisposableSubscriber<IePair<T, IeApiResponse<R>>> {
+
+            @Override
+            public void onNext(@NonNull final IePair<T, IeApiResponse<R>> pair) {
+                if (null != callback) { callback.onNext(pair); }
+            }
+
+            @Override
+            public void onError(@NonNull final Throwable cause) {
+                LOGGER.log(Level.SEVERE, "AbsStreamingCommunicationTask - onError - Thread: {}", IeLogger.THREAD_NAME);
+                if (null != callback) {
+                    final IeRuntimeException exception = (cause instanceof IeRuntimeException)
+                            ? (IeRuntimeException) cause : new IeRuntimeException(cause, "00000");
+                    callback.onError(exception);
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                LOGGER.log(Level.INFO, "AbsStreamingCommunicationTask - onComplete - Thread: {}", IeLogger.THREAD_NAME);
+                if (null != callback) { callback.onComplete(); }
+            }
+        }
+    }
+
+    /**
+     * Same contract as {@link AbsParallelCommunicationFlatMapper}, but the number of concurrent
+     * {@link #getSingleCommunicationFlatMapper()} calls follows an {@link AdaptiveConcurrencyLimit}:
+     * it grows while calls succeed and shrinks on errors or slow responses, never exceeding {@code threadNumberUpperBound}.
+     */
+    public static abstract class AbsAdaptiveCommunicationFlatMapper<T, R>
+            implements Function<List<T>, Publisher<IePair<T, IeApiResponse<R>>>> {
+
+        private final AdaptiveConcurrencyLimit concurrencyLimit;
+
+        public AbsAdaptiveCommunicationFlatMapper(final int threadNumberUpperBound) {
+            this(new AdaptiveConcurrencyLimit(threadNumberUpperBound));
+        }
+
+        public AbsAdaptiveCommunicationFlatMapper(@NonNull final AdaptiveConcurrencyLimit concurrencyLimit) {
+            this.concurrencyLimit = concurrencyLimit;
+        }
+
+        public final int getConcurrencyLimit() { return concurrencyLimit.getLimit(); }
+
+        @Override
+        public final Publisher<IePair<T, IeApiResponse<R>>> apply(@NonNull final List<T> productList) throws Exception {
+            LOGGER.log(Level.INFO, "AbsAdaptiveCommunicationFlatMapper - runTask - on Thread: {}, limit: {}/{}",
+                    IeLogger.THREAD_NAME, concurrencyLimit.getLimit(), concurrencyLimit.getMaxLimit());
+            final Function<T, IePair<T, IeApiResponse<R>>> singleMapper = getSingleCommunicationFlatMapper();
+            return Flowable.create(
+                    emitter -> new LimitedDispatcher(singleMapper, productList, emitter.serialize()).drain(),
+                    BackpressureStrategy.BUFFER);
+        }
+
+        @NonNull
+        protected abstract Function<T, IePair<T, IeApiResponse<R>>> getSingleCommunicationFlatMapper();
+
+        /**
+         * Starts a call only when the limit grants a permit, and the next one when a call ends;
+         * items that wait for a permit stay in the list instead of parking a thread.
+         */
+        private final class LimitedDispatcher {
+
+            private final AtomicInteger drainCount = new AtomicInteger();
+            private final CompositeDisposable calls = new CompositeDisposable();
+            private final Function<T, IePair<T, IeApiResponse<R>>> singleMapper;
+            private final Iterator<T> products;
+            private final FlowableEmitter<IePair<T, IeApiResponse<R>>> emitter;
+            private final AtomicInteger remainingCount;
+
+            LimitedDispatcher(
+                    @NonNull final Function<T, IePair<T, IeApiResponse<R>>> singleMapper,
+                    @NonNull final List<T> productList,
+                    @NonNull final FlowableEmitter<IePair<T, IeApiResponse<R>>> emitter) {
+                this.singleMapper = singleMapper;
+                this.products = productList.iterator();
+                this.emitter = emitter;
+                this.remainingCount = new AtomicInteger(productList.size());
+                emitter.setDisposable(calls);
+            }
+
+            void drain() {
+                if (0 != drainCount.getAndIncrement()) { return; }
+                do {
+                    if (0 == remainingCount.get()) {
+                        emitter.onComplete();
+                        return;
+                    }
+                    while ( (!emitter.isCancelled()) && products.hasNext() && concurrencyLimit.tryAcquire() ) {
+                        start(products.next());
+                    }
+                } while (0 != drainCount.decrementAndGet());
+            }
+
+            private void start(@NonNull final T product) {
+                final CallObserver call = new CallObserver(System.nanoTime());
+                // added before subscribing, so a call that ends right away cannot be added after it removed itself
+                calls.add(call);
+                Single.fromCallable(() -> singleMapper.apply(product))
+                        .subscribeOn(Schedulers.io())
+                        .doOnDispose(concurrencyLimit::cancel)
+                        .subscribe(call);
+            }
+
+            /**
+             * Leaves {@link #calls} as soon as its call ended, so the composite only holds the calls in flight and
+             * disposing it never returns the permit of an ended call a second time.
+             */
+            private final class CallObserver extends DisposableSingleObserver<IePair<T, IeApiResponse<R>>> {
+
+                private final long startNanos;
+
+                CallObserver(final long startNanos) { this.startNanos = startNanos; }
+
+                @Override
+                public void onSuccess(@NonNull final IePair<T, IeApiResponse<R>> pair) {
+                    calls.delete(this);
+                    concurrencyLimit.release(System.nanoTime() - startNanos,
+                            (null == pair.second) || (null == pair.second.error));
+                    emitter.onNext(pair);
+                    remainingCount.decrementAndGet();
+                    drain();
+                }
+
+                @Override
+                public void onError(@NonNull final Throwable cause) {
+                    calls.delete(this);
+                    concurrencyLimit.release(System.nanoTime() - startNanos, false);
+                    emitter.onError(cause);
+                }
+            }
+        }
+    }
 }
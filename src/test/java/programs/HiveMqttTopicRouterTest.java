@@ -0,0 +1,105 @@
+package programs;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HiveMqttTopicRouterTest {
+
+    private final HiveMqttConsumptionEngine.PublishHandler first = publish -> { };
+    private final HiveMqttConsumptionEngine.PublishHandler second = publish -> { };
+    private HiveMqttTopicRouter router;
+
+    @Before
+    public void setUp() {
+        router = new HiveMqttTopicRouter();
+    }
+
+    @Test
+    public void literalFilterMatchesOnlyItsTopic() throws IeRuntimeException {
+        router.add("a/b/c", first);
+
+        assertEquals(Collections.singletonList(first), router.match("a/b/c"));
+        assertTrue(router.match("a/b").isEmpty());
+        assertTrue(router.match("a/b/c/d").isEmpty());
+        assertTrue(router.match("a/b/x").isEmpty());
+    }
+
+    @Test
+    public void singleLevelWildcardMatchesExactlyOneLevel() throws IeRuntimeException {
+        router.add("a/+/c", first);
+
+        assertEquals(Collections.singletonList(first), router.match("a/b/c"));
+        assertEquals(Collections.singletonList(first), router.match("a//c"));
+        assertTrue(router.match("a/c").isEmpty());
+        assertTrue(router.match("a/b/x/c").isEmpty());
+    }
+
+    @Test
+    public void multiLevelWildcardMatchesParentAndDeeperLevels() throws IeRuntimeException {
+        router.add("a/#", first);
+
+        assertEquals(Collections.singletonList(first), router.match("a"));
+        assertEquals(Collections.singletonList(first), router.match("a/b"));
+        assertEquals(Collections.singletonList(first), router.match("a/b/c/d"));
+        assertTrue(router.match("b/a").isEmpty());
+    }
+
+    @Test
+    public void wildcardsDoNotMatchDollarTopicsOnTheFirstLevel() throws IeRuntimeException {
+        router.add("#", first);
+        router.add("+/broker/load", second);
+
+        assertTrue(router.match("$SYS/broker/load").isEmpty());
+        assertEquals(new HashSet<>(Arrays.asList(first, second)), new HashSet<>(router.match("x/broker/load")));
+
+        router.add("$SYS/#", second);
+        assertEquals(Collections.singletonList(second), router.match("$SYS/broker/load"));
+    }
+
+    @Test
+    public void handlerOfOverlappingFiltersIsMatchedOnce() throws IeRuntimeException {
+        router.add("a/b", first);
+        router.add("a/+", first);
+        router.add("a/#", first);
+        router.add("a/#", second);
+
+        assertEquals(3, router.getFilterCount());
+        assertEquals(new HashSet<>(Arrays.asList(first, second)), new HashSet<>(router.match("a/b")));
+        assertEquals(2, router.match("a/b").size());
+    }
+
+    @Test
+    public void removedFilterNoLongerMatches() throws IeRuntimeException {
+        assertTrue(router.add("a/+/c", first));
+        assertFalse(router.add("a/+/c", first));
+        router.add("a/b", second);
+
+        assertTrue(router.remove("a/+/c", first));
+        assertFalse(router.remove("a/+/c", first));
+        assertTrue(router.match("a/b/c").isEmpty());
+        assertEquals(Collections.singletonList(second), router.match("a/b"));
+        assertEquals(1, router.getFilterCount());
+    }
+
+    @Test
+    public void malformedFiltersAreRejected() {
+        for (final String topicFilter : new String[] { "", "a/#/b", "a/b#", "a/b+/c" }) {
+            try {
+                router.add(topicFilter, first);
+                fail("accepted: " + topicFilter);
+            }
+            catch (IeRuntimeException cause) {
+                assertEquals(AppConstants.HiveMqErrorCode.INVALID_TOPIC_FILTER, cause.getExceptionCode());
+            }
+        }
+    }
+}
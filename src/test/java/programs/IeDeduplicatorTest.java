@@ -0,0 +1,106 @@
+package programs;
+
+import org.junit.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class IeDeduplicatorTest {
+
+    @Test
+    public void completedKeyIsDuplicate() throws InterruptedException {
+        for (final boolean isBloomFronted : new boolean[] { false, true }) {
+            final IeDeduplicator deduplicator = new IeDeduplicator("test", 60000L, 1000, isBloomFronted);
+            for (long key = -500L; key < 500L; key++) {
+                assertEquals(IeDeduplicator.Verdict.FIRST, deduplicator.begin(key, 0L));
+                deduplicator.complete(key);
+            }
+            for (long key = -500L; key < 500L; key++) {
+                assertEquals(IeDeduplicator.Verdict.DUPLICATE, deduplicator.begin(key, 0L));
+            }
+            assertEquals(IeDeduplicator.Verdict.FIRST, deduplicator.begin(500L, 0L));
+        }
+    }
+
+    @Test
+    public void abortedKeyIsHandledAgain() throws InterruptedException {
+        final IeDeduplicator deduplicator = new IeDeduplicator("test");
+        assertEquals(IeDeduplicator.Verdict.FIRST, deduplicator.begin(42L, 0L));
+        deduplicator.abort(42L);
+
+        assertEquals(IeDeduplicator.Verdict.FIRST, deduplicator.begin(42L, 0L));
+        deduplicator.complete(42L);
+        assertEquals(IeDeduplicator.Verdict.DUPLICATE, deduplicator.begin(42L, 0L));
+    }
+
+    @Test
+    public void fullWindowRotatesAfterTwoGenerations() throws InterruptedException {
+        final IeDeduplicator deduplicator = new IeDeduplicator("test", 60000L, 2, false);
+        for (long key = 1L; key <= 3L; key++) {
+            deduplicator.begin(key, 0L);
+            deduplicator.complete(key);
+        }
+        // 1 and 2 moved to the previous generation when 3 arrived
+        assertEquals(IeDeduplicator.Verdict.DUPLICATE, deduplicator.begin(1L, 0L));
+
+        for (long key = 4L; key <= 5L; key++) {
+            deduplicator.begin(key, 0L);
+            deduplicator.complete(key);
+        }
+        assertEquals(IeDeduplicator.Verdict.FIRST, deduplicator.begin(1L, 0L));
+        assertEquals(IeDeduplicator.Verdict.DUPLICATE, deduplicator.begin(3L, 0L));
+    }
+
+    @Test
+    public void elapsedWindowsRotate() throws InterruptedException {
+        final IeDeduplicator deduplicator = new IeDeduplicator("test", 200L, 1000, false);
+        deduplicator.begin(7L, 0L);
+        deduplicator.complete(7L);
+
+        Thread.sleep(250L);
+        // one window later it is in the previous generation
+        assertEquals(IeDeduplicator.Verdict.DUPLICATE, deduplicator.begin(7L, 0L));
+
+        Thread.sleep(450L);
+        assertEquals(IeDeduplicator.Verdict.FIRST, deduplicator.begin(7L, 0L));
+    }
+
+    @Test
+    public void zeroIsAKeyLikeAnyOther() throws InterruptedException {
+        final IeDeduplicator deduplicator = new IeDeduplicator("test");
+        assertEquals(IeDeduplicator.Verdict.FIRST, deduplicator.begin(0L, 0L));
+        deduplicator.complete(0L);
+        assertEquals(IeDeduplicator.Verdict.DUPLICATE, deduplicator.begin(0L, 0L));
+    }
+
+    @Test
+    public void copyWaitsForTheOriginalInFlight() throws Exception {
+        final IeDeduplicator deduplicator = new IeDeduplicator("test");
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            assertEquals(IeDeduplicator.Verdict.FIRST, deduplicator.begin(1L, 0L));
+            final Future<IeDeduplicator.Verdict> afterComplete = executor.submit(() -> deduplicator.begin(1L, 10000L));
+            Thread.sleep(50L);
+            assertFalse(afterComplete.isDone());
+            deduplicator.complete(1L);
+            assertEquals(IeDeduplicator.Verdict.DUPLICATE, afterComplete.get(5L, TimeUnit.SECONDS));
+
+            assertEquals(IeDeduplicator.Verdict.FIRST, deduplicator.begin(2L, 0L));
+            final Future<IeDeduplicator.Verdict> afterAbort = executor.submit(() -> deduplicator.begin(2L, 10000L));
+            Thread.sleep(50L);
+            deduplicator.abort(2L);
+            assertEquals(IeDeduplicator.Verdict.FIRST, afterAbort.get(5L, TimeUnit.SECONDS));
+
+            assertEquals(IeDeduplicator.Verdict.FIRST, deduplicator.begin(3L, 0L));
+            assertEquals(IeDeduplicator.Verdict.IN_FLIGHT, deduplicator.begin(3L, 20L));
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+}
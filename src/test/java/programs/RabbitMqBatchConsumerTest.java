@@ -0,0 +1,92 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RabbitMqBatchConsumerTest {
+
+    /** Records the acks and nacks a consumer sends, as "ack 3 multiple" / "nack 2 requeue". */
+    private static final class RecordingChannel {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        final Channel channel = (Channel) Proxy.newProxyInstance(
+                Channel.class.getClassLoader(), new Class<?>[] { Channel.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "basicAck":
+                            calls.add("ack " + args[0] + (((Boolean) args[1]) ? " multiple" : ""));
+                            return null;
+                        case "basicNack":
+                            calls.add("nack " + args[0] + (((Boolean) args[1]) ? " multiple" : "")
+                                    + (((Boolean) args[2]) ? " requeue" : ""));
+                            return null;
+                        case "basicConsume":
+                            return args[2];
+                        case "isOpen":
+                            return true;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static Delivery delivery(final long deliveryTag, final boolean isRedelivered) {
+        return new Delivery(new Envelope(deliveryTag, isRedelivered, "", "key"), new AMQP.BasicProperties(), new byte[0]);
+    }
+
+    @Test
+    public void slowHandlerDoesNotBlockTheDeliveries() throws Exception {
+        final RecordingChannel recording = new RecordingChannel();
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+        final RabbitMqBatchConsumer consumer = new RabbitMqBatchConsumer(recording.channel, deliveries -> {
+            batchSizes.add(deliveries.size());
+            assertTrue(release.await(5L, TimeUnit.SECONDS));
+        }, 10, 2, 60000L);
+        assertEquals(IeApiResponse.TRUE, consumer.start("queue"));
+
+        // the first batch blocks the handler, the deliveries after it are still taken in
+        final long startNanos = System.nanoTime();
+        for (long tag = 1L; tag <= 5L; tag++) {
+            consumer.handle("consumer", delivery(tag, false));
+        }
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) < 1000L);
+        assertEquals(Collections.emptyList(), recording.calls);
+
+        release.countDown();
+        consumer.stop();
+        assertEquals(Arrays.asList(2, 2, 1), batchSizes);
+        assertEquals(Arrays.asList("ack 2 multiple", "ack 4 multiple", "ack 5 multiple"), recording.calls);
+    }
+
+    @Test
+    public void failedBatchRequeuesOnlyFirstAttempts() throws Exception {
+        final RecordingChannel recording = new RecordingChannel();
+        final RabbitMqBatchConsumer consumer = new RabbitMqBatchConsumer(recording.channel, deliveries -> {
+            throw new IOException("poison");
+        }, 10, 3, 60000L);
+        assertEquals(IeApiResponse.TRUE, consumer.start("queue"));
+
+        consumer.handle("consumer", delivery(1L, false));
+        consumer.handle("consumer", delivery(2L, false));
+        consumer.handle("consumer", delivery(3L, false));
+        consumer.handle("consumer", delivery(4L, false));
+        consumer.handle("consumer", delivery(5L, true));
+        consumer.stop();
+
+        assertEquals(Arrays.asList("nack 3 multiple requeue", "nack 4 requeue", "nack 5"), recording.calls);
+    }
+}
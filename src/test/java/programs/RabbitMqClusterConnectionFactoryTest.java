@@ -0,0 +1,183 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.impl.AMQImpl;
+import com.rabbitmq.client.impl.Frame;
+import com.rabbitmq.client.impl.LongStringHelper;
+import com.rabbitmq.client.impl.Method;
+import org.junit.After;
+import org.junit.Test;
+import programs.models.IeAddress;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RabbitMqClusterConnectionFactoryTest {
+
+    private final List<FakeNode> nodes = new ArrayList<>();
+    private final List<Connection> connections = new ArrayList<>();
+
+    @After
+    public void tearDown() throws IOException {
+        for (final Connection connection : connections) {
+            if (connection.isOpen()) { connection.abort(1000); }
+        }
+        for (final FakeNode node : nodes) { node.close(); }
+    }
+
+    @Test
+    public void connectsToTheSelectedNode() throws Exception {
+        final List<IeAddress> addresses = startNodes(3);
+        final IeAddressSelector addressSelector = new IeAddressSelector(addresses, IeAddressSelector.Policy.ROUND_ROBIN);
+        final RabbitMqClusterConnectionFactory factory = newFactory(addressSelector);
+        assertTrue(factory.isAutomaticRecoveryEnabled());
+
+        for (int i = 0; i < 9; i++) {
+            final Connection connection = factory.newConnection();
+            connections.add(connection);
+            assertEquals(addresses.get(i % 3).portNumber, connection.getPort());
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(3, nodes.get(i).acceptedCount.get());
+            assertEquals(3, addressSelector.getConnectionCount(i));
+        }
+    }
+
+    @Test
+    public void fallsOverToTheNextNodeWhenTheSelectedOneIsDown() throws Exception {
+        final List<IeAddress> addresses = startNodes(3);
+        nodes.get(1).close();
+        final IeAddressSelector addressSelector = new IeAddressSelector(addresses, IeAddressSelector.Policy.ROUND_ROBIN);
+        final RabbitMqClusterConnectionFactory factory = newFactory(addressSelector);
+
+        connections.add(factory.newConnection());
+        connections.add(factory.newConnection());
+
+        assertEquals(addresses.get(0).portNumber, connections.get(0).getPort());
+        assertEquals(addresses.get(2).portNumber, connections.get(1).getPort());
+        assertEquals(1, addressSelector.getConnectionCount(0));
+        assertEquals(0, addressSelector.getConnectionCount(1));
+        assertEquals(1, addressSelector.getConnectionCount(2));
+    }
+
+    @Test
+    public void leastConnectionsFollowsTheCounts() throws Exception {
+        final List<IeAddress> addresses = startNodes(2);
+        final IeAddressSelector addressSelector = new IeAddressSelector(addresses, IeAddressSelector.Policy.LEAST_CONNECTIONS);
+        final RabbitMqClusterConnectionFactory factory = newFactory(addressSelector);
+
+        for (int i = 0; i < 8; i++) {
+            connections.add(factory.newConnection());
+        }
+        assertEquals(4, addressSelector.getConnectionCount(0));
+        assertEquals(4, addressSelector.getConnectionCount(1));
+        assertEquals(4, nodes.get(0).acceptedCount.get());
+        assertEquals(4, nodes.get(1).acceptedCount.get());
+    }
+
+    private List<IeAddress> startNodes(final int count) throws IOException {
+        final List<IeAddress> addresses = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final FakeNode node = new FakeNode();
+            nodes.add(node);
+            addresses.add(new IeAddress("127.0.0.1", node.getPort()));
+        }
+        return addresses;
+    }
+
+    private static RabbitMqClusterConnectionFactory newFactory(final IeAddressSelector addressSelector) {
+        final RabbitMqClusterConnectionFactory factory = new RabbitMqClusterConnectionFactory(addressSelector);
+        factory.setConnectionTimeout(2000);
+        factory.setHandshakeTimeout(2000);
+        factory.setRequestedHeartbeat(0);
+        return factory;
+    }
+
+    /**
+     * Accepts connections and answers just enough of the AMQP 0-9-1 connection handshake for the client to open one.
+     */
+    private static final class FakeNode {
+
+        private final ServerSocket serverSocket;
+        private final List<Socket> sockets = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger acceptedCount = new AtomicInteger();
+
+        private FakeNode() throws IOException {
+            serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            final Thread acceptThread = new Thread(this::accept, "fake-node-" + serverSocket.getLocalPort());
+            acceptThread.setDaemon(true);
+            acceptThread.start();
+        }
+
+        private int getPort() { return serverSocket.getLocalPort(); }
+
+        private void accept() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    acceptedCount.incrementAndGet();
+                    sockets.add(socket);
+                    final Thread serveThread = new Thread(() -> serve(socket));
+                    serveThread.setDaemon(true);
+                    serveThread.start();
+                }
+                catch (IOException closed) {
+                    return;
+                }
+            }
+        }
+
+        private static void serve(final Socket socket) {
+            try {
+                final DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+                input.readFully(new byte[8]);
+                write(output, new AMQImpl.Connection.Start(0, 9, Collections.<String, Object>emptyMap(),
+                        LongStringHelper.asLongString("PLAIN"), LongStringHelper.asLongString("en_US")));
+                while (true) {
+                    final Frame frame = Frame.readFrom(input);
+                    if ( (null == frame) || (AMQP.FRAME_METHOD != frame.type) ) { continue; }
+                    final DataInputStream payload = frame.getInputStream();
+                    final int classId = payload.readUnsignedShort();
+                    final int methodId = payload.readUnsignedShort();
+                    if (AMQImpl.Connection.INDEX != classId) { continue; }
+                    switch (methodId) {
+                        case AMQImpl.Connection.StartOk.INDEX: write(output, new AMQImpl.Connection.Tune(2047, 131072, 0)); break;
+                        case AMQImpl.Connection.Open.INDEX: write(output, new AMQImpl.Connection.OpenOk("")); break;
+                        case AMQImpl.Connection.Close.INDEX: write(output, new AMQImpl.Connection.CloseOk()); return;
+                        default: break;
+                    }
+                }
+            }
+            catch (IOException closed) {
+                // the client or the test closed the connection
+            }
+        }
+
+        private static void write(final DataOutputStream output, final Method method) throws IOException {
+            method.toFrame(0).writeTo(output);
+            output.flush();
+        }
+
+        private void close() throws IOException {
+            serverSocket.close();
+            synchronized (sockets) {
+                for (final Socket socket : sockets) { socket.close(); }
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package programs;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RabbitMqShardedQueueTest {
+
+    /**
+     * Hands out channels that accept every consume, cancel and QoS call without a broker.
+     */
+    private static final class FakeConnectionFactory extends ConnectionFactory {
+
+        @Override
+        public Connection newConnection() {
+            return (Connection) Proxy.newProxyInstance(
+                    Connection.class.getClassLoader(), new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "createChannel": return newChannel();
+                            case "isOpen": return true;
+                            default: return null;
+                        }
+                    });
+        }
+
+        private static Channel newChannel() {
+            return (Channel) Proxy.newProxyInstance(
+                    Channel.class.getClassLoader(), new Class<?>[] { Channel.class }, (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "basicConsume": return args[2];
+                            case "isOpen": return true;
+                            case "hashCode": return System.identityHashCode(proxy);
+                            case "equals": return proxy == args[0];
+                            default: return null;
+                        }
+                    });
+        }
+    }
+
+    @Test
+    public void shardsAreSplitEvenly() {
+        for (final int shardCount : new int[] { 1, 7, 12, 64 }) {
+            final RabbitMqShardedQueue queue = newQueue(shardCount);
+            final List<String> memberIds = new ArrayList<>();
+            for (int i = 0; i < 9; i++) {
+                memberIds.add("member-" + i);
+                assertEquals(IeApiResponse.TRUE, queue.join("member-" + i, (consumerTag, delivery) -> { }, 1));
+                assertBalanced(shardCount, memberIds, queue.getAssignment());
+            }
+            for (int i = 0; i < 8; i++) {
+                memberIds.remove("member-" + (i * 5 % 9));
+                assertEquals(IeApiResponse.TRUE, queue.leave("member-" + (i * 5 % 9)));
+                assertBalanced(shardCount, memberIds, queue.getAssignment());
+            }
+            queue.close();
+        }
+    }
+
+    @Test
+    public void joinMovesOnlyTheShardsTheNewMemberTakes() {
+        final RabbitMqShardedQueue queue = newQueue(12);
+        queue.join("a", (consumerTag, delivery) -> { }, 1);
+        queue.join("b", (consumerTag, delivery) -> { }, 1);
+        queue.join("c", (consumerTag, delivery) -> { }, 1);
+        final Map<String, String> before = ownersByShard(queue.getAssignment());
+
+        queue.join("d", (consumerTag, delivery) -> { }, 1);
+        final Map<String, List<String>> assignment = queue.getAssignment();
+        final Map<String, String> after = ownersByShard(assignment);
+        int movedCount = 0;
+        for (final String shardName : queue.getShardNames()) {
+            if (!before.get(shardName).equals(after.get(shardName))) {
+                movedCount++;
+                assertEquals("d", after.get(shardName));
+            }
+        }
+        assertEquals(3, movedCount);
+        assertEquals(Arrays.asList(3, 3, 3, 3), Arrays.asList(
+                assignment.get("a").size(), assignment.get("b").size(), assignment.get("c").size(), assignment.get("d").size()));
+        queue.close();
+    }
+
+    private static RabbitMqShardedQueue newQueue(final int shardCount) {
+        return new RabbitMqShardedQueue(new RabbitMqChannelPool(new FakeConnectionFactory()), "sharded", shardCount);
+    }
+
+    private static void assertBalanced(final int shardCount, final List<String> memberIds, final Map<String, List<String>> assignment) {
+        assertEquals(memberIds.size(), assignment.size());
+        int assignedCount = 0;
+        for (final String memberId : memberIds) {
+            final int count = assignment.get(memberId).size();
+            assertTrue(assignment.toString(), (count == shardCount / memberIds.size()) || (count == shardCount / memberIds.size() + 1));
+            assignedCount += count;
+        }
+        assertEquals(shardCount, assignedCount);
+    }
+
+    private static Map<String, String> ownersByShard(final Map<String, List<String>> assignment) {
+        final Map<String, String> owners = new HashMap<>();
+        for (final Map.Entry<String, List<String>> entry : assignment.entrySet()) {
+            for (final String shardName : entry.getValue()) { owners.put(shardName, entry.getKey()); }
+        }
+        return owners;
+    }
+}
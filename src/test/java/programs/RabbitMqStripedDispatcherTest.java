@@ -0,0 +1,215 @@
+package programs;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+import com.rabbitmq.client.Envelope;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RabbitMqStripedDispatcherTest {
+
+    /** Records the acks and nacks a dispatcher sends, as "ack 3" / "nack 2", and its consumer as "consume tag" / "cancel tag". */
+    private static final class RecordingChannel {
+        final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        final Channel channel = (Channel) Proxy.newProxyInstance(
+                Channel.class.getClassLoader(), new Class<?>[] { Channel.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "basicAck":
+                            assertEquals("acks are multiple", true, args[1]);
+                            calls.add("ack " + args[0]);
+                            return null;
+                        case "basicNack":
+                            assertEquals("nacks are single", false, args[1]);
+                            assertEquals("nacks requeue", true, args[2]);
+                            calls.add("nack " + args[0]);
+                            return null;
+                        case "basicConsume":
+                            calls.add("consume " + args[2]);
+                            return args[2];
+                        case "basicCancel":
+                            calls.add("cancel " + args[0]);
+                            return null;
+                        case "isOpen":
+                            return true;
+                        default:
+                            return null;
+                    }
+                });
+    }
+
+    private static Delivery delivery(final long deliveryTag, final String routingKey, final String body) {
+        return new Delivery(
+                new Envelope(deliveryTag, false, "", routingKey),
+                new AMQP.BasicProperties(),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String bodyOf(final Delivery delivery) {
+        return new String(delivery.getBody(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void acksInBatchesAndOnTheLastDispatchedTag() throws Exception {
+        final RecordingChannel recording = new RecordingChannel();
+        final CountDownLatch handled = new CountDownLatch(5);
+        final RabbitMqStripedDispatcher dispatcher = new RabbitMqStripedDispatcher(
+                recording.channel, (consumerTag, delivery) -> handled.countDown(),
+                RabbitMqStripedDispatcher.byRoutingKey(), 1, 16, 2);
+        // queued before the lane runs, so every settle sees tag 5 as the last dispatched one
+        for (long tag = 1L; tag <= 5L; tag++) {
+            dispatcher.handle("consumer", delivery(tag, "key", "m" + tag));
+        }
+        dispatcher.start();
+        assertTrue(handled.await(5L, TimeUnit.SECONDS));
+        dispatcher.stop();
+
+        assertEquals(Arrays.asList("ack 2", "ack 4", "ack 5"), recording.calls);
+    }
+
+    @Test
+    public void failedDeliveryIsNackedAndLeftOutOfTheMultipleAck() throws Exception {
+        final RecordingChannel recording = new RecordingChannel();
+        final CountDownLatch handled = new CountDownLatch(3);
+        final DeliverCallback deliverCallback = (consumerTag, delivery) -> {
+            handled.countDown();
+            if (3L == delivery.getEnvelope().getDeliveryTag()) { throw new IOException("failed"); }
+        };
+        final RabbitMqStripedDispatcher dispatcher = new RabbitMqStripedDispatcher(
+                recording.channel, deliverCallback, RabbitMqStripedDispatcher.byRoutingKey(), 1, 16, 64);
+        for (long tag = 1L; tag <= 3L; tag++) {
+            dispatcher.handle("consumer", delivery(tag, "key", "m" + tag));
+        }
+        dispatcher.start();
+        assertTrue(handled.await(5L, TimeUnit.SECONDS));
+        dispatcher.stop();
+
+        assertEquals(Arrays.asList("nack 3", "ack 2"), recording.calls);
+    }
+
+    @Test
+    public void slowLaneHoldsBackTheAckOfLaterTags() throws Exception {
+        // two keys on different lanes
+        final IeStripedExecutor<Object> probe = new IeStripedExecutor<>("probe", (lane, item) -> { }, 2, 1);
+        final String slowKey = "slow";
+        String fastKey = "fast";
+        for (int i = 0; probe.laneOf(fastKey) == probe.laneOf(slowKey); i++) { fastKey = "fast" + i; }
+
+        final RecordingChannel recording = new RecordingChannel();
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch fastHandled = new CountDownLatch(2);
+        final CountDownLatch allHandled = new CountDownLatch(3);
+        final DeliverCallback deliverCallback = (consumerTag, delivery) -> {
+            if (slowKey.equals(delivery.getEnvelope().getRoutingKey())) {
+                try {
+                    release.await(5L, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException cause) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            else {
+                fastHandled.countDown();
+            }
+            allHandled.countDown();
+        };
+        final RabbitMqStripedDispatcher dispatcher = new RabbitMqStripedDispatcher(
+                recording.channel, deliverCallback, RabbitMqStripedDispatcher.byRoutingKey(), 2, 16, 1);
+        dispatcher.start();
+        dispatcher.handle("consumer", delivery(1L, slowKey, "m1"));
+        dispatcher.handle("consumer", delivery(2L, fastKey, "m2"));
+        dispatcher.handle("consumer", delivery(3L, fastKey, "m3"));
+
+        assertTrue(fastHandled.await(5L, TimeUnit.SECONDS));
+        Thread.sleep(50L);
+        assertTrue("tag 1 is still in flight", recording.calls.isEmpty());
+
+        release.countDown();
+        assertTrue(allHandled.await(5L, TimeUnit.SECONDS));
+        dispatcher.stop();
+        assertEquals(Collections.singletonList("ack 3"), recording.calls);
+    }
+
+    @Test
+    public void deliveriesOfTheChannelBeforeRecoveryAreNeitherHandledNorSettled() throws Exception {
+        final RecordingChannel recording = new RecordingChannel();
+        final CountDownLatch oldStarted = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch newHandled = new CountDownLatch(1);
+        final List<String> handledBodies = Collections.synchronizedList(new ArrayList<>());
+        final DeliverCallback deliverCallback = (consumerTag, delivery) -> {
+            handledBodies.add(bodyOf(delivery));
+            if ("old1".equals(bodyOf(delivery))) {
+                oldStarted.countDown();
+                try {
+                    release.await(5L, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException cause) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if ("new1".equals(bodyOf(delivery))) { newHandled.countDown(); }
+        };
+        final RabbitMqStripedDispatcher dispatcher = new RabbitMqStripedDispatcher(
+                recording.channel, deliverCallback, RabbitMqStripedDispatcher.byRoutingKey(), 1, 16, 64);
+        dispatcher.start();
+        dispatcher.handle("consumer", delivery(1L, "key", "old1"));
+        dispatcher.handle("consumer", delivery(2L, "key", "old2"));
+        assertTrue(oldStarted.await(5L, TimeUnit.SECONDS));
+
+        // the recovered channel starts over at tag 1
+        dispatcher.handle("consumer", delivery(1L, "key", "new1"));
+        release.countDown();
+        assertTrue(newHandled.await(5L, TimeUnit.SECONDS));
+        dispatcher.stop();
+
+        assertEquals(Arrays.asList("old1", "new1"), handledBodies);
+        assertEquals(Collections.singletonList("ack 1"), recording.calls);
+    }
+
+    @Test
+    public void stopCancelsTheConsumerBeforeRequeueingWhatIsLeft() throws Exception {
+        final RecordingChannel recording = new RecordingChannel();
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final DeliverCallback deliverCallback = (consumerTag, delivery) -> {
+            if (1L != delivery.getEnvelope().getDeliveryTag()) { return; }
+            firstStarted.countDown();
+            try {
+                // until stop() interrupts the lane
+                Thread.sleep(TimeUnit.SECONDS.toMillis(5L));
+            }
+            catch (InterruptedException cause) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        final RabbitMqStripedDispatcher dispatcher = new RabbitMqStripedDispatcher(
+                recording.channel, deliverCallback, RabbitMqStripedDispatcher.byRoutingKey(), 1, 16, 64);
+        assertEquals(null, dispatcher.start("queue").error);
+        final String consumeCall = recording.calls.get(0);
+        assertTrue(consumeCall.startsWith("consume "));
+        for (long tag = 1L; tag <= 4L; tag++) {
+            dispatcher.handle("consumer", delivery(tag, "key", "m" + tag));
+        }
+        assertTrue(firstStarted.await(5L, TimeUnit.SECONDS));
+
+        dispatcher.stop();
+        // delivered before the broker processed the cancel
+        dispatcher.handle("consumer", delivery(5L, "key", "m5"));
+
+        final String cancelCall = "cancel " + consumeCall.substring("consume ".length());
+        assertEquals(Arrays.asList(consumeCall, cancelCall, "nack 2", "nack 3", "nack 4", "ack 1", "nack 5"), recording.calls);
+    }
+}
@@ -0,0 +1,140 @@
+package programs.codec;
+
+import org.junit.Test;
+import programs.AppConstants;
+import programs.IeRuntimeException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class IeBatchFrameTest {
+
+    @Test
+    public void itemsRoundTripInOrder() throws Exception {
+        final Map<String, String> headers = new HashMap<>();
+        headers.put("content-type", "application/json");
+        headers.put("k\u00e9y", "v\u4e2d\ud83d\ude00");
+        headers.put("empty", "");
+
+        final IeEncodeBuffer buffer = new IeEncodeBuffer();
+        // a frame does not have to start at the beginning of the buffer
+        buffer.put(0x7F).put(0x7F);
+        final int preambleOffset = buffer.size();
+        IeBatchFrame.writePreamble(buffer);
+        IeBatchFrame.writeItem(buffer, utf8("first"), headers);
+        IeBatchFrame.writeItem(buffer, ByteBuffer.allocate(0), null);
+        IeBatchFrame.writeItem(buffer, ByteBuffer.wrap(new byte[300]), Collections.<String, String>emptyMap());
+        IeBatchFrame.setItemCount(buffer, preambleOffset, 3);
+
+        final ByteBuffer frame = buffer.view();
+        frame.position(preambleOffset);
+        final List<byte[]> payloads = new ArrayList<>();
+        final List<Map<String, Object>> itemHeaders = new ArrayList<>();
+        final int itemCount = IeBatchFrame.forEach(frame, (payload, itemHeader) -> {
+            final byte[] bytes = new byte[payload.remaining()];
+            payload.get(bytes);
+            payloads.add(bytes);
+            itemHeaders.add(itemHeader);
+        });
+
+        assertEquals(3, itemCount);
+        assertEquals(preambleOffset, frame.position());
+        assertEquals(3, payloads.size());
+        assertEquals("first", new String(payloads.get(0), StandardCharsets.UTF_8));
+        assertEquals(0, payloads.get(1).length);
+        assertTrue(Arrays.equals(new byte[300], payloads.get(2)));
+        assertEquals(new HashMap<String, Object>(headers), itemHeaders.get(0));
+        assertTrue(itemHeaders.get(1).isEmpty());
+        assertTrue(itemHeaders.get(2).isEmpty());
+    }
+
+    @Test
+    public void emptyFrameHasNoItems() throws Exception {
+        final IeEncodeBuffer buffer = new IeEncodeBuffer();
+        IeBatchFrame.writePreamble(buffer);
+        assertEquals(IeBatchFrame.PREAMBLE_LENGTH, buffer.size());
+        assertEquals(0, IeBatchFrame.forEach(buffer.view(), (payload, headers) -> fail()));
+    }
+
+    @Test
+    public void handlerFailureStopsIteration() throws Exception {
+        final IeEncodeBuffer buffer = new IeEncodeBuffer();
+        IeBatchFrame.writePreamble(buffer);
+        IeBatchFrame.writeItem(buffer, utf8("a"), null);
+        IeBatchFrame.writeItem(buffer, utf8("b"), null);
+        IeBatchFrame.setItemCount(buffer, 0, 2);
+
+        final List<String> seen = new ArrayList<>();
+        try {
+            IeBatchFrame.forEach(buffer.view(), (payload, headers) -> {
+                seen.add(StandardCharsets.UTF_8.decode(payload).toString());
+                throw new IllegalStateException("handler");
+            });
+            fail();
+        }
+        catch (IllegalStateException expected) {
+            assertEquals(Collections.singletonList("a"), seen);
+        }
+    }
+
+    @Test
+    public void unknownVersionIsRejected() throws Exception {
+        final IeEncodeBuffer buffer = new IeEncodeBuffer();
+        buffer.put(IeBatchFrame.VERSION + 1).putInt(0);
+        assertDecodeError(buffer.toByteArray(), AppConstants.CodecErrorCode.UNSUPPORTED_BATCH_VERSION);
+    }
+
+    @Test
+    public void truncatedFrameFailsToDecode() throws Exception {
+        final IeEncodeBuffer buffer = new IeEncodeBuffer();
+        IeBatchFrame.writePreamble(buffer);
+        IeBatchFrame.writeItem(buffer, utf8("payload"), Collections.singletonMap("key", "value"));
+        IeBatchFrame.setItemCount(buffer, 0, 1);
+        final byte[] frame = buffer.toByteArray();
+
+        for (int length = 0; length < frame.length; length++) {
+            assertDecodeError(Arrays.copyOf(frame, length), AppConstants.CodecErrorCode.DECODE_FAILURE);
+        }
+    }
+
+    @Test
+    public void negativeItemCountFailsToDecode() throws Exception {
+        final IeEncodeBuffer buffer = new IeEncodeBuffer();
+        IeBatchFrame.writePreamble(buffer);
+        IeBatchFrame.setItemCount(buffer, 0, -1);
+        assertDecodeError(buffer.toByteArray(), AppConstants.CodecErrorCode.DECODE_FAILURE);
+    }
+
+    @Test
+    public void isBatchMatchesContentType() {
+        assertTrue(IeBatchFrame.isBatch(IeBatchFrame.CONTENT_TYPE));
+        assertTrue(IeBatchFrame.isBatch(IeBatchFrame.CONTENT_TYPE + "; codec=2"));
+        assertFalse(IeBatchFrame.isBatch("application/json"));
+        assertFalse(IeBatchFrame.isBatch(null));
+    }
+
+    private static ByteBuffer utf8(final String value) {
+        return ByteBuffer.wrap(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void assertDecodeError(final byte[] frame, final String exceptionCode) throws Exception {
+        try {
+            IeBatchFrame.forEach(ByteBuffer.wrap(frame), (payload, headers) -> { });
+            fail("decoded " + frame.length + " bytes");
+        }
+        catch (IeRuntimeException error) {
+            assertEquals(exceptionCode, error.getExceptionCode());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package programs.codec;
+
+import org.junit.Test;
+import programs.AppConstants;
+import programs.IeRuntimeException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class IeJsonCodecTest {
+
+    private final IeJsonCodec codec = new IeJsonCodec();
+
+    @Test
+    public void nestedValuesRoundTrip() throws IeRuntimeException {
+        final Map<String, Object> inner = new LinkedHashMap<>();
+        inner.put("flag", true);
+        inner.put("off", false);
+        inner.put("nothing", null);
+        inner.put("items", Arrays.asList(1L, -2L, Long.MIN_VALUE, Long.MAX_VALUE, 0.5, -1.25e-7, null));
+
+        final Map<String, Object> message = new LinkedHashMap<>();
+        message.put("plain", "text");
+        message.put("escaped", "quote \" backslash \\ slash / tab \t newline \n control \u0001");
+        message.put("unicode", "\u00e9\u4e2d\ud83d\ude00");
+        message.put("empty", "");
+        message.put("inner", inner);
+        message.put("emptyList", new ArrayList<>());
+        message.put("emptyMap", new LinkedHashMap<>());
+
+        assertEquals(message, roundTrip(message));
+    }
+
+    @Test
+    public void smallIntegralTypesDecodeAsLong() throws IeRuntimeException {
+        assertEquals(Arrays.asList(7L, -3L, 12L, 42L), roundTrip(Arrays.asList(7, (short) -3, (byte) 12, 42L)));
+    }
+
+    @Test
+    public void nonFiniteDoublesBecomeNull() throws IeRuntimeException {
+        assertEquals(Arrays.asList(null, null, 1.5), roundTrip(Arrays.asList(Double.NaN, Double.POSITIVE_INFINITY, 1.5f)));
+    }
+
+    @Test
+    public void bytesEncodeAsBase64String() throws IeRuntimeException {
+        final byte[] bytes = { 0, 1, 2, (byte) 0xFE, (byte) 0xFF };
+        assertEquals(Base64.getEncoder().encodeToString(bytes), roundTrip(bytes));
+    }
+
+    @Test
+    public void decodesInsignificantWhitespace() throws IeRuntimeException {
+        final Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("a", Arrays.asList(1L, "x"));
+        expected.put("b", null);
+        assertEquals(expected, decode(" {\n \"a\" : [ 1 ,\t\"x\" ] , \"b\":null } "));
+    }
+
+    @Test
+    public void decodesEscapedUnicode() throws IeRuntimeException {
+        assertEquals("\u00e9\ud83d\ude00", decode("\"\\u00e9\\ud83d\\ude00\""));
+    }
+
+    @Test
+    public void malformedInputFailsToDecode() throws IeRuntimeException {
+        for (final String json : new String[] {
+                "", "null", "{\"a\":1} x", "{\"a\":1", "[1,2", "\"open", "{\"a\" 1}", "[1,]", "tru", "01x", "\"\\q\"" }) {
+            try {
+                decode(json);
+                fail("decoded: " + json);
+            }
+            catch (IeRuntimeException error) {
+                assertEquals(json, AppConstants.CodecErrorCode.DECODE_FAILURE, error.getExceptionCode());
+            }
+        }
+    }
+
+    @Test
+    public void nestingDeeperThanLimitFails() throws IeRuntimeException {
+        List<Object> value = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            value = new ArrayList<>(Arrays.asList((Object) value));
+        }
+        try {
+            codec.encode(value, new IeEncodeBuffer());
+            fail();
+        }
+        catch (IeRuntimeException error) {
+            assertEquals(AppConstants.CodecErrorCode.ENCODE_FAILURE, error.getExceptionCode());
+        }
+
+        final StringBuilder json = new StringBuilder();
+        for (int i = 0; i < 100; i++) { json.append('['); }
+        for (int i = 0; i < 100; i++) { json.append(']'); }
+        try {
+            decode(json.toString());
+            fail();
+        }
+        catch (IeRuntimeException error) {
+            assertEquals(AppConstants.CodecErrorCode.DECODE_FAILURE, error.getExceptionCode());
+        }
+    }
+
+    @Test
+    public void unsupportedTypeFailsToEncode() throws IeRuntimeException {
+        try {
+            codec.encode(new Object(), new IeEncodeBuffer());
+            fail();
+        }
+        catch (IeRuntimeException error) {
+            assertEquals(AppConstants.CodecErrorCode.ENCODE_FAILURE, error.getExceptionCode());
+        }
+    }
+
+    private Object roundTrip(final Object message) throws IeRuntimeException {
+        final IeEncodeBuffer buffer = new IeEncodeBuffer();
+        codec.encode(message, buffer);
+        return codec.decode(buffer.view());
+    }
+
+    private Object decode(final String json) throws IeRuntimeException {
+        return codec.decode(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
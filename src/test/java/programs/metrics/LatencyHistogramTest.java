@@ -0,0 +1,80 @@
+package programs.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void countAtBucketBoundaryIsExact() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        // 1024..1279 is one bucket, 1280..1535 the next
+        histogram.record(1023L);
+        histogram.record(1024L);
+        histogram.record(1279L);
+        histogram.record(1280L);
+
+        assertEquals(0L, histogram.getCountAtOrBelow(1022L));
+        assertEquals(1L, histogram.getCountAtOrBelow(1023L));
+        assertEquals(3L, histogram.getCountAtOrBelow(1279L));
+        assertEquals(4L, histogram.getCountAtOrBelow(1535L));
+        assertEquals(4L, histogram.getCountAtOrBelow(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void countInsideBucketNeverOvercounts() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1100L);
+        histogram.record(1200L);
+
+        // both share the bucket 1024..1279, which lies only partly at or below these bounds
+        assertEquals(0L, histogram.getCountAtOrBelow(1024L));
+        assertEquals(0L, histogram.getCountAtOrBelow(1150L));
+        assertEquals(2L, histogram.getCountAtOrBelow(1279L));
+    }
+
+    @Test
+    public void smallValuesHaveExactBuckets() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 0L; value < 8L; value++) { histogram.record(value); }
+        histogram.record(-5L);
+
+        assertEquals(2L, histogram.getCountAtOrBelow(0L));
+        for (long value = 1L; value < 8L; value++) {
+            assertEquals(value + 2L, histogram.getCountAtOrBelow(value));
+        }
+        assertEquals(0L, histogram.getCountAtOrBelow(-1L));
+    }
+
+    @Test
+    public void percentileIsBucketUpperBound() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) { histogram.record(1000L); }
+        histogram.record(1_000_000L);
+
+        final long p50 = histogram.getValueAtPercentile(50.0);
+        assertTrue((p50 >= 1000L) && (p50 <= 1250L));
+        final long max = histogram.getValueAtPercentile(100.0);
+        assertTrue((max >= 1_000_000L) && (max <= 1_250_000L));
+        assertEquals(0L, new LatencyHistogram().getValueAtPercentile(50.0));
+    }
+
+    @Test
+    public void scrapeExportsExactCumulativeCounts() {
+        final IeMetrics metrics = new IeMetrics();
+        final LatencyHistogram histogram = metrics.timer("test", "op").getHistogram();
+        histogram.record(1023L);
+        histogram.record(1024L);
+        histogram.record(2047L);
+        histogram.record(2048L);
+
+        final String scrape = metrics.scrape();
+        final String prefix = "ie_operation_latency_seconds_bucket{transport=\"test\",operation=\"op\",le=\"";
+        assertTrue(scrape, scrape.contains(prefix + (1023L / 1e9) + "\"} 1\n"));
+        assertTrue(scrape, scrape.contains(prefix + (2047L / 1e9) + "\"} 3\n"));
+        assertTrue(scrape, scrape.contains(prefix + (4095L / 1e9) + "\"} 4\n"));
+        assertTrue(scrape, scrape.contains(prefix + "+Inf\"} 4\n"));
+    }
+}